@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.api;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A codec used to encode (typically, compress) blobs at rest.
+ *
+ * Each encoded blob begins with a small header naming the codec that
+ * encoded it, so implementations must ensure that {@link #name()} is
+ * unique, consists only of ASCII characters, and is at most 255 bytes
+ * long. Additional codecs can be provided as services via
+ * {@link java.util.ServiceLoader}.
+ */
+
+public interface WBBlobCodecType
+{
+  /**
+   * @return The unique name of the codec
+   */
+
+  String name();
+
+  /**
+   * Wrap a stream such that data written to the returned stream is encoded
+   * and written to {@code output}. Closing the returned stream must finish
+   * encoding and close {@code output}.
+   *
+   * @param output The output stream
+   *
+   * @return An encoding stream
+   *
+   * @throws IOException On I/O errors
+   */
+
+  OutputStream encode(OutputStream output)
+    throws IOException;
+
+  /**
+   * Wrap a stream such that data read from the returned stream is the
+   * decoded contents of {@code input}. Closing the returned stream must
+   * close {@code input}.
+   *
+   * @param input The input stream
+   *
+   * @return A decoding stream
+   *
+   * @throws IOException On I/O errors
+   */
+
+  InputStream decode(InputStream input)
+    throws IOException;
+}
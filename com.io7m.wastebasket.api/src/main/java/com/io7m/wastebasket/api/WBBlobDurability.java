@@ -0,0 +1,48 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.api;
+
+/**
+ * The steps taken to ensure that a delivery has reached stable storage
+ * before it is acknowledged.
+ */
+
+public enum WBBlobDurability
+{
+  /**
+   * Nothing is done; the operating system writes data back to storage at a
+   * time of its choosing. A crash may lose recently acknowledged deliveries.
+   */
+
+  NONE,
+
+  /**
+   * The contents of the file are flushed to storage (the equivalent of
+   * {@code fdatasync}), but metadata such as the directory entry is not.
+   */
+
+  DATA,
+
+  /**
+   * The contents and metadata of the file are flushed to storage (the
+   * equivalent of {@code fsync}), followed by the directory that contains
+   * the file, so that the file is guaranteed to be visible after a crash.
+   */
+
+  FULL
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * An index of the metadata of the blobs that have been written to a
+ * blob store.
+ */
+
+public interface WBBlobIndexType extends Closeable
+{
+  /**
+   * Record the metadata of a blob that has just been written, replacing
+   * any existing metadata for the same ID.
+   *
+   * @param metadata The metadata
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void add(WBBlobMetadata metadata)
+    throws IOException;
+
+  /**
+   * Remove the metadata of a blob that has been deleted. Nothing is
+   * removed if the index no longer holds exactly {@code metadata} for the
+   * blob, as happens if the ID has since been reused.
+   *
+   * @param metadata The metadata
+   *
+   * @return {@code true} if the metadata was removed
+   *
+   * @throws IOException On I/O errors
+   */
+
+  boolean remove(WBBlobMetadata metadata)
+    throws IOException;
+
+  /**
+   * @param id The blob ID
+   *
+   * @return The metadata for the blob, if any is recorded
+   */
+
+  Optional<WBBlobMetadata> find(WBBlobID id);
+
+  /**
+   * @param user  The user
+   * @param since The earliest write time of interest
+   *
+   * @return The metadata of every blob written by {@code user} at or after
+   *         {@code since}, in order of write time
+   */
+
+  List<WBBlobMetadata> writtenBy(
+    String user,
+    OffsetDateTime since);
+
+  /**
+   * @return The number of blobs in the index
+   */
+
+  long size();
+
+  /**
+   * @return The total size in bytes of the blobs in the index
+   */
+
+  long totalSize();
+
+  /**
+   * @param user The user
+   *
+   * @return The total size in bytes of the blobs in the index delivered
+   *         by {@code user}
+   */
+
+  long totalSizeOf(String user);
+}
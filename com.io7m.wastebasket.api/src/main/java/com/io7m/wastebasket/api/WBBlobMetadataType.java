@@ -0,0 +1,104 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.api;
+
+import com.io7m.immutables.styles.ImmutablesStyleType;
+import org.immutables.value.Value;
+
+import java.time.OffsetDateTime;
+import java.util.regex.Pattern;
+
+/**
+ * The metadata recorded for a blob when it is written.
+ */
+
+@ImmutablesStyleType
+@Value.Immutable
+public interface WBBlobMetadataType
+{
+  /**
+   * The pattern that defines valid SHA-256 digests.
+   */
+
+  Pattern VALID_SHA256 = Pattern.compile("[a-f0-9]{64}");
+
+  /**
+   * @return The blob ID
+   */
+
+  WBBlobID id();
+
+  /**
+   * @return The size of the blob in bytes
+   */
+
+  long size();
+
+  /**
+   * @return The SHA-256 digest of the blob, as lowercase hexadecimal
+   */
+
+  String sha256();
+
+  /**
+   * @return The user that delivered the blob, or the empty string if the
+   *         blob was indexed by a rebuild and the user is not known
+   */
+
+  String user();
+
+  /**
+   * @return The address from which the blob was delivered, or the empty
+   *         string if the blob was indexed by a rebuild and the address
+   *         is not known
+   */
+
+  String remoteAddress();
+
+  /**
+   * @return The time at which the blob was written
+   */
+
+  OffsetDateTime time();
+
+  /**
+   * @return A description of where the blob was stored when it was written
+   *
+   * @see WBBlobWriterType#location()
+   */
+
+  String location();
+
+  /**
+   * Check preconditions for the type.
+   */
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    if (this.size() < 0L) {
+      throw new IllegalArgumentException("Size must be non-negative");
+    }
+    if (!VALID_SHA256.matcher(this.sha256()).matches()) {
+      throw new IllegalArgumentException(
+        String.format(
+          "Not a valid SHA-256 digest (must match %s)",
+          VALID_SHA256));
+    }
+  }
+}
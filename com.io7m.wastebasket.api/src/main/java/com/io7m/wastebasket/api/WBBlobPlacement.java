@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.api;
+
+/**
+ * The policy used to choose the volume that receives each new blob in a
+ * store with more than one volume.
+ */
+
+public enum WBBlobPlacement
+{
+  /**
+   * Each blob is placed on the volume ranked highest for its ID, so that
+   * the blob can be found again with a single probe.
+   */
+
+  HASH,
+
+  /**
+   * Each blob is placed on one of the two volumes ranked highest for its
+   * ID, chosen at random in proportion to the free space on each. Finding
+   * the blob again takes at most two probes.
+   */
+
+  FREE_SPACE
+}
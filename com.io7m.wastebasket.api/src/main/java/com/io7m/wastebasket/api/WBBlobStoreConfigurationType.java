@@ -0,0 +1,264 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.api;
+
+import com.io7m.immutables.styles.ImmutablesStyleType;
+import org.immutables.value.Value;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * The configuration for a blob store.
+ */
+
+@ImmutablesStyleType
+@Value.Immutable
+public interface WBBlobStoreConfigurationType
+{
+  /**
+   * The maximum supported number of shard levels.
+   */
+
+  int MAXIMUM_SHARD_LEVELS = 4;
+
+  /**
+   * @return The directory that will contain data deliveries
+   */
+
+  Path directory();
+
+  /**
+   * @return Further directories, typically on other disks, across which
+   *         blobs are spread along with {@link #directory()}; not supported
+   *         with {@link WBBlobStoreKind#PACKED}
+   */
+
+  List<Path> volumes();
+
+  /**
+   * @return The policy used to choose the volume for each new blob
+   */
+
+  @Value.Default
+  default WBBlobPlacement placement()
+  {
+    return WBBlobPlacement.HASH;
+  }
+
+  /**
+   * @return The free space in bytes below which a volume is considered full
+   */
+
+  @Value.Default
+  default long volumeReserve()
+  {
+    return 268_435_456L;
+  }
+
+  /**
+   * @return The kind of blob store
+   */
+
+  @Value.Default
+  default WBBlobStoreKind kind()
+  {
+    return WBBlobStoreKind.PLAIN;
+  }
+
+  /**
+   * @return The number of levels of subdirectories used to spread blobs
+   *         across the data directory ({@code 0} for a flat directory)
+   */
+
+  @Value.Default
+  default int shardLevels()
+  {
+    return 2;
+  }
+
+  /**
+   * @return The way in which data is written into the store
+   */
+
+  @Value.Default
+  default WBBlobWriteMode writeMode()
+  {
+    return WBBlobWriteMode.DIRECT;
+  }
+
+  /**
+   * @return The steps taken to ensure that data reaches stable storage
+   */
+
+  @Value.Default
+  default WBBlobDurability durability()
+  {
+    return WBBlobDurability.NONE;
+  }
+
+  /**
+   * @return {@code true} if each file should be extended to the expected
+   *         size of its delivery before any data is written; this is a
+   *         hint to the file system, and does not guarantee that the space
+   *         is reserved
+   */
+
+  @Value.Default
+  default boolean preallocate()
+  {
+    return false;
+  }
+
+  /**
+   * @return {@code true} if blobs written from buffers should be hashed and
+   *         written to storage on separate threads, so that receiving,
+   *         hashing, and writing overlap
+   */
+
+  @Value.Default
+  default boolean pipelined()
+  {
+    return false;
+  }
+
+  /**
+   * @return The name of the codec used to compress blobs, or {@code none}
+   *         to store blobs exactly as delivered
+   */
+
+  @Value.Default
+  default String compression()
+  {
+    return "none";
+  }
+
+  /**
+   * @return The size in bytes of each buffer used to transfer data
+   */
+
+  @Value.Default
+  default int transferBufferSize()
+  {
+    return 262144;
+  }
+
+  /**
+   * @return The maximum number of transfer buffers kept for reuse
+   */
+
+  @Value.Default
+  default int transferBufferCount()
+  {
+    return 64;
+  }
+
+  /**
+   * @return The size in bytes below which deliveries are packed into
+   *         segment files, for {@link WBBlobStoreKind#PACKED} stores
+   */
+
+  @Value.Default
+  default int packThreshold()
+  {
+    return 65536;
+  }
+
+  /**
+   * @return The size in bytes at which a segment file is sealed and a new
+   *         one is started
+   */
+
+  @Value.Default
+  default long packSegmentSize()
+  {
+    return 67_108_864L;
+  }
+
+  /**
+   * @return The maximum rate in bytes per second at which compaction reads
+   *         segment files
+   */
+
+  @Value.Default
+  default long packCompactionRate()
+  {
+    return 8_388_608L;
+  }
+
+  /**
+   * @return The interval between background compactions of segment files,
+   *         or zero to compact only when asked
+   */
+
+  @Value.Default
+  default Duration packCompactionInterval()
+  {
+    return Duration.ofMinutes(1L);
+  }
+
+  /**
+   * Check preconditions for the type.
+   */
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    final var levels = this.shardLevels();
+    if (levels < 0 || levels > MAXIMUM_SHARD_LEVELS) {
+      throw new IllegalArgumentException(
+        String.format(
+          "Shard levels must be in the range [0, %d]",
+          Integer.valueOf(MAXIMUM_SHARD_LEVELS)));
+    }
+    if (this.volumeReserve() < 0L) {
+      throw new IllegalArgumentException(
+        "Volume reserve must be non-negative");
+    }
+    if (this.packThreshold() < 0) {
+      throw new IllegalArgumentException(
+        "Pack threshold must be non-negative");
+    }
+    if (this.packSegmentSize() <= this.packThreshold()) {
+      throw new IllegalArgumentException(
+        "Pack segment size must be larger than the pack threshold");
+    }
+    if (this.packCompactionRate() < 1L) {
+      throw new IllegalArgumentException(
+        "Pack compaction rate must be positive");
+    }
+    if (this.packCompactionInterval().isNegative()) {
+      throw new IllegalArgumentException(
+        "Pack compaction interval must be non-negative");
+    }
+    if (this.transferBufferSize() < 1) {
+      throw new IllegalArgumentException(
+        "Transfer buffer size must be positive");
+    }
+    if (this.transferBufferCount() < 0) {
+      throw new IllegalArgumentException(
+        "Transfer buffer count must be non-negative");
+    }
+    if (this.kind() == WBBlobStoreKind.PACKED
+        && !this.volumes().isEmpty()) {
+      throw new IllegalArgumentException(
+        "Packed stores cannot be spread across several volumes");
+    }
+  }
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.api;
+
+/**
+ * The kind of blob store.
+ */
+
+public enum WBBlobStoreKind
+{
+  /**
+   * Every delivery is stored in its own file.
+   */
+
+  PLAIN,
+
+  /**
+   * The contents of each delivery are stored once under their SHA-256
+   * digest, and each ID is a hard link to the contents. Identical
+   * deliveries under different IDs share storage.
+   */
+
+  DEDUPLICATING,
+
+  /**
+   * Deliveries smaller than a threshold are appended to large segment
+   * files shared by many blobs; larger deliveries are stored in their own
+   * files. Packed stores occupy a single volume.
+   */
+
+  PACKED
+}
@@ -17,28 +17,107 @@
 
 package com.io7m.wastebasket.api;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.security.DigestOutputStream;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
 
 /**
  * A blob store.
  */
 
-public interface WBBlobStoreType
+public interface WBBlobStoreType extends Closeable
 {
   /**
-   * Open a new output stream for a blob with {@code id}.
+   * Open a new writer for a blob with {@code id}.
    *
-   * @param id The blob ID
+   * @param id           The blob ID
+   * @param expectedSize The number of bytes the delivery is expected to
+   *                     contain, or {@code -1} if unknown
    *
-   * @return An output stream
+   * @return A writer
    *
    * @throws IOException              On I/O errors
    * @throws NoSuchAlgorithmException If the JVM does not support the required digest
    */
 
-  DigestOutputStream open(
-    WBBlobID id)
+  WBBlobWriterType open(
+    WBBlobID id,
+    long expectedSize)
     throws IOException, NoSuchAlgorithmException;
+
+  /**
+   * Open a new writer for a blob with {@code id}, of unknown size.
+   *
+   * @param id The blob ID
+   *
+   * @return A writer
+   *
+   * @throws IOException              On I/O errors
+   * @throws NoSuchAlgorithmException If the JVM does not support the required digest
+   */
+
+  default WBBlobWriterType open(
+    final WBBlobID id)
+    throws IOException, NoSuchAlgorithmException
+  {
+    return this.open(id, -1L);
+  }
+
+  /**
+   * Delete the blob with {@code id}, if it exists. Depending on the kind
+   * of store, the space held by the blob may not be released until
+   * {@link #reclaim()} is called.
+   *
+   * @param id The blob ID
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void delete(WBBlobID id)
+    throws IOException;
+
+  /**
+   * Release any space still held by blobs that have been deleted. Stores
+   * that release space as soon as a blob is deleted do nothing.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  default void reclaim()
+    throws IOException
+  {
+
+  }
+
+  /**
+   * Release any space still held by deleted blobs whose contents had the
+   * given SHA-256 digests. Stores that cannot use the digests to find the
+   * space behave as {@link #reclaim()}.
+   *
+   * @param digests The hex SHA-256 digests of the deleted blobs
+   *
+   * @throws IOException On I/O errors
+   */
+
+  default void reclaim(
+    final Collection<String> digests)
+    throws IOException
+  {
+    this.reclaim();
+  }
+
+  /**
+   * Stop any background work done by the store and release its resources.
+   * Stores that do no background work do nothing.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  default void close()
+    throws IOException
+  {
+
+  }
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.api;
+
+/**
+ * The way in which data is written into the blob store.
+ */
+
+public enum WBBlobWriteMode
+{
+  /**
+   * Data is written directly to the final file for the blob. If a delivery
+   * is interrupted, the partial file remains and continues to hold the ID.
+   */
+
+  DIRECT,
+
+  /**
+   * Data is written to a temporary file in the same directory, and the
+   * temporary file is renamed to the final file for the blob only when the
+   * delivery completes. If a delivery is interrupted, the ID remains
+   * available.
+   */
+
+  ATOMIC
+}
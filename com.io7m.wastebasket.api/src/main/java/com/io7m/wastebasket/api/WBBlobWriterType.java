@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.api;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+
+/**
+ * A writer for a single blob. Data written to the {@link #output()} stream
+ * becomes part of the store only when {@link #commit()} is called; closing
+ * a writer that has not been committed abandons the write.
+ */
+
+public interface WBBlobWriterType extends Closeable
+{
+  /**
+   * @return The stream to which data must be written
+   */
+
+  DigestOutputStream output();
+
+  /**
+   * @return The directory in which the blob is being written, and so the
+   *         file system whose space the blob consumes
+   */
+
+  Path directory();
+
+  /**
+   * Write all of the remaining bytes in {@code data}, updating the digest
+   * from the same buffer.
+   *
+   * @param data The data
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void write(ByteBuffer data)
+    throws IOException;
+
+  /**
+   * Write everything remaining in {@code input}, using the store's large
+   * transfer buffers rather than the {@link #output()} stream. The input
+   * stream is not closed.
+   *
+   * @param input The input stream
+   *
+   * @return The number of bytes written
+   *
+   * @throws IOException On I/O errors
+   */
+
+  long transferFrom(InputStream input)
+    throws IOException;
+
+  /**
+   * Flush the written data to the store, applying the configured
+   * durability, and make it visible under the blob's ID.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void commit()
+    throws IOException;
+
+  /**
+   * @return The SHA-256 digest of the data written
+   *
+   * @throws IllegalStateException If the writer has not been committed
+   */
+
+  byte[] digest();
+
+  /**
+   * @return A description of where the committed blob is stored, such as
+   *         the name of the file that holds it
+   *
+   * @throws IllegalStateException If the writer has not been committed
+   */
+
+  String location();
+
+  /**
+   * Close the writer, abandoning the write if it has not been committed.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  void close()
+    throws IOException;
+}
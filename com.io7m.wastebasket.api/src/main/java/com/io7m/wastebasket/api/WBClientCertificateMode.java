@@ -0,0 +1,48 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.api;
+
+/**
+ * The treatment of TLS client certificates.
+ */
+
+public enum WBClientCertificateMode
+{
+  /**
+   * Client certificates are not requested. Clients must authenticate with a
+   * username and passkey, or an access token.
+   */
+
+  NONE,
+
+  /**
+   * Client certificates are requested but not required. A client presenting
+   * a certificate issued by the configured CA is authenticated as the user
+   * named by the certificate; other clients must authenticate as usual.
+   */
+
+  WANT,
+
+  /**
+   * Client certificates are required. A client that does not present a
+   * certificate issued by the configured CA cannot complete the TLS
+   * handshake.
+   */
+
+  NEED
+}
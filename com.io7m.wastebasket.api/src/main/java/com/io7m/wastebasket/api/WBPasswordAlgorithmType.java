@@ -0,0 +1,134 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.api;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+/**
+ * A password hashing algorithm (key derivation function), along with a
+ * specific set of parameters such as iteration counts or memory sizes.
+ *
+ * Hashes are stored in the user database in the form
+ * {@code name:salt:parameters:hash}, where {@code salt} and {@code hash}
+ * are hex-encoded. Implementations must therefore ensure that neither
+ * {@link #name()} nor {@link #parameters()} contain {@code ':'} characters.
+ */
+
+public interface WBPasswordAlgorithmType
+{
+  /**
+   * @return The unique name of the algorithm
+   */
+
+  String name();
+
+  /**
+   * @return The parameters of the algorithm, in the form written to the
+   * user database
+   */
+
+  String parameters();
+
+  /**
+   * Produce an instance of this algorithm with the given parameters.
+   *
+   * @param newParameters The parameters, in the form written to the user
+   *                      database
+   *
+   * @return An algorithm
+   *
+   * @throws IllegalArgumentException If the parameters cannot be parsed
+   */
+
+  WBPasswordAlgorithmType withParameters(
+    String newParameters)
+    throws IllegalArgumentException;
+
+  /**
+   * @return The length in bytes of the salt used for new hashes
+   */
+
+  default int saltLength()
+  {
+    return 16;
+  }
+
+  /**
+   * @return The length in bytes of new hashes
+   */
+
+  int hashLength();
+
+  /**
+   * Derive a hash from a password.
+   *
+   * @param password The password
+   * @param salt     The salt
+   * @param length   The required length in bytes of the hash
+   *
+   * @return The hash
+   *
+   * @throws GeneralSecurityException On errors
+   */
+
+  byte[] derive(
+    WBPassKey password,
+    byte[] salt,
+    int length)
+    throws GeneralSecurityException;
+
+  /**
+   * Hash a password using a new random salt.
+   *
+   * @param random   A source of randomness for the salt
+   * @param password The password
+   *
+   * @return A hash
+   *
+   * @throws GeneralSecurityException On errors
+   */
+
+  default WBPasswordHash hash(
+    final SecureRandom random,
+    final WBPassKey password)
+    throws GeneralSecurityException
+  {
+    final var salt = new byte[this.saltLength()];
+    random.nextBytes(salt);
+    return new WBPasswordHash(
+      this,
+      salt,
+      this.derive(password, salt, this.hashLength())
+    );
+  }
+
+  /**
+   * @param other The other algorithm
+   *
+   * @return {@code true} if this algorithm has the same name and parameters
+   * as {@code other}
+   */
+
+  default boolean isSameAs(
+    final WBPasswordAlgorithmType other)
+  {
+    return this.name().equals(other.name())
+           && this.parameters().equals(other.parameters());
+  }
+}
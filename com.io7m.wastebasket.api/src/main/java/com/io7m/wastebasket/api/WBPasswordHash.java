@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.api;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Objects;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A hashed password. The arrays held by values of this type are not copied,
+ * and must not be modified.
+ *
+ * @param algorithm The algorithm (and parameters) used to produce the hash
+ * @param salt      The salt
+ * @param hash      The hash
+ */
+
+public record WBPasswordHash(
+  WBPasswordAlgorithmType algorithm,
+  byte[] salt,
+  byte[] hash)
+{
+  /**
+   * A hashed password.
+   *
+   * @param algorithm The algorithm (and parameters) used to produce the hash
+   * @param salt      The salt
+   * @param hash      The hash
+   */
+
+  public WBPasswordHash
+  {
+    Objects.requireNonNull(algorithm, "algorithm");
+    Objects.requireNonNull(salt, "salt");
+    Objects.requireNonNull(hash, "hash");
+
+    if (hash.length == 0) {
+      throw new IllegalArgumentException("Hash must be non-empty");
+    }
+  }
+
+  /**
+   * Check that {@code password} matches this hash. The comparison of the
+   * derived hash with the stored hash is performed in constant time.
+   *
+   * @param password The password
+   *
+   * @return {@code true} if the password matches
+   *
+   * @throws GeneralSecurityException On errors deriving the hash
+   */
+
+  public boolean check(
+    final WBPassKey password)
+    throws GeneralSecurityException
+  {
+    Objects.requireNonNull(password, "password");
+
+    final var received =
+      this.algorithm.derive(password, this.salt, this.hash.length);
+    return MessageDigest.isEqual(this.hash, received);
+  }
+
+  /**
+   * @return The hash in the form stored in user databases
+   */
+
+  public String serialize()
+  {
+    final var hex = HexFormat.of();
+    return String.format(
+      "%s:%s:%s:%s",
+      this.algorithm.name(),
+      hex.formatHex(this.salt),
+      this.algorithm.parameters(),
+      hex.formatHex(this.hash)
+    );
+  }
+
+  /**
+   * A fingerprint of this hash: the first 64 bits of a SHA-256 digest of
+   * the serialized hash. Two hashes of the same password with different
+   * salts have different fingerprints.
+   *
+   * @return The fingerprint
+   */
+
+  public long fingerprint()
+  {
+    try {
+      final var digest =
+        MessageDigest.getInstance("SHA-256")
+          .digest(this.serialize().getBytes(UTF_8));
+      return ByteBuffer.wrap(digest).getLong();
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.api;
+
+import com.io7m.immutables.styles.ImmutablesStyleType;
+import org.immutables.value.Value;
+
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Configuration information for the removal of old data deliveries.
+ */
+
+@ImmutablesStyleType
+@Value.Immutable
+public interface WBRetentionConfigurationType
+{
+  /**
+   * @return The age after which blobs are deleted ({@link Duration#ZERO}
+   *         to keep blobs regardless of age)
+   */
+
+  @Value.Default
+  default Duration maximumAge()
+  {
+    return Duration.ZERO;
+  }
+
+  /**
+   * @return The ages after which the blobs of particular users are deleted,
+   *         overriding {@link #maximumAge()} ({@link Duration#ZERO} to keep
+   *         a user's blobs regardless of age)
+   */
+
+  Map<String, Duration> userMaximumAges();
+
+  /**
+   * @return The total size in bytes of stored blobs above which the oldest
+   *         blobs are deleted ({@code 0} for no limit)
+   */
+
+  @Value.Default
+  default long highWatermark()
+  {
+    return 0L;
+  }
+
+  /**
+   * @return The total size in bytes down to which blobs are deleted once
+   *         the {@link #highWatermark()} is exceeded
+   */
+
+  @Value.Default
+  default long lowWatermark()
+  {
+    return this.highWatermark() - this.highWatermark() / 10L;
+  }
+
+  /**
+   * @return The interval between passes over the stored blobs
+   */
+
+  @Value.Default
+  default Duration interval()
+  {
+    return Duration.ofMinutes(1L);
+  }
+
+  /**
+   * @return The maximum number of blobs deleted per second
+   */
+
+  @Value.Default
+  default long deletionRate()
+  {
+    return 100L;
+  }
+
+  /**
+   * @return The maximum number of bytes of blobs deleted per second
+   */
+
+  @Value.Default
+  default long byteRate()
+  {
+    return 67_108_864L;
+  }
+
+  /**
+   * @return {@code true} if any policy would ever delete a blob
+   */
+
+  default boolean isEnabled()
+  {
+    return !this.maximumAge().isZero()
+           || this.userMaximumAges().values()
+             .stream()
+             .anyMatch(age -> !age.isZero())
+           || this.highWatermark() > 0L;
+  }
+
+  /**
+   * Check preconditions for the type.
+   */
+
+  @Value.Check
+  default void checkPreconditions()
+  {
+    if (this.maximumAge().isNegative()) {
+      throw new IllegalArgumentException(
+        "Maximum age must be non-negative");
+    }
+    for (final var entry : this.userMaximumAges().entrySet()) {
+      if (entry.getValue().isNegative()) {
+        throw new IllegalArgumentException(
+          "Maximum age for user %s must be non-negative"
+            .formatted(entry.getKey()));
+      }
+    }
+    if (this.highWatermark() < 0L) {
+      throw new IllegalArgumentException(
+        "High watermark must be non-negative");
+    }
+    if (this.lowWatermark() < 0L
+        || this.lowWatermark() > this.highWatermark()) {
+      throw new IllegalArgumentException(
+        "Low watermark must be in the range [0, high watermark]");
+    }
+    if (this.interval().isNegative() || this.interval().isZero()) {
+      throw new IllegalArgumentException("Interval must be positive");
+    }
+    if (this.deletionRate() < 1L) {
+      throw new IllegalArgumentException("Deletion rate must be positive");
+    }
+    if (this.byteRate() < 1L) {
+      throw new IllegalArgumentException("Byte rate must be positive");
+    }
+  }
+}
@@ -19,6 +19,9 @@ package com.io7m.wastebasket.api;
 
 import com.io7m.immutables.styles.ImmutablesStyleType;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
 import org.immutables.value.Value;
 
 /**
@@ -59,6 +62,113 @@ public interface WBServerConfigurationType
     return Runtime.getRuntime().availableProcessors() * 2;
   }
 
+  /**
+   * @return The number of threads dedicated to checking passwords
+   */
+
+  @Value.Default
+  default int authenticationThreads()
+  {
+    return Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+  }
+
+  /**
+   * @return The maximum number of password checks that may be waiting for
+   * an authentication thread before further requests are refused
+   */
+
+  @Value.Default
+  default int authenticationQueueLimit()
+  {
+    return 64;
+  }
+
+  /**
+   * @return The interval at which statistics about password checks (the
+   *         number completed and rejected, the queue depth, and the time
+   *         taken) are logged
+   */
+
+  @Value.Default
+  default Duration authenticationStatisticsInterval()
+  {
+    return Duration.ofMinutes(1L);
+  }
+
+  /**
+   * @return The number of consecutive failed authentication attempts
+   *         permitted from a single address (or against a single user) before
+   *         further attempts are refused
+   */
+
+  @Value.Default
+  default int authenticationFailureBurst()
+  {
+    return 10;
+  }
+
+  /**
+   * @return The time taken for a single address (or user) to regain one
+   *         permitted failed authentication attempt
+   */
+
+  @Value.Default
+  default Duration authenticationFailureInterval()
+  {
+    return Duration.ofSeconds(6L);
+  }
+
+  /**
+   * @return The maximum number of addresses and users for which failed
+   *         authentication attempts are tracked
+   */
+
+  @Value.Default
+  default int authenticationFailureTrackingLimit()
+  {
+    return 65536;
+  }
+
+  /**
+   * @return The maximum number of verified credentials that will be cached
+   */
+
+  @Value.Default
+  default int userCacheSize()
+  {
+    return 1024;
+  }
+
+  /**
+   * @return The maximum length of time a verified credential will be cached
+   */
+
+  @Value.Default
+  default Duration userCacheExpiry()
+  {
+    return Duration.ofMinutes(5L);
+  }
+
+  /**
+   * @return The length of time for which an issued access token is valid
+   */
+
+  @Value.Default
+  default Duration tokenLifetime()
+  {
+    return Duration.ofMinutes(15L);
+  }
+
+  /**
+   * @return The treatment of TLS client certificates
+   */
+
+  @Value.Default
+  default WBClientCertificateMode tlsClientCertificateMode()
+  {
+    return WBClientCertificateMode.NONE;
+  }
+
   /**
    * @return The address to which to bind
    */
@@ -71,12 +181,288 @@ public interface WBServerConfigurationType
 
   Path userDatabase();
 
+  /**
+   * @return The file holding the per-user quotas, next to the user database
+   *         by default
+   */
+
+  @Value.Default
+  default Path userQuotaFile()
+  {
+    return this.userDatabase().resolveSibling("quotas.properties");
+  }
+
+  /**
+   * @return The file in which the bytes transferred by each user in the
+   *         current quota window are kept across restarts
+   */
+
+  @Value.Default
+  default Path userQuotaUsageFile()
+  {
+    return this.dataDirectory().resolve("quota-usage.properties");
+  }
+
+  /**
+   * @return The interval at which quota usage is written to
+   *         {@link #userQuotaUsageFile()}
+   */
+
+  @Value.Default
+  default Duration userQuotaPersistInterval()
+  {
+    return Duration.ofSeconds(30L);
+  }
+
   /**
    * @return The directory that will be used to store received data
    */
 
   Path dataDirectory();
 
+  /**
+   * @return The file holding the index of the metadata of received data
+   */
+
+  @Value.Default
+  default Path dataIndexFile()
+  {
+    return this.dataDirectory().resolve("index.wbi");
+  }
+
+  /**
+   * @return Further directories across which received data is spread along
+   *         with {@link #dataDirectory()}; not supported with
+   *         {@link WBBlobStoreKind#PACKED}
+   */
+
+  List<Path> dataVolumes();
+
+  /**
+   * @return The policy used to choose the data directory for each delivery
+   */
+
+  @Value.Default
+  default WBBlobPlacement dataPlacement()
+  {
+    return WBBlobPlacement.HASH;
+  }
+
+  /**
+   * @return The free space in bytes below which a data directory is no
+   *         longer given new deliveries
+   */
+
+  @Value.Default
+  default long dataVolumeReserve()
+  {
+    return 268_435_456L;
+  }
+
+  /**
+   * @return The interval at which the free space of the data directories
+   *         is sampled in order to admit or refuse deliveries
+   */
+
+  @Value.Default
+  default Duration dataSpaceRefreshInterval()
+  {
+    return Duration.ofSeconds(1L);
+  }
+
+  /**
+   * @return The number of levels of subdirectories used to spread blobs
+   *         across the data directory ({@code 0} for a flat directory)
+   */
+
+  @Value.Default
+  default int dataDirectoryShardLevels()
+  {
+    return 2;
+  }
+
+  /**
+   * @return The kind of store used for data deliveries
+   */
+
+  @Value.Default
+  default WBBlobStoreKind dataStoreKind()
+  {
+    return WBBlobStoreKind.PLAIN;
+  }
+
+  /**
+   * @return The way in which data deliveries are written
+   */
+
+  @Value.Default
+  default WBBlobWriteMode dataWriteMode()
+  {
+    return WBBlobWriteMode.DIRECT;
+  }
+
+  /**
+   * @return The steps taken to ensure that data deliveries reach stable
+   *         storage before they are acknowledged
+   */
+
+  @Value.Default
+  default WBBlobDurability dataDurability()
+  {
+    return WBBlobDurability.NONE;
+  }
+
+  /**
+   * @return {@code true} if each data file should be extended to the
+   *         declared length of its delivery before any data is written;
+   *         this is a hint to the file system, and does not guarantee that
+   *         the space is reserved
+   */
+
+  @Value.Default
+  default boolean dataPreallocate()
+  {
+    return false;
+  }
+
+  /**
+   * @return {@code true} if data deliveries should be hashed and written to
+   *         storage on separate threads, so that receiving, hashing, and
+   *         writing overlap
+   */
+
+  @Value.Default
+  default boolean dataPipelined()
+  {
+    return false;
+  }
+
+  /**
+   * @return The size in bytes below which deliveries are packed into
+   *         segment files, when the data store kind is
+   *         {@link WBBlobStoreKind#PACKED}
+   */
+
+  @Value.Default
+  default int dataPackThreshold()
+  {
+    return 65536;
+  }
+
+  /**
+   * @return The maximum rate in bytes per second at which segment files
+   *         are compacted in the background
+   */
+
+  @Value.Default
+  default long dataPackCompactionRate()
+  {
+    return 8_388_608L;
+  }
+
+  /**
+   * @return The name of the codec used to compress data deliveries, or
+   *         {@code none} to store deliveries exactly as received
+   */
+
+  @Value.Default
+  default String dataCompression()
+  {
+    return "none";
+  }
+
+  /**
+   * @return The size in bytes of each buffer used to transfer data
+   *         deliveries to storage
+   */
+
+  @Value.Default
+  default int dataTransferBufferSize()
+  {
+    return 262144;
+  }
+
+  /**
+   * @return The maximum number of transfer buffers kept for reuse
+   */
+
+  @Value.Default
+  default int dataTransferBufferCount()
+  {
+    return 64;
+  }
+
+  /**
+   * @return The age after which data deliveries are deleted
+   *         ({@link Duration#ZERO} to keep deliveries regardless of age)
+   */
+
+  @Value.Default
+  default Duration retentionMaximumAge()
+  {
+    return Duration.ZERO;
+  }
+
+  /**
+   * @return The ages after which the data deliveries of particular users
+   *         are deleted, overriding {@link #retentionMaximumAge()}
+   */
+
+  Map<String, Duration> retentionUserMaximumAges();
+
+  /**
+   * @return The total size in bytes of data deliveries above which the
+   *         oldest deliveries are deleted ({@code 0} for no limit)
+   */
+
+  @Value.Default
+  default long retentionHighWatermark()
+  {
+    return 0L;
+  }
+
+  /**
+   * @return The total size in bytes down to which data deliveries are
+   *         deleted once the {@link #retentionHighWatermark()} is exceeded
+   */
+
+  @Value.Default
+  default long retentionLowWatermark()
+  {
+    return this.retentionHighWatermark() - this.retentionHighWatermark() / 10L;
+  }
+
+  /**
+   * @return The interval between passes over the stored data deliveries
+   */
+
+  @Value.Default
+  default Duration retentionInterval()
+  {
+    return Duration.ofMinutes(1L);
+  }
+
+  /**
+   * @return The maximum number of data deliveries deleted per second
+   */
+
+  @Value.Default
+  default long retentionDeletionRate()
+  {
+    return 100L;
+  }
+
+  /**
+   * @return The maximum number of bytes of data deliveries deleted per
+   *         second
+   */
+
+  @Value.Default
+  default long retentionByteRate()
+  {
+    return 67_108_864L;
+  }
+
   /**
    * @return The CA certificate file for TLS
    */
@@ -106,5 +492,104 @@ public interface WBServerConfigurationType
     if (count < 1 || count > 0x7fff_fffe) {
       throw new IllegalArgumentException("Thread count must be positive");
     }
+
+    checkPositive(
+      this.authenticationThreads(),
+      "Authentication thread count");
+    checkPositive(
+      this.authenticationQueueLimit(),
+      "Authentication queue limit");
+    checkPositive(
+      this.authenticationStatisticsInterval(),
+      "Authentication statistics interval");
+    checkPositive(
+      this.authenticationFailureBurst(),
+      "Authentication failure burst");
+    checkPositive(
+      this.authenticationFailureInterval(),
+      "Authentication failure interval");
+    checkPositive(
+      this.authenticationFailureTrackingLimit(),
+      "Authentication failure tracking limit");
+
+    if (this.userCacheSize() < 0) {
+      throw new IllegalArgumentException(
+        "User cache size must be non-negative");
+    }
+    if (this.userCacheExpiry().isNegative()) {
+      throw new IllegalArgumentException(
+        "User cache expiry must be non-negative");
+    }
+
+    checkPositive(this.tokenLifetime(), "Token lifetime");
+    checkPositive(
+      this.userQuotaPersistInterval(),
+      "User quota persist interval");
+    if (this.dataPackThreshold() < 0) {
+      throw new IllegalArgumentException(
+        "Data pack threshold must be non-negative");
+    }
+    checkPositive(
+      this.dataPackCompactionRate(),
+      "Data pack compaction rate");
+    if (this.dataVolumeReserve() < 0L) {
+      throw new IllegalArgumentException(
+        "Data volume reserve must be non-negative");
+    }
+    checkPositive(
+      this.dataSpaceRefreshInterval(),
+      "Data space refresh interval");
+    checkPositive(
+      this.dataTransferBufferSize(),
+      "Data transfer buffer size");
+    if (this.dataTransferBufferCount() < 0) {
+      throw new IllegalArgumentException(
+        "Data transfer buffer count must be non-negative");
+    }
+    if (this.dataStoreKind() == WBBlobStoreKind.PACKED
+        && !this.dataVolumes().isEmpty()) {
+      throw new IllegalArgumentException(
+        "Packed data stores cannot be spread across several data volumes");
+    }
+
+    if (this.retentionMaximumAge().isNegative()) {
+      throw new IllegalArgumentException(
+        "Retention maximum age must be non-negative");
+    }
+    if (this.retentionLowWatermark() < 0L
+        || this.retentionLowWatermark() > this.retentionHighWatermark()) {
+      throw new IllegalArgumentException(
+        "Retention low watermark must be in the range [0, high watermark]");
+    }
+    checkPositive(this.retentionInterval(), "Retention interval");
+    checkPositive(this.retentionDeletionRate(), "Retention deletion rate");
+    checkPositive(this.retentionByteRate(), "Retention byte rate");
+
+    final var shardLevels = this.dataDirectoryShardLevels();
+    if (shardLevels < 0
+        || shardLevels > WBBlobStoreConfigurationType.MAXIMUM_SHARD_LEVELS) {
+      throw new IllegalArgumentException(
+        String.format(
+          "Data directory shard levels must be in the range [0, %d]",
+          Integer.valueOf(WBBlobStoreConfigurationType.MAXIMUM_SHARD_LEVELS)));
+    }
+  }
+
+  private static void checkPositive(
+    final long value,
+    final String name)
+  {
+    if (value < 1L) {
+      throw new IllegalArgumentException(name + " must be positive");
+    }
+  }
+
+  private static void checkPositive(
+    final Duration value,
+    final String name)
+  {
+    if (value.isNegative() || value.isZero()) {
+      throw new IllegalArgumentException(name + " must be positive");
+    }
   }
 }
@@ -20,6 +20,8 @@ package com.io7m.wastebasket.api;
 import java.io.Closeable;
 import java.io.IOException;
 import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.OptionalLong;
 
 /**
  * The interface exposed by user databases.
@@ -42,6 +44,55 @@ public interface WBUserDatabaseType extends Closeable
     WBUserName user,
     WBPassKey password);
 
+  /**
+   * Check if {@code user} exists and has password {@code password}, using
+   * only inexpensive operations such as consulting a cache of recently
+   * verified credentials. A return value of {@code false} does not mean
+   * that authentication failed; it means that the full (and potentially
+   * expensive) {@link #authenticate(WBUserName, WBPassKey)} operation is
+   * required to find out.
+   *
+   * @param user     The user
+   * @param password The password
+   *
+   * @return {@code true} iff authentication is known to succeed
+   */
+
+  default boolean authenticateCached(
+    final WBUserName user,
+    final WBPassKey password)
+  {
+    return false;
+  }
+
+  /**
+   * Check if {@code user} exists. This is an inexpensive operation that
+   * does not involve checking any password.
+   *
+   * @param user The user
+   *
+   * @return {@code true} iff the user currently exists
+   */
+
+  boolean userExists(
+    WBUserName user);
+
+  /**
+   * Obtain a fingerprint of the current credential of {@code user}. The
+   * fingerprint changes whenever the password of the user is changed, and
+   * whenever the user is deleted and added again, and so can be used to
+   * bind other credentials (such as access tokens) to the password that was
+   * used to obtain them. This is an inexpensive operation that does not
+   * involve checking any password.
+   *
+   * @param user The user
+   *
+   * @return The fingerprint, or nothing if the user does not exist
+   */
+
+  OptionalLong credentialFingerprint(
+    WBUserName user);
+
   /**
    * Add a user to the database.
    *
@@ -57,6 +108,27 @@ public interface WBUserDatabaseType extends Closeable
     WBPassKey password)
     throws IOException, GeneralSecurityException;
 
+  /**
+   * Add (or replace) many users at once. Implementations are expected to
+   * hash the passwords in parallel, and to write the changes to persistent
+   * storage in a single operation. The default implementation calls
+   * {@link #userAdd(WBUserName, WBPassKey)} for each user.
+   *
+   * @param users The users and their passwords
+   *
+   * @throws IOException              On I/O errors
+   * @throws GeneralSecurityException On other security errors
+   */
+
+  default void userAddAll(
+    final Map<WBUserName, WBPassKey> users)
+    throws IOException, GeneralSecurityException
+  {
+    for (final var entry : users.entrySet()) {
+      this.userAdd(entry.getKey(), entry.getValue());
+    }
+  }
+
   /**
    * Remove a user from the database.
    *
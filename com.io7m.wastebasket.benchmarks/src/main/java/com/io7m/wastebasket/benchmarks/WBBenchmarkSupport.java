@@ -0,0 +1,84 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.benchmarks;
+
+import com.io7m.wastebasket.api.WBBlobID;
+import org.apache.commons.io.FileUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Functions shared between benchmarks.
+ */
+
+public final class WBBenchmarkSupport
+{
+  private static final AtomicLong IDS = new AtomicLong();
+
+  private WBBenchmarkSupport()
+  {
+
+  }
+
+  /**
+   * @return A fresh, empty temporary directory
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static Path temporaryDirectory()
+    throws IOException
+  {
+    return Files.createTempDirectory("wastebasket-benchmark-");
+  }
+
+  /**
+   * Delete a temporary directory and everything in it.
+   *
+   * @param directory The directory
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void deleteDirectory(
+    final Path directory)
+    throws IOException
+  {
+    FileUtils.deleteDirectory(directory.toFile());
+  }
+
+  /**
+   * Produce an ID that has not been returned before in this JVM. The bits
+   * of the counter are spread across the ID so that consecutive IDs land in
+   * different shard directories, as random IDs would.
+   *
+   * @return A fresh blob ID
+   */
+
+  public static WBBlobID freshID()
+  {
+    final var count = IDS.incrementAndGet();
+    final var mixed = count * 0x9E3779B97F4A7C15L;
+    return WBBlobID.of("%016x%016x".formatted(
+      Long.valueOf(mixed),
+      Long.valueOf(count)));
+  }
+}
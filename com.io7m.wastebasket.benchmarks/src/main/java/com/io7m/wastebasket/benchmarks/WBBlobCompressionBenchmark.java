@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.benchmarks;
+
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.vanilla.WBBlobStore;
+import com.io7m.wastebasket.vanilla.WBBlobStoreLayout;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the CPU cost of compressing deliveries at rest against the bytes
+ * saved. The {@code bytesDelivered} and {@code bytesStored} counters give
+ * the total sizes before and after compression.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WBBlobCompressionBenchmark
+{
+  @Param({"none", "deflate"})
+  public String compression;
+
+  @Param({"text", "random"})
+  public String content;
+
+  @Param({"4194304"})
+  public int size;
+
+  private byte[] data;
+  private Path directory;
+  private WBBlobStoreType store;
+
+  /**
+   * The sizes of the data delivered and stored.
+   */
+
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class Sizes
+  {
+    /**
+     * The number of bytes delivered.
+     */
+
+    public long bytesDelivered;
+
+    /**
+     * The number of bytes stored.
+     */
+
+    public long bytesStored;
+
+    /**
+     * Reset the counters for each iteration.
+     */
+
+    @Setup(Level.Iteration)
+    public void reset()
+    {
+      this.bytesDelivered = 0L;
+      this.bytesStored = 0L;
+    }
+  }
+
+  /**
+   * Generate the delivery data once.
+   */
+
+  @Setup(Level.Trial)
+  public void setupData()
+  {
+    if ("text".equals(this.content)) {
+      final var builder = new StringBuilder(this.size);
+      final var random = new Random(0L);
+      while (builder.length() < this.size) {
+        builder.append("2024-01-01T00:00:00Z INFO [worker-")
+          .append(random.nextInt(16))
+          .append("] processed item ")
+          .append(random.nextInt(1_000_000))
+          .append('\n');
+      }
+      this.data = builder.substring(0, this.size)
+        .getBytes(StandardCharsets.UTF_8);
+    } else {
+      this.data = new byte[this.size];
+      new Random(0L).nextBytes(this.data);
+    }
+  }
+
+  /**
+   * Create a fresh data directory for each iteration.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Setup(Level.Iteration)
+  public void setup()
+    throws IOException
+  {
+    this.directory = WBBenchmarkSupport.temporaryDirectory();
+    this.store =
+      WBBlobStore.create(
+        WBBlobStoreConfiguration.builder()
+          .setDirectory(this.directory)
+          .setCompression(this.compression)
+          .build());
+  }
+
+  /**
+   * Delete the data directory.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @TearDown(Level.Iteration)
+  public void tearDown()
+    throws IOException
+  {
+    WBBenchmarkSupport.deleteDirectory(this.directory);
+  }
+
+  /**
+   * Store a blob.
+   *
+   * @param sizes The size counters
+   *
+   * @throws Exception On errors
+   */
+
+  @Benchmark
+  public void write(
+    final Sizes sizes)
+    throws Exception
+  {
+    final var id = WBBenchmarkSupport.freshID();
+    try (var writer = this.store.open(id)) {
+      writer.transferFrom(new ByteArrayInputStream(this.data));
+      writer.commit();
+    }
+
+    sizes.bytesDelivered += this.data.length;
+    sizes.bytesStored +=
+      Files.size(WBBlobStoreLayout.sharded(2).fileOf(this.directory, id));
+  }
+}
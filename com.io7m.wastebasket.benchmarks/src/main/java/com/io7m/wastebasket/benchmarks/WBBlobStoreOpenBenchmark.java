@@ -0,0 +1,148 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.benchmarks;
+
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.vanilla.WBBlobStore;
+import com.io7m.wastebasket.vanilla.WBBlobStoreLayout;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Compare the cost of storing small blobs when the store checks for its
+ * directory on every delivery (as it used to), against the store's cached
+ * view of the directory tree. Running with {@code -prof perfnorm} or under
+ * {@code strace -c -f} shows the difference in system calls per delivery.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WBBlobStoreOpenBenchmark
+{
+  private static final byte[] DATA = new byte[256];
+
+  @Param({"0", "2"})
+  public int shardLevels;
+
+  private Path directory;
+  private WBBlobStoreLayout layout;
+  private WBBlobStoreType store;
+
+  /**
+   * Create a fresh data directory for each iteration, so that the number of
+   * files does not grow without bound.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Setup(Level.Iteration)
+  public void setup()
+    throws IOException
+  {
+    this.directory = WBBenchmarkSupport.temporaryDirectory();
+    this.layout = WBBlobStoreLayout.sharded(this.shardLevels);
+    this.store =
+      WBBlobStore.create(
+        WBBlobStoreConfiguration.builder()
+          .setDirectory(this.directory)
+          .setShardLevels(this.shardLevels)
+          .build());
+  }
+
+  /**
+   * Delete the data directory.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @TearDown(Level.Iteration)
+  public void tearDown()
+    throws IOException
+  {
+    WBBenchmarkSupport.deleteDirectory(this.directory);
+  }
+
+  /**
+   * Store a blob by checking for its directory on every delivery.
+   *
+   * @throws Exception On errors
+   */
+
+  @Benchmark
+  public void createDirectoriesEveryTime()
+    throws Exception
+  {
+    final var id = WBBenchmarkSupport.freshID();
+    final var target = this.layout.directoryOf(this.directory, id);
+    Files.createDirectories(target);
+
+    try (OutputStream output =
+           new DigestOutputStream(
+             new BufferedOutputStream(
+               Files.newOutputStream(
+                 target.resolve(id.value()), CREATE_NEW, WRITE),
+               8192),
+             MessageDigest.getInstance("SHA-256"))) {
+      output.write(DATA);
+    }
+  }
+
+  /**
+   * Store a blob using the blob store.
+   *
+   * @throws Exception On errors
+   */
+
+  @Benchmark
+  public void blobStore()
+    throws Exception
+  {
+    try (var writer = this.store.open(WBBenchmarkSupport.freshID())) {
+      writer.output().write(DATA);
+      writer.commit();
+    }
+  }
+}
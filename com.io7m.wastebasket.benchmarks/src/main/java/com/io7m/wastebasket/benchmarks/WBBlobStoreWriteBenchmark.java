@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.benchmarks;
+
+import com.io7m.wastebasket.api.WBBlobDurability;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.api.WBBlobWriteMode;
+import com.io7m.wastebasket.vanilla.WBBlobStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measure the cost of each write mode and durability level, so that a
+ * deployment can trade delivery throughput against crash safety. The
+ * results depend almost entirely on the storage device, so the benchmark
+ * should be run with {@code java.io.tmpdir} pointing at the file system
+ * that will hold the data directory.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WBBlobStoreWriteBenchmark
+{
+  @Param({"DIRECT", "ATOMIC"})
+  public WBBlobWriteMode writeMode;
+
+  @Param({"NONE", "DATA", "FULL"})
+  public WBBlobDurability durability;
+
+  @Param({"1024", "1048576"})
+  public int size;
+
+  private byte[] data;
+  private Path directory;
+  private WBBlobStoreType store;
+
+  /**
+   * Create a fresh data directory for each iteration.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Setup(Level.Iteration)
+  public void setup()
+    throws IOException
+  {
+    this.data = new byte[this.size];
+    this.directory = WBBenchmarkSupport.temporaryDirectory();
+    this.store =
+      WBBlobStore.create(
+        WBBlobStoreConfiguration.builder()
+          .setDirectory(this.directory)
+          .setWriteMode(this.writeMode)
+          .setDurability(this.durability)
+          .build());
+  }
+
+  /**
+   * Delete the data directory.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @TearDown(Level.Iteration)
+  public void tearDown()
+    throws IOException
+  {
+    WBBenchmarkSupport.deleteDirectory(this.directory);
+  }
+
+  /**
+   * Store a blob.
+   *
+   * @throws Exception On errors
+   */
+
+  @Benchmark
+  public void write()
+    throws Exception
+  {
+    try (var writer = this.store.open(WBBenchmarkSupport.freshID())) {
+      writer.output().write(this.data);
+      writer.commit();
+    }
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.benchmarks;
+
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.vanilla.WBBlobStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compare the original stream stack (an 8 KiB {@code transferTo} into a
+ * buffered digest stream) against the pooled direct-buffer transfer path,
+ * with and without pipelined hashing and writing, for large deliveries and
+ * several buffer sizes.
+ */
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class WBBlobTransferBenchmark
+{
+  @Param({"16777216", "268435456"})
+  public int size;
+
+  @Param({"65536", "262144", "1048576"})
+  public int bufferSize;
+
+  private byte[] data;
+  private Path directory;
+  private WBBlobStoreType store;
+  private WBBlobStoreType storePipelined;
+
+  /**
+   * Generate the delivery data once.
+   */
+
+  @Setup(Level.Trial)
+  public void setupData()
+  {
+    this.data = new byte[this.size];
+    new Random(0L).nextBytes(this.data);
+  }
+
+  /**
+   * Create a fresh data directory for each iteration.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Setup(Level.Iteration)
+  public void setup()
+    throws IOException
+  {
+    this.directory = WBBenchmarkSupport.temporaryDirectory();
+    this.store =
+      WBBlobStore.create(
+        WBBlobStoreConfiguration.builder()
+          .setDirectory(this.directory)
+          .setTransferBufferSize(this.bufferSize)
+          .build());
+    this.storePipelined =
+      WBBlobStore.create(
+        WBBlobStoreConfiguration.builder()
+          .setDirectory(this.directory)
+          .setTransferBufferSize(this.bufferSize)
+          .setPipelined(true)
+          .build());
+  }
+
+  /**
+   * Delete the data directory.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @TearDown(Level.Iteration)
+  public void tearDown()
+    throws IOException
+  {
+    WBBenchmarkSupport.deleteDirectory(this.directory);
+  }
+
+  /**
+   * Store a blob through the output stream.
+   *
+   * @throws Exception On errors
+   */
+
+  @Benchmark
+  public void streams()
+    throws Exception
+  {
+    try (var writer = this.store.open(WBBenchmarkSupport.freshID())) {
+      new ByteArrayInputStream(this.data).transferTo(writer.output());
+      writer.commit();
+    }
+  }
+
+  /**
+   * Store a blob through the pooled transfer buffers.
+   *
+   * @throws Exception On errors
+   */
+
+  @Benchmark
+  public void transferBuffers()
+    throws Exception
+  {
+    try (var writer = this.store.open(WBBenchmarkSupport.freshID())) {
+      writer.transferFrom(new ByteArrayInputStream(this.data));
+      writer.commit();
+    }
+  }
+
+  /**
+   * Store a blob through the pooled transfer buffers, hashing and writing
+   * on separate threads.
+   *
+   * @throws Exception On errors
+   */
+
+  @Benchmark
+  public void transferBuffersPipelined()
+    throws Exception
+  {
+    try (var writer = this.storePipelined.open(WBBenchmarkSupport.freshID())) {
+      writer.transferFrom(new ByteArrayInputStream(this.data));
+      writer.commit();
+    }
+  }
+}
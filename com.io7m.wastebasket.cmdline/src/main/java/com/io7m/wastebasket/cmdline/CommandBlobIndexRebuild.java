@@ -0,0 +1,113 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.cmdline;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreKind;
+import com.io7m.wastebasket.vanilla.WBBlobIndexRebuild;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The "blob-index-rebuild" command.
+ */
+
+@Parameters(commandDescription = "Rebuild the index of data delivery metadata from the data directories (the server must not be running)")
+public final class CommandBlobIndexRebuild extends CommandRoot
+{
+  // CHECKSTYLE:OFF
+
+  @Parameter(
+    names = "--data-directory",
+    required = true,
+    description = "The directory that contains data deliveries")
+  Path dataDirectory;
+
+  @Parameter(
+    names = "--data-volume",
+    required = false,
+    description = "A further directory across which data deliveries are spread (may be repeated)")
+  List<Path> dataVolumes = new ArrayList<>();
+
+  @Parameter(
+    names = "--data-index",
+    required = false,
+    description = "The file holding the index of data delivery metadata (defaults to index.wbi in the data directory)")
+  Path dataIndex;
+
+  @Parameter(
+    names = "--data-directory-shard-levels",
+    required = false,
+    description = "The number of levels of subdirectories used to spread out data deliveries (0 for a flat directory)")
+  int dataDirectoryShardLevels = 2;
+
+  @Parameter(
+    names = "--data-store-kind",
+    required = false,
+    description = "The kind of store that holds the data deliveries (PLAIN, DEDUPLICATING, PACKED)")
+  WBBlobStoreKind dataStoreKind = WBBlobStoreKind.PLAIN;
+
+  @Parameter(
+    names = "--thread-count",
+    required = false,
+    description = "The number of threads used to read data deliveries")
+  int threadCount = Runtime.getRuntime().availableProcessors() * 2;
+
+  CommandBlobIndexRebuild()
+  {
+
+  }
+
+  // CHECKSTYLE:ON
+
+  @Override
+  public Void call()
+    throws Exception
+  {
+    super.call();
+
+    final var indexFile =
+      this.dataIndex != null
+        ? this.dataIndex
+        : this.dataDirectory.resolve("index.wbi");
+
+    final var rebuild =
+      WBBlobIndexRebuild.create(
+        WBBlobStoreConfiguration.builder()
+          .setDirectory(this.dataDirectory)
+          .setVolumes(this.dataVolumes)
+          .setShardLevels(this.dataDirectoryShardLevels)
+          .setKind(this.dataStoreKind)
+          .build(),
+        indexFile,
+        this.threadCount);
+
+    rebuild.run();
+    if (rebuild.failed() > 0L) {
+      throw new IllegalStateException(
+        String.format(
+          "%d data deliveries could not be indexed",
+          Long.valueOf(rebuild.failed())));
+    }
+    return null;
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.cmdline;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.io7m.wastebasket.vanilla.WBBlobStoreLayout;
+import com.io7m.wastebasket.vanilla.WBBlobStoreMigration;
+
+import java.nio.file.Path;
+
+/**
+ * The "blob-store-migrate" command.
+ */
+
+@Parameters(commandDescription = "Move data deliveries from a flat data directory into a sharded layout")
+public final class CommandBlobStoreMigrate extends CommandRoot
+{
+  // CHECKSTYLE:OFF
+
+  @Parameter(
+    names = "--data-directory",
+    required = true,
+    description = "The directory that contains data deliveries")
+  Path dataDirectory;
+
+  @Parameter(
+    names = "--data-directory-shard-levels",
+    required = false,
+    description = "The number of levels of subdirectories used to spread out data deliveries")
+  int dataDirectoryShardLevels = 2;
+
+  @Parameter(
+    names = "--thread-count",
+    required = false,
+    description = "The number of threads used to move data deliveries")
+  int threadCount = Runtime.getRuntime().availableProcessors() * 2;
+
+  CommandBlobStoreMigrate()
+  {
+
+  }
+
+  // CHECKSTYLE:ON
+
+  @Override
+  public Void call()
+    throws Exception
+  {
+    super.call();
+
+    final var migration =
+      WBBlobStoreMigration.create(
+        this.dataDirectory,
+        WBBlobStoreLayout.sharded(this.dataDirectoryShardLevels),
+        this.threadCount);
+
+    migration.run();
+    if (migration.failed() > 0L) {
+      throw new IllegalStateException(
+        String.format(
+          "%d data deliveries could not be migrated",
+          Long.valueOf(migration.failed())));
+    }
+    return null;
+  }
+}
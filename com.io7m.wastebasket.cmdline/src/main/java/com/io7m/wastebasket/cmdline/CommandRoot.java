@@ -22,11 +22,15 @@ import org.slf4j.LoggerFactory;
 
 class CommandRoot implements CommandType
 {
+  // CHECKSTYLE:OFF
+
   @Parameter(
     names = "--verbose",
     converter = WBLogLevelConverter.class,
     description = "Set the minimum logging verbosity level")
-  private final WBLogLevel verbose = WBLogLevel.LOG_INFO;
+  private WBLogLevel verbose = WBLogLevel.LOG_INFO;
+
+  // CHECKSTYLE:ON
 
   CommandRoot()
   {
@@ -18,22 +18,41 @@
 package com.io7m.wastebasket.cmdline;
 
 import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
 import com.beust.jcommander.Parameters;
+import com.io7m.wastebasket.api.WBBlobDurability;
+import com.io7m.wastebasket.api.WBBlobPlacement;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreKind;
 import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.api.WBBlobWriteMode;
+import com.io7m.wastebasket.api.WBClientCertificateMode;
+import com.io7m.wastebasket.api.WBRetentionConfiguration;
 import com.io7m.wastebasket.api.WBServerConfiguration;
 import com.io7m.wastebasket.api.WBUserDatabaseType;
+import com.io7m.wastebasket.api.WBUserName;
 import com.io7m.wastebasket.vanilla.WBAuditLog;
-import com.io7m.wastebasket.vanilla.WBBlobStore;
+import com.io7m.wastebasket.vanilla.WBBlobIndex;
+import com.io7m.wastebasket.vanilla.WBBlobStores;
 import com.io7m.wastebasket.vanilla.WBFilesWatcher;
+import com.io7m.wastebasket.vanilla.WBPasswordAlgorithms;
+import com.io7m.wastebasket.vanilla.WBRetention;
 import com.io7m.wastebasket.vanilla.WBServerMain;
-import com.io7m.wastebasket.vanilla.WBUserDatabase;
+import com.io7m.wastebasket.vanilla.WBUserCredentialCache;
+import com.io7m.wastebasket.vanilla.WBUserDatabases;
+import com.io7m.wastebasket.vanilla.WBUserQuotas;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.security.GeneralSecurityException;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -55,6 +74,12 @@ public final class CommandServer extends CommandRoot
     description = "The file containing the CA certificate")
   Path tlsCACert;
 
+  @Parameter(
+    names = "--tls-client-certificates",
+    required = false,
+    description = "Whether clients may (WANT) or must (NEED) authenticate with certificates issued by the CA")
+  WBClientCertificateMode tlsClientCertificates = WBClientCertificateMode.NONE;
+
   @Parameter(
     names = "--tls-certificate",
     required = true,
@@ -73,6 +98,30 @@ public final class CommandServer extends CommandRoot
     description = "The file containing the user database")
   Path userDatabase;
 
+  @Parameter(
+    names = "--password-algorithm",
+    required = false,
+    description = "The algorithm used to hash new passwords and to rehash passwords using other algorithms, in the form 'name' or 'name:parameters'")
+  String passwordAlgorithm = "argon2id";
+
+  @Parameter(
+    names = "--user-quotas",
+    required = false,
+    description = "The file containing per-user quotas (defaults to quotas.properties next to the user database)")
+  Path userQuotas;
+
+  @Parameter(
+    names = "--user-quota-usage",
+    required = false,
+    description = "The file in which per-user transfer usage is kept across restarts (defaults to quota-usage.properties in the data directory)")
+  Path userQuotaUsage;
+
+  @Parameter(
+    names = "--user-quota-persist-interval",
+    required = false,
+    description = "The number of seconds between writes of per-user transfer usage")
+  long userQuotaPersistIntervalSeconds = 30L;
+
   @Parameter(
     names = "--audit-log",
     required = true,
@@ -85,6 +134,146 @@ public final class CommandServer extends CommandRoot
     description = "The directory that will contain data deliveries")
   Path dataDirectory;
 
+  @Parameter(
+    names = "--data-index",
+    required = false,
+    description = "The file holding the index of data delivery metadata (defaults to index.wbi in the data directory)")
+  Path dataIndex;
+
+  @Parameter(
+    names = "--data-volume",
+    required = false,
+    description = "A further directory across which data deliveries are spread (may be repeated)")
+  List<Path> dataVolumes = new ArrayList<>();
+
+  @Parameter(
+    names = "--data-placement",
+    required = false,
+    description = "Whether each data delivery is placed on the volume chosen by its ID (HASH) or on one of two such volumes weighted by free space (FREE_SPACE)")
+  WBBlobPlacement dataPlacement = WBBlobPlacement.HASH;
+
+  @Parameter(
+    names = "--data-volume-reserve",
+    required = false,
+    description = "The free space in bytes below which a data directory is no longer given new deliveries")
+  long dataVolumeReserve = 268_435_456L;
+
+  @Parameter(
+    names = "--data-space-refresh-interval",
+    required = false,
+    description = "The number of milliseconds between checks of the free space available for data deliveries")
+  long dataSpaceRefreshIntervalMillis = 1000L;
+
+  @Parameter(
+    names = "--data-directory-shard-levels",
+    required = false,
+    description = "The number of levels of subdirectories used to spread out data deliveries (0 for a flat directory)")
+  int dataDirectoryShardLevels = 2;
+
+  @Parameter(
+    names = "--data-store-kind",
+    required = false,
+    description = "Whether each data delivery is stored in its own file (PLAIN), identical deliveries share storage (DEDUPLICATING), or small deliveries are packed into shared segment files (PACKED)")
+  WBBlobStoreKind dataStoreKind = WBBlobStoreKind.PLAIN;
+
+  @Parameter(
+    names = "--data-write-mode",
+    required = false,
+    description = "Whether data deliveries are written directly (DIRECT) or to a temporary file that is renamed on completion (ATOMIC)")
+  WBBlobWriteMode dataWriteMode = WBBlobWriteMode.DIRECT;
+
+  @Parameter(
+    names = "--data-durability",
+    required = false,
+    description = "Whether data deliveries are flushed to storage before being acknowledged (NONE, DATA, FULL)")
+  WBBlobDurability dataDurability = WBBlobDurability.NONE;
+
+  @Parameter(
+    names = "--data-preallocate",
+    required = false,
+    arity = 1,
+    description = "Whether each data file is extended to the declared length of its delivery before it is written (a best-effort hint to the file system)")
+  boolean dataPreallocate;
+
+  @Parameter(
+    names = "--data-pipelined",
+    required = false,
+    arity = 1,
+    description = "Whether data deliveries are hashed and written to storage on separate threads, overlapping receiving, hashing, and writing")
+  boolean dataPipelined;
+
+  @Parameter(
+    names = "--data-pack-threshold",
+    required = false,
+    description = "The size in bytes below which data deliveries are packed into segment files (PACKED stores only)")
+  int dataPackThreshold = 65536;
+
+  @Parameter(
+    names = "--data-pack-compaction-rate",
+    required = false,
+    description = "The maximum rate in bytes per second at which segment files are compacted (PACKED stores only)")
+  long dataPackCompactionRate = 8_388_608L;
+
+  @Parameter(
+    names = "--data-compression",
+    required = false,
+    description = "The codec used to compress data deliveries at rest (none, deflate)")
+  String dataCompression = "none";
+
+  @Parameter(
+    names = "--data-transfer-buffer-size",
+    required = false,
+    description = "The size in bytes of each buffer used to transfer data deliveries to storage")
+  int dataTransferBufferSize = 262144;
+
+  @Parameter(
+    names = "--data-transfer-buffer-count",
+    required = false,
+    description = "The maximum number of data transfer buffers kept for reuse")
+  int dataTransferBufferCount = 64;
+
+  @Parameter(
+    names = "--retention-maximum-age",
+    required = false,
+    description = "The number of seconds after which data deliveries are deleted (0 to keep deliveries regardless of age)")
+  long retentionMaximumAgeSeconds;
+
+  @Parameter(
+    names = "--retention-user-maximum-age",
+    required = false,
+    description = "The number of seconds after which a user's data deliveries are deleted, in the form 'user=seconds', overriding --retention-maximum-age (may be repeated)")
+  List<String> retentionUserMaximumAges = new ArrayList<>();
+
+  @Parameter(
+    names = "--retention-high-watermark",
+    required = false,
+    description = "The total size in bytes of data deliveries above which the oldest deliveries are deleted (0 for no limit)")
+  long retentionHighWatermark;
+
+  @Parameter(
+    names = "--retention-low-watermark",
+    required = false,
+    description = "The total size in bytes down to which the oldest data deliveries are deleted once the high watermark is exceeded (defaults to 90% of the high watermark)")
+  Long retentionLowWatermark;
+
+  @Parameter(
+    names = "--retention-interval",
+    required = false,
+    description = "The number of seconds between passes over the stored data deliveries")
+  long retentionIntervalSeconds = 60L;
+
+  @Parameter(
+    names = "--retention-deletion-rate",
+    required = false,
+    description = "The maximum number of data deliveries deleted per second")
+  long retentionDeletionRate = 100L;
+
+  @Parameter(
+    names = "--retention-byte-rate",
+    required = false,
+    description = "The maximum number of bytes of data deliveries deleted per second")
+  long retentionByteRate = 67_108_864L;
+
   @Parameter(
     names = "--bind-port",
     required = false,
@@ -109,6 +298,55 @@ public final class CommandServer extends CommandRoot
     description = "The number of threads to use for serving clients")
   int threadCount = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
 
+  @Parameter(
+    names = "--authentication-thread-count",
+    required = false,
+    description = "The number of threads to use for checking passwords")
+  int authenticationThreadCount =
+    Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+
+  @Parameter(
+    names = "--authentication-queue-limit",
+    required = false,
+    description = "The maximum number of queued password checks before clients are asked to retry")
+  int authenticationQueueLimit = 64;
+
+  @Parameter(
+    names = "--authentication-statistics-interval",
+    required = false,
+    description = "The number of seconds between reports of password check statistics")
+  long authenticationStatisticsIntervalSeconds = 60L;
+
+  @Parameter(
+    names = "--user-cache-size",
+    required = false,
+    description = "The maximum number of verified credentials to cache (0 disables caching)")
+  int userCacheSize = 1024;
+
+  @Parameter(
+    names = "--user-cache-expiry",
+    required = false,
+    description = "The number of seconds for which verified credentials are cached")
+  long userCacheExpirySeconds = 300L;
+
+  @Parameter(
+    names = "--authentication-failure-burst",
+    required = false,
+    description = "The number of consecutive failed logins permitted from one address or for one user")
+  int authenticationFailureBurst = 10;
+
+  @Parameter(
+    names = "--authentication-failure-interval",
+    required = false,
+    description = "The number of seconds after which one further failed login is permitted")
+  long authenticationFailureIntervalSeconds = 6L;
+
+  @Parameter(
+    names = "--token-lifetime",
+    required = false,
+    description = "The number of seconds for which issued access tokens are valid")
+  long tokenLifetimeSeconds = 900L;
+
   CommandServer()
   {
 
@@ -116,57 +354,200 @@ public final class CommandServer extends CommandRoot
 
   // CHECKSTYLE:ON
 
+  private static Map<String, Duration> parseUserMaximumAges(
+    final List<String> specifications)
+  {
+    final var ages = new HashMap<String, Duration>(specifications.size());
+    for (final var specification : specifications) {
+      final var separator = specification.lastIndexOf('=');
+      if (separator < 0) {
+        throw new ParameterException(
+          "Expected 'user=seconds' for --retention-user-maximum-age, but got '%s'"
+            .formatted(specification));
+      }
+
+      try {
+        final var user =
+          WBUserName.of(specification.substring(0, separator));
+        final var seconds =
+          Long.parseLong(specification.substring(separator + 1));
+        ages.put(user.value(), Duration.ofSeconds(seconds));
+      } catch (final IllegalArgumentException e) {
+        throw new ParameterException(
+          "Invalid --retention-user-maximum-age '%s': %s"
+            .formatted(specification, e.getMessage()));
+      }
+    }
+    return ages;
+  }
+
   @Override
   public Void call()
     throws Exception
   {
     super.call();
 
-    final var configuration =
+    final var configurationBuilder =
       WBServerConfiguration.builder()
         .setTlsCAFile(this.tlsCACert)
+        .setTlsClientCertificateMode(this.tlsClientCertificates)
         .setTlsCertFile(this.tlsCert)
         .setTlsKeyFile(this.tlsKey)
         .setBindPort(this.bindPort)
         .setBindAddress(this.bindAddress)
         .setUserDatabase(this.userDatabase)
+        .setUserQuotaPersistInterval(
+          Duration.ofSeconds(this.userQuotaPersistIntervalSeconds))
         .setDataDirectory(this.dataDirectory)
+        .setDataVolumes(this.dataVolumes)
+        .setDataPlacement(this.dataPlacement)
+        .setDataVolumeReserve(this.dataVolumeReserve)
+        .setDataSpaceRefreshInterval(
+          Duration.ofMillis(this.dataSpaceRefreshIntervalMillis))
+        .setDataDirectoryShardLevels(this.dataDirectoryShardLevels)
+        .setDataStoreKind(this.dataStoreKind)
+        .setDataWriteMode(this.dataWriteMode)
+        .setDataDurability(this.dataDurability)
+        .setDataPreallocate(this.dataPreallocate)
+        .setDataPipelined(this.dataPipelined)
+        .setDataPackThreshold(this.dataPackThreshold)
+        .setDataPackCompactionRate(this.dataPackCompactionRate)
+        .setDataCompression(this.dataCompression)
+        .setDataTransferBufferSize(this.dataTransferBufferSize)
+        .setDataTransferBufferCount(this.dataTransferBufferCount)
         .setDataSizeLimit(this.dataSizeLimit)
         .setServerThreads(this.threadCount)
-        .build();
+        .setAuthenticationThreads(this.authenticationThreadCount)
+        .setAuthenticationQueueLimit(this.authenticationQueueLimit)
+        .setAuthenticationStatisticsInterval(
+          Duration.ofSeconds(this.authenticationStatisticsIntervalSeconds))
+        .setUserCacheSize(this.userCacheSize)
+        .setUserCacheExpiry(Duration.ofSeconds(this.userCacheExpirySeconds))
+        .setAuthenticationFailureBurst(this.authenticationFailureBurst)
+        .setAuthenticationFailureInterval(
+          Duration.ofSeconds(this.authenticationFailureIntervalSeconds))
+        .setTokenLifetime(Duration.ofSeconds(this.tokenLifetimeSeconds))
+        .setRetentionMaximumAge(
+          Duration.ofSeconds(this.retentionMaximumAgeSeconds))
+        .setRetentionUserMaximumAges(
+          parseUserMaximumAges(this.retentionUserMaximumAges))
+        .setRetentionHighWatermark(this.retentionHighWatermark)
+        .setRetentionInterval(
+          Duration.ofSeconds(this.retentionIntervalSeconds))
+        .setRetentionDeletionRate(this.retentionDeletionRate)
+        .setRetentionByteRate(this.retentionByteRate);
+
+    if (this.dataIndex != null) {
+      configurationBuilder.setDataIndexFile(this.dataIndex);
+    }
+    if (this.userQuotas != null) {
+      configurationBuilder.setUserQuotaFile(this.userQuotas);
+    }
+    if (this.userQuotaUsage != null) {
+      configurationBuilder.setUserQuotaUsageFile(this.userQuotaUsage);
+    }
+    if (this.retentionLowWatermark != null) {
+      configurationBuilder.setRetentionLowWatermark(
+        this.retentionLowWatermark.longValue());
+    }
+
+    final var configuration = configurationBuilder.build();
+
+    /*
+     * The file watchers spend almost all of their time blocked waiting for
+     * file system events, so they run on virtual threads rather than
+     * occupying platform threads.
+     */
 
     final ExecutorService userExecutor =
-      Executors.newFixedThreadPool(1, runnable -> {
-        final var thread = new Thread(runnable);
-        thread.setName(String.format(
-          "com.io7m.wastebasket.users-%d",
-          Long.valueOf(thread.getId())));
-        return thread;
-      });
+      Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual()
+          .name("com.io7m.wastebasket.users-", 0L)
+          .factory());
 
     final ExecutorService watcherExecutor =
-      Executors.newFixedThreadPool(1, runnable -> {
-        final var thread = new Thread(runnable);
-        thread.setName(String.format(
-          "com.io7m.wastebasket.files-%d",
-          Long.valueOf(thread.getId())));
-        return thread;
-      });
-
-    try (var auditLogger = WBAuditLog.create(this.auditLog)) {
-      final WBBlobStoreType blobStore = WBBlobStore.create(this.dataDirectory);
-
-      try (WBUserDatabaseType users =
-             WBUserDatabase.create(userExecutor, this.userDatabase)) {
+      Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual()
+          .name("com.io7m.wastebasket.files-", 0L)
+          .factory());
+
+    try (var auditLogger = WBAuditLog.create(this.auditLog);
+         WBBlobStoreType blobStore =
+           WBBlobStores.create(
+             WBBlobStoreConfiguration.builder()
+               .setDirectory(configuration.dataDirectory())
+               .setVolumes(configuration.dataVolumes())
+               .setPlacement(configuration.dataPlacement())
+               .setVolumeReserve(configuration.dataVolumeReserve())
+               .setKind(configuration.dataStoreKind())
+               .setShardLevels(configuration.dataDirectoryShardLevels())
+               .setWriteMode(configuration.dataWriteMode())
+               .setDurability(configuration.dataDurability())
+               .setPreallocate(configuration.dataPreallocate())
+               .setPipelined(configuration.dataPipelined())
+               .setPackThreshold(configuration.dataPackThreshold())
+               .setPackCompactionRate(configuration.dataPackCompactionRate())
+               .setCompression(configuration.dataCompression())
+               .setTransferBufferSize(configuration.dataTransferBufferSize())
+               .setTransferBufferCount(configuration.dataTransferBufferCount())
+               .build())) {
+      final WBUserCredentialCache userCache =
+        WBUserCredentialCache.create(
+          configuration.userCacheSize(),
+          configuration.userCacheExpiry());
+
+      final var algorithms =
+        WBPasswordAlgorithms.create(
+          WBPasswordAlgorithms.createDefault()
+            .parseAlgorithm(this.passwordAlgorithm));
+
+      final var retentionConfiguration =
+        WBRetentionConfiguration.builder()
+          .setMaximumAge(configuration.retentionMaximumAge())
+          .setUserMaximumAges(configuration.retentionUserMaximumAges())
+          .setHighWatermark(configuration.retentionHighWatermark())
+          .setLowWatermark(configuration.retentionLowWatermark())
+          .setInterval(configuration.retentionInterval())
+          .setDeletionRate(configuration.retentionDeletionRate())
+          .setByteRate(configuration.retentionByteRate())
+          .build();
+
+      try (WBBlobIndex index =
+             WBBlobIndex.open(
+               configuration.dataIndexFile(),
+               configuration.dataDurability());
+           WBRetention retention =
+             WBRetention.create(
+               retentionConfiguration,
+               Clock.systemUTC(),
+               blobStore,
+               index);
+           WBUserDatabaseType users =
+             WBUserDatabases.open(
+               userExecutor,
+               this.userDatabase,
+               userCache,
+               algorithms);
+           WBUserQuotas quotas =
+             WBUserQuotas.create(
+               userExecutor,
+               configuration.userQuotaFile(),
+               configuration.userQuotaUsageFile(),
+               configuration.userQuotaPersistInterval(),
+               Clock.systemUTC(),
+               index)) {
         final WBServerMain server =
           WBServerMain.create(
             configuration,
             blobStore,
             users,
-            auditLogger);
+            auditLogger,
+            index,
+            quotas);
 
         LOG.info("process ID: {}", Long.valueOf(ProcessHandle.current().pid()));
         server.start();
+        retention.start();
 
         final Runnable onCertificatesChanged = () -> {
           try {
@@ -22,7 +22,10 @@ import com.beust.jcommander.Parameters;
 import com.io7m.wastebasket.api.WBPassKey;
 import com.io7m.wastebasket.api.WBUserDatabaseType;
 import com.io7m.wastebasket.api.WBUserName;
-import com.io7m.wastebasket.vanilla.WBUserDatabase;
+import com.io7m.wastebasket.vanilla.WBPasswordAlgorithms;
+import com.io7m.wastebasket.vanilla.WBUserCredentialCache;
+import com.io7m.wastebasket.vanilla.WBUserDatabaseFormat;
+import com.io7m.wastebasket.vanilla.WBUserDatabases;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +49,18 @@ public final class CommandUserAdd extends CommandRoot
     description = "The file containing the user database")
   Path userDatabase;
 
+  @Parameter(
+    names = "--password-algorithm",
+    required = false,
+    description = "The algorithm used to hash new passwords, in the form 'name' or 'name:parameters'")
+  String passwordAlgorithm = "argon2id";
+
+  @Parameter(
+    names = "--user-database-format",
+    required = false,
+    description = "The format of the user database, if it does not already exist")
+  WBUserDatabaseFormat userDatabaseFormat = WBUserDatabaseFormat.PROPERTIES;
+
   @Parameter(
     names = "--user-name",
     required = true,
@@ -76,9 +91,19 @@ public final class CommandUserAdd extends CommandRoot
     final WBPassKey pass =
       WBPassKey.of(this.passKey);
 
+    final var algorithms =
+      WBPasswordAlgorithms.create(
+        WBPasswordAlgorithms.createDefault()
+          .parseAlgorithm(this.passwordAlgorithm));
+
     try (WBUserDatabaseType users =
-           WBUserDatabase.create(x -> {
-           }, this.userDatabase)) {
+           WBUserDatabases.open(
+             x -> {
+             },
+             this.userDatabase,
+             WBUserCredentialCache.disabled(),
+             algorithms,
+             this.userDatabaseFormat)) {
       users.userAdd(user, pass);
     }
 
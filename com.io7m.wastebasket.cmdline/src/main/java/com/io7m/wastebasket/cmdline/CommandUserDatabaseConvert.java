@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.cmdline;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.io7m.wastebasket.vanilla.WBPasswordAlgorithms;
+import com.io7m.wastebasket.vanilla.WBUserDatabaseFormat;
+import com.io7m.wastebasket.vanilla.WBUserDatabases;
+
+import java.nio.file.Path;
+
+/**
+ * The "user-database-convert" command.
+ */
+
+@Parameters(commandDescription = "Copy a user database into a new file in a different format")
+public final class CommandUserDatabaseConvert extends CommandRoot
+{
+  // CHECKSTYLE:OFF
+
+  @Parameter(
+    names = "--input",
+    required = true,
+    description = "The file containing the existing user database (in any format)")
+  Path input;
+
+  @Parameter(
+    names = "--output",
+    required = true,
+    description = "The new user database file (must not exist)")
+  Path output;
+
+  @Parameter(
+    names = "--output-format",
+    required = false,
+    description = "The format of the new user database")
+  WBUserDatabaseFormat outputFormat = WBUserDatabaseFormat.BINARY;
+
+  CommandUserDatabaseConvert()
+  {
+
+  }
+
+  // CHECKSTYLE:ON
+
+  @Override
+  public Void call()
+    throws Exception
+  {
+    super.call();
+
+    WBUserDatabases.convert(
+      this.input,
+      this.output,
+      this.outputFormat,
+      WBPasswordAlgorithms.createDefault());
+    return null;
+  }
+}
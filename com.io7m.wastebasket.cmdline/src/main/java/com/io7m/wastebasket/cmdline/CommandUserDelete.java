@@ -21,7 +21,9 @@ import com.beust.jcommander.Parameter;
 import com.beust.jcommander.Parameters;
 import com.io7m.wastebasket.api.WBUserDatabaseType;
 import com.io7m.wastebasket.api.WBUserName;
-import com.io7m.wastebasket.vanilla.WBUserDatabase;
+import com.io7m.wastebasket.vanilla.WBPasswordAlgorithms;
+import com.io7m.wastebasket.vanilla.WBUserCredentialCache;
+import com.io7m.wastebasket.vanilla.WBUserDatabases;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -66,8 +68,12 @@ public final class CommandUserDelete extends CommandRoot
 
     final WBUserName user = WBUserName.of(this.userName);
     try (WBUserDatabaseType users =
-           WBUserDatabase.create(x -> {
-           }, this.userDatabase)) {
+           WBUserDatabases.open(
+             x -> {
+             },
+             this.userDatabase,
+             WBUserCredentialCache.disabled(),
+             WBPasswordAlgorithms.createDefault())) {
       users.userDelete(user);
     }
     return null;
@@ -0,0 +1,186 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.cmdline;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBUserDatabaseType;
+import com.io7m.wastebasket.api.WBUserName;
+import com.io7m.wastebasket.vanilla.WBPasswordAlgorithms;
+import com.io7m.wastebasket.vanilla.WBUserCredentialCache;
+import com.io7m.wastebasket.vanilla.WBUserDatabaseFormat;
+import com.io7m.wastebasket.vanilla.WBUserDatabases;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The "user-import" command.
+ */
+
+@Parameters(commandDescription = "Add many users to the user database at once")
+public final class CommandUserImport extends CommandRoot
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CommandUserImport.class);
+
+  private static final Pattern WHITESPACE =
+    Pattern.compile("\\s+");
+
+  // CHECKSTYLE:OFF
+
+  @Parameter(
+    names = "--user-database",
+    required = true,
+    description = "The file containing the user database")
+  Path userDatabase;
+
+  @Parameter(
+    names = "--password-algorithm",
+    required = false,
+    description = "The algorithm used to hash new passwords, in the form 'name' or 'name:parameters'")
+  String passwordAlgorithm = "argon2id";
+
+  @Parameter(
+    names = "--user-database-format",
+    required = false,
+    description = "The format of the user database, if it does not already exist")
+  WBUserDatabaseFormat userDatabaseFormat = WBUserDatabaseFormat.PROPERTIES;
+
+  @Parameter(
+    names = "--input",
+    required = false,
+    description = "A file containing one 'name passkey' pair per line (standard input if not specified)")
+  Path input;
+
+  CommandUserImport()
+  {
+
+  }
+
+  // CHECKSTYLE:ON
+
+  private static Map<WBUserName, WBPassKey> readUsers(
+    final BufferedReader reader)
+    throws IOException
+  {
+    final var users = new LinkedHashMap<WBUserName, WBPassKey>();
+
+    int lineNumber = 0;
+    while (true) {
+      final var line = reader.readLine();
+      if (line == null) {
+        break;
+      }
+      ++lineNumber;
+
+      final var trimmed = line.trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+        continue;
+      }
+
+      final var segments = WHITESPACE.split(trimmed);
+      if (segments.length != 2) {
+        throw new IOException(
+          String.format(
+            "Line %d: Expected 'name passkey', but got %d fields",
+            Integer.valueOf(lineNumber),
+            Integer.valueOf(segments.length)));
+      }
+
+      final WBUserName user;
+      final WBPassKey pass;
+      try {
+        user = WBUserName.of(segments[0]);
+        pass = WBPassKey.of(segments[1]);
+      } catch (final IllegalArgumentException e) {
+        throw new IOException(
+          String.format("Line %d: %s", Integer.valueOf(lineNumber), e.getMessage()),
+          e);
+      }
+
+      if (users.put(user, pass) != null) {
+        throw new IOException(
+          String.format(
+            "Line %d: Duplicate user %s",
+            Integer.valueOf(lineNumber),
+            user.value()));
+      }
+    }
+    return users;
+  }
+
+  @Override
+  public Void call()
+    throws Exception
+  {
+    super.call();
+
+    final Map<WBUserName, WBPassKey> users;
+    if (this.input == null) {
+      users = readUsers(
+        new BufferedReader(new InputStreamReader(System.in, UTF_8)));
+    } else {
+      try (var reader = Files.newBufferedReader(this.input, UTF_8)) {
+        users = readUsers(reader);
+      }
+    }
+
+    final var algorithms =
+      WBPasswordAlgorithms.create(
+        WBPasswordAlgorithms.createDefault()
+          .parseAlgorithm(this.passwordAlgorithm));
+
+    LOG.info(
+      "importing {} users using {} on {} threads",
+      Integer.valueOf(users.size()),
+      algorithms.preferred(),
+      Integer.valueOf(Runtime.getRuntime().availableProcessors()));
+
+    final var timeStart = System.nanoTime();
+    try (WBUserDatabaseType database =
+           WBUserDatabases.open(
+             x -> {
+             },
+             this.userDatabase,
+             WBUserCredentialCache.disabled(),
+             algorithms,
+             this.userDatabaseFormat)) {
+      database.userAddAll(users);
+    }
+    final var seconds = (System.nanoTime() - timeStart) / 1_000_000_000.0;
+
+    LOG.info(
+      "imported {} users in {} s ({} users/s)",
+      Integer.valueOf(users.size()),
+      String.format("%.2f", Double.valueOf(seconds)),
+      String.format("%.2f", Double.valueOf(users.size() / seconds)));
+    return null;
+  }
+}
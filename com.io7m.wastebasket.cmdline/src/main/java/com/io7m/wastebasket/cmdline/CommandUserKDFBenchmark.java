@@ -0,0 +1,160 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.cmdline;
+
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.Parameters;
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBPasswordAlgorithmType;
+import com.io7m.wastebasket.vanilla.WBPasswordAlgorithms;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * The "user-kdf-benchmark" command.
+ */
+
+@Parameters(commandDescription = "Measure the cost of password hashing algorithms")
+public final class CommandUserKDFBenchmark extends CommandRoot
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(CommandUserKDFBenchmark.class);
+
+  // CHECKSTYLE:OFF
+
+  @Parameter(
+    names = "--password-algorithm",
+    required = false,
+    description = "An algorithm to measure, in the form 'name' or 'name:parameters' (may be repeated; defaults to all supported algorithms)")
+  List<String> algorithms = new ArrayList<>();
+
+  @Parameter(
+    names = "--duration",
+    required = false,
+    description = "The number of seconds for which to measure each algorithm")
+  long durationSeconds = 5L;
+
+  @Parameter(
+    names = "--thread-count",
+    required = false,
+    description = "The number of threads to use for the parallel measurement")
+  int threadCount = Runtime.getRuntime().availableProcessors();
+
+  CommandUserKDFBenchmark()
+  {
+
+  }
+
+  // CHECKSTYLE:ON
+
+  private static long hashUntil(
+    final WBPasswordAlgorithmType algorithm,
+    final long deadline)
+    throws Exception
+  {
+    final var random = new SecureRandom();
+    final var bytes = new byte[32];
+    random.nextBytes(bytes);
+    final var password =
+      WBPassKey.of(HexFormat.of().formatHex(bytes));
+
+    long count = 0L;
+    do {
+      algorithm.hash(random, password);
+      ++count;
+    } while (System.nanoTime() - deadline < 0L);
+    return count;
+  }
+
+  private double measure(
+    final ExecutorService executor,
+    final WBPasswordAlgorithmType algorithm,
+    final int threads)
+    throws Exception
+  {
+    final var timeStart = System.nanoTime();
+    final var deadline = timeStart + this.durationSeconds * 1_000_000_000L;
+
+    final var tasks = new ArrayList<Callable<Long>>(threads);
+    for (int index = 0; index < threads; ++index) {
+      tasks.add(() -> Long.valueOf(hashUntil(algorithm, deadline)));
+    }
+
+    long total = 0L;
+    for (final Future<Long> future : executor.invokeAll(tasks)) {
+      total += future.get().longValue();
+    }
+
+    final var elapsed = (double) (System.nanoTime() - timeStart);
+    return (double) total / (elapsed / 1_000_000_000.0);
+  }
+
+  @Override
+  public Void call()
+    throws Exception
+  {
+    super.call();
+
+    if (this.threadCount < 1) {
+      throw new IllegalArgumentException("Thread count must be positive");
+    }
+
+    final var registry = WBPasswordAlgorithms.createDefault();
+    final var selected = new ArrayList<WBPasswordAlgorithmType>();
+    if (this.algorithms.isEmpty()) {
+      selected.addAll(WBPasswordAlgorithms.supported());
+    } else {
+      for (final var spec : this.algorithms) {
+        selected.add(registry.parseAlgorithm(spec));
+      }
+    }
+
+    final var executor = Executors.newFixedThreadPool(this.threadCount);
+    try {
+      for (final var algorithm : selected) {
+        LOG.info("measuring {}", algorithm);
+
+        final var single =
+          this.measure(executor, algorithm, 1);
+        final var parallel =
+          this.measure(executor, algorithm, this.threadCount);
+
+        LOG.info(
+          "{}: {} ms/hash, {} hashes/s on one core, {} hashes/s on {} threads ({} hashes/s per thread)",
+          algorithm,
+          String.format("%.2f", Double.valueOf(1000.0 / single)),
+          String.format("%.2f", Double.valueOf(single)),
+          String.format("%.2f", Double.valueOf(parallel)),
+          Integer.valueOf(this.threadCount),
+          String.format("%.2f", Double.valueOf(parallel / this.threadCount)));
+      }
+    } finally {
+      executor.shutdown();
+    }
+    return null;
+  }
+}
@@ -52,20 +52,36 @@ public final class Main implements Runnable
 
     final var r = new CommandRoot();
     final var cmd_server = new CommandServer();
+    final var cmd_blob_store_migrate = new CommandBlobStoreMigrate();
+    final var cmd_blob_index_rebuild = new CommandBlobIndexRebuild();
     final var cmd_user_add = new CommandUserAdd();
     final var cmd_user_delete = new CommandUserDelete();
+    final var cmd_user_import = new CommandUserImport();
+    final var cmd_user_database_convert = new CommandUserDatabaseConvert();
+    final var cmd_user_kdf_benchmark = new CommandUserKDFBenchmark();
 
-    this.commands = new HashMap<>(8);
+    this.commands = new HashMap<>(9);
     this.commands.put("server", cmd_server);
+    this.commands.put("blob-store-migrate", cmd_blob_store_migrate);
+    this.commands.put("blob-index-rebuild", cmd_blob_index_rebuild);
     this.commands.put("user-add", cmd_user_add);
     this.commands.put("user-delete", cmd_user_delete);
+    this.commands.put("user-import", cmd_user_import);
+    this.commands.put("user-database-convert", cmd_user_database_convert);
+    this.commands.put("user-kdf-benchmark", cmd_user_kdf_benchmark);
 
     this.commander = new JCommander(r);
     this.commander.setConsole(this.console);
     this.commander.setProgramName("wastebasket");
     this.commander.addCommand("server", cmd_server);
+    this.commander.addCommand("blob-store-migrate", cmd_blob_store_migrate);
+    this.commander.addCommand("blob-index-rebuild", cmd_blob_index_rebuild);
     this.commander.addCommand("user-add", cmd_user_add);
     this.commander.addCommand("user-delete", cmd_user_delete);
+    this.commander.addCommand("user-import", cmd_user_import);
+    this.commander.addCommand(
+      "user-database-convert", cmd_user_database_convert);
+    this.commander.addCommand("user-kdf-benchmark", cmd_user_kdf_benchmark);
   }
 
   /**
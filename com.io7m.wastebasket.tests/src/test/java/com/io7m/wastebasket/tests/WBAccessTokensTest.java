@@ -0,0 +1,255 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBUserDatabaseType;
+import com.io7m.wastebasket.api.WBUserName;
+import com.io7m.wastebasket.vanilla.WBAccessTokens;
+import com.io7m.wastebasket.vanilla.WBPasswordAlgorithmPBKDF2;
+import com.io7m.wastebasket.vanilla.WBPasswordAlgorithms;
+import com.io7m.wastebasket.vanilla.WBUserCredentialCache;
+import com.io7m.wastebasket.vanilla.WBUserDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBAccessTokensTest
+{
+  private static final WBUserName USER =
+    WBUserName.of("someone");
+  private static final WBPassKey PASS =
+    WBPassKey.of("0".repeat(64));
+  private static final Duration LIFETIME =
+    Duration.ofMinutes(10L);
+
+  private MutableClock clock;
+  private WBUserDatabaseType users;
+  private WBAccessTokens tokens;
+
+  @BeforeEach
+  public void testSetup()
+    throws Exception
+  {
+    final var directory = TestDirectories.temporaryDirectory();
+    this.clock = new MutableClock(Instant.parse("2024-01-01T00:00:00Z"));
+    this.users = WBUserDatabase.create(x -> { }, directory.resolve("users"));
+    this.users.userAdd(USER, PASS);
+    this.tokens = WBAccessTokens.create(this.clock, this.users, LIFETIME);
+  }
+
+  @AfterEach
+  public void testTearDown()
+    throws IOException
+  {
+    this.users.close();
+  }
+
+  @Test
+  public void testIssueVerify()
+    throws Exception
+  {
+    final var token = this.tokens.issue(USER);
+    assertEquals(this.clock.instant().plus(LIFETIME), token.expires());
+    assertEquals(Optional.of(USER), this.tokens.verify(token.text()));
+  }
+
+  @Test
+  public void testExpired()
+    throws Exception
+  {
+    final var token = this.tokens.issue(USER);
+    this.clock.advance(LIFETIME.minusSeconds(1L));
+    assertEquals(Optional.of(USER), this.tokens.verify(token.text()));
+    this.clock.advance(Duration.ofSeconds(1L));
+    assertEquals(Optional.empty(), this.tokens.verify(token.text()));
+  }
+
+  @Test
+  public void testSurvivesRotation()
+    throws Exception
+  {
+    this.clock.advance(LIFETIME.minusMinutes(1L));
+    final var token = this.tokens.issue(USER);
+
+    /*
+     * The key that signed the token is rotated out one minute later, but
+     * must remain usable until the token expires.
+     */
+
+    this.clock.advance(LIFETIME.minusSeconds(1L));
+    final var newer = this.tokens.issue(USER);
+    assertEquals(Optional.of(USER), this.tokens.verify(token.text()));
+    assertEquals(Optional.of(USER), this.tokens.verify(newer.text()));
+  }
+
+  @Test
+  public void testUserDeleted()
+    throws Exception
+  {
+    final var token = this.tokens.issue(USER);
+    this.users.userDelete(USER);
+    assertEquals(Optional.empty(), this.tokens.verify(token.text()));
+  }
+
+  @Test
+  public void testTampered()
+    throws Exception
+  {
+    final var token = this.tokens.issue(USER).text();
+    final var separator = token.indexOf('.');
+    final var other =
+      this.tokens.issue(WBUserName.of("someone_else")).text();
+
+    assertEquals(
+      Optional.empty(),
+      this.tokens.verify(
+        other.substring(0, other.indexOf('.')) + token.substring(separator)));
+    assertEquals(
+      Optional.empty(),
+      this.tokens.verify(token.substring(0, token.length() - 2) + "AA"));
+    assertEquals(Optional.empty(), this.tokens.verify(""));
+    assertEquals(Optional.empty(), this.tokens.verify("."));
+    assertEquals(Optional.empty(), this.tokens.verify("!!!.???"));
+    assertEquals(Optional.empty(), this.tokens.verify(token.substring(separator)));
+  }
+
+  @Test
+  public void testOtherAuthority()
+    throws Exception
+  {
+    final var token = this.tokens.issue(USER);
+    final var other = WBAccessTokens.create(this.clock, this.users, LIFETIME);
+    assertEquals(Optional.empty(), other.verify(token.text()));
+  }
+
+  @Test
+  public void testPasswordChanged()
+    throws Exception
+  {
+    final var token = this.tokens.issue(USER);
+    this.users.userAdd(USER, WBPassKey.of("1".repeat(64)));
+    assertEquals(Optional.empty(), this.tokens.verify(token.text()));
+
+    final var newer = this.tokens.issue(USER);
+    assertEquals(Optional.of(USER), this.tokens.verify(newer.text()));
+  }
+
+  @Test
+  public void testUserDeletedAndAddedAgain()
+    throws Exception
+  {
+    final var token = this.tokens.issue(USER);
+    this.users.userDelete(USER);
+    this.users.userAdd(USER, PASS);
+    assertEquals(Optional.empty(), this.tokens.verify(token.text()));
+  }
+
+  @Test
+  public void testSurvivesRehash()
+    throws Exception
+  {
+    final var directory = TestDirectories.temporaryDirectory();
+    final var file = directory.resolve("users");
+    final var legacy =
+      WBPasswordAlgorithms.create(WBPasswordAlgorithmPBKDF2.createSHA1(10_000));
+
+    try (var legacyUsers = WBUserDatabase.create(
+      x -> { }, file, WBUserCredentialCache.disabled(), legacy)) {
+      legacyUsers.userAdd(USER, PASS);
+    }
+
+    try (var rehashing = WBUserDatabase.create(x -> { }, file)) {
+      final var rehashingTokens =
+        WBAccessTokens.create(this.clock, rehashing, LIFETIME);
+
+      assertTrue(rehashing.authenticate(USER, PASS));
+      final var token = rehashingTokens.issue(USER);
+
+      /*
+       * The token must remain valid whilst, and after, the new hash is
+       * written.
+       */
+
+      final var deadline = System.nanoTime() + Duration.ofSeconds(10L).toNanos();
+      while (!Files.readString(file).contains("argon2id\\:")) {
+        assertEquals(Optional.of(USER), rehashingTokens.verify(token.text()));
+        assertTrue(System.nanoTime() - deadline < 0L);
+        Thread.sleep(1L);
+      }
+      assertEquals(Optional.of(USER), rehashingTokens.verify(token.text()));
+    }
+  }
+
+  @Test
+  public void testLifetimeInvalid()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      WBAccessTokens.create(this.clock, this.users, Duration.ZERO);
+    });
+  }
+
+  private static final class MutableClock extends Clock
+  {
+    private Instant now;
+
+    MutableClock(
+      final Instant inNow)
+    {
+      this.now = inNow;
+    }
+
+    void advance(
+      final Duration duration)
+    {
+      this.now = this.now.plus(duration);
+    }
+
+    @Override
+    public ZoneId getZone()
+    {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(
+      final ZoneId zone)
+    {
+      return this;
+    }
+
+    @Override
+    public Instant instant()
+    {
+      return this.now;
+    }
+  }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBUserDatabaseType;
+import com.io7m.wastebasket.api.WBUserName;
+import com.io7m.wastebasket.vanilla.WBAuthenticationExecutor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBAuthenticationExecutorTest
+{
+  private static final WBUserName USER =
+    WBUserName.of("someone");
+  private static final WBPassKey PASS =
+    WBPassKey.of("0".repeat(64));
+  private static final WBPassKey PASS_CACHED =
+    WBPassKey.of("1".repeat(64));
+
+  private BlockingUsers users;
+  private WBAuthenticationExecutor executor;
+
+  @BeforeEach
+  public void testSetup()
+  {
+    this.users = new BlockingUsers();
+    this.executor =
+      WBAuthenticationExecutor.create(this.users, 1, 1, Duration.ofMinutes(1L));
+    this.executor.start();
+  }
+
+  @AfterEach
+  public void testTearDown()
+  {
+    this.users.release.countDown();
+    this.executor.close();
+  }
+
+  @Test
+  public void testSaturationAndRejection()
+    throws Exception
+  {
+    /*
+     * The first check occupies the only thread, and the second check
+     * occupies the only queue slot.
+     */
+
+    final var running = this.executor.authenticate(USER, PASS);
+    assertTrue(this.users.started.tryAcquire(10L, TimeUnit.SECONDS));
+    final var queued = this.executor.authenticate(USER, PASS);
+    assertEquals(1, this.executor.queueDepth());
+
+    assertThrows(RejectedExecutionException.class, () -> {
+      this.executor.authenticate(USER, PASS);
+    });
+    assertThrows(RejectedExecutionException.class, () -> {
+      this.executor.authenticate(USER, PASS);
+    });
+    assertEquals(2L, this.executor.rejected());
+    assertFalse(running.isDone());
+    assertFalse(queued.isDone());
+
+    this.users.release.countDown();
+    assertEquals(Boolean.TRUE, running.get(10L, TimeUnit.SECONDS));
+    assertEquals(Boolean.TRUE, queued.get(10L, TimeUnit.SECONDS));
+
+    assertEquals(0, this.executor.queueDepth());
+    assertEquals(2L, this.executor.hashCount());
+    assertTrue(this.executor.hashLatencyMean().compareTo(Duration.ZERO) > 0);
+    assertTrue(
+      this.executor.hashLatencyMaximum()
+        .compareTo(this.executor.hashLatencyMean()) >= 0);
+
+    /*
+     * Once the queue has drained, checks are accepted again.
+     */
+
+    assertEquals(
+      Boolean.TRUE,
+      this.executor.authenticate(USER, PASS).get(10L, TimeUnit.SECONDS));
+    assertEquals(2L, this.executor.rejected());
+  }
+
+  @Test
+  public void testCachedBypassesQueue()
+    throws Exception
+  {
+    final var running = this.executor.authenticate(USER, PASS);
+    assertTrue(this.users.started.tryAcquire(10L, TimeUnit.SECONDS));
+    this.executor.authenticate(USER, PASS);
+
+    /*
+     * The pool is saturated, but cached credentials are still accepted
+     * without being queued.
+     */
+
+    final var cached = this.executor.authenticate(USER, PASS_CACHED);
+    assertTrue(cached.isDone());
+    assertEquals(Boolean.TRUE, cached.get());
+    assertEquals(0L, this.executor.rejected());
+    assertFalse(running.isDone());
+  }
+
+  @Test
+  public void testInvalidParameters()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      WBAuthenticationExecutor.create(this.users, 0, 1, Duration.ofMinutes(1L));
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      WBAuthenticationExecutor.create(this.users, 1, 0, Duration.ofMinutes(1L));
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      WBAuthenticationExecutor.create(this.users, 1, 1, Duration.ZERO);
+    });
+  }
+
+  /**
+   * A user database whose password checks block until released.
+   */
+
+  private static final class BlockingUsers implements WBUserDatabaseType
+  {
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final Semaphore started = new Semaphore(0);
+
+    BlockingUsers()
+    {
+
+    }
+
+    @Override
+    public boolean authenticate(
+      final WBUserName user,
+      final WBPassKey password)
+    {
+      this.started.release();
+      try {
+        this.release.await();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+      return true;
+    }
+
+    @Override
+    public boolean authenticateCached(
+      final WBUserName user,
+      final WBPassKey password)
+    {
+      return password.equals(PASS_CACHED);
+    }
+
+    @Override
+    public boolean userExists(
+      final WBUserName user)
+    {
+      return true;
+    }
+
+    @Override
+    public OptionalLong credentialFingerprint(
+      final WBUserName user)
+    {
+      return OptionalLong.of(0L);
+    }
+
+    @Override
+    public void userAdd(
+      final WBUserName user,
+      final WBPassKey password)
+    {
+
+    }
+
+    @Override
+    public void userDelete(
+      final WBUserName user)
+    {
+
+    }
+
+    @Override
+    public void close()
+    {
+
+    }
+  }
+}
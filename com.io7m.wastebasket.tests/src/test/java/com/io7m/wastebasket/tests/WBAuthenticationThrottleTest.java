@@ -0,0 +1,117 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBUserName;
+import com.io7m.wastebasket.vanilla.WBAuthenticationThrottle;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBAuthenticationThrottleTest
+{
+  private static final WBUserName USER_0 =
+    WBUserName.of("someone");
+  private static final WBUserName USER_1 =
+    WBUserName.of("someone_else");
+  private static final long SECOND =
+    1_000_000_000L;
+
+  private long now;
+  private WBAuthenticationThrottle throttle;
+
+  @BeforeEach
+  public void testSetup()
+  {
+    this.now = 1000L * SECOND;
+    this.throttle =
+      WBAuthenticationThrottle.create(
+        3, Duration.ofSeconds(10L), 1024, () -> this.now);
+  }
+
+  @Test
+  public void testBurstThenRefill()
+  {
+    for (int index = 0; index < 3; ++index) {
+      assertEquals(0L, this.throttle.delayNanos("10.0.0.1", USER_0));
+      this.throttle.recordFailure("10.0.0.1", USER_0);
+    }
+
+    assertEquals(10L * SECOND, this.throttle.delayNanos("10.0.0.1", USER_0));
+    this.now += 4L * SECOND;
+    assertEquals(6L * SECOND, this.throttle.delayNanos("10.0.0.1", USER_0));
+    this.now += 6L * SECOND;
+    assertEquals(0L, this.throttle.delayNanos("10.0.0.1", USER_0));
+    assertEquals(2L, this.throttle.rejected());
+  }
+
+  @Test
+  public void testAddressAcrossUsers()
+  {
+    for (int index = 0; index < 3; ++index) {
+      this.throttle.recordFailure(
+        "10.0.0.1", WBUserName.of("user" + index));
+    }
+    assertTrue(this.throttle.delayNanos("10.0.0.1", USER_1) > 0L);
+    assertEquals(0L, this.throttle.delayNanos("10.0.0.2", USER_1));
+  }
+
+  @Test
+  public void testUserAcrossAddresses()
+  {
+    for (int index = 0; index < 3; ++index) {
+      this.throttle.recordFailure("10.0.0." + index, USER_0);
+    }
+    assertTrue(this.throttle.delayNanos("10.0.0.100", USER_0) > 0L);
+    assertEquals(0L, this.throttle.delayNanos("10.0.0.100", USER_1));
+  }
+
+  @Test
+  public void testBounded()
+  {
+    for (int index = 0; index < 100_000; ++index) {
+      this.throttle.recordFailure("10.0." + index, USER_0);
+    }
+    assertTrue(this.throttle.size() <= 1024);
+
+    /*
+     * The user under attack is the most recently failed key of all, and
+     * must not have been evicted.
+     */
+
+    assertTrue(this.throttle.delayNanos("10.1.1.1", USER_0) > 0L);
+  }
+
+  @Test
+  public void testIdleEvicted()
+  {
+    for (int index = 0; index < 1024; ++index) {
+      this.throttle.recordFailure("10.0." + index, USER_0);
+    }
+    this.now += 100_000L * SECOND;
+    for (int index = 0; index < 1024; ++index) {
+      this.throttle.recordFailure("10.1." + index, USER_1);
+    }
+    assertTrue(this.throttle.size() <= 1024);
+    assertEquals(0L, this.throttle.delayNanos("10.1.1.1", USER_0));
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.api.WBBlobWriteMode;
+import com.io7m.wastebasket.vanilla.WBBlobCodecs;
+import com.io7m.wastebasket.vanilla.WBBlobStore;
+import com.io7m.wastebasket.vanilla.WBBlobStoreLayout;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBBlobCompressionTest
+{
+  private static final WBBlobID ID =
+    WBBlobID.of("0123456789abcdef0123456789abcdef");
+
+  private static final WBBlobStoreLayout LAYOUT =
+    WBBlobStoreLayout.sharded(2);
+
+  private Path directory;
+
+  @BeforeEach
+  public void testSetup()
+    throws Exception
+  {
+    this.directory = TestDirectories.temporaryDirectory();
+  }
+
+  private WBBlobStoreType store(
+    final String compression)
+    throws Exception
+  {
+    return WBBlobStore.create(
+      WBBlobStoreConfiguration.builder()
+        .setDirectory(this.directory)
+        .setWriteMode(WBBlobWriteMode.ATOMIC)
+        .setCompression(compression)
+        .build());
+  }
+
+  private byte[] writeAndCheck(
+    final WBBlobStoreType store,
+    final byte[] data)
+    throws Exception
+  {
+    final byte[] digest;
+    try (var writer = store.open(ID)) {
+      final var third = data.length / 3;
+      writer.output().write(data, 0, third);
+
+      final var direct = ByteBuffer.allocateDirect(third);
+      direct.put(data, third, third).flip();
+      writer.write(direct);
+
+      writer.transferFrom(
+        new ByteArrayInputStream(data, third * 2, data.length - third * 2));
+      writer.commit();
+      digest = writer.digest();
+    }
+
+    assertArrayEquals(
+      MessageDigest.getInstance("SHA-256").digest(data),
+      digest);
+
+    final var file = LAYOUT.fileOf(this.directory, ID);
+    try (var input = WBBlobCodecs.openDecoded(file)) {
+      assertArrayEquals(data, input.readAllBytes());
+    }
+    return Files.readAllBytes(file);
+  }
+
+  private static byte[] text(
+    final int size)
+  {
+    final var builder = new StringBuilder(size);
+    var line = 0;
+    while (builder.length() < size) {
+      builder.append("INFO: line ").append(line++).append(" of the log\n");
+    }
+    return builder.substring(0, size).getBytes(StandardCharsets.UTF_8);
+  }
+
+  private static boolean contains(
+    final byte[] data,
+    final String text)
+  {
+    return new String(data, StandardCharsets.ISO_8859_1).contains(text);
+  }
+
+  @Test
+  public void testTextCompressed()
+    throws Exception
+  {
+    final var data = text(300_000);
+    final var stored = this.writeAndCheck(this.store("deflate"), data);
+    assertTrue(stored.length < data.length / 4);
+    assertTrue(contains(stored, "deflate"));
+  }
+
+  @Test
+  public void testSmallTextCompressed()
+    throws Exception
+  {
+    final var data = text(1000);
+    final var stored = this.writeAndCheck(this.store("deflate"), data);
+    assertTrue(stored.length < data.length);
+  }
+
+  @Test
+  public void testRandomSkipped()
+    throws Exception
+  {
+    final var data = new byte[200_000];
+    new Random(0L).nextBytes(data);
+    final var stored = this.writeAndCheck(this.store("deflate"), data);
+    assertTrue(contains(stored, "identity"));
+  }
+
+  @Test
+  public void testCompressedSignatureSkipped()
+    throws Exception
+  {
+    final var data = text(200_000);
+    data[0] = (byte) 0x1f;
+    data[1] = (byte) 0x8b;
+    final var stored = this.writeAndCheck(this.store("deflate"), data);
+    assertTrue(contains(stored, "identity"));
+  }
+
+  @Test
+  public void testUncompressedNoHeader()
+    throws Exception
+  {
+    final var data = text(10_000);
+    final var stored = this.writeAndCheck(this.store("none"), data);
+    assertArrayEquals(data, stored);
+  }
+
+  @Test
+  public void testUncompressedForgedHeader()
+    throws Exception
+  {
+    final var data = text(10_000);
+    final var forged = new byte[]{
+      (byte) 0x89, 'W', 'B', 'B', '\r', '\n', 0x1a, '\n',
+      1, 8, 'i', 'd', 'e', 'n', 't', 'i', 't', 'y',
+    };
+    System.arraycopy(forged, 0, data, 0, forged.length);
+
+    final var stored = this.writeAndCheck(this.store("none"), data);
+    assertArrayEquals(data, stored);
+  }
+
+  @Test
+  public void testAbandonedCompressingWriter()
+    throws Exception
+  {
+    final var data = text(300_000);
+    final var store = this.store("deflate");
+    try (var writer = store.open(ID)) {
+      writer.output().write(data);
+    }
+
+    assertFalse(Files.exists(LAYOUT.fileOf(this.directory, ID)));
+    this.writeAndCheck(store, data);
+  }
+
+  @Test
+  public void testUnknownCodec()
+  {
+    assertThrows(IllegalArgumentException.class, () -> this.store("zork"));
+  }
+}
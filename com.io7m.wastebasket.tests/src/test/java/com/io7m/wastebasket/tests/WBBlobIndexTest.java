@@ -0,0 +1,427 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBBlobDurability;
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobMetadata;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreKind;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.vanilla.WBBlobIndex;
+import com.io7m.wastebasket.vanilla.WBBlobIndexRebuild;
+import com.io7m.wastebasket.vanilla.WBBlobStorePacked;
+import com.io7m.wastebasket.vanilla.WBBlobStores;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBBlobIndexTest
+{
+  private static final OffsetDateTime TIME =
+    OffsetDateTime.of(2026, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+
+  private Path directory;
+  private Path file;
+
+  @BeforeEach
+  public void testSetup()
+    throws Exception
+  {
+    this.directory = TestDirectories.temporaryDirectory();
+    this.file = this.directory.resolve("index.wbi");
+  }
+
+  private static WBBlobID idOf(
+    final int index)
+  {
+    return WBBlobID.of(String.format("%032x", Integer.valueOf(index)));
+  }
+
+  private static byte[] dataOf(
+    final int index)
+  {
+    return ("blob " + index).repeat(index + 1).getBytes();
+  }
+
+  private static String sha256(
+    final byte[] data)
+    throws Exception
+  {
+    return HexFormat.of().formatHex(
+      MessageDigest.getInstance("SHA-256").digest(data));
+  }
+
+  private static WBBlobMetadata metadata(
+    final int index,
+    final String user,
+    final long minutes)
+  {
+    return WBBlobMetadata.builder()
+      .setId(idOf(index))
+      .setSize(index)
+      .setSha256("%064x".formatted(Integer.valueOf(index)))
+      .setUser(user)
+      .setRemoteAddress("10.0.0." + index)
+      .setTime(TIME.plusMinutes(minutes))
+      .setLocation("/data/" + index)
+      .build();
+  }
+
+  private static void write(
+    final WBBlobStoreType store,
+    final int index)
+    throws Exception
+  {
+    try (var writer = store.open(idOf(index))) {
+      writer.write(ByteBuffer.wrap(dataOf(index)));
+      writer.commit();
+    }
+  }
+
+  private void rebuild(
+    final WBBlobStoreConfiguration configuration)
+    throws Exception
+  {
+    final var rebuild = WBBlobIndexRebuild.create(configuration, this.file, 4);
+    rebuild.run();
+    assertEquals(0L, rebuild.failed());
+  }
+
+  private void checkRebuilt(
+    final int count)
+    throws Exception
+  {
+    try (var index = WBBlobIndex.open(this.file, WBBlobDurability.NONE)) {
+      assertEquals(count, index.size());
+      for (int i = 0; i < count; ++i) {
+        final var metadata = index.find(idOf(i)).orElseThrow();
+        assertEquals(dataOf(i).length, metadata.size());
+        assertEquals(sha256(dataOf(i)), metadata.sha256());
+        assertEquals("", metadata.user());
+      }
+    }
+  }
+
+  @Test
+  public void testAddFindReopen()
+    throws Exception
+  {
+    try (var index = WBBlobIndex.open(this.file, WBBlobDurability.DATA)) {
+      index.add(metadata(0, "alice", 0L));
+      index.add(metadata(1, "bob", 1L));
+      index.add(metadata(2, "alice", 2L));
+      index.add(metadata(3, "alice", 3L));
+
+      assertEquals(4L, index.size());
+      assertEquals(Optional.of(metadata(1, "bob", 1L)), index.find(idOf(1)));
+      assertEquals(Optional.empty(), index.find(idOf(4)));
+    }
+
+    try (var index = WBBlobIndex.open(this.file, WBBlobDurability.NONE)) {
+      assertEquals(4L, index.size());
+      assertEquals(
+        List.of(metadata(2, "alice", 2L), metadata(3, "alice", 3L)),
+        index.writtenBy("alice", TIME.plusMinutes(2L)));
+      assertEquals(List.of(), index.writtenBy("carol", TIME));
+
+      index.add(metadata(2, "bob", 4L));
+      assertEquals(
+        List.of(metadata(0, "alice", 0L), metadata(3, "alice", 3L)),
+        index.writtenBy("alice", TIME));
+      assertEquals(
+        List.of(metadata(1, "bob", 1L), metadata(2, "bob", 4L)),
+        index.writtenBy("bob", TIME));
+    }
+  }
+
+  @Test
+  public void testConcurrentChanges()
+    throws Exception
+  {
+    final var threads = new ArrayList<Thread>();
+    final var failures = new ArrayList<Exception>();
+
+    try (var index = WBBlobIndex.open(this.file, WBBlobDurability.DATA)) {
+      for (int thread = 0; thread < 8; ++thread) {
+        final var base = thread * 25;
+        threads.add(Thread.ofPlatform().start(() -> {
+          try {
+            for (int i = base; i < base + 25; ++i) {
+              index.add(metadata(i, "alice", i));
+              if (i % 5 == 0) {
+                assertTrue(index.remove(metadata(i, "alice", i)));
+                assertFalse(index.remove(metadata(i, "alice", i)));
+              }
+            }
+          } catch (final Exception e) {
+            synchronized (failures) {
+              failures.add(e);
+            }
+          }
+        }));
+      }
+      for (final var thread : threads) {
+        thread.join();
+      }
+      assertEquals(List.of(), failures);
+      assertEquals(160L, index.size());
+    }
+
+    try (var index = WBBlobIndex.open(this.file, WBBlobDurability.NONE)) {
+      assertEquals(160L, index.size());
+      for (int i = 0; i < 200; ++i) {
+        assertEquals(i % 5 != 0, index.find(idOf(i)).isPresent());
+      }
+    }
+  }
+
+  @Test
+  public void testTornTail()
+    throws Exception
+  {
+    try (var index = WBBlobIndex.open(this.file, WBBlobDurability.NONE)) {
+      index.add(metadata(0, "alice", 0L));
+      index.add(metadata(1, "alice", 1L));
+    }
+
+    final var size = Files.size(this.file);
+    Files.write(this.file, new byte[]{0, 0, 0, 90, 0, 1, 2}, APPEND);
+
+    try (var index = WBBlobIndex.open(this.file, WBBlobDurability.NONE)) {
+      assertEquals(size, Files.size(this.file));
+      assertEquals(2L, index.size());
+      index.add(metadata(2, "alice", 2L));
+    }
+
+    final var bytes = Files.readAllBytes(this.file);
+    bytes[bytes.length - 1] ^= 1;
+    Files.write(this.file, bytes);
+
+    try (var index = WBBlobIndex.open(this.file, WBBlobDurability.NONE)) {
+      assertEquals(size, Files.size(this.file));
+      assertEquals(2L, index.size());
+    }
+  }
+
+  @Test
+  public void testCompaction()
+    throws Exception
+  {
+    final long size;
+    try (var index = WBBlobIndex.open(this.file, WBBlobDurability.DATA)) {
+      for (int i = 0; i < 100; ++i) {
+        index.add(metadata(i, "alice", i));
+      }
+      size = Files.size(this.file);
+
+      for (int k = 0; k < 3000; ++k) {
+        final var current = index.find(idOf(k % 50)).orElseThrow();
+        if (k % 3 == 0) {
+          assertTrue(index.remove(current));
+        }
+        index.add(metadata(k % 50, "bob", 100L + k));
+      }
+
+      assertEquals(100L, index.size());
+      assertTrue(Files.size(this.file) < size * 20L);
+    }
+
+    assertFalse(
+      Files.exists(this.directory.resolve("index.wbi.tmp")));
+
+    try (var index = WBBlobIndex.open(this.file, WBBlobDurability.NONE)) {
+      assertEquals(100L, index.size());
+      for (int i = 0; i < 100; ++i) {
+        final var metadata = index.find(idOf(i)).orElseThrow();
+        assertEquals(i < 50 ? "bob" : "alice", metadata.user());
+      }
+      assertEquals(50L, index.writtenBy("bob", TIME).size());
+      assertEquals(50L, index.writtenBy("alice", TIME).size());
+    }
+  }
+
+  @Test
+  public void testNotAnIndex()
+    throws Exception
+  {
+    Files.writeString(this.file, "not an index at all");
+    assertThrows(
+      IOException.class,
+      () -> WBBlobIndex.open(this.file, WBBlobDurability.NONE));
+  }
+
+  @Test
+  public void testRebuildKeepsUsers()
+    throws Exception
+  {
+    final var data = this.directory.resolve("data");
+    final var configuration =
+      WBBlobStoreConfiguration.builder()
+        .setDirectory(data)
+        .setCompression("deflate")
+        .build();
+    final var store = WBBlobStores.create(configuration);
+    for (int i = 0; i < 20; ++i) {
+      write(store, i);
+    }
+
+    try (var index = WBBlobIndex.open(this.file, WBBlobDurability.NONE)) {
+      index.add(
+        WBBlobMetadata.builder()
+          .from(metadata(3, "alice", 0L))
+          .setSize(dataOf(3).length)
+          .setSha256(sha256(dataOf(3)))
+          .build());
+      index.add(metadata(99, "alice", 1L));
+    }
+
+    this.rebuild(configuration);
+
+    try (var index = WBBlobIndex.open(this.file, WBBlobDurability.NONE)) {
+      assertEquals(20L, index.size());
+      assertEquals(Optional.empty(), index.find(idOf(99)));
+
+      final var kept = index.find(idOf(3)).orElseThrow();
+      assertEquals("alice", kept.user());
+      assertEquals(TIME, kept.time());
+
+      for (int i = 0; i < 20; ++i) {
+        final var metadata = index.find(idOf(i)).orElseThrow();
+        assertEquals(dataOf(i).length, metadata.size());
+        assertEquals(sha256(dataOf(i)), metadata.sha256());
+        assertTrue(Files.isRegularFile(Path.of(metadata.location())));
+      }
+    }
+  }
+
+  @Test
+  public void testRebuildDeduplicating()
+    throws Exception
+  {
+    final var configuration =
+      WBBlobStoreConfiguration.builder()
+        .setDirectory(this.directory.resolve("data"))
+        .setKind(WBBlobStoreKind.DEDUPLICATING)
+        .build();
+    final var store = WBBlobStores.create(configuration);
+    for (int i = 0; i < 10; ++i) {
+      write(store, i);
+    }
+
+    this.rebuild(configuration);
+    this.checkRebuilt(10);
+  }
+
+  @Test
+  public void testRebuildPacked()
+    throws Exception
+  {
+    final var configuration =
+      WBBlobStoreConfiguration.builder()
+        .setDirectory(this.directory.resolve("data"))
+        .setKind(WBBlobStoreKind.PACKED)
+        .setPackThreshold(64)
+        .setPackCompactionInterval(Duration.ZERO)
+        .build();
+    final var store = WBBlobStores.create(configuration);
+    for (int i = 0; i < 10; ++i) {
+      write(store, i);
+    }
+
+    this.rebuild(configuration);
+    this.checkRebuilt(10);
+  }
+
+  @Test
+  public void testPackedLocationSurvivesCompaction()
+    throws Exception
+  {
+    final var configuration =
+      WBBlobStoreConfiguration.builder()
+        .setDirectory(this.directory.resolve("data"))
+        .setKind(WBBlobStoreKind.PACKED)
+        .setPackThreshold(1024)
+        .setPackSegmentSize(4096L)
+        .setPackCompactionRate(Long.MAX_VALUE)
+        .setPackCompactionInterval(Duration.ZERO)
+        .build();
+
+    String location = null;
+    try (var store = WBBlobStorePacked.create(configuration)) {
+      for (int i = 0; i < 40; ++i) {
+        final var data = dataOf(i);
+        try (var writer = store.open(idOf(i), data.length)) {
+          writer.write(ByteBuffer.wrap(data));
+          writer.commit();
+          if (i == 0) {
+            location = writer.location();
+          }
+        }
+      }
+      for (int i = 1; i < 40; ++i) {
+        store.delete(idOf(i));
+      }
+      assertTrue(store.compact() > 0L);
+    }
+
+    this.rebuild(configuration);
+    try (var index = WBBlobIndex.open(this.file, WBBlobDurability.NONE)) {
+      assertEquals(location, index.find(idOf(0)).orElseThrow().location());
+    }
+  }
+
+  @Test
+  public void testRebuildMultiVolume()
+    throws Exception
+  {
+    final var configuration =
+      WBBlobStoreConfiguration.builder()
+        .setDirectory(this.directory.resolve("data0"))
+        .setVolumes(List.of(
+          this.directory.resolve("data1"),
+          this.directory.resolve("data2")))
+        .setVolumeReserve(0L)
+        .build();
+    final var store = WBBlobStores.create(configuration);
+    for (int i = 0; i < 30; ++i) {
+      write(store, i);
+    }
+
+    this.rebuild(configuration);
+    this.checkRebuilt(30);
+  }
+}
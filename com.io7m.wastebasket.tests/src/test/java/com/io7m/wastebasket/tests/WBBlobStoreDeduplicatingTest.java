@@ -0,0 +1,154 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreKind;
+import com.io7m.wastebasket.vanilla.WBBlobStoreDeduplicating;
+import com.io7m.wastebasket.vanilla.WBBlobStoreLayout;
+import com.io7m.wastebasket.vanilla.WBBlobStores;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBBlobStoreDeduplicatingTest
+{
+  private static final WBBlobID ID0 =
+    WBBlobID.of("00000000000000000000000000000000");
+  private static final WBBlobID ID1 =
+    WBBlobID.of("11111111111111111111111111111111");
+  private static final WBBlobID ID2 =
+    WBBlobID.of("22222222222222222222222222222222");
+
+  private static final WBBlobStoreLayout LAYOUT =
+    WBBlobStoreLayout.sharded(2);
+
+  private Path directory;
+  private WBBlobStoreDeduplicating store;
+
+  @BeforeEach
+  public void testSetup()
+    throws Exception
+  {
+    this.directory = TestDirectories.temporaryDirectory();
+    this.store = (WBBlobStoreDeduplicating) WBBlobStores.create(
+      WBBlobStoreConfiguration.builder()
+        .setDirectory(this.directory)
+        .setKind(WBBlobStoreKind.DEDUPLICATING)
+        .build());
+  }
+
+  private byte[] write(
+    final WBBlobID id,
+    final String text)
+    throws Exception
+  {
+    try (var writer = this.store.open(id)) {
+      writer.output().write(text.getBytes(StandardCharsets.UTF_8));
+      writer.commit();
+      return writer.digest();
+    }
+  }
+
+  private static byte[] sha256(
+    final String text)
+    throws Exception
+  {
+    return MessageDigest.getInstance("SHA-256")
+      .digest(text.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testIdenticalShared()
+    throws Exception
+  {
+    this.write(ID0, "Hello");
+    this.write(ID1, "Hello");
+    this.write(ID2, "Goodbye");
+
+    final var file0 = LAYOUT.fileOf(this.directory, ID0);
+    final var file1 = LAYOUT.fileOf(this.directory, ID1);
+    final var file2 = LAYOUT.fileOf(this.directory, ID2);
+    assertEquals("Hello", Files.readString(file0));
+    assertEquals("Hello", Files.readString(file1));
+    assertEquals("Goodbye", Files.readString(file2));
+    assertTrue(Files.isSameFile(file0, file1));
+    assertFalse(Files.isSameFile(file0, file2));
+
+    assertEquals(1L, this.store.deduplicated());
+    assertEquals(2L, this.store.references(sha256("Hello")));
+    assertEquals(1L, this.store.references(sha256("Goodbye")));
+    assertEquals(0L, this.store.references(sha256("Other")));
+  }
+
+  @Test
+  public void testDeleteCollect()
+    throws Exception
+  {
+    this.write(ID0, "Hello");
+    this.write(ID1, "Hello");
+    this.write(ID2, "Goodbye");
+
+    this.store.delete(ID0);
+    assertEquals(0L, this.store.collectGarbage());
+    assertEquals(1L, this.store.references(sha256("Hello")));
+    assertEquals("Hello", Files.readString(LAYOUT.fileOf(this.directory, ID1)));
+
+    this.store.delete(ID1);
+    this.store.delete(ID2);
+    assertEquals(2L, this.store.collectGarbage());
+    assertEquals(0L, this.store.references(sha256("Hello")));
+    assertEquals(0L, this.store.references(sha256("Goodbye")));
+  }
+
+  @Test
+  public void testConflict()
+    throws Exception
+  {
+    this.write(ID0, "Hello");
+    assertThrows(FileAlreadyExistsException.class, () -> this.write(ID0, "Hello"));
+    assertThrows(FileAlreadyExistsException.class, () -> this.write(ID0, "Other"));
+    assertEquals(1L, this.store.references(sha256("Hello")));
+  }
+
+  @Test
+  public void testAbandoned()
+    throws Exception
+  {
+    try (var writer = this.store.open(ID0)) {
+      writer.output().write(1);
+    }
+
+    assertFalse(Files.exists(LAYOUT.fileOf(this.directory, ID0)));
+    try (var files = Files.list(this.directory.resolve("content"))) {
+      assertEquals(0L, files.count());
+    }
+    this.write(ID0, "Hello");
+  }
+}
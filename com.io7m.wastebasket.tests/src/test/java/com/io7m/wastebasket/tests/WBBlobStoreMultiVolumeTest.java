@@ -0,0 +1,218 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobPlacement;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.api.WBBlobWriteMode;
+import com.io7m.wastebasket.vanilla.WBBlobStoreMultiVolume;
+import com.io7m.wastebasket.vanilla.WBBlobStores;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBBlobStoreMultiVolumeTest
+{
+  private static final int COUNT = 64;
+
+  private Path volume0;
+  private Path volume1;
+  private Path volume2;
+
+  @BeforeEach
+  public void testSetup()
+    throws Exception
+  {
+    final var directory = TestDirectories.temporaryDirectory();
+    this.volume0 = directory.resolve("v0");
+    this.volume1 = directory.resolve("v1");
+    this.volume2 = directory.resolve("v2");
+  }
+
+  private WBBlobStoreMultiVolume create(
+    final WBBlobPlacement placement,
+    final long reserve,
+    final Path... volumes)
+    throws IOException
+  {
+    return (WBBlobStoreMultiVolume) WBBlobStores.create(
+      WBBlobStoreConfiguration.builder()
+        .setDirectory(this.volume0)
+        .setVolumes(List.of(volumes))
+        .setPlacement(placement)
+        .setVolumeReserve(reserve)
+        .build());
+  }
+
+  private static WBBlobID idOf(
+    final int index)
+  {
+    return WBBlobID.of(String.format("%032x", Integer.valueOf(index)));
+  }
+
+  private static void write(
+    final WBBlobStoreType store,
+    final WBBlobID id)
+    throws Exception
+  {
+    try (var writer = store.open(id, 32L)) {
+      writer.output().write(id.value().getBytes(StandardCharsets.UTF_8));
+      writer.commit();
+    }
+  }
+
+  private static Path volumeOf(
+    final WBBlobStoreMultiVolume store,
+    final WBBlobID id,
+    final Path... volumes)
+  {
+    final var file = store.find(id).orElseThrow();
+    for (final var volume : volumes) {
+      if (file.startsWith(volume)) {
+        return volume;
+      }
+    }
+    throw new AssertionError("Blob is not on any volume: " + file);
+  }
+
+  @Test
+  public void testHashSpreadsAndFinds()
+    throws Exception
+  {
+    final var store =
+      this.create(WBBlobPlacement.HASH, 0L, this.volume1, this.volume2);
+
+    final var used = new HashSet<Path>();
+    for (int index = 0; index < COUNT; ++index) {
+      final var id = idOf(index);
+      write(store, id);
+      final var file = store.find(id).orElseThrow();
+      assertEquals(id.value(), Files.readString(file));
+      used.add(volumeOf(store, id, this.volume0, this.volume1, this.volume2));
+    }
+    assertEquals(3, used.size());
+
+    final var reopened =
+      this.create(WBBlobPlacement.HASH, 0L, this.volume1, this.volume2);
+    for (int index = 0; index < COUNT; ++index) {
+      final var id = idOf(index);
+      assertEquals(store.find(id), reopened.find(id));
+      assertThrows(FileAlreadyExistsException.class, () -> write(reopened, id));
+    }
+    assertTrue(reopened.find(idOf(COUNT)).isEmpty());
+  }
+
+  @Test
+  public void testReservedUntilClosed()
+    throws Exception
+  {
+    final var store =
+      WBBlobStores.create(
+        WBBlobStoreConfiguration.builder()
+          .setDirectory(this.volume0)
+          .setVolumes(List.of(this.volume1, this.volume2))
+          .setVolumeReserve(0L)
+          .setWriteMode(WBBlobWriteMode.ATOMIC)
+          .build());
+    final var id = idOf(0);
+
+    try (var writer = store.open(id)) {
+      assertThrows(FileAlreadyExistsException.class, () -> store.open(id));
+      writer.output().write(1);
+    }
+
+    write(store, id);
+    assertThrows(FileAlreadyExistsException.class, () -> write(store, id));
+  }
+
+  @Test
+  public void testAddVolume()
+    throws Exception
+  {
+    final var store =
+      this.create(WBBlobPlacement.HASH, 0L, this.volume1);
+    for (int index = 0; index < COUNT; ++index) {
+      write(store, idOf(index));
+    }
+
+    final var grown =
+      this.create(WBBlobPlacement.HASH, 0L, this.volume1, this.volume2);
+    for (int index = 0; index < COUNT; ++index) {
+      final var id = idOf(index);
+      assertEquals(store.find(id), grown.find(id));
+    }
+  }
+
+  @Test
+  public void testFreeSpace()
+    throws Exception
+  {
+    final var store =
+      this.create(WBBlobPlacement.FREE_SPACE, 0L, this.volume1, this.volume2);
+
+    final var used = new HashSet<Path>();
+    for (int index = 0; index < COUNT; ++index) {
+      final var id = idOf(index);
+      write(store, id);
+      used.add(volumeOf(store, id, this.volume0, this.volume1, this.volume2));
+    }
+    assertEquals(3, used.size());
+  }
+
+  @Test
+  public void testFailedVolumeSkipped()
+    throws Exception
+  {
+    final var store =
+      this.create(WBBlobPlacement.HASH, 0L, this.volume1);
+
+    Files.delete(this.volume1);
+    Files.writeString(this.volume1, "not a directory");
+
+    for (int index = 0; index < COUNT; ++index) {
+      final var id = idOf(index);
+      write(store, id);
+      assertEquals(this.volume0, volumeOf(store, id, this.volume0));
+    }
+    assertEquals(List.of(this.volume0), store.healthyVolumes());
+  }
+
+  @Test
+  public void testFullVolumes()
+    throws Exception
+  {
+    final var store =
+      this.create(WBBlobPlacement.HASH, Long.MAX_VALUE / 4L, this.volume1);
+
+    assertThrows(IOException.class, () -> write(store, idOf(0)));
+    assertEquals(List.of(), store.healthyVolumes());
+  }
+}
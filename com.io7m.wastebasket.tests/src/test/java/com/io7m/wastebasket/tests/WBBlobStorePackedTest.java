@@ -0,0 +1,331 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBBlobDurability;
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreKind;
+import com.io7m.wastebasket.vanilla.WBBlobStoreLayout;
+import com.io7m.wastebasket.vanilla.WBBlobStorePacked;
+import com.io7m.wastebasket.vanilla.WBBlobStores;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBBlobStorePackedTest
+{
+  private static final WBBlobStoreLayout LAYOUT =
+    WBBlobStoreLayout.sharded(2);
+  private static final int THRESHOLD = 1024;
+
+  private Path directory;
+
+  @BeforeEach
+  public void testSetup()
+    throws Exception
+  {
+    this.directory = TestDirectories.temporaryDirectory();
+  }
+
+  private WBBlobStorePacked create(
+    final long segmentSize,
+    final WBBlobDurability durability)
+    throws IOException
+  {
+    return (WBBlobStorePacked) WBBlobStores.create(
+      WBBlobStoreConfiguration.builder()
+        .setDirectory(this.directory)
+        .setKind(WBBlobStoreKind.PACKED)
+        .setDurability(durability)
+        .setPackThreshold(THRESHOLD)
+        .setPackSegmentSize(segmentSize)
+        .setPackCompactionRate(Long.MAX_VALUE)
+        .setPackCompactionInterval(Duration.ZERO)
+        .build());
+  }
+
+  private WBBlobStorePacked create()
+    throws IOException
+  {
+    return this.create(1_048_576L, WBBlobDurability.NONE);
+  }
+
+  private static WBBlobID idOf(
+    final int index)
+  {
+    return WBBlobID.of(String.format("%032x", Integer.valueOf(index)));
+  }
+
+  private static byte[] dataOf(
+    final int index,
+    final int size)
+  {
+    final var data = new byte[size];
+    for (int i = 0; i < size; ++i) {
+      data[i] = (byte) (index + i);
+    }
+    return data;
+  }
+
+  private static byte[] write(
+    final WBBlobStorePacked store,
+    final WBBlobID id,
+    final byte[] data,
+    final long expectedSize)
+    throws Exception
+  {
+    try (var writer = store.open(id, expectedSize)) {
+      writer.write(ByteBuffer.wrap(data));
+      writer.commit();
+      return writer.digest();
+    }
+  }
+
+  @Test
+  public void testSmallPackedLargeStandalone()
+    throws Exception
+  {
+    final var store = this.create();
+    final var small = dataOf(0, 100);
+    final var large = dataOf(1, THRESHOLD * 4);
+
+    assertArrayEquals(
+      MessageDigest.getInstance("SHA-256").digest(small),
+      write(store, idOf(0), small, small.length));
+    assertArrayEquals(
+      MessageDigest.getInstance("SHA-256").digest(large),
+      write(store, idOf(1), large, large.length));
+
+    assertEquals(1L, store.packed());
+    assertFalse(Files.exists(LAYOUT.fileOf(this.directory, idOf(0))));
+    assertTrue(Files.isRegularFile(LAYOUT.fileOf(this.directory, idOf(1))));
+    assertArrayEquals(small, store.read(idOf(0)).orElseThrow());
+    assertArrayEquals(large, store.read(idOf(1)).orElseThrow());
+    assertEquals(Optional.empty(), store.read(idOf(2)));
+  }
+
+  @Test
+  public void testSpill()
+    throws Exception
+  {
+    final var store = this.create();
+    final var data = dataOf(0, THRESHOLD * 2);
+
+    final byte[] digest;
+    try (var writer = store.open(idOf(0), 10L)) {
+      writer.output().write(data, 0, 10);
+      writer.write(ByteBuffer.wrap(data, 10, data.length - 10));
+      writer.commit();
+      digest = writer.digest();
+    }
+
+    assertArrayEquals(
+      MessageDigest.getInstance("SHA-256").digest(data),
+      digest);
+    assertEquals(0L, store.packed());
+    assertArrayEquals(
+      data,
+      Files.readAllBytes(LAYOUT.fileOf(this.directory, idOf(0))));
+
+    write(store, idOf(1), dataOf(1, 10), -1L);
+    assertEquals(0L, store.packed());
+    assertTrue(Files.isRegularFile(LAYOUT.fileOf(this.directory, idOf(1))));
+  }
+
+  @Test
+  public void testConflicts()
+    throws Exception
+  {
+    final var store = this.create();
+    write(store, idOf(0), dataOf(0, 10), 10L);
+    write(store, idOf(1), dataOf(1, THRESHOLD), THRESHOLD);
+
+    assertThrows(
+      FileAlreadyExistsException.class,
+      () -> write(store, idOf(0), dataOf(0, 10), 10L));
+    assertThrows(
+      FileAlreadyExistsException.class,
+      () -> write(store, idOf(1), dataOf(1, 10), 10L));
+
+    try (var writer = store.open(idOf(2), 10L)) {
+      assertThrows(
+        FileAlreadyExistsException.class,
+        () -> store.open(idOf(2), 10L));
+      writer.output().write(1);
+    }
+
+    write(store, idOf(2), dataOf(2, 10), 10L);
+    assertArrayEquals(dataOf(2, 10), store.read(idOf(2)).orElseThrow());
+  }
+
+  @Test
+  public void testGroupCommitAndReload()
+    throws Exception
+  {
+    final var store = this.create(1_048_576L, WBBlobDurability.DATA);
+    final var count = 64;
+
+    try (var executor = Executors.newFixedThreadPool(16)) {
+      final var tasks = new ArrayList<Callable<byte[]>>();
+      for (int index = 0; index < count; ++index) {
+        final var i = index;
+        tasks.add(() -> write(store, idOf(i), dataOf(i, 100 + i), 100 + i));
+      }
+      for (final var future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    }
+
+    assertEquals(count, store.packed());
+    assertEquals(1, store.segmentCount());
+
+    final var reloaded = this.create(1_048_576L, WBBlobDurability.DATA);
+    assertEquals(count, reloaded.packed());
+    for (int index = 0; index < count; ++index) {
+      assertArrayEquals(
+        dataOf(index, 100 + index),
+        reloaded.read(idOf(index)).orElseThrow());
+    }
+  }
+
+  @Test
+  public void testDeleteAndCompact()
+    throws Exception
+  {
+    final var store = this.create(4096L, WBBlobDurability.NONE);
+    final var count = 40;
+    for (int index = 0; index < count; ++index) {
+      write(store, idOf(index), dataOf(index, 200), 200L);
+    }
+
+    final var segmentsBefore = store.segmentCount();
+    assertTrue(segmentsBefore > 1);
+
+    for (int index = 0; index < count; ++index) {
+      if (index % 4 != 0) {
+        store.delete(idOf(index));
+      }
+    }
+
+    assertTrue(store.compact() > 0L);
+    assertTrue(store.segmentCount() < segmentsBefore);
+
+    for (final var current : new WBBlobStorePacked[]{
+      store,
+      this.create(4096L, WBBlobDurability.NONE),
+    }) {
+      assertEquals(count / 4, current.packed());
+      for (int index = 0; index < count; ++index) {
+        final var data = current.read(idOf(index));
+        if (index % 4 == 0) {
+          assertArrayEquals(dataOf(index, 200), data.orElseThrow());
+        } else {
+          assertEquals(Optional.empty(), data);
+        }
+      }
+    }
+
+    write(store, idOf(1), dataOf(100, 50), 50L);
+    assertArrayEquals(dataOf(100, 50), store.read(idOf(1)).orElseThrow());
+  }
+
+  @Test
+  public void testTornTail()
+    throws Exception
+  {
+    final var store = this.create();
+    for (int index = 0; index < 4; ++index) {
+      write(store, idOf(index), dataOf(index, 100), 100L);
+    }
+
+    final Path segment;
+    try (var files = Files.list(this.directory.resolve("segments"))) {
+      segment = files.findFirst().orElseThrow();
+    }
+    final var size = Files.size(segment);
+    Files.write(segment, new byte[]{0x57, 0x42, 0x50, 0x52, 0, 0, 32}, APPEND);
+
+    final var reloaded = this.create();
+    assertEquals(size, Files.size(segment));
+    assertEquals(4L, reloaded.packed());
+
+    write(reloaded, idOf(4), dataOf(4, 100), 100L);
+    final var again = this.create();
+    for (int index = 0; index < 5; ++index) {
+      assertArrayEquals(
+        dataOf(index, 100),
+        again.read(idOf(index)).orElseThrow());
+    }
+  }
+
+  @Test
+  public void testClose()
+    throws Exception
+  {
+    final var store =
+      (WBBlobStorePacked) WBBlobStores.create(
+        WBBlobStoreConfiguration.builder()
+          .setDirectory(this.directory)
+          .setKind(WBBlobStoreKind.PACKED)
+          .setPackThreshold(THRESHOLD)
+          .setPackCompactionInterval(Duration.ofMillis(1L))
+          .build());
+
+    write(store, idOf(0), dataOf(0, 100), 100L);
+    store.close();
+    assertThrows(IOException.class, () -> store.read(idOf(0)));
+
+    try (var reloaded = this.create()) {
+      assertArrayEquals(
+        dataOf(0, 100),
+        reloaded.read(idOf(0)).orElseThrow());
+    }
+  }
+
+  @Test
+  public void testVolumesRejected()
+  {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> WBBlobStoreConfiguration.builder()
+        .setDirectory(this.directory)
+        .setVolumes(List.of(this.directory.resolve("other")))
+        .setKind(WBBlobStoreKind.PACKED)
+        .build());
+  }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.api.WBBlobWriteMode;
+import com.io7m.wastebasket.vanilla.WBBlobCodecs;
+import com.io7m.wastebasket.vanilla.WBBlobStore;
+import com.io7m.wastebasket.vanilla.WBBlobStoreLayout;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public final class WBBlobStorePipelinedTest
+{
+  private static final WBBlobID ID =
+    WBBlobID.of("0123456789abcdef0123456789abcdef");
+
+  private static final WBBlobStoreLayout LAYOUT =
+    WBBlobStoreLayout.sharded(2);
+
+  private Path directory;
+
+  @BeforeEach
+  public void testSetup()
+    throws Exception
+  {
+    this.directory = TestDirectories.temporaryDirectory();
+  }
+
+  private WBBlobStoreType store(
+    final WBBlobWriteMode mode,
+    final String compression)
+    throws Exception
+  {
+    return WBBlobStore.create(
+      WBBlobStoreConfiguration.builder()
+        .setDirectory(this.directory)
+        .setWriteMode(mode)
+        .setCompression(compression)
+        .setTransferBufferSize(4096)
+        .setTransferBufferCount(2)
+        .setPipelined(true)
+        .build());
+  }
+
+  private static byte[] data(
+    final int size)
+  {
+    final var data = new byte[size];
+    new Random(0L).nextBytes(data);
+    return data;
+  }
+
+  /**
+   * Write {@code data} in uneven chunks, mixing buffers, streams, and
+   * transfers, and check the stored file and the digest.
+   */
+
+  private void writeAndCheck(
+    final WBBlobStoreType store,
+    final byte[] data)
+    throws Exception
+  {
+    final byte[] digest;
+    try (var writer = store.open(ID, data.length)) {
+      final var quarter = data.length / 4;
+      final var random = new Random(1L);
+      int offset = 0;
+      while (offset < quarter * 2) {
+        final var count = Math.min(quarter * 2 - offset, random.nextInt(10000));
+        final var buffer = ByteBuffer.allocateDirect(count);
+        buffer.put(data, offset, count).flip();
+        writer.write(buffer);
+        offset += count;
+      }
+
+      writer.output().write(data, offset, quarter);
+      offset += quarter;
+
+      writer.transferFrom(
+        new ByteArrayInputStream(data, offset, data.length - offset));
+      writer.commit();
+      digest = writer.digest();
+    }
+
+    assertArrayEquals(
+      MessageDigest.getInstance("SHA-256").digest(data),
+      digest);
+
+    try (var input =
+           WBBlobCodecs.openDecoded(LAYOUT.fileOf(this.directory, ID))) {
+      assertArrayEquals(data, input.readAllBytes());
+    }
+  }
+
+  @Test
+  public void testDirect()
+    throws Exception
+  {
+    this.writeAndCheck(
+      this.store(WBBlobWriteMode.DIRECT, "none"),
+      data(1_000_003));
+  }
+
+  @Test
+  public void testAtomic()
+    throws Exception
+  {
+    this.writeAndCheck(
+      this.store(WBBlobWriteMode.ATOMIC, "none"),
+      data(1_000_003));
+  }
+
+  @Test
+  public void testCompressed()
+    throws Exception
+  {
+    this.writeAndCheck(
+      this.store(WBBlobWriteMode.ATOMIC, "deflate"),
+      data(1_000_003));
+  }
+
+  @Test
+  public void testEmpty()
+    throws Exception
+  {
+    this.writeAndCheck(
+      this.store(WBBlobWriteMode.DIRECT, "none"),
+      new byte[0]);
+  }
+
+  @Test
+  public void testAbandoned()
+    throws Exception
+  {
+    final var store = this.store(WBBlobWriteMode.ATOMIC, "none");
+    final var data = data(1_000_003);
+
+    try (var writer = store.open(ID)) {
+      for (int i = 0; i < 10; ++i) {
+        writer.write(ByteBuffer.wrap(data));
+      }
+    }
+
+    assertFalse(Files.exists(LAYOUT.fileOf(this.directory, ID)));
+    this.writeAndCheck(store, data);
+  }
+}
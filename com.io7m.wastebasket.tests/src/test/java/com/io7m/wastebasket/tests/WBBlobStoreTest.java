@@ -0,0 +1,481 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobDurability;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.api.WBBlobWriteMode;
+import com.io7m.wastebasket.vanilla.WBBlobStore;
+import com.io7m.wastebasket.vanilla.WBBlobStoreLayout;
+import com.io7m.wastebasket.vanilla.WBBlobStoreMigration;
+import com.io7m.wastebasket.vanilla.WBBufferPool;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBBlobStoreTest
+{
+  private static final WBBlobID ID =
+    WBBlobID.of("0123456789abcdef0123456789abcdef");
+
+  private Path directory;
+
+  @BeforeEach
+  public void testSetup()
+    throws Exception
+  {
+    this.directory = TestDirectories.temporaryDirectory();
+  }
+
+  private static void write(
+    final WBBlobStoreType store,
+    final WBBlobID id)
+    throws Exception
+  {
+    try (var writer = store.open(id)) {
+      writer.output().write(id.value().getBytes(StandardCharsets.UTF_8));
+      writer.commit();
+    }
+  }
+
+  private WBBlobStoreType sharded(
+    final WBBlobWriteMode mode,
+    final WBBlobDurability durability)
+    throws Exception
+  {
+    return WBBlobStore.create(
+      WBBlobStoreConfiguration.builder()
+        .setDirectory(this.directory)
+        .setShardLevels(2)
+        .setWriteMode(mode)
+        .setDurability(durability)
+        .build());
+  }
+
+  @Test
+  public void testLayoutFlat()
+  {
+    final var layout = WBBlobStoreLayout.flat();
+    assertTrue(layout.isFlat());
+    assertEquals(
+      this.directory.resolve(ID.value()),
+      layout.fileOf(this.directory, ID));
+  }
+
+  @Test
+  public void testLayoutSharded()
+  {
+    final var layout = WBBlobStoreLayout.sharded(2);
+    assertFalse(layout.isFlat());
+    assertEquals(
+      this.directory.resolve("01").resolve("23").resolve(ID.value()),
+      layout.fileOf(this.directory, ID));
+  }
+
+  @Test
+  public void testLayoutInvalid()
+  {
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> WBBlobStoreLayout.sharded(-1));
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> WBBlobStoreLayout.sharded(WBBlobStoreLayout.MAXIMUM_LEVELS + 1));
+  }
+
+  @Test
+  public void testShardedWrite()
+    throws Exception
+  {
+    final var layout = WBBlobStoreLayout.sharded(2);
+    final var store = this.sharded(WBBlobWriteMode.DIRECT, WBBlobDurability.NONE);
+    write(store, ID);
+
+    final var file = layout.fileOf(this.directory, ID);
+    assertEquals(ID.value(), Files.readString(file));
+    assertThrows(FileAlreadyExistsException.class, () -> write(store, ID));
+  }
+
+  @Test
+  public void testShardedDirectoryRemoved()
+    throws Exception
+  {
+    final var layout = WBBlobStoreLayout.sharded(2);
+    final var store = this.sharded(WBBlobWriteMode.DIRECT, WBBlobDurability.NONE);
+    final var other = WBBlobID.of("0123ffffffffffffffffffffffffffff");
+    write(store, ID);
+
+    final var file = layout.fileOf(this.directory, ID);
+    Files.delete(file);
+    Files.delete(file.getParent());
+
+    write(store, other);
+    assertTrue(Files.isRegularFile(layout.fileOf(this.directory, other)));
+  }
+
+  @Test
+  public void testShardedDirectoryRemovedFull()
+    throws Exception
+  {
+    final var layout = WBBlobStoreLayout.sharded(2);
+    final var store = this.sharded(WBBlobWriteMode.ATOMIC, WBBlobDurability.FULL);
+    final var other = WBBlobID.of("01ffffffffffffffffffffffffffffff");
+    write(store, ID);
+
+    final var file = layout.fileOf(this.directory, ID);
+    Files.delete(file);
+    Files.delete(file.getParent());
+    Files.delete(file.getParent().getParent());
+
+    write(store, other);
+    assertTrue(Files.isRegularFile(layout.fileOf(this.directory, other)));
+  }
+
+  @Test
+  public void testStaleTemporaryFilesDeleted()
+    throws Exception
+  {
+    final var layout = WBBlobStoreLayout.sharded(2);
+    write(this.sharded(WBBlobWriteMode.ATOMIC, WBBlobDurability.NONE), ID);
+
+    final var file = layout.fileOf(this.directory, ID);
+    final var staleShard =
+      file.resolveSibling(".ffffffffffffffffffffffffffffffff.1234.tmp");
+    final var staleRoot =
+      this.directory.resolve(".ffffffffffffffffffffffffffffffff.5678.tmp");
+    final var unrelated =
+      this.directory.resolve("notes.tmp");
+    Files.writeString(staleShard, "partial");
+    Files.writeString(staleRoot, "partial");
+    Files.writeString(unrelated, "kept");
+
+    final var store = this.sharded(WBBlobWriteMode.ATOMIC, WBBlobDurability.NONE);
+    assertFalse(Files.exists(staleShard));
+    assertFalse(Files.exists(staleRoot));
+    assertTrue(Files.exists(unrelated));
+    assertEquals(ID.value(), Files.readString(file));
+    assertThrows(FileAlreadyExistsException.class, () -> write(store, ID));
+  }
+
+  @Test
+  public void testShardedRejectsFlatExisting()
+    throws Exception
+  {
+    write(WBBlobStore.create(this.directory), ID);
+    assertTrue(WBBlobStore.containsFlatBlobs(this.directory));
+
+    final var store = this.sharded(WBBlobWriteMode.DIRECT, WBBlobDurability.NONE);
+    assertThrows(FileAlreadyExistsException.class, () -> write(store, ID));
+  }
+
+  @Test
+  public void testDirectAbandoned()
+    throws Exception
+  {
+    final var layout = WBBlobStoreLayout.sharded(2);
+    final var store = this.sharded(WBBlobWriteMode.DIRECT, WBBlobDurability.NONE);
+
+    try (var writer = store.open(ID)) {
+      writer.output().write(1);
+    }
+
+    assertTrue(Files.isRegularFile(layout.fileOf(this.directory, ID)));
+    assertThrows(FileAlreadyExistsException.class, () -> write(store, ID));
+  }
+
+  @Test
+  public void testAtomicAbandoned()
+    throws Exception
+  {
+    final var layout = WBBlobStoreLayout.sharded(2);
+    final var store = this.sharded(WBBlobWriteMode.ATOMIC, WBBlobDurability.NONE);
+
+    try (var writer = store.open(ID)) {
+      writer.output().write(1);
+    }
+
+    final var file = layout.fileOf(this.directory, ID);
+    assertFalse(Files.exists(file));
+    try (var files = Files.list(file.getParent())) {
+      assertEquals(0L, files.count());
+    }
+
+    write(store, ID);
+    assertEquals(ID.value(), Files.readString(file));
+  }
+
+  @Test
+  public void testAtomicConflict()
+    throws Exception
+  {
+    final var layout = WBBlobStoreLayout.sharded(2);
+    final var store = this.sharded(WBBlobWriteMode.ATOMIC, WBBlobDurability.FULL);
+
+    try (var first = store.open(ID)) {
+      try (var second = store.open(ID)) {
+        first.output().write(ID.value().getBytes(StandardCharsets.UTF_8));
+        first.commit();
+        second.output().write(2);
+        assertThrows(FileAlreadyExistsException.class, second::commit);
+      }
+    }
+
+    final var file = layout.fileOf(this.directory, ID);
+    assertEquals(ID.value(), Files.readString(file));
+    assertThrows(FileAlreadyExistsException.class, () -> write(store, ID));
+    try (var files = Files.list(file.getParent())) {
+      assertEquals(1L, files.count());
+    }
+  }
+
+  @Test
+  public void testDurabilities()
+    throws Exception
+  {
+    final var layout = WBBlobStoreLayout.sharded(2);
+    for (final var mode : WBBlobWriteMode.values()) {
+      for (final var durability : WBBlobDurability.values()) {
+        this.directory = TestDirectories.temporaryDirectory();
+        write(this.sharded(mode, durability), ID);
+        assertEquals(
+          ID.value(),
+          Files.readString(layout.fileOf(this.directory, ID)));
+      }
+    }
+  }
+
+  @Test
+  public void testTransferMixed()
+    throws Exception
+  {
+    final var layout = WBBlobStoreLayout.sharded(2);
+    final var store =
+      WBBlobStore.create(
+        WBBlobStoreConfiguration.builder()
+          .setDirectory(this.directory)
+          .setTransferBufferSize(7)
+          .setTransferBufferCount(1)
+          .build());
+
+    final var data = new byte[1000];
+    for (int index = 0; index < data.length; ++index) {
+      data[index] = (byte) index;
+    }
+
+    final byte[] digest;
+    try (var writer = store.open(ID)) {
+      writer.output().write(data, 0, 10);
+      writer.write(ByteBuffer.wrap(data, 10, 90));
+      assertEquals(
+        900L,
+        writer.transferFrom(new ByteArrayInputStream(data, 100, 900)));
+      writer.commit();
+      digest = writer.digest();
+    }
+
+    assertArrayEquals(
+      data,
+      Files.readAllBytes(layout.fileOf(this.directory, ID)));
+    assertArrayEquals(
+      MessageDigest.getInstance("SHA-256").digest(data),
+      digest);
+  }
+
+  @Test
+  public void testTransferShortReads()
+    throws Exception
+  {
+    final var layout = WBBlobStoreLayout.sharded(2);
+    final var store =
+      WBBlobStore.create(
+        WBBlobStoreConfiguration.builder()
+          .setDirectory(this.directory)
+          .setTransferBufferSize(4096)
+          .setTransferBufferCount(1)
+          .build());
+
+    final var data = new byte[100_000];
+    for (int index = 0; index < data.length; ++index) {
+      data[index] = (byte) (index * 31);
+    }
+
+    /*
+     * A stream that returns no more than a few bytes from each read.
+     */
+
+    final var input = new ByteArrayInputStream(data) {
+      @Override
+      public synchronized int read(
+        final byte[] b,
+        final int off,
+        final int len)
+      {
+        return super.read(b, off, Math.min(len, 3));
+      }
+    };
+
+    try (var writer = store.open(ID)) {
+      assertEquals((long) data.length, writer.transferFrom(input));
+      writer.commit();
+    }
+
+    assertArrayEquals(
+      data,
+      Files.readAllBytes(layout.fileOf(this.directory, ID)));
+  }
+
+  @Test
+  public void testPreallocate()
+    throws Exception
+  {
+    final var layout = WBBlobStoreLayout.sharded(2);
+    final var data = ID.value().getBytes(StandardCharsets.UTF_8);
+
+    for (final var mode : WBBlobWriteMode.values()) {
+      for (final var expected : new long[]{-1L, 0L, 1L, 32L, 4096L}) {
+        this.directory = TestDirectories.temporaryDirectory();
+        final var store =
+          WBBlobStore.create(
+            WBBlobStoreConfiguration.builder()
+              .setDirectory(this.directory)
+              .setWriteMode(mode)
+              .setPreallocate(true)
+              .build());
+
+        try (var writer = store.open(ID, expected)) {
+          writer.output().write(data);
+          writer.commit();
+        }
+
+        final var file = layout.fileOf(this.directory, ID);
+        assertEquals(data.length, Files.size(file));
+        assertArrayEquals(data, Files.readAllBytes(file));
+      }
+    }
+  }
+
+  @Test
+  public void testPreallocateAbandoned()
+    throws Exception
+  {
+    final var layout = WBBlobStoreLayout.sharded(2);
+    final var store =
+      WBBlobStore.create(
+        WBBlobStoreConfiguration.builder()
+          .setDirectory(this.directory)
+          .setPreallocate(true)
+          .build());
+
+    try (var writer = store.open(ID, 4096L)) {
+      writer.output().write(1);
+    }
+
+    assertEquals(1L, Files.size(layout.fileOf(this.directory, ID)));
+  }
+
+  @Test
+  public void testPreallocateExtends()
+    throws Exception
+  {
+    final var layout = WBBlobStoreLayout.sharded(2);
+    final var store =
+      WBBlobStore.create(
+        WBBlobStoreConfiguration.builder()
+          .setDirectory(this.directory)
+          .setPreallocate(true)
+          .build());
+
+    final var expected = 200_000L;
+    try (var writer = store.open(ID, expected)) {
+      final var file = layout.fileOf(this.directory, ID);
+      assertEquals(expected, Files.size(file));
+      assertArrayEquals(new byte[(int) expected], Files.readAllBytes(file));
+
+      final var data = new byte[(int) expected];
+      Arrays.fill(data, (byte) 'x');
+      writer.output().write(data);
+      writer.commit();
+      assertArrayEquals(data, Files.readAllBytes(file));
+    }
+  }
+
+  @Test
+  public void testBufferPool()
+  {
+    final var pool = WBBufferPool.create(16, 1);
+    final var first = pool.acquire();
+    final var second = pool.acquire();
+    assertTrue(first.isDirect());
+    assertFalse(second.isDirect());
+    assertEquals(16, second.capacity());
+
+    pool.release(first);
+    pool.release(second);
+    assertSame(first, pool.acquire());
+  }
+
+  @Test
+  public void testMigrate()
+    throws Exception
+  {
+    final var flat = WBBlobStore.create(this.directory);
+    for (int index = 0; index < 100; ++index) {
+      write(flat, WBBlobID.of("%032x".formatted(Integer.valueOf(index))));
+    }
+
+    final var layout = WBBlobStoreLayout.sharded(2);
+    final var migration =
+      WBBlobStoreMigration.create(this.directory, layout, 4);
+
+    migration.run();
+    assertEquals(100L, migration.moved());
+    assertEquals(0L, migration.failed());
+    assertFalse(WBBlobStore.containsFlatBlobs(this.directory));
+
+    for (int index = 0; index < 100; ++index) {
+      final var id = WBBlobID.of("%032x".formatted(Integer.valueOf(index)));
+      assertEquals(id.value(), Files.readString(layout.fileOf(this.directory, id)));
+    }
+
+    /*
+     * Running the migration again is harmless.
+     */
+
+    final var again =
+      WBBlobStoreMigration.create(this.directory, layout, 4);
+    again.run();
+    assertEquals(0L, again.moved());
+  }
+}
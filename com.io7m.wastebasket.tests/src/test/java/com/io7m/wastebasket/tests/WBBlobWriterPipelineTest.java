@@ -0,0 +1,123 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.vanilla.WBBlobWriterPipeline;
+import com.io7m.wastebasket.vanilla.WBBufferPool;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBBlobWriterPipelineTest
+{
+  private static final int BUFFER_SIZE = 16;
+  private static final int BUFFER_COUNT = 4;
+
+  @Test
+  public void testSmallWritesFillBuffers()
+    throws Exception
+  {
+    final var pool = WBBufferPool.create(BUFFER_SIZE, BUFFER_COUNT);
+    final var digest = MessageDigest.getInstance("SHA-256");
+    final var sizes = new ArrayList<Integer>();
+    final var output = new ByteArrayOutputStream();
+
+    final var pipeline =
+      new WBBlobWriterPipeline(pool, digest, buffer -> {
+        sizes.add(Integer.valueOf(buffer.remaining()));
+        final var bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        output.write(bytes);
+      });
+
+    final var data = new byte[300];
+    new Random(0L).nextBytes(data);
+    for (int offset = 0; offset < data.length; offset += 3) {
+      pipeline.submit(ByteBuffer.wrap(data, offset, 3));
+    }
+
+    final var statistics = pipeline.finish();
+    assertEquals(300L, statistics.bytes());
+    assertArrayEquals(data, output.toByteArray());
+    assertArrayEquals(
+      MessageDigest.getInstance("SHA-256").digest(data),
+      digest.digest());
+
+    final var expected = new ArrayList<Integer>();
+    for (int index = 0; index < 300 / BUFFER_SIZE; ++index) {
+      expected.add(Integer.valueOf(BUFFER_SIZE));
+    }
+    expected.add(Integer.valueOf(300 % BUFFER_SIZE));
+    assertEquals(expected, sizes);
+  }
+
+  @Test
+  public void testWriteFailure()
+    throws Exception
+  {
+    final var pool = WBBufferPool.create(BUFFER_SIZE, BUFFER_COUNT);
+    final var writes = new ArrayList<Integer>();
+
+    final var pipeline =
+      new WBBlobWriterPipeline(
+        pool,
+        MessageDigest.getInstance("SHA-256"),
+        buffer -> {
+          writes.add(Integer.valueOf(buffer.remaining()));
+          if (writes.size() == 2) {
+            throw new IOException("Disk on fire");
+          }
+          buffer.position(buffer.limit());
+        });
+
+    final var ex = assertThrows(IOException.class, () -> {
+      for (int index = 0; index < 100; ++index) {
+        pipeline.submit(ByteBuffer.allocate(BUFFER_SIZE));
+      }
+      pipeline.finish();
+    });
+    assertTrue(
+      ex.getMessage().contains("Disk on fire"),
+      "unexpected failure " + ex);
+
+    pipeline.abort();
+    assertEquals(2, writes.size());
+
+    /*
+     * Every buffer handed to the pipeline, including those discarded after
+     * the failure, must have been returned to the pool.
+     */
+
+    final var acquired = new ArrayList<ByteBuffer>();
+    for (int index = 0; index < BUFFER_COUNT; ++index) {
+      acquired.add(pool.acquire());
+    }
+    assertTrue(acquired.stream().allMatch(ByteBuffer::isDirect));
+    acquired.forEach(pool::release);
+  }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBBlobDurability;
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobMetadata;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreKind;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.api.WBRetentionConfiguration;
+import com.io7m.wastebasket.vanilla.WBBlobIndex;
+import com.io7m.wastebasket.vanilla.WBBlobStoreDeduplicating;
+import com.io7m.wastebasket.vanilla.WBBlobStoreLayout;
+import com.io7m.wastebasket.vanilla.WBBlobStorePacked;
+import com.io7m.wastebasket.vanilla.WBBlobStores;
+import com.io7m.wastebasket.vanilla.WBRetention;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBRetentionTest
+{
+  private static final WBBlobStoreLayout LAYOUT =
+    WBBlobStoreLayout.sharded(2);
+  private static final OffsetDateTime TIME =
+    OffsetDateTime.of(2026, 1, 1, 12, 0, 0, 0, ZoneOffset.UTC);
+  private static final int BLOB_SIZE = 100;
+
+  private Path directory;
+  private Path data;
+  private WBBlobIndex index;
+
+  @BeforeEach
+  public void testSetup()
+    throws Exception
+  {
+    this.directory = TestDirectories.temporaryDirectory();
+    this.data = this.directory.resolve("data");
+    this.index =
+      WBBlobIndex.open(
+        this.directory.resolve("index.wbi"),
+        WBBlobDurability.NONE);
+  }
+
+  @AfterEach
+  public void testTearDown()
+    throws Exception
+  {
+    this.index.close();
+  }
+
+  private WBBlobStoreType createStore(
+    final WBBlobStoreKind kind)
+    throws Exception
+  {
+    return WBBlobStores.create(
+      WBBlobStoreConfiguration.builder()
+        .setDirectory(this.data)
+        .setShardLevels(2)
+        .setKind(kind)
+        .setPackThreshold(1024)
+        .build()
+    );
+  }
+
+  private static WBBlobID idOf(
+    final int index)
+  {
+    return WBBlobID.of(String.format("%032x", Integer.valueOf(index)));
+  }
+
+  /**
+   * Write blob {@code index} for {@code user}, indexed as delivered
+   * {@code minutes} after {@link #TIME}.
+   */
+
+  private void deliver(
+    final WBBlobStoreType store,
+    final int index,
+    final String user,
+    final long minutes)
+    throws Exception
+  {
+    final var id = idOf(index);
+    final byte[] digest;
+    try (var writer = store.open(id, BLOB_SIZE)) {
+      final var data = new byte[BLOB_SIZE];
+      data[0] = (byte) index;
+      writer.write(ByteBuffer.wrap(data));
+      writer.commit();
+      digest = writer.digest();
+    }
+
+    this.index.add(
+      WBBlobMetadata.builder()
+        .setId(id)
+        .setSize(BLOB_SIZE)
+        .setSha256(HexFormat.of().formatHex(digest))
+        .setUser(user)
+        .setRemoteAddress("10.0.0.1")
+        .setTime(TIME.plusMinutes(minutes))
+        .setLocation("")
+        .build());
+  }
+
+  private WBRetention retention(
+    final WBRetentionConfiguration configuration,
+    final WBBlobStoreType store,
+    final long minutes)
+  {
+    return WBRetention.create(
+      configuration,
+      Clock.fixed(TIME.plusMinutes(minutes).toInstant(), ZoneOffset.UTC),
+      store,
+      this.index
+    );
+  }
+
+  private boolean exists(
+    final int index)
+  {
+    return Files.exists(LAYOUT.fileOf(this.data, idOf(index)));
+  }
+
+  @Test
+  public void testDisabled()
+    throws Exception
+  {
+    final var store = this.createStore(WBBlobStoreKind.PLAIN);
+    for (int i = 0; i < 10; ++i) {
+      this.deliver(store, i, "alice", i);
+    }
+
+    final var configuration = WBRetentionConfiguration.builder().build();
+    assertFalse(configuration.isEnabled());
+
+    final var report = this.retention(configuration, store, 1000L).run();
+    assertEquals(0L, report.deletedBlobs());
+    assertEquals(10L, this.index.size());
+  }
+
+  @Test
+  public void testExpiry()
+    throws Exception
+  {
+    final var store = this.createStore(WBBlobStoreKind.PLAIN);
+    for (int i = 0; i < 10; ++i) {
+      this.deliver(store, i, "alice", i);
+    }
+
+    final var retention =
+      this.retention(
+        WBRetentionConfiguration.builder()
+          .setMaximumAge(Duration.ofMinutes(5L))
+          .build(),
+        store,
+        10L
+      );
+
+    final var report = retention.run();
+    assertEquals(5L, report.expiredBlobs());
+    assertEquals(5L * BLOB_SIZE, report.expiredBytes());
+    assertEquals(0L, report.evictedBlobs());
+    assertEquals(0L, report.failed());
+    assertEquals(5L, retention.deletedBlobs());
+
+    for (int i = 0; i < 10; ++i) {
+      assertEquals(i >= 5, this.exists(i));
+      assertEquals(i >= 5, this.index.find(idOf(i)).isPresent());
+    }
+    assertEquals(5L * BLOB_SIZE, this.index.totalSize());
+
+    assertEquals(0L, retention.run().deletedBlobs());
+  }
+
+  @Test
+  public void testUserMaximumAges()
+    throws Exception
+  {
+    final var store = this.createStore(WBBlobStoreKind.PLAIN);
+    for (int i = 0; i < 30; ++i) {
+      final var user = switch (i % 3) {
+        case 0 -> "alice";
+        case 1 -> "bob";
+        default -> "carol";
+      };
+      this.deliver(store, i, user, i);
+    }
+
+    final var retention =
+      this.retention(
+        WBRetentionConfiguration.builder()
+          .setMaximumAge(Duration.ofMinutes(20L))
+          .putUserMaximumAges("bob", Duration.ofMinutes(5L))
+          .putUserMaximumAges("carol", Duration.ZERO)
+          .build(),
+        store,
+        30L
+      );
+
+    retention.run();
+
+    for (int i = 0; i < 30; ++i) {
+      final boolean kept = switch (i % 3) {
+        case 0 -> i >= 10;
+        case 1 -> i >= 25;
+        default -> true;
+      };
+      assertEquals(kept, this.exists(i), "Blob " + i);
+    }
+  }
+
+  @Test
+  public void testWatermarks()
+    throws Exception
+  {
+    final var store = this.createStore(WBBlobStoreKind.PLAIN);
+    for (int i = 0; i < 20; ++i) {
+      this.deliver(store, i, "alice", i);
+    }
+
+    final var retention =
+      this.retention(
+        WBRetentionConfiguration.builder()
+          .setHighWatermark(15L * BLOB_SIZE)
+          .setLowWatermark(12L * BLOB_SIZE)
+          .build(),
+        store,
+        20L
+      );
+
+    final var report = retention.run();
+    assertEquals(0L, report.expiredBlobs());
+    assertEquals(8L, report.evictedBlobs());
+    assertEquals(8L * BLOB_SIZE, report.evictedBytes());
+    assertEquals(12L * BLOB_SIZE, this.index.totalSize());
+
+    for (int i = 0; i < 20; ++i) {
+      assertEquals(i >= 8, this.exists(i), "Blob " + i);
+    }
+
+    assertEquals(0L, retention.run().deletedBlobs());
+  }
+
+  @Test
+  public void testExpiryAndWatermarks()
+    throws Exception
+  {
+    final var store = this.createStore(WBBlobStoreKind.PLAIN);
+    for (int i = 0; i < 20; ++i) {
+      this.deliver(store, i, "alice", i);
+    }
+
+    final var report =
+      this.retention(
+        WBRetentionConfiguration.builder()
+          .setMaximumAge(Duration.ofMinutes(17L))
+          .setHighWatermark(10L * BLOB_SIZE)
+          .setLowWatermark(10L * BLOB_SIZE)
+          .build(),
+        store,
+        20L
+      ).run();
+
+    assertEquals(3L, report.expiredBlobs());
+    assertEquals(7L, report.evictedBlobs());
+    assertEquals(10L * BLOB_SIZE, this.index.totalSize());
+  }
+
+  @Test
+  public void testPackedReclaimed()
+    throws Exception
+  {
+    final var store =
+      (WBBlobStorePacked) this.createStore(WBBlobStoreKind.PACKED);
+    for (int i = 0; i < 10; ++i) {
+      this.deliver(store, i, "alice", i);
+    }
+    assertEquals(10L, store.packed());
+
+    final var report =
+      this.retention(
+        WBRetentionConfiguration.builder()
+          .setMaximumAge(Duration.ofMinutes(1L))
+          .build(),
+        store,
+        100L
+      ).run();
+
+    assertEquals(10L, report.expiredBlobs());
+    assertEquals(0L, store.packed());
+    assertEquals(0L, this.index.size());
+  }
+
+  @Test
+  public void testDeduplicatingReclaimed()
+    throws Exception
+  {
+    final var store =
+      (WBBlobStoreDeduplicating) this.createStore(WBBlobStoreKind.DEDUPLICATING);
+    for (int i = 0; i < 10; ++i) {
+      this.deliver(store, i, "alice", i);
+    }
+
+    /*
+     * Contents orphaned by something other than retention are left for
+     * the next full garbage collection.
+     */
+
+    try (var writer = store.open(idOf(100), BLOB_SIZE)) {
+      final var data = new byte[BLOB_SIZE];
+      Arrays.fill(data, (byte) 0xff);
+      writer.write(ByteBuffer.wrap(data));
+      writer.commit();
+    }
+    store.delete(idOf(100));
+
+    this.retention(
+      WBRetentionConfiguration.builder()
+        .setMaximumAge(Duration.ofMinutes(1L))
+        .build(),
+      store,
+      100L
+    ).run();
+
+    try (var files = Files.walk(this.data)) {
+      assertEquals(1L, files.filter(Files::isRegularFile).count());
+    }
+    assertEquals(1L, store.collectGarbage());
+    try (var files = Files.walk(this.data)) {
+      assertTrue(files.noneMatch(Files::isRegularFile));
+    }
+  }
+
+  @Test
+  public void testCloseDuringPass()
+    throws Exception
+  {
+    final var store = this.createStore(WBBlobStoreKind.PLAIN);
+    for (int i = 0; i < 10; ++i) {
+      this.deliver(store, i, "alice", i);
+    }
+
+    final var retention =
+      this.retention(
+        WBRetentionConfiguration.builder()
+          .setMaximumAge(Duration.ofMinutes(1L))
+          .setInterval(Duration.ofMillis(1L))
+          .setDeletionRate(1L)
+          .build(),
+        store,
+        100L
+      );
+
+    retention.start();
+    final var deadline = System.nanoTime() + Duration.ofSeconds(10L).toNanos();
+    while (this.index.size() == 10L) {
+      assertTrue(System.nanoTime() - deadline < 0L);
+      Thread.sleep(1L);
+    }
+
+    final var timeStart = System.nanoTime();
+    retention.close();
+    final var elapsed = Duration.ofNanos(System.nanoTime() - timeStart);
+    assertTrue(
+      elapsed.compareTo(Duration.ofSeconds(2L)) < 0,
+      "close took " + elapsed);
+    assertTrue(this.index.size() > 0L);
+  }
+}
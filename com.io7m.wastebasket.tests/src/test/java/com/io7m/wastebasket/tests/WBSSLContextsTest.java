@@ -17,17 +17,25 @@
 
 package com.io7m.wastebasket.tests;
 
+import com.io7m.wastebasket.api.WBClientCertificateMode;
 import com.io7m.wastebasket.api.WBServerConfiguration;
+import com.io7m.wastebasket.api.WBUserName;
+import com.io7m.wastebasket.vanilla.WBClientCertificates;
 import com.io7m.wastebasket.vanilla.WBSSLContexts;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.Optional;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 public final class WBSSLContextsTest
 {
   private Path directory;
@@ -82,4 +90,43 @@ public final class WBSSLContextsTest
     final var contexts = WBSSLContexts.create();
     contexts.createContext(configuration);
   }
+
+  @Test
+  public void testCreateClientCertificates()
+    throws Exception
+  {
+    final var configuration =
+      WBServerConfiguration.builder()
+        .setDataDirectory(this.directory.resolve("data"))
+        .setUserDatabase(this.directory.resolve("users.db"))
+        .setBindAddress("127.0.0.1")
+        .setBindPort(8443)
+        .setTlsClientCertificateMode(WBClientCertificateMode.NEED)
+        .setTlsCAFile(
+          this.copyResource("pki/ca.crt"))
+        .setTlsCertFile(
+          this.copyResource("pki/issued/com.io7m.wastebasket.server.crt"))
+        .setTlsKeyFile(
+          this.copyResource("pki/private/com.io7m.wastebasket.server.key"))
+        .build();
+
+    final var contexts = WBSSLContexts.create();
+    contexts.createContext(configuration);
+  }
+
+  @Test
+  public void testClientCertificateUser()
+    throws Exception
+  {
+    final X509Certificate certificate;
+    try (var stream = Files.newInputStream(
+      this.copyResource("pki/issued/com.io7m.wastebasket.server.crt"))) {
+      certificate = (X509Certificate)
+        CertificateFactory.getInstance("X.509").generateCertificate(stream);
+    }
+
+    assertEquals(
+      Optional.of(WBUserName.of("localhost")),
+      WBClientCertificates.userOf(certificate));
+  }
 }
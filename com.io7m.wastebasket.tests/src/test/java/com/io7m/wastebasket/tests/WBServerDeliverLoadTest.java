@@ -0,0 +1,327 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBAuditLogType;
+import com.io7m.wastebasket.api.WBBlobDurability;
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobIndexType;
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBServerConfiguration;
+import com.io7m.wastebasket.api.WBUserDatabaseType;
+import com.io7m.wastebasket.api.WBUserName;
+import com.io7m.wastebasket.vanilla.WBAuditLog;
+import com.io7m.wastebasket.vanilla.WBBlobIndex;
+import com.io7m.wastebasket.vanilla.WBBlobStore;
+import com.io7m.wastebasket.vanilla.WBServerMain;
+import com.io7m.wastebasket.vanilla.WBUserDatabase;
+import com.io7m.wastebasket.vanilla.WBUserQuotas;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.cert.CertificateFactory;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.ISO_8859_1;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Many slow uploads in flight at once must not exhaust the server's
+ * thread pool.
+ */
+
+public final class WBServerDeliverLoadTest
+{
+  private static final int SERVER_THREADS = 16;
+  private static final int UPLOADS = 256;
+  private static final int HALF = 32;
+
+  private static final WBUserName USER =
+    WBUserName.of("someone");
+  private static final WBPassKey PASS =
+    WBPassKey.of("0".repeat(64));
+  private static final Pattern TOKEN =
+    Pattern.compile("Token: (\\S+)");
+
+  private Path directory;
+  private Path dataDirectory;
+  private WBUserDatabaseType users;
+  private WBAuditLogType auditLog;
+  private WBBlobIndexType index;
+  private WBUserQuotas quotas;
+  private WBServerMain server;
+  private SSLSocketFactory sockets;
+  private int port;
+
+  @BeforeEach
+  public void testSetup()
+    throws Exception
+  {
+    this.directory = TestDirectories.temporaryDirectory();
+    this.dataDirectory = this.directory.resolve("data");
+
+    this.users =
+      WBUserDatabase.create(x -> { }, this.directory.resolve("users.db"));
+    this.users.userAdd(USER, PASS);
+    this.auditLog =
+      WBAuditLog.create(this.directory.resolve("audit.log"));
+    this.index =
+      WBBlobIndex.open(
+        this.directory.resolve("index.wbi"),
+        WBBlobDurability.NONE);
+    this.quotas =
+      WBUserQuotas.create(
+        x -> { },
+        this.directory.resolve("quotas.properties"),
+        this.directory.resolve("quota-usage.properties"),
+        Duration.ofSeconds(30L),
+        Clock.systemUTC(),
+        this.index);
+
+    try (var socket = new ServerSocket(0)) {
+      this.port = socket.getLocalPort();
+    }
+
+    final var configuration =
+      WBServerConfiguration.builder()
+        .setDataDirectory(this.dataDirectory)
+        .setUserDatabase(this.directory.resolve("users.db"))
+        .setBindAddress("127.0.0.1")
+        .setBindPort(this.port)
+        .setServerThreads(SERVER_THREADS)
+        .setTlsCAFile(
+          this.copyResource("pki/ca.crt"))
+        .setTlsCertFile(
+          this.copyResource("pki/issued/com.io7m.wastebasket.server.crt"))
+        .setTlsKeyFile(
+          this.copyResource("pki/private/com.io7m.wastebasket.server.key"))
+        .build();
+
+    this.server =
+      WBServerMain.create(
+        configuration,
+        WBBlobStore.create(this.dataDirectory),
+        this.users,
+        this.auditLog,
+        this.index,
+        this.quotas);
+    this.server.start();
+    this.sockets = this.trustingSockets(configuration.tlsCAFile());
+  }
+
+  @AfterEach
+  public void testTearDown()
+    throws Exception
+  {
+    try {
+      this.server.stop();
+    } finally {
+      this.users.close();
+      this.auditLog.close();
+      this.quotas.close();
+      this.index.close();
+    }
+  }
+
+  private Path copyResource(
+    final String resource)
+    throws IOException
+  {
+    final var stream =
+      WBServerDeliverLoadTest.class.getResourceAsStream(
+        "/com/io7m/wastebasket/tests/" + resource);
+
+    final var target = this.directory.resolve(resource);
+    Files.createDirectories(target.getParent());
+    Files.copy(stream, target);
+    return target;
+  }
+
+  private SSLSocketFactory trustingSockets(
+    final Path caFile)
+    throws Exception
+  {
+    final var keyStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    keyStore.load(null, null);
+    try (var stream = Files.newInputStream(caFile)) {
+      keyStore.setCertificateEntry(
+        "ca",
+        CertificateFactory.getInstance("X.509").generateCertificate(stream));
+    }
+
+    final var trust =
+      TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+    trust.init(keyStore);
+
+    final var context = SSLContext.getInstance("TLS");
+    context.init(null, trust.getTrustManagers(), null);
+    return context.getSocketFactory();
+  }
+
+  private SSLSocket connect()
+    throws IOException
+  {
+    final var socket =
+      (SSLSocket) this.sockets.createSocket("127.0.0.1", this.port);
+    socket.setSoTimeout(30_000);
+    socket.startHandshake();
+    return socket;
+  }
+
+  private static void send(
+    final Socket socket,
+    final String text)
+    throws IOException
+  {
+    final var output = socket.getOutputStream();
+    output.write(text.getBytes(ISO_8859_1));
+    output.flush();
+  }
+
+  private static String receive(
+    final Socket socket)
+    throws IOException
+  {
+    return new String(socket.getInputStream().readAllBytes(), ISO_8859_1);
+  }
+
+  private static int statusOf(
+    final String response)
+  {
+    return Integer.parseInt(response.split(" ", 3)[1]);
+  }
+
+  private static WBBlobID idOf(
+    final int index)
+  {
+    return WBBlobID.of(String.format("%032x", Integer.valueOf(index)));
+  }
+
+  private String token()
+    throws IOException
+  {
+    try (var socket = this.connect()) {
+      send(
+        socket,
+        "POST /v1/token HTTP/1.1\r\n"
+        + "Host: localhost\r\n"
+        + "X-UserName: " + USER.value() + "\r\n"
+        + "X-PassKey: " + PASS.value() + "\r\n"
+        + "Content-Length: 0\r\n"
+        + "Connection: close\r\n"
+        + "\r\n");
+
+      final var response = receive(socket);
+      assertEquals(200, statusOf(response), response);
+      final var matcher = TOKEN.matcher(response);
+      assertTrue(matcher.find(), response);
+      return matcher.group(1);
+    }
+  }
+
+  @Test
+  public void testSlowUploadsExceedThreads()
+    throws Exception
+  {
+    final var token = this.token();
+    final var data = new byte[HALF * 2];
+    for (int index = 0; index < data.length; ++index) {
+      data[index] = (byte) index;
+    }
+    final var digest =
+      HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(data));
+
+    final var uploads = new ArrayList<SSLSocket>(UPLOADS);
+    try {
+      for (int index = 0; index < UPLOADS; ++index) {
+        final var socket = this.connect();
+        uploads.add(socket);
+        send(
+          socket,
+          "POST /v1/deliver/" + idOf(index).value() + " HTTP/1.1\r\n"
+          + "Host: localhost\r\n"
+          + "Authorization: Bearer " + token + "\r\n"
+          + "Content-Length: " + data.length + "\r\n"
+          + "Connection: close\r\n"
+          + "\r\n");
+        socket.getOutputStream().write(data, 0, HALF);
+        socket.getOutputStream().flush();
+      }
+
+      /*
+       * Every upload is now stalled half way through its body. A handler
+       * that held a thread per upload would have exhausted the pool long
+       * before this point, and this request would never be served.
+       */
+
+      try (var socket = this.connect()) {
+        send(
+          socket,
+          "GET / HTTP/1.1\r\n"
+          + "Host: localhost\r\n"
+          + "Connection: close\r\n"
+          + "\r\n");
+        assertEquals(200, statusOf(receive(socket)));
+      }
+
+      for (final var socket : uploads) {
+        socket.getOutputStream().write(data, HALF, HALF);
+        socket.getOutputStream().flush();
+      }
+
+      for (final var socket : uploads) {
+        final var response = receive(socket);
+        assertEquals(200, statusOf(response), response);
+        assertTrue(response.contains("SHA-256: " + digest), response);
+      }
+    } finally {
+      for (final var socket : uploads) {
+        socket.close();
+      }
+    }
+
+    for (int index = 0; index < UPLOADS; ++index) {
+      assertArrayEquals(
+        data,
+        Files.readAllBytes(this.dataDirectory.resolve(idOf(index).value())));
+
+      final var metadata = this.index.find(idOf(index)).orElseThrow();
+      assertEquals(USER.value(), metadata.user());
+      assertEquals(data.length, metadata.size());
+      assertEquals(digest, metadata.sha256());
+    }
+  }
+}
@@ -0,0 +1,320 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.vanilla.WBStorageAccountant;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileStoreAttributeView;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBStorageAccountantTest
+{
+  private static final Duration INTERVAL =
+    Duration.ofSeconds(1L);
+
+  private static final class FakeFileStore extends FileStore
+  {
+    private volatile long usable;
+    private volatile boolean broken;
+
+    FakeFileStore(
+      final long inUsable)
+    {
+      this.usable = inUsable;
+    }
+
+    @Override
+    public String name()
+    {
+      return "fake";
+    }
+
+    @Override
+    public String type()
+    {
+      return "fake";
+    }
+
+    @Override
+    public boolean isReadOnly()
+    {
+      return false;
+    }
+
+    @Override
+    public long getTotalSpace()
+    {
+      return this.usable;
+    }
+
+    @Override
+    public long getUsableSpace()
+      throws IOException
+    {
+      if (this.broken) {
+        throw new IOException("Broken");
+      }
+      return this.usable;
+    }
+
+    @Override
+    public long getUnallocatedSpace()
+    {
+      return this.usable;
+    }
+
+    @Override
+    public boolean supportsFileAttributeView(
+      final Class<? extends FileAttributeView> type)
+    {
+      return false;
+    }
+
+    @Override
+    public boolean supportsFileAttributeView(
+      final String name)
+    {
+      return false;
+    }
+
+    @Override
+    public <V extends FileStoreAttributeView> V getFileStoreAttributeView(
+      final Class<V> type)
+    {
+      return null;
+    }
+
+    @Override
+    public Object getAttribute(
+      final String attribute)
+    {
+      return null;
+    }
+  }
+
+  @Test
+  public void testReserveRelease()
+  {
+    final var store = new FakeFileStore(1000L);
+    final var accountant =
+      WBStorageAccountant.createForFileStores(List.of(store), 100L, INTERVAL);
+
+    assertEquals(900L, accountant.available());
+
+    final var r0 = accountant.reserve(store, 600L).orElseThrow();
+    assertEquals(300L, accountant.available());
+    assertTrue(accountant.reserve(store, 301L).isEmpty());
+
+    final var r1 = accountant.reserve(store, 300L).orElseThrow();
+    assertEquals(0L, accountant.available());
+    assertTrue(accountant.reserve(store, 1L).isEmpty());
+
+    r0.close();
+    r0.close();
+    assertEquals(600L, accountant.available());
+    r1.close();
+    assertEquals(900L, accountant.available());
+  }
+
+  @Test
+  public void testConsumeUntilRefresh()
+  {
+    final var store = new FakeFileStore(1000L);
+    final var accountant =
+      WBStorageAccountant.createForFileStores(List.of(store), 0L, INTERVAL);
+
+    final var r0 = accountant.reserve(store, 500L).orElseThrow();
+    r0.consume(200L);
+    assertEquals(500L, accountant.available());
+
+    r0.close();
+    assertEquals(800L, accountant.available());
+
+    store.usable = 800L;
+    accountant.refresh();
+    assertEquals(800L, accountant.available());
+  }
+
+  @Test
+  public void testConsumeInProgressRefresh()
+  {
+    final var store = new FakeFileStore(1000L);
+    final var accountant =
+      WBStorageAccountant.createForFileStores(List.of(store), 0L, INTERVAL);
+
+    final var r0 = accountant.reserve(store, 500L).orElseThrow();
+    r0.consume(200L);
+    store.usable = 800L;
+    accountant.refresh();
+
+    assertEquals(500L, accountant.available());
+    r0.consume(300L);
+    assertEquals(500L, accountant.available());
+    r0.close();
+    assertEquals(500L, accountant.available());
+  }
+
+  @Test
+  public void testPooledFileStores()
+  {
+    final var s0 = new FakeFileStore(1000L);
+    final var s1 = new FakeFileStore(50L);
+    final var accountant =
+      WBStorageAccountant.createForFileStores(List.of(s0, s1), 100L, INTERVAL);
+
+    assertEquals(900L, accountant.available());
+
+    s1.usable = 500L;
+    accountant.refresh();
+    assertEquals(1300L, accountant.available());
+
+    s0.broken = true;
+    accountant.refresh();
+    assertEquals(400L, accountant.available());
+  }
+
+  @Test
+  public void testReservedOnChosenFileStore()
+  {
+    final var s0 = new FakeFileStore(600L);
+    final var s1 = new FakeFileStore(500L);
+    final var accountant =
+      WBStorageAccountant.createForFileStores(List.of(s0, s1), 100L, INTERVAL);
+
+    assertEquals(900L, accountant.available());
+    assertEquals(500L, accountant.largestAvailable());
+    assertTrue(accountant.reserve(s1, 401L).isEmpty());
+
+    final var r0 = accountant.reserve(s0, 450L).orElseThrow();
+    assertEquals(450L, accountant.available());
+    assertEquals(400L, accountant.largestAvailable());
+    assertTrue(accountant.reserve(s0, 51L).isEmpty());
+
+    final var r1 = accountant.reserve(s1, 400L).orElseThrow();
+    assertEquals(50L, accountant.available());
+
+    r0.consume(450L);
+    r0.close();
+    assertEquals(50L, accountant.available());
+    r1.close();
+    assertEquals(450L, accountant.available());
+  }
+
+  @Test
+  public void testReserveByDirectory()
+    throws Exception
+  {
+    final var directory = TestDirectories.temporaryDirectory();
+    final var data = directory.resolve("data");
+    Files.createDirectories(data);
+
+    final var accountant =
+      WBStorageAccountant.create(List.of(data), 0L, INTERVAL);
+    final var available = accountant.available();
+    assertTrue(available > 10L);
+
+    final var r0 =
+      accountant.reserve(data.resolve("ab").resolve("cd"), 10L)
+        .orElseThrow();
+    assertEquals(available - 10L, accountant.available());
+    r0.close();
+    assertEquals(available, accountant.available());
+
+    assertTrue(accountant.reserve(data, available + 1L).isEmpty());
+  }
+
+  @Test
+  public void testConcurrentReservations()
+    throws Exception
+  {
+    final var store = new FakeFileStore(100_000L);
+    final var accountant =
+      WBStorageAccountant.createForFileStores(List.of(store), 0L, INTERVAL);
+
+    final var threads = new ArrayList<Thread>();
+    final var granted = new AtomicLong();
+    for (int t = 0; t < 8; ++t) {
+      threads.add(Thread.ofPlatform().start(() -> {
+        for (int i = 0; i < 10_000; ++i) {
+          final var reservation = accountant.reserve(store, 7L);
+          if (reservation.isPresent()) {
+            granted.addAndGet(7L);
+            reservation.get().consume(3L);
+          }
+        }
+      }));
+    }
+    for (final var thread : threads) {
+      thread.join();
+    }
+
+    assertTrue(granted.get() <= 100_000L);
+    assertEquals(
+      100_000L - granted.get(),
+      accountant.available());
+  }
+
+  @Test
+  public void testBackgroundRefresh()
+    throws Exception
+  {
+    final var store = new FakeFileStore(1000L);
+    try (var accountant =
+           WBStorageAccountant.createForFileStores(
+             List.of(store), 0L, Duration.ofMillis(10L))) {
+      accountant.start();
+      store.usable = 10L;
+
+      for (int i = 0; i < 500 && accountant.available() != 10L; ++i) {
+        Thread.sleep(10L);
+      }
+      assertEquals(10L, accountant.available());
+    }
+  }
+
+  @Test
+  public void testInvalid()
+  {
+    final var store = new FakeFileStore(1000L);
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> WBStorageAccountant.createForFileStores(
+        List.of(store), -1L, INTERVAL));
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> WBStorageAccountant.createForFileStores(
+        List.of(store), 0L, Duration.ZERO));
+    assertThrows(
+      IllegalArgumentException.class,
+      () -> WBStorageAccountant.createForFileStores(
+          List.of(store), 0L, INTERVAL)
+        .reserve(store, -1L));
+  }
+}
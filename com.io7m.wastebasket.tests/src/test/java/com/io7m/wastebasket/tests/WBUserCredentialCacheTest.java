@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBUserName;
+import com.io7m.wastebasket.vanilla.WBUserCredentialCache;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBUserCredentialCacheTest
+{
+  private static final WBUserName USER_0 =
+    WBUserName.of("user0");
+  private static final WBUserName USER_1 =
+    WBUserName.of("user1");
+  private static final WBPassKey PASS_0 =
+    WBPassKey.of("0".repeat(64));
+  private static final WBPassKey PASS_1 =
+    WBPassKey.of("1".repeat(64));
+
+  @Test
+  public void testHit()
+  {
+    final var cache =
+      WBUserCredentialCache.create(16, Duration.ofMinutes(1L));
+
+    assertFalse(cache.check(USER_0, PASS_0));
+    cache.store(USER_0, PASS_0, cache.generation());
+
+    assertTrue(cache.check(USER_0, PASS_0));
+    assertFalse(cache.check(USER_0, PASS_1));
+    assertFalse(cache.check(USER_1, PASS_0));
+    assertEquals(1L, cache.hits());
+    assertEquals(1, cache.size());
+  }
+
+  @Test
+  public void testDisabled()
+  {
+    final var cache = WBUserCredentialCache.disabled();
+    cache.store(USER_0, PASS_0, cache.generation());
+    assertFalse(cache.check(USER_0, PASS_0));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testInvalidParameters()
+  {
+    assertThrows(IllegalArgumentException.class, () -> {
+      WBUserCredentialCache.create(-1, Duration.ofMinutes(1L));
+    });
+    assertThrows(IllegalArgumentException.class, () -> {
+      WBUserCredentialCache.create(16, Duration.ofMinutes(-1L));
+    });
+  }
+
+  @Test
+  public void testExpiry()
+    throws InterruptedException
+  {
+    final var cache =
+      WBUserCredentialCache.create(16, Duration.ofMillis(1L));
+
+    cache.store(USER_0, PASS_0, cache.generation());
+    Thread.sleep(20L);
+
+    assertFalse(cache.check(USER_0, PASS_0));
+    assertEquals(0, cache.size());
+    assertEquals(0L, cache.hits());
+  }
+
+  @Test
+  public void testEviction()
+  {
+    final var cache =
+      WBUserCredentialCache.create(2, Duration.ofMinutes(1L));
+
+    final var user2 = WBUserName.of("user2");
+    cache.store(USER_0, PASS_0, cache.generation());
+    cache.store(USER_1, PASS_0, cache.generation());
+    assertTrue(cache.check(USER_0, PASS_0));
+    cache.store(user2, PASS_0, cache.generation());
+
+    assertEquals(2, cache.size());
+    assertTrue(cache.check(USER_0, PASS_0));
+    assertFalse(cache.check(USER_1, PASS_0));
+    assertTrue(cache.check(user2, PASS_0));
+  }
+
+  @Test
+  public void testInvalidate()
+  {
+    final var cache =
+      WBUserCredentialCache.create(16, Duration.ofMinutes(1L));
+
+    cache.store(USER_0, PASS_0, cache.generation());
+    cache.store(USER_1, PASS_0, cache.generation());
+
+    cache.invalidate(USER_0);
+    assertFalse(cache.check(USER_0, PASS_0));
+    assertTrue(cache.check(USER_1, PASS_0));
+
+    cache.invalidateNamed(List.of(USER_1.value()));
+    assertFalse(cache.check(USER_1, PASS_0));
+    assertEquals(0, cache.size());
+
+    cache.store(USER_0, PASS_0, cache.generation());
+    cache.invalidateAll();
+    assertFalse(cache.check(USER_0, PASS_0));
+  }
+
+  @Test
+  public void testStaleGenerationNotStored()
+  {
+    final var cache =
+      WBUserCredentialCache.create(16, Duration.ofMinutes(1L));
+
+    final var generation = cache.generation();
+    cache.invalidate(USER_0);
+    assertNotEquals(generation, cache.generation());
+
+    cache.store(USER_0, PASS_0, generation);
+    assertFalse(cache.check(USER_0, PASS_0));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testEmptyInvalidationKeepsGeneration()
+  {
+    final var cache =
+      WBUserCredentialCache.create(16, Duration.ofMinutes(1L));
+
+    final var generation = cache.generation();
+    cache.invalidateNamed(List.of());
+    cache.store(USER_0, PASS_0, generation);
+    assertTrue(cache.check(USER_0, PASS_0));
+  }
+}
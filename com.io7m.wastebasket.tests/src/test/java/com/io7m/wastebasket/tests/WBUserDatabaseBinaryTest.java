@@ -0,0 +1,395 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBUserDatabaseType;
+import com.io7m.wastebasket.api.WBUserName;
+import com.io7m.wastebasket.vanilla.WBPasswordAlgorithmPBKDF2;
+import com.io7m.wastebasket.vanilla.WBPasswordAlgorithms;
+import com.io7m.wastebasket.vanilla.WBUserCredentialCache;
+import com.io7m.wastebasket.vanilla.WBUserDatabase;
+import com.io7m.wastebasket.vanilla.WBUserDatabaseBinary;
+import com.io7m.wastebasket.vanilla.WBUserDatabaseFormat;
+import com.io7m.wastebasket.vanilla.WBUserDatabases;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.concurrent.Executors;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBUserDatabaseBinaryTest
+{
+  private static final WBUserName USER =
+    WBUserName.of("someone");
+  private static final WBPassKey PASS_0 =
+    WBPassKey.of("0".repeat(64));
+  private static final WBPassKey PASS_1 =
+    WBPassKey.of("1".repeat(64));
+
+  /*
+   * A deliberately cheap algorithm, so that tests can create many users.
+   */
+
+  private static final WBPasswordAlgorithms CHEAP =
+    WBPasswordAlgorithms.create(WBPasswordAlgorithmPBKDF2.createSHA1(1));
+
+  private Path directory;
+  private Path file;
+
+  @BeforeEach
+  public void testSetup()
+    throws IOException
+  {
+    this.directory = TestDirectories.temporaryDirectory();
+    this.file = this.directory.resolve("users.bin");
+  }
+
+  private WBUserDatabaseType open(
+    final WBPasswordAlgorithms algorithms)
+  {
+    return WBUserDatabaseBinary.create(
+      x -> { },
+      this.file,
+      WBUserCredentialCache.disabled(),
+      algorithms);
+  }
+
+  @Test
+  public void testAddAuthenticateDelete()
+    throws Exception
+  {
+    try (var users = this.open(CHEAP)) {
+      assertFalse(users.userExists(USER));
+      users.userAdd(USER, PASS_0);
+      assertTrue(users.userExists(USER));
+      assertTrue(users.authenticate(USER, PASS_0));
+      assertFalse(users.authenticate(USER, PASS_1));
+    }
+
+    assertEquals(WBUserDatabaseFormat.BINARY, WBUserDatabases.formatOf(this.file));
+
+    try (var users = this.open(CHEAP)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+      users.userAdd(USER, PASS_1);
+      assertTrue(users.authenticate(USER, PASS_1));
+      assertFalse(users.authenticate(USER, PASS_0));
+      users.userDelete(USER);
+      assertFalse(users.userExists(USER));
+    }
+
+    try (var users = this.open(CHEAP)) {
+      assertFalse(users.userExists(USER));
+      assertFalse(users.authenticate(USER, PASS_1));
+    }
+  }
+
+  @Test
+  public void testAddAll()
+    throws Exception
+  {
+    final var users = new HashMap<WBUserName, WBPassKey>();
+    for (int index = 0; index < 2000; ++index) {
+      users.put(WBUserName.of("user" + index), PASS_1);
+    }
+
+    try (var database = this.open(CHEAP)) {
+      database.userAdd(USER, PASS_0);
+      database.userAddAll(users);
+      assertTrue(database.authenticate(USER, PASS_0));
+      assertTrue(database.authenticate(WBUserName.of("user1999"), PASS_1));
+    }
+
+    try (var database = this.open(CHEAP)) {
+      for (final var user : users.keySet()) {
+        assertTrue(database.userExists(user));
+      }
+      assertTrue(database.authenticate(WBUserName.of("user0"), PASS_1));
+    }
+  }
+
+  @Test
+  public void testTornRecordIgnored()
+    throws Exception
+  {
+    try (var users = this.open(CHEAP)) {
+      users.userAdd(USER, PASS_0);
+    }
+
+    final var sizeBefore = Files.size(this.file);
+    Files.write(this.file, new byte[]{0, 0, 0, 40, 1, 2, 3}, APPEND);
+
+    try (var users = this.open(CHEAP)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+      users.userAdd(WBUserName.of("other"), PASS_1);
+      assertTrue(users.authenticate(WBUserName.of("other"), PASS_1));
+    }
+
+    try (var users = this.open(CHEAP)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+      assertTrue(users.authenticate(WBUserName.of("other"), PASS_1));
+    }
+    assertTrue(Files.size(this.file) > sizeBefore);
+  }
+
+  @Test
+  public void testCompaction()
+    throws Exception
+  {
+    try (var users = this.open(CHEAP)) {
+      for (int index = 0; index < 1500; ++index) {
+        users.userAdd(USER, PASS_0);
+      }
+      users.userAdd(WBUserName.of("other"), PASS_1);
+      assertTrue(users.authenticate(USER, PASS_0));
+      assertTrue(users.authenticate(WBUserName.of("other"), PASS_1));
+    }
+
+    assertTrue(Files.size(this.file) < 1500L * 40L);
+
+    try (var users = this.open(CHEAP)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+      assertTrue(users.authenticate(WBUserName.of("other"), PASS_1));
+    }
+  }
+
+  @Test
+  public void testConcurrentWriters()
+    throws Exception
+  {
+    try (var users0 = this.open(CHEAP);
+         var users1 = this.open(CHEAP)) {
+      users0.userAdd(USER, PASS_0);
+      users1.userAdd(WBUserName.of("other"), PASS_1);
+      users0.userAdd(WBUserName.of("third"), PASS_1);
+    }
+
+    try (var users = this.open(CHEAP)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+      assertTrue(users.authenticate(WBUserName.of("other"), PASS_1));
+      assertTrue(users.authenticate(WBUserName.of("third"), PASS_1));
+    }
+  }
+
+  @Test
+  public void testRehashOnLogin()
+    throws Exception
+  {
+    try (var users = this.open(CHEAP)) {
+      users.userAdd(USER, PASS_0);
+    }
+
+    final var sizeBefore = Files.size(this.file);
+    try (var users = this.open(WBPasswordAlgorithms.createDefault())) {
+      assertTrue(users.authenticate(USER, PASS_0));
+    }
+    assertTrue(Files.size(this.file) > sizeBefore);
+
+    final var hashes =
+      WBUserDatabaseBinary.readAll(this.file, WBPasswordAlgorithms.createDefault());
+    assertEquals("argon2id", hashes.get(USER.value()).algorithm().name());
+  }
+
+  @Test
+  public void testRehashBatched()
+    throws Exception
+  {
+    final var legacyUsers = new HashMap<WBUserName, WBPassKey>();
+    for (int index = 0; index < 10; ++index) {
+      legacyUsers.put(WBUserName.of("user" + index), PASS_0);
+    }
+
+    try (var users = this.open(CHEAP)) {
+      users.userAddAll(legacyUsers);
+    }
+
+    final var fingerprints = new HashMap<WBUserName, Long>();
+    try (var users = this.open(WBPasswordAlgorithms.createDefault())) {
+      for (final var user : legacyUsers.keySet()) {
+        assertTrue(users.authenticate(user, PASS_0));
+        fingerprints.put(
+          user,
+          Long.valueOf(users.credentialFingerprint(user).orElseThrow()));
+      }
+    }
+
+    final var hashes =
+      WBUserDatabaseBinary.readAll(this.file, WBPasswordAlgorithms.createDefault());
+    for (final var user : legacyUsers.keySet()) {
+      final var hash = hashes.get(user.value());
+      assertEquals("argon2id", hash.algorithm().name());
+      assertEquals(fingerprints.get(user).longValue(), hash.fingerprint());
+    }
+
+    try (var users = this.open(WBPasswordAlgorithms.createDefault())) {
+      for (final var user : legacyUsers.keySet()) {
+        assertTrue(users.authenticate(user, PASS_0));
+      }
+    }
+  }
+
+  @Test
+  public void testConvertRoundTrip()
+    throws Exception
+  {
+    final var properties = this.directory.resolve("users.properties");
+    try (var users = WBUserDatabase.create(
+      x -> { }, properties, WBUserCredentialCache.disabled(), CHEAP)) {
+      users.userAdd(USER, PASS_0);
+      users.userAdd(WBUserName.of("other"), PASS_1);
+    }
+
+    assertEquals(
+      2,
+      WBUserDatabases.convert(
+        properties, this.file, WBUserDatabaseFormat.BINARY, CHEAP));
+
+    try (var users = this.open(CHEAP)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+      assertTrue(users.authenticate(WBUserName.of("other"), PASS_1));
+    }
+
+    final var exported = this.directory.resolve("exported.properties");
+    assertEquals(
+      2,
+      WBUserDatabases.convert(
+        this.file, exported, WBUserDatabaseFormat.PROPERTIES, CHEAP));
+    assertEquals(
+      WBUserDatabaseFormat.PROPERTIES,
+      WBUserDatabases.formatOf(exported));
+
+    try (var users = WBUserDatabases.open(
+      x -> { }, exported, WBUserCredentialCache.disabled(), CHEAP)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+      assertTrue(users.authenticate(WBUserName.of("other"), PASS_1));
+    }
+
+    assertThrows(FileAlreadyExistsException.class, () -> {
+      WBUserDatabases.convert(
+        properties, exported, WBUserDatabaseFormat.PROPERTIES, CHEAP);
+    });
+  }
+
+  @Test
+  public void testCreateInChosenFormat()
+    throws Exception
+  {
+    assertEquals(
+      WBUserDatabaseFormat.BINARY,
+      WBUserDatabases.formatOf(this.file, WBUserDatabaseFormat.BINARY));
+
+    try (var users = WBUserDatabases.open(
+      x -> { },
+      this.file,
+      WBUserCredentialCache.disabled(),
+      CHEAP,
+      WBUserDatabaseFormat.BINARY)) {
+      users.userAdd(USER, PASS_0);
+    }
+
+    assertEquals(WBUserDatabaseFormat.BINARY, WBUserDatabases.formatOf(this.file));
+    try (var users = this.open(CHEAP)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+    }
+  }
+
+  @Test
+  public void testLargeAppends()
+    throws Exception
+  {
+    final var users = new HashMap<WBUserName, WBPassKey>();
+    for (int index = 0; index < 20000; ++index) {
+      users.put(WBUserName.of("user" + index), PASS_1);
+    }
+
+    try (var database = this.open(CHEAP)) {
+      database.userAdd(USER, PASS_0);
+      database.userAddAll(users);
+      database.userAdd(WBUserName.of("late"), PASS_0);
+      database.userDelete(WBUserName.of("user0"));
+
+      assertTrue(database.authenticate(USER, PASS_0));
+      assertTrue(database.authenticate(WBUserName.of("user19999"), PASS_1));
+      assertTrue(database.authenticate(WBUserName.of("late"), PASS_0));
+      assertFalse(database.userExists(WBUserName.of("user0")));
+    }
+
+    try (var database = this.open(CHEAP)) {
+      assertTrue(database.authenticate(USER, PASS_0));
+      assertTrue(database.authenticate(WBUserName.of("user19999"), PASS_1));
+      assertTrue(database.authenticate(WBUserName.of("late"), PASS_0));
+      assertFalse(database.userExists(WBUserName.of("user0")));
+    }
+  }
+
+  @Test
+  public void testReloadInvalidatesOnlyChangedUsers()
+    throws Exception
+  {
+    final var unchanged = WBUserName.of("unchanged");
+    try (var users = this.open(CHEAP)) {
+      users.userAdd(USER, PASS_0);
+      users.userAdd(unchanged, PASS_0);
+    }
+
+    final var cache =
+      WBUserCredentialCache.create(16, Duration.ofMinutes(1L));
+    final var background = Executors.newCachedThreadPool();
+
+    try (var users = WBUserDatabaseBinary.create(
+      background, this.file, cache, CHEAP)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+      assertTrue(users.authenticate(unchanged, PASS_0));
+
+      /*
+       * The database's own writes must not flush the cache.
+       */
+
+      users.userAdd(WBUserName.of("third"), PASS_1);
+      Thread.sleep(1_500L);
+      assertTrue(users.authenticateCached(USER, PASS_0));
+      assertTrue(users.authenticateCached(unchanged, PASS_0));
+
+      try (var other = this.open(CHEAP)) {
+        other.userAdd(USER, PASS_1);
+      }
+
+      final var deadline = System.nanoTime() + Duration.ofSeconds(10L).toNanos();
+      while (users.authenticateCached(USER, PASS_0)) {
+        assertTrue(System.nanoTime() - deadline < 0L);
+        Thread.sleep(10L);
+      }
+
+      assertTrue(users.authenticateCached(unchanged, PASS_0));
+      assertTrue(users.authenticate(USER, PASS_1));
+    } finally {
+      background.shutdown();
+    }
+  }
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBUserName;
+import com.io7m.wastebasket.vanilla.WBPasswordAlgorithmPBKDF2;
+import com.io7m.wastebasket.vanilla.WBPasswordAlgorithms;
+import com.io7m.wastebasket.vanilla.WBUserCredentialCache;
+import com.io7m.wastebasket.vanilla.WBUserDatabase;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BooleanSupplier;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public final class WBUserDatabaseTest
+{
+  private static final WBUserName USER =
+    WBUserName.of("someone");
+  private static final WBPassKey PASS_0 =
+    WBPassKey.of("0".repeat(64));
+  private static final WBPassKey PASS_1 =
+    WBPassKey.of("1".repeat(64));
+
+  private Path directory;
+  private Path file;
+  private ExecutorService background;
+
+  @BeforeEach
+  public void testSetup()
+    throws IOException
+  {
+    this.directory = TestDirectories.temporaryDirectory();
+    this.file = this.directory.resolve("users.db");
+    this.background = Executors.newCachedThreadPool();
+  }
+
+  @AfterEach
+  public void testTearDown()
+  {
+    this.background.shutdown();
+  }
+
+  private static void waitFor(
+    final BooleanSupplier condition)
+    throws InterruptedException
+  {
+    final var deadline = System.nanoTime() + Duration.ofSeconds(10L).toNanos();
+    while (!condition.getAsBoolean()) {
+      if (System.nanoTime() - deadline >= 0L) {
+        throw new AssertionError("Timed out waiting for condition");
+      }
+      Thread.sleep(10L);
+    }
+  }
+
+  private void addUser(
+    final WBUserName user,
+    final WBPassKey pass)
+    throws Exception
+  {
+    try (var users = WBUserDatabase.create(x -> { }, this.file)) {
+      users.userAdd(user, pass);
+    }
+  }
+
+  private String storedHash(
+    final WBUserName user)
+    throws IOException
+  {
+    final var properties = new Properties();
+    try (var stream = Files.newInputStream(this.file)) {
+      properties.load(stream);
+    }
+    return properties.getProperty(user.value(), "");
+  }
+
+  private String storedHashUnchecked(
+    final WBUserName user)
+  {
+    try {
+      return this.storedHash(user);
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Test
+  public void testAuthenticateLoadsExisting()
+    throws Exception
+  {
+    this.addUser(USER, PASS_0);
+
+    try (var users = WBUserDatabase.create(x -> { }, this.file)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+      assertFalse(users.authenticate(USER, PASS_1));
+      assertFalse(users.authenticate(WBUserName.of("other"), PASS_0));
+    }
+  }
+
+  @Test
+  public void testMalformedEntriesIgnored()
+    throws Exception
+  {
+    this.addUser(USER, PASS_0);
+    Files.writeString(
+      this.file,
+      "broken=pbkdf2:zz:x\nunknown=rot13:00:1:00\n",
+      APPEND);
+
+    try (var users = WBUserDatabase.create(x -> { }, this.file)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+      assertFalse(users.authenticate(WBUserName.of("broken"), PASS_0));
+      assertFalse(users.authenticate(WBUserName.of("unknown"), PASS_0));
+    }
+  }
+
+  @Test
+  public void testCacheHits()
+    throws Exception
+  {
+    this.addUser(USER, PASS_0);
+
+    final var cache =
+      WBUserCredentialCache.create(16, Duration.ofMinutes(1L));
+
+    try (var users = WBUserDatabase.create(x -> { }, this.file, cache)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+      assertEquals(0L, cache.hits());
+      assertEquals(1L, cache.misses());
+
+      assertTrue(users.authenticate(USER, PASS_0));
+      assertEquals(1L, cache.hits());
+
+      assertFalse(users.authenticate(USER, PASS_1));
+      assertEquals(1L, cache.hits());
+      assertEquals(2L, cache.misses());
+    }
+  }
+
+  @Test
+  public void testRehashOnLogin()
+    throws Exception
+  {
+    final var legacy =
+      WBPasswordAlgorithms.create(WBPasswordAlgorithmPBKDF2.createSHA1(10_000));
+
+    try (var users = WBUserDatabase.create(
+      x -> { }, this.file, WBUserCredentialCache.disabled(), legacy)) {
+      users.userAdd(USER, PASS_0);
+    }
+    assertTrue(this.storedHash(USER).startsWith("pbkdf2:"));
+
+    try (var users = WBUserDatabase.create(x -> { }, this.file)) {
+      assertFalse(users.authenticate(USER, PASS_1));
+      assertTrue(this.storedHash(USER).startsWith("pbkdf2:"));
+
+      assertTrue(users.authenticate(USER, PASS_0));
+      waitFor(() -> this.storedHashUnchecked(USER).startsWith("argon2id:"));
+      assertTrue(users.authenticate(USER, PASS_0));
+    }
+
+    try (var users = WBUserDatabase.create(x -> { }, this.file)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+    }
+  }
+
+  @Test
+  public void testAddAll()
+    throws Exception
+  {
+    this.addUser(USER, PASS_0);
+
+    final var users = new HashMap<WBUserName, WBPassKey>();
+    for (int index = 0; index < 20; ++index) {
+      users.put(WBUserName.of("user" + index), PASS_1);
+    }
+    users.put(USER, PASS_1);
+
+    try (var database = WBUserDatabase.create(x -> { }, this.file)) {
+      database.userAddAll(users);
+      for (final var user : users.keySet()) {
+        assertTrue(database.authenticate(user, PASS_1));
+      }
+      assertFalse(database.authenticate(USER, PASS_0));
+    }
+
+    try (var database = WBUserDatabase.create(x -> { }, this.file)) {
+      for (final var user : users.keySet()) {
+        assertTrue(database.authenticate(user, PASS_1));
+      }
+    }
+  }
+
+  @Test
+  public void testReloadOnChange()
+    throws Exception
+  {
+    this.addUser(WBUserName.of("initial"), PASS_0);
+
+    final var cache =
+      WBUserCredentialCache.create(16, Duration.ofMinutes(1L));
+
+    try (var users =
+           WBUserDatabase.create(this.background, this.file, cache)) {
+      assertFalse(users.authenticate(USER, PASS_0));
+
+      this.addUser(USER, PASS_0);
+      waitFor(() -> users.authenticate(USER, PASS_0));
+      assertEquals(1, cache.size());
+
+      try (var other = WBUserDatabase.create(x -> { }, this.file)) {
+        other.userDelete(USER);
+      }
+      waitFor(() -> cache.size() == 0);
+      assertFalse(users.authenticate(USER, PASS_0));
+    }
+  }
+
+  @Test
+  public void testReloadInvalidatesOnlyChangedUsers()
+    throws Exception
+  {
+    final var unchanged = WBUserName.of("unchanged");
+    this.addUser(USER, PASS_0);
+    this.addUser(unchanged, PASS_0);
+
+    final var cache =
+      WBUserCredentialCache.create(16, Duration.ofMinutes(1L));
+
+    try (var users =
+           WBUserDatabase.create(this.background, this.file, cache)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+      assertTrue(users.authenticate(unchanged, PASS_0));
+      assertEquals(2, cache.size());
+
+      this.addUser(USER, PASS_1);
+      waitFor(() -> !users.authenticateCached(USER, PASS_0));
+
+      assertTrue(users.authenticateCached(unchanged, PASS_0));
+      assertEquals(1, cache.size());
+      assertFalse(users.authenticate(USER, PASS_0));
+      assertTrue(users.authenticate(USER, PASS_1));
+    }
+  }
+
+  @Test
+  public void testRehashBatched()
+    throws Exception
+  {
+    final var legacy =
+      WBPasswordAlgorithms.create(WBPasswordAlgorithmPBKDF2.createSHA1(10_000));
+
+    final var legacyUsers = new HashMap<WBUserName, WBPassKey>();
+    for (int index = 0; index < 10; ++index) {
+      legacyUsers.put(WBUserName.of("user" + index), PASS_0);
+    }
+
+    try (var users = WBUserDatabase.create(
+      x -> { }, this.file, WBUserCredentialCache.disabled(), legacy)) {
+      users.userAddAll(legacyUsers);
+    }
+
+    try (var users = WBUserDatabase.create(x -> { }, this.file)) {
+      for (final var user : legacyUsers.keySet()) {
+        assertTrue(users.authenticate(user, PASS_0));
+      }
+    }
+
+    for (final var user : legacyUsers.keySet()) {
+      assertTrue(this.storedHash(user).startsWith("argon2id:"));
+    }
+  }
+
+  @Test
+  public void testStaleTemporaryFileIgnored()
+    throws Exception
+  {
+    Files.writeString(
+      this.directory.resolve("users.db.tmp"),
+      "left behind by a crash");
+
+    this.addUser(USER, PASS_0);
+    this.addUser(WBUserName.of("other"), PASS_1);
+
+    try (var users = WBUserDatabase.create(x -> { }, this.file)) {
+      assertTrue(users.authenticate(USER, PASS_0));
+      assertTrue(users.authenticate(WBUserName.of("other"), PASS_1));
+    }
+  }
+
+  @Test
+  public void testConcurrentWritersLoseNothing()
+    throws Exception
+  {
+    final var threads = new ArrayList<Thread>();
+    final var failures = new ArrayList<Exception>();
+
+    for (int writer = 0; writer < 4; ++writer) {
+      final var writerIndex = writer;
+      threads.add(Thread.ofPlatform().start(() -> {
+        try (var users = WBUserDatabase.create(x -> { }, this.file)) {
+          for (int index = 0; index < 5; ++index) {
+            users.userAdd(
+              WBUserName.of("user" + writerIndex + "_" + index),
+              PASS_0);
+          }
+        } catch (final Exception e) {
+          synchronized (failures) {
+            failures.add(e);
+          }
+        }
+      }));
+    }
+
+    for (final var thread : threads) {
+      thread.join();
+    }
+    assertEquals(List.of(), failures);
+
+    try (var users = WBUserDatabase.create(x -> { }, this.file)) {
+      for (int writer = 0; writer < 4; ++writer) {
+        for (int index = 0; index < 5; ++index) {
+          assertTrue(
+            users.userExists(WBUserName.of("user" + writer + "_" + index)));
+        }
+      }
+    }
+  }
+}
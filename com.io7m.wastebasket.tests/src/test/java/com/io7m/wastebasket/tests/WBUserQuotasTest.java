@@ -0,0 +1,301 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.tests;
+
+import com.io7m.wastebasket.api.WBBlobDurability;
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobMetadata;
+import com.io7m.wastebasket.vanilla.WBBlobIndex;
+import com.io7m.wastebasket.vanilla.WBUserQuota;
+import com.io7m.wastebasket.vanilla.WBUserQuotaStatus;
+import com.io7m.wastebasket.vanilla.WBUserQuotas;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.io7m.wastebasket.vanilla.WBUserQuotaStatus.ADMITTED;
+import static com.io7m.wastebasket.vanilla.WBUserQuotaStatus.CONCURRENT_UPLOADS_EXCEEDED;
+import static com.io7m.wastebasket.vanilla.WBUserQuotaStatus.STORAGE_EXCEEDED;
+import static com.io7m.wastebasket.vanilla.WBUserQuotaStatus.TRANSFER_EXCEEDED;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public final class WBUserQuotasTest
+{
+  private Path directory;
+  private Path file;
+  private Path usageFile;
+  private WBBlobIndex index;
+  private ExecutorService executor;
+  private MutableClock clock;
+
+  private static final class MutableClock extends Clock
+  {
+    private volatile Instant now =
+      Instant.parse("2026-01-01T00:00:00Z");
+
+    @Override
+    public ZoneId getZone()
+    {
+      return ZoneOffset.UTC;
+    }
+
+    @Override
+    public Clock withZone(
+      final ZoneId zone)
+    {
+      return this;
+    }
+
+    @Override
+    public Instant instant()
+    {
+      return this.now;
+    }
+
+    void advance(
+      final Duration duration)
+    {
+      this.now = this.now.plus(duration);
+    }
+  }
+
+  @BeforeEach
+  public void testSetup()
+    throws Exception
+  {
+    this.directory = TestDirectories.temporaryDirectory();
+    this.file = this.directory.resolve("quotas.properties");
+    this.usageFile = this.directory.resolve("quota-usage.properties");
+    this.index =
+      WBBlobIndex.open(
+        this.directory.resolve("index.wbi"),
+        WBBlobDurability.NONE);
+    this.executor = Executors.newVirtualThreadPerTaskExecutor();
+    this.clock = new MutableClock();
+  }
+
+  @AfterEach
+  public void testTearDown()
+    throws Exception
+  {
+    this.executor.shutdownNow();
+    this.index.close();
+  }
+
+  private WBUserQuotas open()
+  {
+    return WBUserQuotas.create(
+      this.executor,
+      this.file,
+      this.usageFile,
+      Duration.ofSeconds(30L),
+      this.clock,
+      this.index);
+  }
+
+  private void writeQuotas(
+    final String text)
+    throws Exception
+  {
+    final var temporary = this.directory.resolve("quotas.tmp");
+    Files.writeString(temporary, text);
+    Files.move(
+      temporary,
+      this.file,
+      ATOMIC_MOVE,
+      REPLACE_EXISTING);
+  }
+
+  private static WBUserQuotaStatus admitAndFinish(
+    final WBUserQuotas quotas,
+    final String user,
+    final long size)
+  {
+    try (var upload = quotas.admit(user, size)) {
+      if (upload.status() == ADMITTED) {
+        upload.consume(size);
+      }
+      return upload.status();
+    }
+  }
+
+  @Test
+  public void testUnlimitedByDefault()
+    throws Exception
+  {
+    try (var quotas = this.open()) {
+      assertEquals(WBUserQuota.UNLIMITED, quotas.quotaOf("alice"));
+      for (int i = 0; i < 100; ++i) {
+        assertEquals(ADMITTED, quotas.admit("alice", 1_000_000L).status());
+      }
+    }
+  }
+
+  @Test
+  public void testConcurrentUploads()
+    throws Exception
+  {
+    this.writeQuotas("alice.concurrentUploads=2\n");
+
+    try (var quotas = this.open()) {
+      final var u0 = quotas.admit("alice", 10L);
+      final var u1 = quotas.admit("alice", 10L);
+      assertEquals(ADMITTED, u0.status());
+      assertEquals(ADMITTED, u1.status());
+      assertEquals(CONCURRENT_UPLOADS_EXCEEDED, quotas.admit("alice", 10L).status());
+      assertEquals(ADMITTED, quotas.admit("bob", 10L).status());
+
+      u0.close();
+      u0.close();
+      final var u2 = quotas.admit("alice", 10L);
+      assertEquals(ADMITTED, u2.status());
+      assertEquals(CONCURRENT_UPLOADS_EXCEEDED, quotas.admit("alice", 10L).status());
+    }
+  }
+
+  @Test
+  public void testTransferWindow()
+    throws Exception
+  {
+    this.writeQuotas("""
+      alice.transferBytes=1000
+      alice.transferWindowSeconds=60
+      """);
+
+    try (var quotas = this.open()) {
+      assertEquals(ADMITTED, admitAndFinish(quotas, "alice", 600L));
+      assertEquals(TRANSFER_EXCEEDED, admitAndFinish(quotas, "alice", 500L));
+      assertEquals(600L, quotas.transferredBy("alice"));
+
+      try (var upload = quotas.admit("alice", 400L)) {
+        assertEquals(ADMITTED, upload.status());
+        assertEquals(1000L, quotas.transferredBy("alice"));
+        upload.consume(100L);
+      }
+      assertEquals(700L, quotas.transferredBy("alice"));
+
+      this.clock.advance(Duration.ofSeconds(60L));
+      assertEquals(0L, quotas.transferredBy("alice"));
+      assertEquals(ADMITTED, admitAndFinish(quotas, "alice", 1000L));
+    }
+  }
+
+  @Test
+  public void testStoredBytes()
+    throws Exception
+  {
+    this.writeQuotas("alice.storedBytes=1000\n");
+
+    final var stored =
+      WBBlobMetadata.builder()
+        .setId(WBBlobID.of("0".repeat(32)))
+        .setSize(800L)
+        .setSha256("0".repeat(64))
+        .setUser("alice")
+        .setRemoteAddress("10.0.0.1")
+        .setTime(OffsetDateTime.now(this.clock))
+        .setLocation("")
+        .build();
+    this.index.add(stored);
+
+    try (var quotas = this.open()) {
+      assertEquals(STORAGE_EXCEEDED, quotas.admit("alice", 300L).status());
+
+      final var upload = quotas.admit("alice", 200L);
+      assertEquals(ADMITTED, upload.status());
+      assertEquals(STORAGE_EXCEEDED, quotas.admit("alice", 1L).status());
+      upload.close();
+
+      this.index.remove(stored);
+      assertEquals(ADMITTED, admitAndFinish(quotas, "alice", 1000L));
+    }
+  }
+
+  @Test
+  public void testDefaults()
+    throws Exception
+  {
+    this.writeQuotas("""
+      *.concurrentUploads=1
+      *.storedBytes=5000
+      alice.transferBytes=10
+      bob.storedBytes=nonsense
+      """);
+
+    try (var quotas = this.open()) {
+      assertEquals(
+        new WBUserQuota(5000L, 10L, Duration.ofHours(1L), 1),
+        quotas.quotaOf("alice"));
+      assertEquals(
+        new WBUserQuota(5000L, 0L, Duration.ofHours(1L), 1),
+        quotas.quotaOf("bob"));
+      assertEquals(
+        new WBUserQuota(5000L, 0L, Duration.ofHours(1L), 1),
+        quotas.quotaOf("carol"));
+    }
+  }
+
+  @Test
+  public void testUsagePersisted()
+    throws Exception
+  {
+    this.writeQuotas("alice.transferBytes=1000\n");
+
+    try (var quotas = this.open()) {
+      assertEquals(ADMITTED, admitAndFinish(quotas, "alice", 900L));
+    }
+
+    try (var quotas = this.open()) {
+      assertEquals(900L, quotas.transferredBy("alice"));
+      assertEquals(TRANSFER_EXCEEDED, admitAndFinish(quotas, "alice", 200L));
+    }
+  }
+
+  @Test
+  public void testReload()
+    throws Exception
+  {
+    this.writeQuotas("alice.concurrentUploads=1\n");
+
+    try (var quotas = this.open()) {
+      assertEquals(1, quotas.quotaOf("alice").concurrentUploads());
+
+      this.writeQuotas("alice.concurrentUploads=3\n");
+      for (int i = 0; i < 500; ++i) {
+        if (quotas.quotaOf("alice").concurrentUploads() == 3) {
+          break;
+        }
+        Thread.sleep(10L);
+      }
+      assertEquals(3, quotas.quotaOf("alice").concurrentUploads());
+    }
+  }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBUserName;
+
+import java.time.Instant;
+import java.util.Objects;
+
+/**
+ * An issued access token.
+ *
+ * @param user    The user to which the token was issued
+ * @param text    The encoded token, as presented by clients
+ * @param expires The time at which the token expires
+ */
+
+public record WBAccessToken(
+  WBUserName user,
+  String text,
+  Instant expires)
+{
+  /**
+   * An issued access token.
+   *
+   * @param user    The user to which the token was issued
+   * @param text    The encoded token, as presented by clients
+   * @param expires The time at which the token expires
+   */
+
+  public WBAccessToken
+  {
+    Objects.requireNonNull(user, "user");
+    Objects.requireNonNull(text, "text");
+    Objects.requireNonNull(expires, "expires");
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[WBAccessToken %s %s]".formatted(this.user.value(), this.expires);
+  }
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBUserDatabaseType;
+import com.io7m.wastebasket.api.WBUserName;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * An authority that issues and verifies short-lived access tokens.
+ *
+ * A token is a small payload (a key ID, an expiry time, a fingerprint of the
+ * user's credential, and a user name) followed by an HMAC-SHA256 signature
+ * of that payload. Verifying a token
+ * requires computing a single MAC, and so is far cheaper than checking a
+ * password. The signing keys exist only in memory, and are replaced every
+ * token lifetime; the previous key is retained for one further lifetime so
+ * that every unexpired token remains verifiable. Restarting the server
+ * therefore invalidates all outstanding tokens. A token is only accepted
+ * whilst the user to which it was issued still exists in the user database
+ * with the same credential; changing the user's password, or deleting and
+ * adding the user again, invalidates all of the user's outstanding tokens.
+ */
+
+public final class WBAccessTokens
+{
+  private static final String MAC_ALGORITHM = "HmacSHA256";
+  private static final int KEY_SIZE = 32;
+  private static final byte VERSION = 2;
+  private static final int HEADER_SIZE = 1 + 4 + 8 + 8;
+
+  private static final Base64.Encoder ENCODER =
+    Base64.getUrlEncoder().withoutPadding();
+  private static final Base64.Decoder DECODER =
+    Base64.getUrlDecoder();
+
+  private final Clock clock;
+  private final WBUserDatabaseType users;
+  private final Duration lifetime;
+  private final SecureRandom random;
+  private final AtomicReference<Keys> keys;
+
+  private WBAccessTokens(
+    final Clock inClock,
+    final WBUserDatabaseType inUsers,
+    final Duration inLifetime)
+  {
+    this.clock =
+      Objects.requireNonNull(inClock, "clock");
+    this.users =
+      Objects.requireNonNull(inUsers, "users");
+    this.lifetime =
+      Objects.requireNonNull(inLifetime, "lifetime");
+    this.random =
+      new SecureRandom();
+
+    final var now = this.clock.instant();
+    this.keys =
+      new AtomicReference<>(
+        new Keys(this.generateKey(0), null, now.plus(this.lifetime)));
+  }
+
+  /**
+   * Create a token authority.
+   *
+   * @param clock    The clock used to determine token expiry
+   * @param users    The user database
+   * @param lifetime The length of time for which issued tokens are valid
+   *
+   * @return A token authority
+   */
+
+  public static WBAccessTokens create(
+    final Clock clock,
+    final WBUserDatabaseType users,
+    final Duration lifetime)
+  {
+    Objects.requireNonNull(lifetime, "lifetime");
+    if (lifetime.isNegative() || lifetime.isZero()) {
+      throw new IllegalArgumentException("Token lifetime must be positive");
+    }
+    return new WBAccessTokens(clock, users, lifetime);
+  }
+
+  /**
+   * @return The length of time for which issued tokens are valid
+   */
+
+  public Duration lifetime()
+  {
+    return this.lifetime;
+  }
+
+  /**
+   * Issue a token for the given user. The caller is responsible for having
+   * authenticated the user. The token is bound to the user's current
+   * credential.
+   *
+   * @param user The user
+   *
+   * @return A new token
+   *
+   * @throws GeneralSecurityException On errors
+   */
+
+  public WBAccessToken issue(
+    final WBUserName user)
+    throws GeneralSecurityException
+  {
+    Objects.requireNonNull(user, "user");
+
+    final var now = this.clock.instant();
+    final var key = this.currentKeys(now).current();
+    final var expires = now.plus(this.lifetime);
+    final var name = user.value().getBytes(UTF_8);
+    final var fingerprint =
+      this.users.credentialFingerprint(user).orElse(0L);
+
+    final var payload = ByteBuffer.allocate(HEADER_SIZE + name.length);
+    payload.put(VERSION);
+    payload.putInt(key.id());
+    payload.putLong(expires.getEpochSecond());
+    payload.putLong(fingerprint);
+    payload.put(name);
+
+    final var payloadBytes = payload.array();
+    final var text =
+      ENCODER.encodeToString(payloadBytes)
+      + "."
+      + ENCODER.encodeToString(key.sign(payloadBytes));
+
+    return new WBAccessToken(
+      user,
+      text,
+      Instant.ofEpochSecond(expires.getEpochSecond()));
+  }
+
+  /**
+   * Verify the given token.
+   *
+   * @param text The encoded token
+   *
+   * @return The user to which the token was issued, if the token is valid
+   *
+   * @throws GeneralSecurityException On errors
+   */
+
+  public Optional<WBUserName> verify(
+    final String text)
+    throws GeneralSecurityException
+  {
+    Objects.requireNonNull(text, "text");
+
+    final var token = decode(text);
+    if (token == null) {
+      return Optional.empty();
+    }
+
+    final var now = this.clock.instant();
+    final var key = this.currentKeys(now).find(token.keyId());
+    if (key == null) {
+      return Optional.empty();
+    }
+    if (!MessageDigest.isEqual(key.sign(token.payload()), token.signature())) {
+      return Optional.empty();
+    }
+    if (now.getEpochSecond() >= token.expires()) {
+      return Optional.empty();
+    }
+
+    final WBUserName user;
+    try {
+      user = WBUserName.of(token.user());
+    } catch (final IllegalArgumentException e) {
+      return Optional.empty();
+    }
+
+    final var fingerprint = this.users.credentialFingerprint(user);
+    if (fingerprint.isEmpty()
+        || fingerprint.getAsLong() != token.fingerprint()) {
+      return Optional.empty();
+    }
+    return Optional.of(user);
+  }
+
+  private static DecodedToken decode(
+    final String text)
+  {
+    final var separator = text.indexOf('.');
+    if (separator <= 0) {
+      return null;
+    }
+
+    final byte[] payload;
+    final byte[] signature;
+    try {
+      payload = DECODER.decode(text.substring(0, separator));
+      signature = DECODER.decode(text.substring(separator + 1));
+    } catch (final IllegalArgumentException e) {
+      return null;
+    }
+
+    if (payload.length <= HEADER_SIZE) {
+      return null;
+    }
+
+    final var buffer = ByteBuffer.wrap(payload);
+    if (buffer.get() != VERSION) {
+      return null;
+    }
+
+    final var keyId = buffer.getInt();
+    final var expires = buffer.getLong();
+    final var fingerprint = buffer.getLong();
+    return new DecodedToken(
+      payload,
+      signature,
+      keyId,
+      expires,
+      fingerprint,
+      UTF_8.decode(buffer).toString());
+  }
+
+  private Keys currentKeys(
+    final Instant now)
+  {
+    while (true) {
+      final var existing = this.keys.get();
+      if (now.isBefore(existing.rotateAt())) {
+        return existing;
+      }
+
+      /*
+       * If more than one full lifetime has passed since the last rotation,
+       * the current key can no longer have signed any unexpired token, and
+       * so there is no reason to keep it.
+       */
+
+      final var nextId = existing.current().id() + 1;
+      final var next =
+        now.isBefore(existing.rotateAt().plus(this.lifetime))
+          ? new Keys(
+          this.generateKey(nextId),
+          existing.current(),
+          existing.rotateAt().plus(this.lifetime))
+          : new Keys(
+          this.generateKey(nextId),
+          null,
+          now.plus(this.lifetime));
+
+      if (this.keys.compareAndSet(existing, next)) {
+        return next;
+      }
+    }
+  }
+
+  private SigningKey generateKey(
+    final int id)
+  {
+    final var data = new byte[KEY_SIZE];
+    this.random.nextBytes(data);
+    return new SigningKey(id, new SecretKeySpec(data, MAC_ALGORITHM));
+  }
+
+  private record SigningKey(
+    int id,
+    SecretKeySpec key)
+  {
+    byte[] sign(
+      final byte[] data)
+      throws GeneralSecurityException
+    {
+      final var mac = Mac.getInstance(MAC_ALGORITHM);
+      mac.init(this.key);
+      return mac.doFinal(data);
+    }
+  }
+
+  private record DecodedToken(
+    byte[] payload,
+    byte[] signature,
+    int keyId,
+    long expires,
+    long fingerprint,
+    String user)
+  {
+
+  }
+
+  private record Keys(
+    SigningKey current,
+    SigningKey previous,
+    Instant rotateAt)
+  {
+    SigningKey find(
+      final int id)
+    {
+      if (this.current.id() == id) {
+        return this.current;
+      }
+      if (this.previous != null && this.previous.id() == id) {
+        return this.previous;
+      }
+      return null;
+    }
+  }
+}
@@ -91,6 +91,7 @@ public final class WBAuditLog implements WBAuditLogType
 
     eventBuilder.append(Long.toUnsignedString(size));
     eventBuilder.append('|');
+    eventBuilder.append('\n');
 
     synchronized (this.writer) {
       this.writer.write(eventBuilder.toString());
@@ -0,0 +1,313 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBUserDatabaseType;
+import com.io7m.wastebasket.api.WBUserName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded executor for password checks.
+ *
+ * Password hashing is deliberately expensive. Running it on a small,
+ * dedicated pool of threads with a bounded queue prevents bursts of logins
+ * from occupying every server thread with CPU work and stalling transfers
+ * that are already in progress. Credentials that can be verified cheaply
+ * (for example, because they are cached) are checked on the calling thread
+ * and never enter the queue.
+ *
+ * Once started, the executor periodically logs the number of checks
+ * executed and rejected, the depth of the queue, and the mean and maximum
+ * time taken by each check during the preceding interval.
+ */
+
+public final class WBAuthenticationExecutor implements AutoCloseable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBAuthenticationExecutor.class);
+
+  private final WBUserDatabaseType users;
+  private final ThreadPoolExecutor executor;
+  private final Duration reportInterval;
+  private final LongAdder hashCount;
+  private final LongAdder hashNanos;
+  private final AtomicLong hashNanosMaximum;
+  private final AtomicLong hashNanosMaximumRecent;
+  private final LongAdder rejected;
+  private final AtomicReference<Thread> reporter;
+
+  private WBAuthenticationExecutor(
+    final WBUserDatabaseType inUsers,
+    final ThreadPoolExecutor inExecutor,
+    final Duration inReportInterval)
+  {
+    this.users =
+      Objects.requireNonNull(inUsers, "users");
+    this.executor =
+      Objects.requireNonNull(inExecutor, "executor");
+    this.reportInterval =
+      Objects.requireNonNull(inReportInterval, "reportInterval");
+
+    this.hashCount = new LongAdder();
+    this.hashNanos = new LongAdder();
+    this.hashNanosMaximum = new AtomicLong(0L);
+    this.hashNanosMaximumRecent = new AtomicLong(0L);
+    this.rejected = new LongAdder();
+    this.reporter = new AtomicReference<>();
+  }
+
+  /**
+   * Create an authentication executor.
+   *
+   * @param users          The user database
+   * @param threads        The number of threads that will check passwords
+   * @param queueLimit     The maximum number of checks that may be waiting
+   * @param reportInterval The interval at which statistics are logged
+   *
+   * @return An executor
+   */
+
+  public static WBAuthenticationExecutor create(
+    final WBUserDatabaseType users,
+    final int threads,
+    final int queueLimit,
+    final Duration reportInterval)
+  {
+    Objects.requireNonNull(users, "users");
+    Objects.requireNonNull(reportInterval, "reportInterval");
+
+    if (threads < 1) {
+      throw new IllegalArgumentException("Thread count must be positive");
+    }
+    if (queueLimit < 1) {
+      throw new IllegalArgumentException("Queue limit must be positive");
+    }
+    if (reportInterval.isNegative() || reportInterval.isZero()) {
+      throw new IllegalArgumentException("Report interval must be positive");
+    }
+
+    final var threadIndex = new AtomicLong(0L);
+    final var executor =
+      new ThreadPoolExecutor(
+        threads,
+        threads,
+        0L,
+        TimeUnit.MILLISECONDS,
+        new ArrayBlockingQueue<>(queueLimit),
+        runnable -> {
+          final var thread = new Thread(runnable);
+          thread.setName(String.format(
+            "com.io7m.wastebasket.authentication-%d",
+            Long.valueOf(threadIndex.incrementAndGet())));
+          thread.setDaemon(true);
+          return thread;
+        },
+        new ThreadPoolExecutor.AbortPolicy()
+      );
+
+    return new WBAuthenticationExecutor(users, executor, reportInterval);
+  }
+
+  /**
+   * Check if {@code user} exists and has password {@code password}.
+   *
+   * @param user     The user
+   * @param password The password
+   *
+   * @return The result of authentication
+   *
+   * @throws RejectedExecutionException If too many checks are already queued
+   */
+
+  public CompletableFuture<Boolean> authenticate(
+    final WBUserName user,
+    final WBPassKey password)
+    throws RejectedExecutionException
+  {
+    Objects.requireNonNull(user, "user");
+    Objects.requireNonNull(password, "password");
+
+    if (this.users.authenticateCached(user, password)) {
+      return CompletableFuture.completedFuture(Boolean.TRUE);
+    }
+
+    try {
+      return CompletableFuture.supplyAsync(
+        () -> Boolean.valueOf(this.authenticateTimed(user, password)),
+        this.executor
+      );
+    } catch (final RejectedExecutionException e) {
+      this.rejected.increment();
+      throw e;
+    }
+  }
+
+  private boolean authenticateTimed(
+    final WBUserName user,
+    final WBPassKey password)
+  {
+    final var timeThen = System.nanoTime();
+    try {
+      return this.users.authenticate(user, password);
+    } finally {
+      final var elapsed = System.nanoTime() - timeThen;
+      this.hashCount.increment();
+      this.hashNanos.add(elapsed);
+      this.hashNanosMaximum.accumulateAndGet(elapsed, Math::max);
+      this.hashNanosMaximumRecent.accumulateAndGet(elapsed, Math::max);
+    }
+  }
+
+  /**
+   * @return The number of password checks currently waiting for a thread
+   */
+
+  public int queueDepth()
+  {
+    return this.executor.getQueue().size();
+  }
+
+  /**
+   * @return The number of password checks rejected because the queue was full
+   */
+
+  public long rejected()
+  {
+    return this.rejected.sum();
+  }
+
+  /**
+   * @return The number of password checks executed on the pool
+   */
+
+  public long hashCount()
+  {
+    return this.hashCount.sum();
+  }
+
+  /**
+   * @return The mean time taken to execute a password check on the pool
+   */
+
+  public Duration hashLatencyMean()
+  {
+    final var count = this.hashCount.sum();
+    if (count == 0L) {
+      return Duration.ZERO;
+    }
+    return Duration.ofNanos(this.hashNanos.sum() / count);
+  }
+
+  /**
+   * @return The longest time taken to execute a password check on the pool
+   */
+
+  public Duration hashLatencyMaximum()
+  {
+    return Duration.ofNanos(this.hashNanosMaximum.get());
+  }
+
+  /**
+   * Start logging statistics in the background.
+   */
+
+  public void start()
+  {
+    if (this.reporter.get() != null) {
+      return;
+    }
+
+    final var thread =
+      Thread.ofVirtual()
+        .name("com.io7m.wastebasket.authentication.statistics")
+        .unstarted(this::reportPeriodically);
+
+    if (this.reporter.compareAndSet(null, thread)) {
+      thread.start();
+    }
+  }
+
+  private void reportPeriodically()
+  {
+    long lastCount = 0L;
+    long lastNanos = 0L;
+    long lastRejected = 0L;
+
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        Thread.sleep(this.reportInterval);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+
+      final var count = this.hashCount.sum();
+      final var nanos = this.hashNanos.sum();
+      final var rejectedNow = this.rejected.sum();
+      final var maximum = this.hashNanosMaximumRecent.getAndSet(0L);
+      final var queued = this.queueDepth();
+
+      final var countDelta = count - lastCount;
+      final var rejectedDelta = rejectedNow - lastRejected;
+      if (countDelta > 0L || rejectedDelta > 0L || queued > 0) {
+        final var mean =
+          countDelta == 0L ? 0L : (nanos - lastNanos) / countDelta;
+        LOG.info(
+          "password checks: {} completed, {} rejected, {} queued; time mean {} ms, maximum {} ms",
+          Long.valueOf(countDelta),
+          Long.valueOf(rejectedDelta),
+          Integer.valueOf(queued),
+          Long.valueOf(TimeUnit.NANOSECONDS.toMillis(mean)),
+          Long.valueOf(TimeUnit.NANOSECONDS.toMillis(maximum)));
+      }
+
+      lastCount = count;
+      lastNanos = nanos;
+      lastRejected = rejectedNow;
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    this.executor.shutdown();
+
+    final var running = this.reporter.getAndSet(null);
+    if (running != null) {
+      running.interrupt();
+      try {
+        running.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,307 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBUserName;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * A throttle for failed authentication attempts.
+ *
+ * Every remote address and every user name has a token bucket that holds up
+ * to {@code burst} failures, and that regains one failure every
+ * {@code interval}. A client whose address or target user has an empty
+ * bucket is refused before any password hashing takes place, so sustained
+ * guessing costs the server almost nothing. Only failures consume tokens.
+ *
+ * Each bucket is a single atomic "theoretical arrival time" (the generic
+ * cell rate algorithm), so checking a bucket is a plain read and recording
+ * a failure is a single compare-and-set. Buckets are spread across a fixed
+ * number of stripes, each holding a bounded number of entries; when a
+ * stripe is full, buckets that have completely refilled are discarded (they
+ * are indistinguishable from absent buckets), and failing that, the bucket
+ * closest to refilling is discarded.
+ */
+
+public final class WBAuthenticationThrottle
+{
+  private static final int STRIPES = 16;
+
+  private final int burst;
+  private final long intervalNanos;
+  private final long toleranceNanos;
+  private final int stripeCapacity;
+  private final LongSupplier clock;
+  private final Stripe[] stripes;
+  private final LongAdder rejected;
+
+  private WBAuthenticationThrottle(
+    final int inBurst,
+    final long inIntervalNanos,
+    final int inMaximumEntries,
+    final LongSupplier inClock)
+  {
+    this.burst = inBurst;
+    this.intervalNanos = inIntervalNanos;
+    this.toleranceNanos = (inBurst - 1) * inIntervalNanos;
+    this.stripeCapacity = Math.max(1, inMaximumEntries / STRIPES);
+    this.clock = Objects.requireNonNull(inClock, "clock");
+    this.rejected = new LongAdder();
+    this.stripes = new Stripe[STRIPES];
+    for (int index = 0; index < STRIPES; ++index) {
+      this.stripes[index] = new Stripe();
+    }
+  }
+
+  /**
+   * Create a throttle.
+   *
+   * @param burst          The number of consecutive failures permitted
+   * @param interval       The time taken to regain one permitted failure
+   * @param maximumEntries The maximum number of tracked addresses and users
+   *
+   * @return A throttle
+   */
+
+  public static WBAuthenticationThrottle create(
+    final int burst,
+    final Duration interval,
+    final int maximumEntries)
+  {
+    return create(burst, interval, maximumEntries, System::nanoTime);
+  }
+
+  /**
+   * Create a throttle.
+   *
+   * @param burst          The number of consecutive failures permitted
+   * @param interval       The time taken to regain one permitted failure
+   * @param maximumEntries The maximum number of tracked addresses and users
+   * @param clock          A monotonic clock in nanoseconds
+   *
+   * @return A throttle
+   */
+
+  public static WBAuthenticationThrottle create(
+    final int burst,
+    final Duration interval,
+    final int maximumEntries,
+    final LongSupplier clock)
+  {
+    Objects.requireNonNull(interval, "interval");
+
+    if (burst < 1) {
+      throw new IllegalArgumentException("Burst must be positive");
+    }
+    if (interval.isNegative() || interval.isZero()) {
+      throw new IllegalArgumentException("Interval must be positive");
+    }
+    if (maximumEntries < 1) {
+      throw new IllegalArgumentException("Maximum entries must be positive");
+    }
+
+    return new WBAuthenticationThrottle(
+      burst,
+      interval.toNanos(),
+      maximumEntries,
+      clock);
+  }
+
+  private static String addressKey(
+    final String address)
+  {
+    return "a:" + address;
+  }
+
+  private static String userKey(
+    final WBUserName user)
+  {
+    return "u:" + user.value();
+  }
+
+  /**
+   * Determine how long a client must wait before attempting to authenticate.
+   * A result of zero means the attempt may proceed. A nonzero result is
+   * counted as a rejection.
+   *
+   * @param address The remote address
+   * @param user    The user
+   *
+   * @return The required delay in nanoseconds
+   */
+
+  public long delayNanos(
+    final String address,
+    final WBUserName user)
+  {
+    Objects.requireNonNull(address, "address");
+    Objects.requireNonNull(user, "user");
+
+    final var now = this.clock.getAsLong();
+    final var delay =
+      Math.max(
+        this.delayFor(addressKey(address), now),
+        this.delayFor(userKey(user), now));
+
+    if (delay > 0L) {
+      this.rejected.increment();
+    }
+    return delay;
+  }
+
+  /**
+   * Record a failed authentication attempt.
+   *
+   * @param address The remote address
+   * @param user    The user
+   */
+
+  public void recordFailure(
+    final String address,
+    final WBUserName user)
+  {
+    Objects.requireNonNull(address, "address");
+    Objects.requireNonNull(user, "user");
+
+    final var now = this.clock.getAsLong();
+    this.failure(addressKey(address), now);
+    this.failure(userKey(user), now);
+  }
+
+  /**
+   * @return The number of attempts that have been refused
+   */
+
+  public long rejected()
+  {
+    return this.rejected.sum();
+  }
+
+  /**
+   * @return The number of addresses and users currently tracked
+   */
+
+  public int size()
+  {
+    int size = 0;
+    for (final var stripe : this.stripes) {
+      size += stripe.buckets.size();
+    }
+    return size;
+  }
+
+  /**
+   * @return The number of consecutive failures permitted
+   */
+
+  public int burst()
+  {
+    return this.burst;
+  }
+
+  private Stripe stripeFor(
+    final String key)
+  {
+    final var hash = key.hashCode();
+    return this.stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+  }
+
+  private long delayFor(
+    final String key,
+    final long now)
+  {
+    final var bucket = this.stripeFor(key).buckets.get(key);
+    if (bucket == null) {
+      return 0L;
+    }
+    return Math.max(0L, bucket.arrival.get() - now - this.toleranceNanos);
+  }
+
+  private void failure(
+    final String key,
+    final long now)
+  {
+    final var stripe = this.stripeFor(key);
+
+    var bucket = stripe.buckets.get(key);
+    if (bucket == null) {
+      if (stripe.buckets.size() >= this.stripeCapacity) {
+        this.evict(stripe, now);
+      }
+      bucket = stripe.buckets.computeIfAbsent(key, k -> new Bucket(now));
+    }
+
+    while (true) {
+      final var arrival = bucket.arrival.get();
+      final var next = Math.max(arrival, now) + this.intervalNanos;
+      if (bucket.arrival.compareAndSet(arrival, next)) {
+        return;
+      }
+    }
+  }
+
+  private void evict(
+    final Stripe stripe,
+    final long now)
+  {
+    stripe.buckets.values().removeIf(b -> b.arrival.get() - now <= 0L);
+    if (stripe.buckets.size() < this.stripeCapacity) {
+      return;
+    }
+
+    String oldestKey = null;
+    long oldestArrival = Long.MAX_VALUE;
+    for (final var entry : stripe.buckets.entrySet()) {
+      final var arrival = entry.getValue().arrival.get();
+      if (oldestKey == null || arrival - oldestArrival < 0L) {
+        oldestKey = entry.getKey();
+        oldestArrival = arrival;
+      }
+    }
+    if (oldestKey != null) {
+      stripe.buckets.remove(oldestKey);
+    }
+  }
+
+  private static final class Stripe
+  {
+    private final ConcurrentHashMap<String, Bucket> buckets;
+
+    Stripe()
+    {
+      this.buckets = new ConcurrentHashMap<>();
+    }
+  }
+
+  private static final class Bucket
+  {
+    private final AtomicLong arrival;
+
+    Bucket(
+      final long now)
+    {
+      this.arrival = new AtomicLong(now);
+    }
+  }
+}
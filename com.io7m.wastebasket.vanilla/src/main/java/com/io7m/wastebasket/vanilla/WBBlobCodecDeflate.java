@@ -0,0 +1,122 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobCodecType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A codec that compresses data with the JDK's zlib deflate implementation.
+ */
+
+public final class WBBlobCodecDeflate implements WBBlobCodecType
+{
+  /**
+   * The name of the codec.
+   */
+
+  public static final String NAME = "deflate";
+
+  private static final int BUFFER_SIZE = 65536;
+
+  private final int level;
+
+  private WBBlobCodecDeflate(
+    final int inLevel)
+  {
+    this.level = inLevel;
+  }
+
+  /**
+   * Create the codec using the default compression level.
+   */
+
+  public WBBlobCodecDeflate()
+  {
+    this(Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * Create the codec.
+   *
+   * @param level The compression level in the range {@code [0, 9]}
+   *
+   * @return A codec
+   */
+
+  public static WBBlobCodecDeflate create(
+    final int level)
+  {
+    if (level < Deflater.NO_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+      throw new IllegalArgumentException(
+        "Compression level must be in the range [0, 9]");
+    }
+    return new WBBlobCodecDeflate(level);
+  }
+
+  @Override
+  public String name()
+  {
+    return NAME;
+  }
+
+  @Override
+  public OutputStream encode(
+    final OutputStream output)
+  {
+    final var deflater = new Deflater(this.level);
+    return new DeflaterOutputStream(output, deflater, BUFFER_SIZE) {
+      @Override
+      public void close()
+        throws IOException
+      {
+        try {
+          super.close();
+        } finally {
+          deflater.end();
+        }
+      }
+    };
+  }
+
+  @Override
+  public InputStream decode(
+    final InputStream input)
+  {
+    final var inflater = new Inflater();
+    return new InflaterInputStream(input, inflater, BUFFER_SIZE) {
+      @Override
+      public void close()
+        throws IOException
+      {
+        try {
+          super.close();
+        } finally {
+          inflater.end();
+        }
+      }
+    };
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobCodecType;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The identity codec, used for blobs that were not worth compressing.
+ */
+
+public final class WBBlobCodecIdentity implements WBBlobCodecType
+{
+  /**
+   * The name of the codec.
+   */
+
+  public static final String NAME = "identity";
+
+  /**
+   * Create the codec.
+   */
+
+  public WBBlobCodecIdentity()
+  {
+
+  }
+
+  @Override
+  public String name()
+  {
+    return NAME;
+  }
+
+  @Override
+  public OutputStream encode(
+    final OutputStream output)
+  {
+    return output;
+  }
+
+  @Override
+  public InputStream decode(
+    final InputStream input)
+  {
+    return input;
+  }
+}
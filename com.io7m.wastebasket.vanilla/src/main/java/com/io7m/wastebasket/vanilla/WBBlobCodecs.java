@@ -0,0 +1,263 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobCodecType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.ServiceLoader;
+
+/**
+ * The supported blob codecs, and functions over the header that names the
+ * codec used to encode a blob.
+ *
+ * An encoded blob starts with an eight-byte signature, a version byte, a
+ * byte giving the length of the codec name, and the ASCII codec name.
+ * Blobs written without encoding enabled have no header, and are read
+ * as-is. Since a delivery may itself start with the signature, the header
+ * is only looked for in files that carry the {@link #ATTRIBUTE} extended
+ * attribute, which is set when an encoded blob is committed and which the
+ * contents of a delivery cannot forge.
+ */
+
+public final class WBBlobCodecs
+{
+  /**
+   * The name used in configurations to disable encoding.
+   */
+
+  public static final String NONE = "none";
+
+  /**
+   * The user-defined file attribute that marks a blob as encoded. Its
+   * value is the name of the codec.
+   */
+
+  public static final String ATTRIBUTE = "wastebasket.codec";
+
+  private static final byte[] SIGNATURE = {
+    (byte) 0x89, 'W', 'B', 'B', '\r', '\n', 0x1a, '\n',
+  };
+  private static final int VERSION = 1;
+
+  private WBBlobCodecs()
+  {
+
+  }
+
+  /**
+   * @return The codecs built into this package, along with any codecs
+   *         provided as services
+   */
+
+  public static Map<String, WBBlobCodecType> supported()
+  {
+    final var codecs = new HashMap<String, WBBlobCodecType>();
+    codecs.put(WBBlobCodecIdentity.NAME, new WBBlobCodecIdentity());
+    codecs.put(WBBlobCodecDeflate.NAME, new WBBlobCodecDeflate());
+    for (final var codec : ServiceLoader.load(WBBlobCodecType.class)) {
+      codecs.putIfAbsent(codec.name(), codec);
+    }
+    return Map.copyOf(codecs);
+  }
+
+  /**
+   * Find the codec with the given name.
+   *
+   * @param name The codec name, or {@link #NONE}
+   *
+   * @return The codec, or nothing if {@code name} is {@link #NONE}
+   *
+   * @throws IllegalArgumentException If no such codec exists
+   */
+
+  public static Optional<WBBlobCodecType> find(
+    final String name)
+  {
+    Objects.requireNonNull(name, "name");
+
+    if (NONE.equals(name)) {
+      return Optional.empty();
+    }
+
+    final var codec = supported().get(name);
+    if (codec == null) {
+      throw new IllegalArgumentException(
+        String.format("Unsupported blob codec: %s", name));
+    }
+    return Optional.of(codec);
+  }
+
+  /**
+   * Write a header naming the given codec.
+   *
+   * @param output The output stream
+   * @param codec  The codec
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void writeHeader(
+    final OutputStream output,
+    final WBBlobCodecType codec)
+    throws IOException
+  {
+    final var name = codec.name().getBytes(StandardCharsets.US_ASCII);
+    if (name.length > 255) {
+      throw new IllegalArgumentException("Codec name is too long");
+    }
+    output.write(SIGNATURE);
+    output.write(VERSION);
+    output.write(name.length);
+    output.write(name);
+  }
+
+  /**
+   * Check that blobs in {@code directory} can be marked as encoded.
+   *
+   * @param directory The directory
+   *
+   * @throws IOException On I/O errors
+   * @throws UnsupportedOperationException If the file system holding
+   *                                       {@code directory} does not
+   *                                       support user-defined attributes
+   */
+
+  public static void checkMarkable(
+    final Path directory)
+    throws IOException
+  {
+    if (!Files.getFileStore(directory)
+      .supportsFileAttributeView(UserDefinedFileAttributeView.class)) {
+      throw new UnsupportedOperationException(
+        "Encoded blobs require a file system that supports user-defined file attributes");
+    }
+  }
+
+  /**
+   * Mark a blob as encoded with the given codec.
+   *
+   * @param file  The blob file
+   * @param codec The codec named in the blob's header
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void markEncoded(
+    final Path file,
+    final WBBlobCodecType codec)
+    throws IOException
+  {
+    final var view =
+      Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+    if (view == null) {
+      throw new UnsupportedOperationException(
+        "Encoded blobs require a file system that supports user-defined file attributes");
+    }
+    view.write(
+      ATTRIBUTE,
+      ByteBuffer.wrap(codec.name().getBytes(StandardCharsets.US_ASCII)));
+  }
+
+  /**
+   * @param file The blob file
+   *
+   * @return {@code true} if the blob was marked as encoded when committed
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static boolean isEncoded(
+    final Path file)
+    throws IOException
+  {
+    final var view =
+      Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+    if (view == null) {
+      return false;
+    }
+    try {
+      return view.list().contains(ATTRIBUTE);
+    } catch (final UnsupportedOperationException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Open a stored blob, decoding it if it was marked as encoded.
+   *
+   * @param file The blob file
+   *
+   * @return A stream of the original contents of the blob
+   *
+   * @throws IOException On I/O errors, or if the blob was encoded with an
+   *                     unsupported codec
+   */
+
+  public static InputStream openDecoded(
+    final Path file)
+    throws IOException
+  {
+    if (!isEncoded(file)) {
+      return Files.newInputStream(file);
+    }
+
+    final var input = Files.newInputStream(file);
+    try {
+      final var signature = input.readNBytes(SIGNATURE.length);
+      if (!Arrays.equals(signature, SIGNATURE)) {
+        throw new IOException(
+          String.format("Encoded blob %s has no header", file));
+      }
+
+      final var version = input.read();
+      if (version != VERSION) {
+        throw new IOException(
+          String.format("Unsupported blob header version: %d", version));
+      }
+
+      final var length = input.read();
+      if (length < 0) {
+        throw new IOException("Truncated blob header");
+      }
+      final var name =
+        new String(input.readNBytes(length), StandardCharsets.US_ASCII);
+      final var codec = supported().get(name);
+      if (codec == null) {
+        throw new IOException(
+          String.format("Unsupported blob codec: %s", name));
+      }
+      return codec.decode(input);
+    } catch (final IOException e) {
+      input.close();
+      throw e;
+    }
+  }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobCodecType;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Objects;
+import java.util.zip.Deflater;
+
+/**
+ * A stream that encodes data with a codec, unless the data does not appear
+ * to be worth encoding.
+ *
+ * The first part of the data is held back as a sample. If the sample
+ * starts with the signature of a well-known compressed format, or if a
+ * quick trial compression of the sample saves less than a tenth of its
+ * size, the data is written with the identity codec instead. Either way,
+ * a header naming the codec used is written first.
+ */
+
+final class WBBlobCompressingOutputStream extends OutputStream
+{
+  static final int SAMPLE_SIZE = 65536;
+
+  private static final byte[][] COMPRESSED_SIGNATURES = {
+    {(byte) 0x1f, (byte) 0x8b},
+    {'P', 'K', 0x03, 0x04},
+    {'B', 'Z', 'h'},
+    {(byte) 0xfd, '7', 'z', 'X', 'Z', 0x00},
+    {(byte) 0x28, (byte) 0xb5, (byte) 0x2f, (byte) 0xfd},
+    {'7', 'z', (byte) 0xbc, (byte) 0xaf, 0x27, 0x1c},
+    {0x04, 0x22, 0x4d, 0x18},
+    {(byte) 0x89, 'P', 'N', 'G'},
+    {(byte) 0xff, (byte) 0xd8, (byte) 0xff},
+  };
+
+  private final OutputStream output;
+  private final WBBlobCodecType codec;
+  private final byte[] sample;
+  private int sampleCount;
+  private OutputStream encoder;
+  private WBBlobCodecType chosen;
+  private boolean finished;
+  private boolean discarding;
+
+  WBBlobCompressingOutputStream(
+    final OutputStream inOutput,
+    final WBBlobCodecType inCodec)
+  {
+    this.output =
+      Objects.requireNonNull(inOutput, "output");
+    this.codec =
+      Objects.requireNonNull(inCodec, "codec");
+    this.sample =
+      new byte[SAMPLE_SIZE];
+  }
+
+  /**
+   * Decide whether data starting with the given sample is worth
+   * compressing.
+   *
+   * @param data  The sample
+   * @param count The number of bytes in the sample
+   *
+   * @return {@code true} if the data should be compressed
+   */
+
+  static boolean worthCompressing(
+    final byte[] data,
+    final int count)
+  {
+    for (final var signature : COMPRESSED_SIGNATURES) {
+      if (startsWith(data, count, signature)) {
+        return false;
+      }
+    }
+
+    final var deflater = new Deflater(Deflater.BEST_SPEED);
+    try {
+      deflater.setInput(data, 0, count);
+      deflater.finish();
+      final var scratch = new byte[8192];
+      long compressed = 0L;
+      while (!deflater.finished()) {
+        compressed += deflater.deflate(scratch);
+      }
+      return compressed < count - (count / 10);
+    } finally {
+      deflater.end();
+    }
+  }
+
+  private static boolean startsWith(
+    final byte[] data,
+    final int count,
+    final byte[] signature)
+  {
+    if (count < signature.length) {
+      return false;
+    }
+    for (int index = 0; index < signature.length; ++index) {
+      if (data[index] != signature[index]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return The codec actually used, once it has been chosen
+   */
+
+  WBBlobCodecType chosen()
+  {
+    return this.chosen;
+  }
+
+  private void decide()
+    throws IOException
+  {
+    this.chosen =
+      worthCompressing(this.sample, this.sampleCount)
+        ? this.codec
+        : new WBBlobCodecIdentity();
+
+    WBBlobCodecs.writeHeader(this.output, this.chosen);
+
+    /*
+     * The codec's stream closes the stream it wraps when it is closed, but
+     * the underlying output belongs to the writer. Once the blob has been
+     * abandoned, whatever the codec writes as it is closed is dropped.
+     */
+
+    this.encoder =
+      this.chosen.encode(new FilterOutputStream(this.output) {
+        @Override
+        public void write(
+          final byte[] b,
+          final int off,
+          final int len)
+          throws IOException
+        {
+          if (!WBBlobCompressingOutputStream.this.discarding) {
+            this.out.write(b, off, len);
+          }
+        }
+
+        @Override
+        public void close()
+          throws IOException
+        {
+          this.flush();
+        }
+      });
+
+    this.encoder.write(this.sample, 0, this.sampleCount);
+  }
+
+  @Override
+  public void write(
+    final int b)
+    throws IOException
+  {
+    this.write(new byte[]{(byte) b}, 0, 1);
+  }
+
+  @Override
+  public void write(
+    final byte[] b,
+    final int off,
+    final int len)
+    throws IOException
+  {
+    Objects.checkFromIndexSize(off, len, b.length);
+
+    if (this.encoder != null) {
+      this.encoder.write(b, off, len);
+      return;
+    }
+
+    final var space = this.sample.length - this.sampleCount;
+    final var taken = Math.min(space, len);
+    System.arraycopy(b, off, this.sample, this.sampleCount, taken);
+    this.sampleCount += taken;
+
+    if (this.sampleCount == this.sample.length) {
+      this.decide();
+      if (len > taken) {
+        this.encoder.write(b, off + taken, len - taken);
+      }
+    }
+  }
+
+  /**
+   * Finish encoding. The underlying stream is flushed, but not closed.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void finish()
+    throws IOException
+  {
+    if (this.finished) {
+      return;
+    }
+    if (this.encoder == null) {
+      this.decide();
+    }
+    this.finished = true;
+    this.encoder.close();
+  }
+
+  @Override
+  public void flush()
+    throws IOException
+  {
+    if (this.encoder != null) {
+      this.encoder.flush();
+    }
+  }
+
+  /**
+   * Close the underlying stream. If encoding was not finished, the blob is
+   * being abandoned: the codec's stream is closed so that it releases any
+   * native resources, but nothing more is written.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    try {
+      if (this.encoder != null && !this.finished) {
+        this.finished = true;
+        this.discarding = true;
+        this.encoder.close();
+      }
+    } finally {
+      this.output.close();
+    }
+  }
+}
@@ -0,0 +1,820 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobDurability;
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobIndexType;
+import com.io7m.wastebasket.api.WBBlobMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32C;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * The default implementation of the blob index. The index is a journal
+ * that is only ever appended to, and is read into memory in full when it
+ * is opened:
+ *
+ * <pre>
+ *   header: magic (4) | version (4)
+ *   record: length (4) | kind (1) | body | CRC-32C (4)
+ * </pre>
+ *
+ * The length covers the kind and the body, and the checksum covers
+ * everything before it. The body of an entry is the write time (seconds
+ * (8) and nanoseconds (4)), the size (8), the SHA-256 digest (32), and
+ * then the ID, user, address, and location, each as a UTF-8 string
+ * preceded by its length (2). A later entry for an ID replaces an earlier
+ * one. The body of a removal is the ID alone, as a string.
+ *
+ * A crash can only damage the record that was being appended, so when the
+ * index is opened, a record that is incomplete or fails its checksum is
+ * cut off along with anything after it. Because an entry is only added
+ * after its blob has been committed, a crash can lose the entries of
+ * blobs that were written, but never leaves an entry for a blob that was
+ * not; {@link WBBlobIndexRebuild} recovers any that are lost.
+ *
+ * Changes are committed in groups: records from concurrent callers are
+ * appended together and followed by a single flush according to the
+ * configured durability, and each change is applied to the in-memory
+ * index once its group has been flushed.
+ *
+ * When more than half of the records in the journal are entries that have
+ * been replaced or removed, or the removals themselves, the journal is
+ * compacted by writing only the current entries to a new file and moving
+ * it over the old one.
+ */
+
+public final class WBBlobIndex implements WBBlobIndexType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBBlobIndex.class);
+
+  private static final int MAGIC = 0x57424958;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  private static final byte KIND_ENTRY = 0;
+  private static final byte KIND_REMOVAL = 1;
+  private static final int DIGEST_SIZE = 32;
+  private static final int MAXIMUM_BODY_SIZE = 65536 * 4 + 64;
+  private static final int COMPACTION_MINIMUM = 1024;
+
+  private final Path file;
+  private volatile FileChannel channel;
+  private final WBBlobDurability durability;
+  private final ConcurrentHashMap<String, WBBlobMetadata> entries;
+  private final ConcurrentHashMap<String, ConcurrentSkipListMap<TimeKey, WBBlobMetadata>>
+    byUser;
+  private final ConcurrentSkipListMap<TimeKey, WBBlobMetadata> byTime;
+  private final AtomicLong totalSize;
+  private final ConcurrentHashMap<String, AtomicLong> userSizes;
+  private final ReentrantLock appendLock;
+  private final Condition appendDone;
+  private List<Change> pending;
+  private boolean appending;
+  private long records;
+
+  private WBBlobIndex(
+    final Path inFile,
+    final FileChannel inChannel,
+    final WBBlobDurability inDurability)
+  {
+    this.file =
+      Objects.requireNonNull(inFile, "file");
+    this.channel =
+      Objects.requireNonNull(inChannel, "channel");
+    this.durability =
+      Objects.requireNonNull(inDurability, "durability");
+    this.entries =
+      new ConcurrentHashMap<>();
+    this.byUser =
+      new ConcurrentHashMap<>();
+    this.byTime =
+      new ConcurrentSkipListMap<>();
+    this.totalSize =
+      new AtomicLong();
+    this.userSizes =
+      new ConcurrentHashMap<>();
+    this.appendLock =
+      new ReentrantLock();
+    this.appendDone =
+      this.appendLock.newCondition();
+    this.pending =
+      new ArrayList<>();
+  }
+
+  /**
+   * Open (creating if necessary) the index in {@code file}.
+   *
+   * @param file       The index file
+   * @param durability The steps taken to ensure that each entry reaches
+   *                   stable storage before {@link #add(WBBlobMetadata)}
+   *                   returns
+   *
+   * @return The index
+   *
+   * @throws IOException On I/O errors, or if the file is not an index
+   */
+
+  public static WBBlobIndex open(
+    final Path file,
+    final WBBlobDurability durability)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(durability, "durability");
+
+    final var channel = FileChannel.open(file, CREATE, READ, WRITE);
+    try {
+      final var index = new WBBlobIndex(file, channel, durability);
+      index.load();
+      return index;
+    } catch (final IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  private void load()
+    throws IOException
+  {
+    final var limit = this.channel.size();
+    if (limit < HEADER_SIZE) {
+      this.channel.truncate(0L);
+      final var header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC);
+      header.putInt(VERSION);
+      this.writeAll(header.flip());
+      this.force();
+      return;
+    }
+
+    /*
+     * The stream is deliberately not closed, as that would close the
+     * channel.
+     */
+
+    final var input =
+      new DataInputStream(
+        new BufferedInputStream(
+          Channels.newInputStream(this.channel.position(0L)), 65536));
+
+    if (input.readInt() != MAGIC) {
+      throw new IOException("Not a blob index: " + this.file);
+    }
+    final var version = input.readInt();
+    if (version != VERSION) {
+      throw new IOException(
+        String.format(
+          "Unsupported blob index version %d: %s",
+          Integer.valueOf(version),
+          this.file));
+    }
+
+    long position = HEADER_SIZE;
+    while (position < limit) {
+      final var length = this.readRecord(input, limit - position);
+      if (length < 0L) {
+        LOG.warn(
+          "truncating incomplete record in {} at offset {}",
+          this.file,
+          Long.valueOf(position));
+        this.channel.truncate(position);
+        break;
+      }
+      position += length;
+      ++this.records;
+    }
+
+    this.channel.position(position);
+    LOG.debug(
+      "loaded {} blob index entries from {}",
+      Integer.valueOf(this.entries.size()),
+      this.file);
+
+    if (this.needsCompaction()) {
+      this.compact();
+    }
+  }
+
+  /**
+   * @return The number of records in the journal that no longer contribute
+   *         an entry to the index
+   */
+
+  private long dead()
+  {
+    return this.records - this.entries.size();
+  }
+
+  private boolean needsCompaction()
+  {
+    final var dead = this.dead();
+    return dead >= COMPACTION_MINIMUM && dead > this.entries.size();
+  }
+
+  /**
+   * Replace the journal with one that contains only the current entries.
+   * The new journal is written through a channel that is opened before the
+   * file is moved into place, so that the index never ends up without a
+   * channel to the file it names. Only the thread that writes batches (or
+   * the thread that opens the index) calls this method.
+   */
+
+  private void compact()
+    throws IOException
+  {
+    LOG.info(
+      "compacting blob index {} ({} entries, {} superseded records)",
+      this.file,
+      Integer.valueOf(this.entries.size()),
+      Long.valueOf(this.dead()));
+
+    final var fileTmp =
+      this.file.resolveSibling(this.file.getFileName() + ".tmp");
+    final var newChannel =
+      FileChannel.open(fileTmp, CREATE, READ, WRITE, TRUNCATE_EXISTING);
+
+    try {
+      final var header = ByteBuffer.allocate(HEADER_SIZE);
+      header.putInt(MAGIC);
+      header.putInt(VERSION);
+      writeAll(newChannel, header.flip());
+
+      long count = 0L;
+      for (final var metadata : this.byTime.values()) {
+        writeAll(newChannel, encode(metadata));
+        ++count;
+      }
+      newChannel.force(true);
+
+      Files.move(fileTmp, this.file, ATOMIC_MOVE, REPLACE_EXISTING);
+      if (this.durability != WBBlobDurability.NONE) {
+        WBBlobWriter.syncDirectory(this.file.toAbsolutePath().getParent());
+      }
+
+      final var oldChannel = this.channel;
+      this.channel = newChannel;
+      this.records = count;
+      oldChannel.close();
+    } catch (final IOException | RuntimeException e) {
+      newChannel.close();
+      Files.deleteIfExists(fileTmp);
+      throw e;
+    }
+  }
+
+  /**
+   * Read and apply the record at the current position of {@code input}.
+   *
+   * @return The size of the record, or {@code -1} if there is no complete,
+   *         valid record at the position
+   */
+
+  private long readRecord(
+    final DataInputStream input,
+    final long remaining)
+    throws IOException
+  {
+    if (remaining < 4L) {
+      return -1L;
+    }
+    final var length = input.readInt();
+    if (length < 1 || length > MAXIMUM_BODY_SIZE) {
+      return -1L;
+    }
+    final var size = 4L + length + 4L;
+    if (size > remaining) {
+      return -1L;
+    }
+
+    final var body = input.readNBytes(length);
+    final var expected = input.readInt();
+    final var checksum = new CRC32C();
+    checksum.update(ByteBuffer.allocate(4).putInt(0, length));
+    checksum.update(body);
+    if (expected != (int) checksum.getValue()) {
+      return -1L;
+    }
+
+    final var buffer = ByteBuffer.wrap(body);
+    final var kind = buffer.get();
+    try {
+      switch (kind) {
+        case KIND_ENTRY -> this.apply(decode(buffer));
+        case KIND_REMOVAL -> {
+          final var previous = this.entries.get(getString(buffer));
+          if (previous != null) {
+            this.unapply(previous);
+          }
+        }
+        default -> {
+          LOG.warn(
+            "ignoring record of unrecognized kind {} in {}",
+            Byte.valueOf(kind),
+            this.file);
+        }
+      }
+    } catch (final BufferUnderflowException | IllegalArgumentException e) {
+      return -1L;
+    }
+    return size;
+  }
+
+  private static WBBlobMetadata decode(
+    final ByteBuffer buffer)
+  {
+    final var seconds = buffer.getLong();
+    final var nanos = buffer.getInt();
+    final var size = buffer.getLong();
+    final var digest = new byte[DIGEST_SIZE];
+    buffer.get(digest);
+
+    return WBBlobMetadata.builder()
+      .setTime(
+        OffsetDateTime.ofInstant(
+          Instant.ofEpochSecond(seconds, nanos),
+          ZoneOffset.UTC))
+      .setSize(size)
+      .setSha256(HexFormat.of().formatHex(digest))
+      .setId(WBBlobID.of(getString(buffer)))
+      .setUser(getString(buffer))
+      .setRemoteAddress(getString(buffer))
+      .setLocation(getString(buffer))
+      .build();
+  }
+
+  private static String getString(
+    final ByteBuffer buffer)
+  {
+    final var bytes = new byte[Short.toUnsignedInt(buffer.getShort())];
+    buffer.get(bytes);
+    return new String(bytes, UTF_8);
+  }
+
+  private static byte[] stringBytes(
+    final String text)
+  {
+    final var bytes = text.getBytes(UTF_8);
+    if (bytes.length > 0xffff) {
+      throw new IllegalArgumentException(
+        "String is too long to be indexed: " + bytes.length + " bytes");
+    }
+    return bytes;
+  }
+
+  private static ByteBuffer seal(
+    final ByteBuffer buffer)
+  {
+    final var checksum = new CRC32C();
+    checksum.update(buffer.array(), 0, buffer.position());
+    buffer.putInt((int) checksum.getValue());
+    return buffer.flip();
+  }
+
+  private static ByteBuffer encodeRemoval(
+    final WBBlobID id)
+  {
+    final var string = stringBytes(id.value());
+    final var length = 1 + 2 + string.length;
+    final var buffer = ByteBuffer.allocate(4 + length + 4);
+    buffer.putInt(length);
+    buffer.put(KIND_REMOVAL);
+    buffer.putShort((short) string.length);
+    buffer.put(string);
+    return seal(buffer);
+  }
+
+  private static ByteBuffer encode(
+    final WBBlobMetadata metadata)
+  {
+    final var strings = new byte[][]{
+      stringBytes(metadata.id().value()),
+      stringBytes(metadata.user()),
+      stringBytes(metadata.remoteAddress()),
+      stringBytes(metadata.location()),
+    };
+
+    int length = 1 + 8 + 4 + 8 + DIGEST_SIZE;
+    for (final var string : strings) {
+      length += 2 + string.length;
+    }
+
+    final var buffer = ByteBuffer.allocate(4 + length + 4);
+    final var time = metadata.time().toInstant();
+    buffer.putInt(length);
+    buffer.put(KIND_ENTRY);
+    buffer.putLong(time.getEpochSecond());
+    buffer.putInt(time.getNano());
+    buffer.putLong(metadata.size());
+    buffer.put(HexFormat.of().parseHex(metadata.sha256()));
+    for (final var string : strings) {
+      buffer.putShort((short) string.length);
+      buffer.put(string);
+    }
+    return seal(buffer);
+  }
+
+  private void apply(
+    final WBBlobMetadata metadata)
+  {
+    final var previous = this.entries.get(metadata.id().value());
+    if (previous != null) {
+      this.unapply(previous);
+    }
+
+    final var key = TimeKey.of(metadata);
+    this.entries.put(metadata.id().value(), metadata);
+    this.byTime.put(key, metadata);
+    this.byUser.computeIfAbsent(
+      metadata.user(),
+      u -> new ConcurrentSkipListMap<>()
+    ).put(key, metadata);
+    this.totalSize.addAndGet(metadata.size());
+    this.userSizes.computeIfAbsent(metadata.user(), u -> new AtomicLong())
+      .addAndGet(metadata.size());
+  }
+
+  private void unapply(
+    final WBBlobMetadata metadata)
+  {
+    final var key = TimeKey.of(metadata);
+    this.entries.remove(metadata.id().value());
+    this.byTime.remove(key);
+    final var times = this.byUser.get(metadata.user());
+    if (times != null) {
+      times.remove(key);
+    }
+    this.totalSize.addAndGet(-metadata.size());
+    final var userSize = this.userSizes.get(metadata.user());
+    if (userSize != null) {
+      userSize.addAndGet(-metadata.size());
+    }
+  }
+
+  private void writeAll(
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    writeAll(this.channel, buffer);
+  }
+
+  private static void writeAll(
+    final FileChannel channel,
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+  }
+
+  private void force()
+    throws IOException
+  {
+    switch (this.durability) {
+      case NONE -> {
+
+      }
+      case DATA -> this.channel.force(false);
+      case FULL -> this.channel.force(true);
+    }
+  }
+
+  /**
+   * Flush the index to storage, regardless of the configured durability.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void sync()
+    throws IOException
+  {
+    this.appendLock.lock();
+    try {
+      while (this.appending) {
+        this.appendDone.awaitUninterruptibly();
+      }
+      this.channel.force(true);
+    } finally {
+      this.appendLock.unlock();
+    }
+  }
+
+  /**
+   * Queue a change, and return once it has been written (and flushed,
+   * according to the durability) along with any concurrent changes.
+   */
+
+  private void commit(
+    final Change change)
+    throws IOException
+  {
+    this.appendLock.lock();
+    try {
+      this.pending.add(change);
+      while (!change.done) {
+        if (this.appending) {
+          this.appendDone.awaitUninterruptibly();
+          continue;
+        }
+
+        this.appending = true;
+        final var batch = this.pending;
+        this.pending = new ArrayList<>();
+        this.appendLock.unlock();
+
+        IOException failure = null;
+        try {
+          this.writeBatch(batch);
+        } catch (final IOException e) {
+          failure = e;
+        } finally {
+          this.appendLock.lock();
+          this.appending = false;
+          for (final var item : batch) {
+            item.failure = failure;
+            item.done = true;
+          }
+          this.appendDone.signalAll();
+        }
+      }
+    } finally {
+      this.appendLock.unlock();
+    }
+
+    if (change.failure != null) {
+      throw new IOException("Failed to append to index", change.failure);
+    }
+  }
+
+  /**
+   * Write a batch of changes. Only one thread at a time runs this method,
+   * and it is the only one that modifies the in-memory index.
+   *
+   * A removal only applies if the entry it names is still the current one
+   * once the changes before it in the batch are taken into account. If
+   * the batch cannot be written, whatever part of it was written is cut
+   * off again, and none of it is applied. A journal that needs
+   * compacting once the batch has been applied is compacted here; if that
+   * fails, the batch still stands, and the old journal stays in use.
+   */
+
+  private void writeBatch(
+    final List<Change> batch)
+    throws IOException
+  {
+    final var current = new HashMap<String, Optional<WBBlobMetadata>>();
+    for (final var change : batch) {
+      final var id = change.metadata.id().value();
+      if (change.removal) {
+        final var existing =
+          current.containsKey(id)
+            ? current.get(id).orElse(null)
+            : this.entries.get(id);
+        change.applies = change.metadata.equals(existing);
+        if (change.applies) {
+          current.put(id, Optional.empty());
+        }
+      } else {
+        change.applies = true;
+        current.put(id, Optional.of(change.metadata));
+      }
+    }
+
+    final var start = this.channel.position();
+    try {
+      var written = 0;
+      for (final var change : batch) {
+        if (change.applies) {
+          this.writeAll(change.record);
+          ++written;
+        }
+      }
+      if (written > 0) {
+        this.force();
+      }
+      this.records += written;
+    } catch (final IOException e) {
+      try {
+        this.channel.truncate(start);
+        this.channel.position(start);
+      } catch (final IOException ex) {
+        e.addSuppressed(ex);
+      }
+      throw e;
+    }
+
+    for (final var change : batch) {
+      if (change.applies) {
+        if (change.removal) {
+          this.unapply(change.metadata);
+        } else {
+          this.apply(change.metadata);
+        }
+      }
+    }
+
+    if (this.needsCompaction()) {
+      try {
+        this.compact();
+      } catch (final IOException e) {
+        LOG.warn("failed to compact blob index {}: ", this.file, e);
+      }
+    }
+  }
+
+  @Override
+  public void add(
+    final WBBlobMetadata metadata)
+    throws IOException
+  {
+    final var record = encode(Objects.requireNonNull(metadata, "metadata"));
+    this.commit(new Change(metadata, record, false));
+  }
+
+  @Override
+  public boolean remove(
+    final WBBlobMetadata metadata)
+    throws IOException
+  {
+    Objects.requireNonNull(metadata, "metadata");
+
+    if (!metadata.equals(this.entries.get(metadata.id().value()))) {
+      return false;
+    }
+
+    final var change =
+      new Change(metadata, encodeRemoval(metadata.id()), true);
+    this.commit(change);
+    return change.applies;
+  }
+
+  /**
+   * @return Every entry in the index, oldest first; the view reflects
+   *         concurrent changes to the index
+   */
+
+  Iterable<WBBlobMetadata> byTime()
+  {
+    return this.byTime.values();
+  }
+
+  @Override
+  public Optional<WBBlobMetadata> find(
+    final WBBlobID id)
+  {
+    return Optional.ofNullable(
+      this.entries.get(Objects.requireNonNull(id, "id").value()));
+  }
+
+  @Override
+  public List<WBBlobMetadata> writtenBy(
+    final String user,
+    final OffsetDateTime since)
+  {
+    Objects.requireNonNull(user, "user");
+    Objects.requireNonNull(since, "since");
+
+    final var times = this.byUser.get(user);
+    if (times == null) {
+      return List.of();
+    }
+    return List.copyOf(
+      times.tailMap(new TimeKey(since.toInstant(), ""), true).values());
+  }
+
+  @Override
+  public long size()
+  {
+    return this.entries.size();
+  }
+
+  @Override
+  public long totalSize()
+  {
+    return this.totalSize.get();
+  }
+
+  @Override
+  public long totalSizeOf(
+    final String user)
+  {
+    final var userSize =
+      this.userSizes.get(Objects.requireNonNull(user, "user"));
+    return userSize == null ? 0L : userSize.get();
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.appendLock.lock();
+    try {
+      while (this.appending) {
+        this.appendDone.awaitUninterruptibly();
+      }
+      this.channel.close();
+    } finally {
+      this.appendLock.unlock();
+    }
+  }
+
+  /**
+   * The key that orders a user's entries by write time.
+   */
+
+  private record TimeKey(
+    Instant time,
+    String id)
+    implements Comparable<TimeKey>
+  {
+    static TimeKey of(
+      final WBBlobMetadata metadata)
+    {
+      return new TimeKey(metadata.time().toInstant(), metadata.id().value());
+    }
+
+    @Override
+    public int compareTo(
+      final TimeKey other)
+    {
+      final var byTime = this.time.compareTo(other.time);
+      if (byTime != 0) {
+        return byTime;
+      }
+      return this.id.compareTo(other.id);
+    }
+  }
+
+  /**
+   * A change waiting to be appended.
+   */
+
+  private static final class Change
+  {
+    private final WBBlobMetadata metadata;
+    private final ByteBuffer record;
+    private final boolean removal;
+    private boolean applies;
+    private boolean done;
+    private IOException failure;
+
+    Change(
+      final WBBlobMetadata inMetadata,
+      final ByteBuffer inRecord,
+      final boolean inRemoval)
+    {
+      this.metadata = Objects.requireNonNull(inMetadata, "metadata");
+      this.record = Objects.requireNonNull(inRecord, "record");
+      this.removal = inRemoval;
+    }
+  }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobDurability;
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobIDs;
+import com.io7m.wastebasket.api.WBBlobIndexType;
+import com.io7m.wastebasket.api.WBBlobMetadata;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreKind;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * A rebuild of a blob index from the blobs in a blob store.
+ *
+ * Every standalone blob is read in full to compute its size and digest,
+ * so blobs are read by several threads in parallel; packed blobs are
+ * indexed from their segment record headers. Where the existing index
+ * has an entry for a blob, the user, address, and write time are carried
+ * over from it; otherwise they are left empty, and the write time is
+ * taken from the modification time of the file holding the blob.
+ *
+ * The new index is written alongside the existing one and then moved over
+ * it, so an interrupted rebuild leaves the existing index untouched. The
+ * server should not be running during a rebuild, as entries it adds in
+ * the meantime would be lost.
+ */
+
+public final class WBBlobIndexRebuild
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBBlobIndexRebuild.class);
+
+  private static final long PROGRESS_INTERVAL = 100_000L;
+  private static final int READ_BUFFER_SIZE = 65536;
+
+  private final WBBlobStoreConfiguration configuration;
+  private final Path file;
+  private final int threads;
+  private final WBBlobStoreLayout layout;
+  private final AtomicLong indexed;
+  private final LongAdder failed;
+
+  private WBBlobIndexRebuild(
+    final WBBlobStoreConfiguration inConfiguration,
+    final Path inFile,
+    final int inThreads)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.file =
+      Objects.requireNonNull(inFile, "file");
+    this.threads =
+      inThreads;
+    this.layout =
+      WBBlobStoreLayout.sharded(inConfiguration.shardLevels());
+    this.indexed =
+      new AtomicLong();
+    this.failed =
+      new LongAdder();
+  }
+
+  /**
+   * Create a rebuild.
+   *
+   * @param configuration The configuration of the blob store
+   * @param file          The index file
+   * @param threads       The number of threads that will read blobs
+   *
+   * @return A rebuild
+   */
+
+  public static WBBlobIndexRebuild create(
+    final WBBlobStoreConfiguration configuration,
+    final Path file,
+    final int threads)
+  {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Thread count must be positive");
+    }
+    return new WBBlobIndexRebuild(configuration, file, threads);
+  }
+
+  /**
+   * @return The number of blobs indexed so far
+   */
+
+  public long indexed()
+  {
+    return this.indexed.get();
+  }
+
+  /**
+   * @return The number of blobs that could not be indexed
+   */
+
+  public long failed()
+  {
+    return this.failed.sum();
+  }
+
+  /**
+   * Run the rebuild.
+   *
+   * @throws IOException          On I/O errors
+   * @throws InterruptedException If the rebuild is interrupted
+   */
+
+  public void run()
+    throws IOException, InterruptedException
+  {
+    final var directories = new ArrayList<Path>();
+    directories.add(this.configuration.directory());
+    directories.addAll(this.configuration.volumes());
+
+    LOG.info(
+      "rebuilding {} from {} using {} threads",
+      this.file,
+      directories,
+      Integer.valueOf(this.threads));
+
+    final var temporary =
+      this.file.resolveSibling(this.file.getFileName() + ".rebuild");
+    Files.deleteIfExists(temporary);
+
+    try (var previous = this.openPrevious();
+         var index = WBBlobIndex.open(temporary, WBBlobDurability.NONE)) {
+      for (final var directory : directories) {
+        if (this.configuration.kind() == WBBlobStoreKind.PACKED) {
+          this.indexPacked(directory, previous, index);
+        }
+        this.indexStandalone(directory, previous, index);
+      }
+      index.sync();
+    } catch (final IOException | InterruptedException | RuntimeException e) {
+      Files.deleteIfExists(temporary);
+      throw e;
+    }
+
+    Files.move(temporary, this.file, ATOMIC_MOVE, REPLACE_EXISTING);
+    WBBlobWriter.syncDirectory(this.file.toAbsolutePath().getParent());
+
+    LOG.info(
+      "indexed {} blobs ({} failed)",
+      Long.valueOf(this.indexed()),
+      Long.valueOf(this.failed()));
+  }
+
+  private WBBlobIndexType openPrevious()
+  {
+    if (!Files.exists(this.file)) {
+      return null;
+    }
+
+    try {
+      return WBBlobIndex.open(this.file, WBBlobDurability.NONE);
+    } catch (final IOException e) {
+      LOG.warn(
+        "existing index {} is unreadable; users and addresses will not be kept: ",
+        this.file,
+        e);
+      return null;
+    }
+  }
+
+  private void indexPacked(
+    final Path directory,
+    final WBBlobIndexType previous,
+    final WBBlobIndexType index)
+    throws IOException
+  {
+    try (var store =
+           WBBlobStorePacked.create(
+             WBBlobStoreConfiguration.builder()
+               .from(this.configuration)
+               .setDirectory(directory)
+               .setVolumes(List.of())
+               .setPackCompactionInterval(Duration.ZERO)
+               .build())) {
+      final var hex = HexFormat.of();
+      store.forEachPacked((record, segment, location) -> {
+        final var id = WBBlobID.of(record.id());
+        try {
+          this.add(
+            index,
+            previous,
+            WBBlobMetadata.builder()
+              .setId(id)
+              .setSize(Integer.toUnsignedLong(record.dataLength()))
+              .setSha256(hex.formatHex(record.digest()))
+              .setLocation(location),
+            id,
+            segment);
+        } catch (final IOException e) {
+          this.failed.increment();
+          LOG.error("could not index {}: ", location, e);
+        }
+      });
+    }
+  }
+
+  private void indexStandalone(
+    final Path directory,
+    final WBBlobIndexType previous,
+    final WBBlobIndexType index)
+    throws IOException, InterruptedException
+  {
+    /*
+     * As with migrations, the queue is bounded, and the listing thread
+     * reads blobs itself when the queue is full.
+     */
+
+    final var executor =
+      new ThreadPoolExecutor(
+        this.threads,
+        this.threads,
+        0L,
+        TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(this.threads * 64),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+
+    try (var stream = Files.walk(directory, this.layout.levels() + 1)) {
+      stream.forEach(file -> {
+        final var name = file.getFileName().toString();
+        if (!WBBlobIDs.isValid(name) || !Files.isRegularFile(file)) {
+          return;
+        }
+
+        /*
+         * Only files at the position the layout gives their ID (or at
+         * the top of the directory, for stores that have not been
+         * migrated) are blobs; anything else, such as the content files
+         * of a deduplicating store, is not.
+         */
+
+        final var id = WBBlobID.of(name);
+        if (file.equals(this.layout.fileOf(directory, id))
+            || file.getParent().equals(directory)) {
+          executor.execute(() -> this.indexOne(file, id, previous, index));
+        }
+      });
+    } catch (final UncheckedIOException e) {
+      throw e.getCause();
+    } finally {
+      executor.shutdown();
+      while (!executor.awaitTermination(1L, TimeUnit.SECONDS)) {
+        LOG.debug("waiting for blobs to be read");
+      }
+    }
+  }
+
+  private void indexOne(
+    final Path file,
+    final WBBlobID id,
+    final WBBlobIndexType previous,
+    final WBBlobIndexType index)
+  {
+    try {
+      final var digest = MessageDigest.getInstance("SHA-256");
+      final var buffer = new byte[READ_BUFFER_SIZE];
+      long size = 0L;
+      try (var input = WBBlobCodecs.openDecoded(file)) {
+        while (true) {
+          final var count = input.read(buffer);
+          if (count < 0) {
+            break;
+          }
+          digest.update(buffer, 0, count);
+          size += count;
+        }
+      }
+
+      this.add(
+        index,
+        previous,
+        WBBlobMetadata.builder()
+          .setId(id)
+          .setSize(size)
+          .setSha256(HexFormat.of().formatHex(digest.digest()))
+          .setLocation(file.toString()),
+        id,
+        file);
+    } catch (final IOException | NoSuchAlgorithmException e) {
+      this.failed.increment();
+      LOG.error("could not index {}: ", file, e);
+    }
+  }
+
+  private void add(
+    final WBBlobIndexType index,
+    final WBBlobIndexType previous,
+    final WBBlobMetadata.Builder builder,
+    final WBBlobID id,
+    final Path file)
+    throws IOException
+  {
+    final var existing =
+      previous != null ? previous.find(id).orElse(null) : null;
+
+    if (existing != null) {
+      builder.setUser(existing.user());
+      builder.setRemoteAddress(existing.remoteAddress());
+      builder.setTime(existing.time());
+    } else {
+      final Instant modified = Files.getLastModifiedTime(file).toInstant();
+      builder.setUser("");
+      builder.setRemoteAddress("");
+      builder.setTime(OffsetDateTime.ofInstant(modified, ZoneOffset.UTC));
+    }
+
+    index.add(builder.build());
+
+    final var count = this.indexed.incrementAndGet();
+    if (count % PROGRESS_INTERVAL == 0L) {
+      LOG.info("indexed {} blobs", Long.valueOf(count));
+    }
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * An append-only segment file holding packed blobs. Segments are only
+ * ever appended to by the store's group committer, and are read with
+ * positional reads, so readers never disturb the append position.
+ */
+
+final class WBBlobSegment implements Closeable
+{
+  private static final Pattern NAME =
+    Pattern.compile("([0-9a-f]{16})\\.seg");
+
+  private final long number;
+  private final Path file;
+  private final FileChannel channel;
+  private final AtomicLong dead;
+  private volatile long size;
+
+  private WBBlobSegment(
+    final long inNumber,
+    final Path inFile,
+    final FileChannel inChannel)
+  {
+    this.number = inNumber;
+    this.file = Objects.requireNonNull(inFile, "file");
+    this.channel = Objects.requireNonNull(inChannel, "channel");
+    this.dead = new AtomicLong();
+  }
+
+  /**
+   * Open (creating if necessary) the segment {@code number}.
+   *
+   * @param directory The segment directory
+   * @param number    The segment number
+   *
+   * @return The segment
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static WBBlobSegment open(
+    final Path directory,
+    final long number)
+    throws IOException
+  {
+    final var file =
+      directory.resolve(String.format("%016x.seg", Long.valueOf(number)));
+    return new WBBlobSegment(
+      number,
+      file,
+      FileChannel.open(file, CREATE, READ, WRITE));
+  }
+
+  /**
+   * @param file A file in the segment directory
+   *
+   * @return The number of the segment, if {@code file} is a segment
+   */
+
+  static OptionalLong numberOf(
+    final Path file)
+  {
+    final var matcher = NAME.matcher(file.getFileName().toString());
+    if (matcher.matches()) {
+      return OptionalLong.of(Long.parseUnsignedLong(matcher.group(1), 16));
+    }
+    return OptionalLong.empty();
+  }
+
+  long number()
+  {
+    return this.number;
+  }
+
+  Path file()
+  {
+    return this.file;
+  }
+
+  FileChannel channel()
+  {
+    return this.channel;
+  }
+
+  /**
+   * @return The number of bytes of records in the segment
+   */
+
+  long size()
+  {
+    return this.size;
+  }
+
+  void setSize(
+    final long newSize)
+  {
+    this.size = newSize;
+  }
+
+  /**
+   * @return The number of bytes of records that are deleted or superseded
+   */
+
+  long dead()
+  {
+    return this.dead.get();
+  }
+
+  void addDead(
+    final long bytes)
+  {
+    this.dead.addAndGet(bytes);
+  }
+
+  /**
+   * @return {@code true} if at least half of the segment is dead
+   */
+
+  boolean isMostlyDead()
+  {
+    final var current = this.size;
+    return current > 0L && this.dead.get() * 2L >= current;
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.channel.close();
+  }
+}
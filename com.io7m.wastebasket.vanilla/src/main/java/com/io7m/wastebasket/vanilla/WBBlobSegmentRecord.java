@@ -0,0 +1,258 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Objects;
+import java.util.zip.CRC32C;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * The header of a record in a segment file. A segment can be indexed by
+ * reading headers alone, because every header names its blob and gives the
+ * size of the record:
+ *
+ * <pre>
+ *   magic (4) | kind (1) | ID length (2) | ID | body | CRC-32C (4)
+ * </pre>
+ *
+ * The body of a blob record is the data length (4), the SHA-256 digest of
+ * the data (32), and the data. The body of a tombstone is the number of the
+ * segment that held the deleted blob (8). The checksum covers everything
+ * before it.
+ *
+ * @param kind       The record kind
+ * @param id         The blob ID
+ * @param dataLength The length of the data (blobs only)
+ * @param digest     The SHA-256 digest of the data (blobs only)
+ * @param target     The segment holding the deleted blob (tombstones only)
+ */
+
+record WBBlobSegmentRecord(
+  byte kind,
+  String id,
+  int dataLength,
+  byte[] digest,
+  long target)
+{
+  static final int MAGIC = 0x57425052;
+  static final byte KIND_BLOB = 0;
+  static final byte KIND_TOMBSTONE = 1;
+
+  private static final int DIGEST_SIZE = 32;
+  private static final int MAXIMUM_ID_LENGTH = 256;
+  private static final int PREFIX_SIZE = 4 + 1 + 2;
+  private static final int CHECKSUM_SIZE = 4;
+
+  WBBlobSegmentRecord
+  {
+    Objects.requireNonNull(id, "id");
+    Objects.requireNonNull(digest, "digest");
+  }
+
+  static WBBlobSegmentRecord blob(
+    final String id,
+    final int dataLength,
+    final byte[] digest)
+  {
+    return new WBBlobSegmentRecord(KIND_BLOB, id, dataLength, digest, -1L);
+  }
+
+  static WBBlobSegmentRecord tombstone(
+    final String id,
+    final long target)
+  {
+    return new WBBlobSegmentRecord(KIND_TOMBSTONE, id, 0, new byte[0], target);
+  }
+
+  boolean isBlob()
+  {
+    return this.kind == KIND_BLOB;
+  }
+
+  /**
+   * @return The size of the record up to the start of the data
+   */
+
+  int headerSize()
+  {
+    final var body = this.isBlob() ? 4 + DIGEST_SIZE : 8;
+    return PREFIX_SIZE + this.id.length() + body;
+  }
+
+  /**
+   * @return The size of the whole record
+   */
+
+  int size()
+  {
+    return this.headerSize() + this.dataLength + CHECKSUM_SIZE;
+  }
+
+  /**
+   * Encode the record.
+   *
+   * @param data The data (blobs only)
+   *
+   * @return A buffer holding the record, ready to be written
+   */
+
+  ByteBuffer encode(
+    final byte[] data)
+  {
+    final var buffer = ByteBuffer.allocate(this.size());
+    buffer.putInt(MAGIC);
+    buffer.put(this.kind);
+    buffer.putShort((short) this.id.length());
+    buffer.put(this.id.getBytes(US_ASCII));
+    if (this.isBlob()) {
+      buffer.putInt(this.dataLength);
+      buffer.put(this.digest);
+      buffer.put(data, 0, this.dataLength);
+    } else {
+      buffer.putLong(this.target);
+    }
+
+    final var checksum = new CRC32C();
+    checksum.update(buffer.array(), 0, buffer.position());
+    buffer.putInt((int) checksum.getValue());
+    return buffer.flip();
+  }
+
+  /**
+   * Read the header of the record at {@code position}.
+   *
+   * @param channel  The segment
+   * @param position The position of the record
+   * @param limit    The end of the segment
+   *
+   * @return The record, or {@code null} if there is no complete record at
+   *         {@code position}
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static WBBlobSegmentRecord read(
+    final FileChannel channel,
+    final long position,
+    final long limit)
+    throws IOException
+  {
+    final var prefix = ByteBuffer.allocate(PREFIX_SIZE);
+    if (!readFully(channel, prefix, position)) {
+      return null;
+    }
+
+    final var magic = prefix.getInt();
+    final var kind = prefix.get();
+    final var idLength = prefix.getShort() & 0xffff;
+    if (magic != MAGIC
+        || (kind != KIND_BLOB && kind != KIND_TOMBSTONE)
+        || idLength == 0
+        || idLength > MAXIMUM_ID_LENGTH) {
+      return null;
+    }
+
+    final var body = kind == KIND_BLOB ? 4 + DIGEST_SIZE : 8;
+    final var rest = ByteBuffer.allocate(idLength + body);
+    if (!readFully(channel, rest, position + PREFIX_SIZE)) {
+      return null;
+    }
+
+    final var idBytes = new byte[idLength];
+    rest.get(idBytes);
+    final var id = new String(idBytes, US_ASCII);
+
+    final WBBlobSegmentRecord record;
+    if (kind == KIND_BLOB) {
+      final var dataLength = rest.getInt();
+      if (dataLength < 0) {
+        return null;
+      }
+      final var digest = new byte[DIGEST_SIZE];
+      rest.get(digest);
+      record = blob(id, dataLength, digest);
+    } else {
+      record = tombstone(id, rest.getLong());
+    }
+
+    if (position + record.size() > limit) {
+      return null;
+    }
+    return record;
+  }
+
+  /**
+   * @param channel  The segment
+   * @param position The position of this record
+   *
+   * @return {@code true} if the record's checksum matches its contents
+   *
+   * @throws IOException On I/O errors
+   */
+
+  boolean verify(
+    final FileChannel channel,
+    final long position)
+    throws IOException
+  {
+    final var buffer = ByteBuffer.allocate(this.size());
+    if (!readFully(channel, buffer, position)) {
+      return false;
+    }
+
+    final var checksum = new CRC32C();
+    checksum.update(buffer.array(), 0, buffer.limit() - CHECKSUM_SIZE);
+    return buffer.getInt(buffer.limit() - CHECKSUM_SIZE)
+           == (int) checksum.getValue();
+  }
+
+  /**
+   * Fill {@code buffer} from {@code channel} at {@code position}, and flip
+   * it.
+   *
+   * @param channel  The channel
+   * @param buffer   The buffer
+   * @param position The position
+   *
+   * @return {@code false} if the channel ended first
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static boolean readFully(
+    final FileChannel channel,
+    final ByteBuffer buffer,
+    final long position)
+    throws IOException
+  {
+    long offset = position;
+    while (buffer.hasRemaining()) {
+      final var count = channel.read(buffer, offset);
+      if (count < 0) {
+        return false;
+      }
+      offset += count;
+    }
+    buffer.flip();
+    return true;
+  }
+}
@@ -18,71 +18,219 @@
 
 package com.io7m.wastebasket.vanilla;
 
+import com.io7m.wastebasket.api.WBBlobDurability;
 import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobIDs;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
 import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.api.WBBlobWriterType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.security.DigestOutputStream;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Objects;
 
-import static java.nio.file.StandardOpenOption.CREATE_NEW;
-import static java.nio.file.StandardOpenOption.WRITE;
-
 /**
  * A blob store.
+ *
+ * Blobs are arranged in the data directory according to a
+ * {@link WBBlobStoreLayout}. The directory tree is created and scanned once
+ * when the store is created, and the set of directories known to exist is
+ * kept in memory so that the common case of writing into an existing
+ * directory costs no extra system calls. Shard directories that do not yet
+ * exist are created on demand, and if a directory is removed out from under
+ * the store, it is recreated when opening a file in it fails.
+ * If the store is sharded but the data directory still contains blobs in
+ * the flat layout (because it has not yet been migrated, or is being
+ * migrated), new IDs are also checked against the flat layout so that IDs
+ * are never reused.
+ *
+ * Data is written either directly to each blob's final file, or to a
+ * temporary file that is moved into place when the delivery completes,
+ * according to the configured {@link com.io7m.wastebasket.api.WBBlobWriteMode}.
+ * Temporary files left behind by deliveries that were interrupted by a crash
+ * are deleted when the store is created.
  */
 
 public final class WBBlobStore implements WBBlobStoreType
 {
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBBlobStore.class);
+
+  private final WBBlobStoreConfiguration configuration;
   private final Path directory;
+  private final WBBlobStoreLayout layout;
+  private final WBDirectoryCache directories;
+  private final boolean checkFlat;
+  private final WBBlobWriterOptions options;
 
   private WBBlobStore(
-    final Path inDirectory)
+    final WBBlobStoreConfiguration inConfiguration,
+    final boolean inCheckFlat)
   {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
     this.directory =
-      Objects.requireNonNull(inDirectory, "directory");
+      inConfiguration.directory();
+    this.layout =
+      WBBlobStoreLayout.sharded(inConfiguration.shardLevels());
+    this.checkFlat =
+      inCheckFlat;
+    this.directories =
+      new WBDirectoryCache(
+        inConfiguration.durability() == WBBlobDurability.FULL);
+    this.options =
+      WBBlobWriterOptions.of(inConfiguration);
   }
 
   /**
-   * Create a blob store.
+   * Create a blob store using the flat layout.
    *
    * @param directory The directory
    *
    * @return A blob store
+   *
+   * @throws IOException On I/O errors
    */
 
   public static WBBlobStoreType create(
     final Path directory)
+    throws IOException
+  {
+    return create(
+      WBBlobStoreConfiguration.builder()
+        .setDirectory(directory)
+        .setShardLevels(0)
+        .build());
+  }
+
+  /**
+   * Create a blob store.
+   *
+   * @param configuration The configuration
+   *
+   * @return A blob store
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static WBBlobStoreType create(
+    final WBBlobStoreConfiguration configuration)
+    throws IOException
   {
-    return new WBBlobStore(directory);
+    Objects.requireNonNull(configuration, "configuration");
+
+    final var directory = configuration.directory();
+    Files.createDirectories(directory);
+    if (!WBBlobCodecs.NONE.equals(configuration.compression())) {
+      WBBlobCodecs.checkMarkable(directory);
+    }
+
+    final var checkFlat =
+      configuration.shardLevels() > 0 && containsFlatBlobs(directory);
+    if (checkFlat) {
+      LOG.warn(
+        "data directory {} contains blobs in the flat layout; consider migrating it",
+        directory);
+    }
+
+    final var store = new WBBlobStore(configuration, checkFlat);
+    WBDirectoryCache.deleteTemporaryFiles(
+      directory, configuration.shardLevels());
+    store.directories.scan(directory, configuration.shardLevels());
+    return store;
   }
 
-  private static DigestOutputStream outputStream(
+  /**
+   * Determine whether a directory contains any blobs in the flat layout.
+   * This stops at the first blob found, and so is fast both for unmigrated
+   * directories and for fully migrated ones (which contain only a few
+   * hundred shard directories).
+   *
+   * @param directory The data directory
+   *
+   * @return {@code true} if at least one flat blob exists
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static boolean containsFlatBlobs(
+    final Path directory)
+    throws IOException
+  {
+    Objects.requireNonNull(directory, "directory");
+
+    try (var stream = Files.newDirectoryStream(directory, WBBlobStore::isFlatBlob)) {
+      return stream.iterator().hasNext();
+    } catch (final NoSuchFileException e) {
+      return false;
+    }
+  }
+
+  static boolean isFlatBlob(
+    final Path file)
+  {
+    return WBBlobIDs.isValid(file.getFileName().toString())
+           && Files.isRegularFile(file);
+  }
+
+  private WBBlobWriterType openWriter(
     final Path outputPath,
-    final MessageDigest digest)
+    final MessageDigest digest,
+    final long expectedSize)
     throws IOException
   {
-    return new DigestOutputStream(
-      new BufferedOutputStream(
-        Files.newOutputStream(outputPath, CREATE_NEW, WRITE),
-        8192),
-      digest);
+    final var writer = switch (this.configuration.writeMode()) {
+      case DIRECT -> WBBlobWriter.openDirect(outputPath, digest, this.options);
+      case ATOMIC -> WBBlobWriter.openAtomic(outputPath, digest, this.options);
+    };
+    return WBBlobWriter.withExpectedSize(writer, expectedSize, this.options);
   }
 
   @Override
-  public DigestOutputStream open(final WBBlobID id)
+  public WBBlobWriterType open(
+    final WBBlobID id,
+    final long expectedSize)
     throws IOException, NoSuchAlgorithmException
   {
     Objects.requireNonNull(id, "id");
 
-    Files.createDirectories(this.directory);
-    final Path outputPath = this.directory.resolve(id.value());
+    if (this.checkFlat) {
+      final var flatPath = this.directory.resolve(id.value());
+      if (Files.exists(flatPath)) {
+        throw new FileAlreadyExistsException(flatPath.toString());
+      }
+    }
+
+    final Path targetDirectory =
+      this.directories.ensure(this.layout.directoryOf(this.directory, id));
+    final Path outputPath = targetDirectory.resolve(id.value());
     final MessageDigest digest = MessageDigest.getInstance("SHA-256");
-    return outputStream(outputPath, digest);
+
+    try {
+      return this.openWriter(outputPath, digest, expectedSize);
+    } catch (final NoSuchFileException e) {
+      this.directories.repair(targetDirectory);
+      return this.openWriter(outputPath, digest, expectedSize);
+    }
+  }
+
+  @Override
+  public void delete(
+    final WBBlobID id)
+    throws IOException
+  {
+    Objects.requireNonNull(id, "id");
+
+    Files.deleteIfExists(this.layout.fileOf(this.directory, id));
+    if (this.checkFlat) {
+      Files.deleteIfExists(this.directory.resolve(id.value()));
+    }
   }
 }
@@ -0,0 +1,407 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobDurability;
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.api.WBBlobWriterType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+/**
+ * A content-addressed, deduplicating blob store.
+ *
+ * The contents of each delivery are stored once, in the {@code content}
+ * subdirectory, under the hex SHA-256 digest of the contents. The file for
+ * each ID (arranged according to the configured {@link WBBlobStoreLayout})
+ * is a hard link to the contents, so readers see exactly the same
+ * directory structure as with {@link WBBlobStore}, while identical
+ * deliveries share both disk space and page cache.
+ *
+ * The link count of each content file is its reference count: one for the
+ * content name, plus one for each ID. Deleting an ID with
+ * {@link #delete(WBBlobID)} drops a reference, and
+ * {@link #collectGarbage()} removes contents that are no longer referenced
+ * by any ID. Collecting garbage walks every content file, so callers that
+ * know the digests of the blobs they deleted use
+ * {@link #reclaim(Collection)} instead, which looks at those contents
+ * alone. Publishing an ID and collecting its contents lock the same
+ * digest stripe, so contents are never removed while a new ID is being
+ * linked to them.
+ *
+ * Deliveries are always written to a temporary file first, regardless of
+ * the configured write mode, because the name of the contents is not known
+ * until all of the data has been received.
+ */
+
+public final class WBBlobStoreDeduplicating implements WBBlobStoreType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBBlobStoreDeduplicating.class);
+
+  private static final Pattern VALID_CONTENT =
+    Pattern.compile("[a-f0-9]{64}");
+  private static final int CONTENT_SHARD_LEVELS = 2;
+  private static final int LOCK_STRIPES = 256;
+
+  private final WBBlobStoreConfiguration configuration;
+  private final Path directory;
+  private final Path contentDirectory;
+  private final WBBlobStoreLayout layout;
+  private final WBBlobStoreLayout contentLayout;
+  private final WBDirectoryCache directories;
+  private final WBBlobWriterOptions options;
+  private final boolean checkFlat;
+  private final ReentrantLock[] locks;
+  private final LongAdder deduplicated;
+
+  private WBBlobStoreDeduplicating(
+    final WBBlobStoreConfiguration inConfiguration,
+    final boolean inCheckFlat)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.directory =
+      inConfiguration.directory();
+    this.contentDirectory =
+      this.directory.resolve("content");
+    this.layout =
+      WBBlobStoreLayout.sharded(inConfiguration.shardLevels());
+    this.contentLayout =
+      WBBlobStoreLayout.sharded(CONTENT_SHARD_LEVELS);
+    this.checkFlat =
+      inCheckFlat;
+    this.directories =
+      new WBDirectoryCache(
+        inConfiguration.durability() == WBBlobDurability.FULL);
+    this.options =
+      WBBlobWriterOptions.of(inConfiguration);
+    this.deduplicated =
+      new LongAdder();
+
+    this.locks = new ReentrantLock[LOCK_STRIPES];
+    for (int index = 0; index < LOCK_STRIPES; ++index) {
+      this.locks[index] = new ReentrantLock();
+    }
+  }
+
+  /**
+   * Create a deduplicating blob store.
+   *
+   * @param configuration The configuration
+   *
+   * @return A blob store
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static WBBlobStoreDeduplicating create(
+    final WBBlobStoreConfiguration configuration)
+    throws IOException
+  {
+    Objects.requireNonNull(configuration, "configuration");
+
+    final var directory = configuration.directory();
+    if (!FileSystems.getDefault()
+      .supportedFileAttributeViews()
+      .contains("unix")) {
+      throw new UnsupportedOperationException(
+        "Deduplicating blob stores require a file system that exposes link counts");
+    }
+
+    final var store =
+      new WBBlobStoreDeduplicating(
+        configuration,
+        configuration.shardLevels() > 0
+        && WBBlobStore.containsFlatBlobs(directory));
+
+    Files.createDirectories(store.contentDirectory);
+    if (!WBBlobCodecs.NONE.equals(configuration.compression())) {
+      WBBlobCodecs.checkMarkable(store.contentDirectory);
+    }
+    WBDirectoryCache.deleteTemporaryFiles(store.contentDirectory, 0);
+    store.directories.scan(directory, configuration.shardLevels());
+    store.directories.scan(store.contentDirectory, CONTENT_SHARD_LEVELS);
+    return store;
+  }
+
+  /**
+   * @return The number of deliveries whose contents were already stored
+   */
+
+  public long deduplicated()
+  {
+    return this.deduplicated.sum();
+  }
+
+  /**
+   * Determine the number of IDs that refer to the given contents.
+   *
+   * @param digest The SHA-256 digest of the contents
+   *
+   * @return The number of IDs ({@code 0} if the contents are not stored)
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public long references(
+    final byte[] digest)
+    throws IOException
+  {
+    final var content = this.contentFile(HexFormat.of().formatHex(digest));
+    try {
+      return linkCount(content) - 1L;
+    } catch (final NoSuchFileException e) {
+      return 0L;
+    }
+  }
+
+  /**
+   * Delete the blob with the given ID. The contents remain until they are
+   * removed by {@link #collectGarbage()}.
+   *
+   * @param id The blob ID
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void delete(
+    final WBBlobID id)
+    throws IOException
+  {
+    Objects.requireNonNull(id, "id");
+    Files.deleteIfExists(this.layout.fileOf(this.directory, id));
+  }
+
+  /**
+   * Remove all contents that are not referenced by any ID.
+   *
+   * @throws IOException On I/O errors
+   *
+   * @see #collectGarbage()
+   */
+
+  @Override
+  public void reclaim()
+    throws IOException
+  {
+    this.collectGarbage();
+  }
+
+  /**
+   * Remove the contents with the given digests, if they are no longer
+   * referenced by any ID.
+   *
+   * @param digests The hex SHA-256 digests of the deleted blobs
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void reclaim(
+    final Collection<String> digests)
+    throws IOException
+  {
+    Objects.requireNonNull(digests, "digests");
+
+    long removed = 0L;
+    for (final var digest : digests) {
+      if (!VALID_CONTENT.matcher(digest).matches()) {
+        continue;
+      }
+      if (this.removeIfUnreferenced(this.contentFile(digest), digest)) {
+        ++removed;
+      }
+    }
+
+    LOG.debug("removed {} unreferenced contents", Long.valueOf(removed));
+  }
+
+  /**
+   * Remove all contents that are not referenced by any ID.
+   *
+   * @return The number of contents removed
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public long collectGarbage()
+    throws IOException
+  {
+    long removed = 0L;
+
+    try (var paths =
+           Files.walk(this.contentDirectory, CONTENT_SHARD_LEVELS + 1)) {
+      final var iterator = paths.iterator();
+      while (iterator.hasNext()) {
+        final var file = iterator.next();
+        final var name = file.getFileName().toString();
+        if (!VALID_CONTENT.matcher(name).matches()) {
+          continue;
+        }
+
+        if (this.removeIfUnreferenced(file, name)) {
+          ++removed;
+        }
+      }
+    }
+
+    LOG.info("removed {} unreferenced contents", Long.valueOf(removed));
+    return removed;
+  }
+
+  private boolean removeIfUnreferenced(
+    final Path file,
+    final String name)
+    throws IOException
+  {
+    final var lock = this.lockFor(HexFormat.of().parseHex(name));
+    lock.lock();
+    try {
+      if (linkCount(file) <= 1L) {
+        Files.delete(file);
+        return true;
+      }
+      return false;
+    } catch (final NoSuchFileException e) {
+      // Removed concurrently, or never stored.
+      return false;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static long linkCount(
+    final Path file)
+    throws IOException
+  {
+    return ((Number) Files.getAttribute(file, "unix:nlink")).longValue();
+  }
+
+  private ReentrantLock lockFor(
+    final byte[] digest)
+  {
+    return this.locks[digest[0] & 0xff];
+  }
+
+  private Path contentFile(
+    final String name)
+  {
+    return this.contentLayout.directoryOfName(this.contentDirectory, name)
+      .resolve(name);
+  }
+
+  private void publish(
+    final Path temporary,
+    final byte[] digest,
+    final Path target)
+    throws IOException
+  {
+    final var name =
+      HexFormat.of().formatHex(digest);
+    final var contentDirectoryFor =
+      this.directories.ensure(
+        this.contentLayout.directoryOfName(this.contentDirectory, name));
+    final var content =
+      contentDirectoryFor.resolve(name);
+
+    final var lock = this.lockFor(digest);
+    lock.lock();
+    try {
+      if (Files.exists(content)) {
+        Files.delete(temporary);
+        this.deduplicated.increment();
+      } else {
+        WBBlobWriter.publishLink(temporary, content);
+        if (this.configuration.durability() == WBBlobDurability.FULL) {
+          WBBlobWriter.syncDirectory(contentDirectoryFor);
+        }
+      }
+      Files.createLink(target, content);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private WBBlobWriterType openWriter(
+    final Path targetDirectory,
+    final Path target,
+    final MessageDigest digest,
+    final long expectedSize)
+    throws IOException
+  {
+    final var writer = WBBlobWriter.openTemporary(
+      WBBlobWriter.temporaryFileFor(
+        this.contentDirectory.resolve(target.getFileName())),
+      targetDirectory,
+      target,
+      digest,
+      this.options,
+      (temporary, digestValue) -> this.publish(temporary, digestValue, target));
+    return WBBlobWriter.withExpectedSize(writer, expectedSize, this.options);
+  }
+
+  @Override
+  public WBBlobWriterType open(
+    final WBBlobID id,
+    final long expectedSize)
+    throws IOException, NoSuchAlgorithmException
+  {
+    Objects.requireNonNull(id, "id");
+
+    if (this.checkFlat) {
+      final var flatPath = this.directory.resolve(id.value());
+      if (Files.exists(flatPath)) {
+        throw new FileAlreadyExistsException(flatPath.toString());
+      }
+    }
+
+    final Path targetDirectory =
+      this.directories.ensure(this.layout.directoryOf(this.directory, id));
+    final Path target = targetDirectory.resolve(id.value());
+    if (Files.exists(target)) {
+      throw new FileAlreadyExistsException(target.toString());
+    }
+
+    final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+    try {
+      return this.openWriter(targetDirectory, target, digest, expectedSize);
+    } catch (final NoSuchFileException e) {
+      this.directories.repair(this.contentDirectory);
+      return this.openWriter(targetDirectory, target, digest, expectedSize);
+    }
+  }
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobStoreConfigurationType;
+
+import java.nio.file.Path;
+import java.util.Objects;
+
+/**
+ * The arrangement of blobs within a data directory.
+ *
+ * A layout with {@code n} shard levels places each blob {@code n}
+ * directories deep, with each directory named by the next two hex digits of
+ * the blob ID. For example, with two levels, the blob
+ * {@code 0123456789abcdef0123456789abcdef} is stored at
+ * {@code 01/23/0123456789abcdef0123456789abcdef}. This bounds the number
+ * of entries in any one directory to a few hundred subdirectories at the
+ * upper levels and (on average) {@code count / 256^n} files at the lowest
+ * level. A layout with zero levels is the original flat layout.
+ */
+
+public final class WBBlobStoreLayout
+{
+  /**
+   * The maximum supported number of shard levels.
+   */
+
+  public static final int MAXIMUM_LEVELS =
+    WBBlobStoreConfigurationType.MAXIMUM_SHARD_LEVELS;
+
+  private static final int DIGITS_PER_LEVEL = 2;
+
+  private final int levels;
+
+  private WBBlobStoreLayout(
+    final int inLevels)
+  {
+    this.levels = inLevels;
+  }
+
+  /**
+   * @return The flat layout, in which all blobs are in the data directory
+   */
+
+  public static WBBlobStoreLayout flat()
+  {
+    return new WBBlobStoreLayout(0);
+  }
+
+  /**
+   * Create a sharded layout.
+   *
+   * @param levels The number of levels of subdirectories
+   *
+   * @return A layout
+   */
+
+  public static WBBlobStoreLayout sharded(
+    final int levels)
+  {
+    if (levels < 0 || levels > MAXIMUM_LEVELS) {
+      throw new IllegalArgumentException(
+        String.format(
+          "Shard levels must be in the range [0, %d]",
+          Integer.valueOf(MAXIMUM_LEVELS)));
+    }
+    return new WBBlobStoreLayout(levels);
+  }
+
+  /**
+   * @return The number of levels of subdirectories
+   */
+
+  public int levels()
+  {
+    return this.levels;
+  }
+
+  /**
+   * @return {@code true} if this is the flat layout
+   */
+
+  public boolean isFlat()
+  {
+    return this.levels == 0;
+  }
+
+  /**
+   * Determine the directory that holds the given blob.
+   *
+   * @param root The data directory
+   * @param id   The blob ID
+   *
+   * @return The directory that holds the blob
+   */
+
+  public Path directoryOf(
+    final Path root,
+    final WBBlobID id)
+  {
+    Objects.requireNonNull(id, "id");
+    return this.directoryOfName(root, id.value());
+  }
+
+  /**
+   * Determine the directory that holds a file with the given hex name.
+   *
+   * @param root  The root directory
+   * @param value The file name
+   *
+   * @return The directory that holds the file
+   */
+
+  Path directoryOfName(
+    final Path root,
+    final String value)
+  {
+    Objects.requireNonNull(root, "root");
+    Objects.requireNonNull(value, "value");
+
+    var directory = root;
+    for (int level = 0; level < this.levels; ++level) {
+      final var start = level * DIGITS_PER_LEVEL;
+      directory =
+        directory.resolve(value.substring(start, start + DIGITS_PER_LEVEL));
+    }
+    return directory;
+  }
+
+  /**
+   * Determine the file that holds the given blob.
+   *
+   * @param root The data directory
+   * @param id   The blob ID
+   *
+   * @return The file that holds the blob
+   */
+
+  public Path fileOf(
+    final Path root,
+    final WBBlobID id)
+  {
+    return this.directoryOf(root, id).resolve(id.value());
+  }
+
+  @Override
+  public String toString()
+  {
+    return "[WBBlobStoreLayout levels=%d]".formatted(
+      Integer.valueOf(this.levels));
+  }
+}
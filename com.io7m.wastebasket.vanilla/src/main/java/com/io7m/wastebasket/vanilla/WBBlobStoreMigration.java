@@ -0,0 +1,202 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A migration of a flat data directory to a sharded layout.
+ *
+ * Each blob is moved by creating a hard link at its new location and then
+ * removing the old name, so that a blob is visible under at least one name
+ * at all times, and so that an existing blob at the new location is never
+ * overwritten. A running server keeps checking the flat layout for
+ * existing IDs until it is restarted, so migrating does not require
+ * downtime. An interrupted migration can safely be run again.
+ */
+
+public final class WBBlobStoreMigration
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBBlobStoreMigration.class);
+
+  private static final long PROGRESS_INTERVAL = 100_000L;
+
+  private final Path directory;
+  private final WBBlobStoreLayout layout;
+  private final int threads;
+  private final Set<Path> directoriesCreated;
+  private final AtomicLong moved;
+  private final LongAdder failed;
+
+  private WBBlobStoreMigration(
+    final Path inDirectory,
+    final WBBlobStoreLayout inLayout,
+    final int inThreads)
+  {
+    this.directory =
+      Objects.requireNonNull(inDirectory, "directory");
+    this.layout =
+      Objects.requireNonNull(inLayout, "layout");
+    this.threads =
+      inThreads;
+    this.directoriesCreated =
+      ConcurrentHashMap.newKeySet();
+    this.moved =
+      new AtomicLong();
+    this.failed =
+      new LongAdder();
+  }
+
+  /**
+   * Create a migration.
+   *
+   * @param directory The data directory
+   * @param layout    The target layout
+   * @param threads   The number of threads that will move blobs
+   *
+   * @return A migration
+   */
+
+  public static WBBlobStoreMigration create(
+    final Path directory,
+    final WBBlobStoreLayout layout,
+    final int threads)
+  {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Thread count must be positive");
+    }
+    if (layout.isFlat()) {
+      throw new IllegalArgumentException("Target layout must be sharded");
+    }
+    return new WBBlobStoreMigration(directory, layout, threads);
+  }
+
+  /**
+   * @return The number of blobs moved so far
+   */
+
+  public long moved()
+  {
+    return this.moved.get();
+  }
+
+  /**
+   * @return The number of blobs that could not be moved
+   */
+
+  public long failed()
+  {
+    return this.failed.sum();
+  }
+
+  /**
+   * Run the migration.
+   *
+   * @throws IOException          On I/O errors listing the data directory
+   * @throws InterruptedException If the migration is interrupted
+   */
+
+  public void run()
+    throws IOException, InterruptedException
+  {
+    LOG.info(
+      "migrating {} to {} using {} threads",
+      this.directory,
+      this.layout,
+      Integer.valueOf(this.threads));
+
+    /*
+     * The queue is bounded, and the listing thread runs moves itself when
+     * the queue is full, so that the listing never gets far ahead of the
+     * moves no matter how many blobs there are.
+     */
+
+    final var executor =
+      new ThreadPoolExecutor(
+        this.threads,
+        this.threads,
+        0L,
+        TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(this.threads * 64),
+        new ThreadPoolExecutor.CallerRunsPolicy());
+
+    try (var stream =
+           Files.newDirectoryStream(this.directory, WBBlobStore::isFlatBlob)) {
+      for (final var file : stream) {
+        executor.execute(() -> this.moveOne(file));
+      }
+    } finally {
+      executor.shutdown();
+      while (!executor.awaitTermination(1L, TimeUnit.SECONDS)) {
+        LOG.debug("waiting for moves to complete");
+      }
+    }
+
+    LOG.info(
+      "migrated {} blobs ({} failed)",
+      Long.valueOf(this.moved()),
+      Long.valueOf(this.failed()));
+  }
+
+  private void moveOne(
+    final Path source)
+  {
+    final var id = WBBlobID.of(source.getFileName().toString());
+    try {
+      final var targetDirectory = this.layout.directoryOf(this.directory, id);
+      if (!this.directoriesCreated.contains(targetDirectory)) {
+        Files.createDirectories(targetDirectory);
+        this.directoriesCreated.add(targetDirectory);
+      }
+
+      final var target = targetDirectory.resolve(id.value());
+      try {
+        Files.createLink(target, source);
+      } catch (final FileAlreadyExistsException e) {
+        if (!Files.isSameFile(target, source)) {
+          throw e;
+        }
+      }
+      Files.delete(source);
+
+      final var count = this.moved.incrementAndGet();
+      if (count % PROGRESS_INTERVAL == 0L) {
+        LOG.info("migrated {} blobs", Long.valueOf(count));
+      }
+    } catch (final IOException | UnsupportedOperationException e) {
+      this.failed.increment();
+      LOG.error("could not migrate {}: ", source, e);
+    }
+  }
+}
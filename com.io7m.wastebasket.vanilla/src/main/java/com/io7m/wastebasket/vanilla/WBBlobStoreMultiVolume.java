@@ -0,0 +1,482 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobPlacement;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.api.WBBlobWriterType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A blob store that spreads blobs across several volumes, each of which is
+ * an ordinary blob store in its own directory. Deliveries to different
+ * volumes proceed in parallel, so write bandwidth grows with the number of
+ * disks.
+ *
+ * Volumes are ranked for each ID by rendezvous hashing. New blobs are
+ * placed on the highest-ranked healthy volume (or, with
+ * {@link WBBlobPlacement#FREE_SPACE}, on one of the two highest-ranked
+ * healthy volumes), and lookups probe volumes in the same order, so an
+ * existing blob is normally found on the first or second probe. Adding a
+ * volume only changes the ranking of the IDs that the new volume wins.
+ *
+ * Each ID is reserved from the moment its writer is opened until the
+ * writer is closed, so two deliveries of the same ID cannot be placed on
+ * different volumes while neither has yet been committed.
+ *
+ * Lookups look for each blob's file on each volume, so packed stores,
+ * which hold most blobs inside segment files, cannot be spread across
+ * volumes.
+ */
+
+public final class WBBlobStoreMultiVolume implements WBBlobStoreType
+{
+  private final WBBlobPlacement placement;
+  private final List<WBBlobStoreVolume> volumes;
+  private final Set<String> reserved;
+
+  private WBBlobStoreMultiVolume(
+    final WBBlobPlacement inPlacement,
+    final List<WBBlobStoreVolume> inVolumes)
+  {
+    this.placement =
+      Objects.requireNonNull(inPlacement, "placement");
+    this.volumes =
+      List.copyOf(inVolumes);
+    this.reserved =
+      ConcurrentHashMap.newKeySet();
+  }
+
+  /**
+   * Create a multi-volume blob store over {@code configuration.directory()}
+   * and each of {@code configuration.volumes()}. Every volume is a store of
+   * {@code configuration.kind()}.
+   *
+   * @param configuration The configuration
+   *
+   * @return A blob store
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static WBBlobStoreMultiVolume create(
+    final WBBlobStoreConfiguration configuration)
+    throws IOException
+  {
+    Objects.requireNonNull(configuration, "configuration");
+
+    final var directories = new ArrayList<Path>();
+    directories.add(configuration.directory());
+    directories.addAll(configuration.volumes());
+
+    final var layout = WBBlobStoreLayout.sharded(configuration.shardLevels());
+    final var volumes = new ArrayList<WBBlobStoreVolume>(directories.size());
+    for (final var directory : directories) {
+      final var store =
+        WBBlobStores.create(
+          WBBlobStoreConfiguration.builder()
+            .from(configuration)
+            .setDirectory(directory)
+            .setVolumes(List.of())
+            .build());
+
+      volumes.add(new WBBlobStoreVolume(
+        directory,
+        layout,
+        store,
+        Files.getFileStore(directory),
+        configuration.volumeReserve()));
+    }
+    return new WBBlobStoreMultiVolume(configuration.placement(), volumes);
+  }
+
+  private WBBlobStoreVolume[] ranked(
+    final WBBlobID id)
+  {
+    final var idHash = WBBlobStoreVolume.hash(id.value());
+    final var ranked = this.volumes.toArray(new WBBlobStoreVolume[0]);
+    Arrays.sort(
+      ranked,
+      Comparator.comparingLong((WBBlobStoreVolume v) -> v.score(idHash))
+        .reversed());
+    return ranked;
+  }
+
+  /**
+   * Find the file holding an existing blob. Volumes are probed in the order
+   * in which the blob would have been placed.
+   *
+   * @param id The blob ID
+   *
+   * @return The file holding {@code id}, if the blob exists
+   */
+
+  public Optional<Path> find(
+    final WBBlobID id)
+  {
+    Objects.requireNonNull(id, "id");
+
+    for (final var volume : this.ranked(id)) {
+      if (volume.contains(id)) {
+        return Optional.of(volume.fileOf(id));
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * @return The directories of the volumes that are currently given new
+   *         blobs, for monitoring
+   */
+
+  public List<Path> healthyVolumes()
+  {
+    return this.volumes.stream()
+      .filter(WBBlobStoreVolume::isHealthy)
+      .map(WBBlobStoreVolume::directory)
+      .toList();
+  }
+
+  private List<WBBlobStoreVolume> candidates(
+    final WBBlobStoreVolume[] ranked,
+    final long expectedSize)
+  {
+    final var available = new ArrayList<WBBlobStoreVolume>(ranked.length);
+    for (final var volume : ranked) {
+      if (volume.isAvailable(expectedSize)) {
+        available.add(volume);
+      }
+    }
+
+    if (this.placement == WBBlobPlacement.FREE_SPACE && available.size() >= 2) {
+      final var first = available.get(0);
+      final var second = available.get(1);
+      final var spaceFirst = (double) first.usableSpace();
+      final var spaceSecond = (double) second.usableSpace();
+      final var total = spaceFirst + spaceSecond;
+      if (total > 0.0
+          && ThreadLocalRandom.current().nextDouble(total) >= spaceFirst) {
+        available.set(0, second);
+        available.set(1, first);
+      }
+    }
+    return available;
+  }
+
+  @Override
+  public WBBlobWriterType open(
+    final WBBlobID id,
+    final long expectedSize)
+    throws IOException, NoSuchAlgorithmException
+  {
+    Objects.requireNonNull(id, "id");
+
+    if (!this.reserved.add(id.value())) {
+      throw new FileAlreadyExistsException(id.value());
+    }
+
+    try {
+      return this.openReserved(id, expectedSize);
+    } catch (final IOException | NoSuchAlgorithmException
+                   | RuntimeException e) {
+      this.reserved.remove(id.value());
+      throw e;
+    }
+  }
+
+  private WBBlobWriterType openReserved(
+    final WBBlobID id,
+    final long expectedSize)
+    throws IOException, NoSuchAlgorithmException
+  {
+    final var ranked = this.ranked(id);
+    for (final var volume : ranked) {
+      if (volume.contains(id)) {
+        throw new FileAlreadyExistsException(volume.fileOf(id).toString());
+      }
+    }
+
+    final var candidates = this.candidates(ranked, expectedSize);
+    if (candidates.isEmpty()) {
+      throw new IOException(
+        "No data volume is healthy and has space for %s".formatted(id.value()));
+    }
+
+    IOException failure = null;
+    for (final var volume : candidates) {
+      try {
+        return new Writer(
+          this,
+          id,
+          volume,
+          volume.store().open(id, expectedSize));
+      } catch (final FileAlreadyExistsException e) {
+        throw e;
+      } catch (final IOException e) {
+        volume.failed(e);
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    throw failure;
+  }
+
+  /**
+   * Delete the blob with {@code id} from whichever volume holds it. Every
+   * volume is asked, as a blob is not necessarily on the volume that its
+   * ID currently ranks first.
+   *
+   * @param id The blob ID
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void delete(
+    final WBBlobID id)
+    throws IOException
+  {
+    Objects.requireNonNull(id, "id");
+
+    IOException failure = null;
+    for (final var volume : this.volumes) {
+      try {
+        volume.store().delete(id);
+      } catch (final IOException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public void reclaim()
+    throws IOException
+  {
+    IOException failure = null;
+    for (final var volume : this.volumes) {
+      try {
+        volume.store().reclaim();
+      } catch (final IOException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public void reclaim(
+    final Collection<String> digests)
+    throws IOException
+  {
+    Objects.requireNonNull(digests, "digests");
+
+    IOException failure = null;
+    for (final var volume : this.volumes) {
+      try {
+        volume.store().reclaim(digests);
+      } catch (final IOException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Close the store on each volume.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    IOException failure = null;
+    for (final var volume : this.volumes) {
+      try {
+        volume.store().close();
+      } catch (final IOException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * A writer that marks its volume as failed if writing to it fails, and
+   * releases the reservation on its ID when closed.
+   */
+
+  private static final class Writer implements WBBlobWriterType
+  {
+    private final WBBlobStoreMultiVolume store;
+    private final WBBlobID id;
+    private final WBBlobStoreVolume volume;
+    private final WBBlobWriterType delegate;
+    private boolean closed;
+
+    Writer(
+      final WBBlobStoreMultiVolume inStore,
+      final WBBlobID inId,
+      final WBBlobStoreVolume inVolume,
+      final WBBlobWriterType inDelegate)
+    {
+      this.store =
+        Objects.requireNonNull(inStore, "store");
+      this.id =
+        Objects.requireNonNull(inId, "id");
+      this.volume =
+        Objects.requireNonNull(inVolume, "volume");
+      this.delegate =
+        Objects.requireNonNull(inDelegate, "delegate");
+    }
+
+    private IOException failed(
+      final IOException e)
+    {
+      if (!(e instanceof FileAlreadyExistsException)) {
+        this.volume.failed(e);
+      }
+      return e;
+    }
+
+    @Override
+    public Path directory()
+    {
+      return this.delegate.directory();
+    }
+
+    @Override
+    public DigestOutputStream output()
+    {
+      return this.delegate.output();
+    }
+
+    @Override
+    public void write(
+      final ByteBuffer data)
+      throws IOException
+    {
+      try {
+        this.delegate.write(data);
+      } catch (final IOException e) {
+        throw this.failed(e);
+      }
+    }
+
+    @Override
+    public long transferFrom(
+      final InputStream input)
+      throws IOException
+    {
+      /*
+       * A failure here is as likely to come from the input as from the
+       * volume, so it says nothing about the health of the volume.
+       */
+
+      return this.delegate.transferFrom(input);
+    }
+
+    @Override
+    public void commit()
+      throws IOException
+    {
+      try {
+        this.delegate.commit();
+      } catch (final IOException e) {
+        throw this.failed(e);
+      }
+    }
+
+    @Override
+    public byte[] digest()
+    {
+      return this.delegate.digest();
+    }
+
+    @Override
+    public String location()
+    {
+      return this.delegate.location();
+    }
+
+    @Override
+    public void close()
+      throws IOException
+    {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+
+      try {
+        this.delegate.close();
+      } finally {
+        this.store.reserved.remove(this.id.value());
+      }
+    }
+  }
+}
@@ -0,0 +1,952 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobDurability;
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.api.WBBlobWriterType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A blob store that packs small blobs into large append-only segment
+ * files, and stores larger blobs in their own files exactly as a plain
+ * store would. Packing saves an inode, a directory entry, and a round of
+ * file system metadata updates for every small delivery.
+ *
+ * Packed blobs are committed in groups: concurrent commits are appended
+ * to the active segment in a single write, followed by a single flush
+ * according to the configured durability. The store keeps an in-memory
+ * index from each ID to the offset of its record, rebuilt at startup from
+ * the record headers.
+ *
+ * Deleting a packed blob appends a tombstone. Compaction copies the live
+ * records out of segments that are mostly dead and then removes them;
+ * it runs in the background at a bounded I/O rate.
+ */
+
+public final class WBBlobStorePacked implements WBBlobStoreType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBBlobStorePacked.class);
+
+  private final WBBlobStoreConfiguration configuration;
+  private final Path directory;
+  private final Path segmentDirectory;
+  private final WBBlobStoreLayout layout;
+  private final WBBlobStoreType standalone;
+  private final ConcurrentHashMap<String, Location> index;
+  private final ConcurrentSkipListMap<Long, WBBlobSegment> segments;
+  private final Set<String> reserved;
+  private final ReentrantLock appendLock;
+  private final Condition appendDone;
+  private final Object deleteLock;
+  private final Object compactLock;
+  private List<Append> pending;
+  private boolean appending;
+  private volatile WBBlobSegment active;
+  private volatile Thread compaction;
+
+  private WBBlobStorePacked(
+    final WBBlobStoreConfiguration inConfiguration,
+    final WBBlobStoreType inStandalone)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.standalone =
+      Objects.requireNonNull(inStandalone, "standalone");
+    this.directory =
+      inConfiguration.directory();
+    this.segmentDirectory =
+      this.directory.resolve("segments");
+    this.layout =
+      WBBlobStoreLayout.sharded(inConfiguration.shardLevels());
+    this.index =
+      new ConcurrentHashMap<>();
+    this.segments =
+      new ConcurrentSkipListMap<>();
+    this.reserved =
+      ConcurrentHashMap.newKeySet();
+    this.appendLock =
+      new ReentrantLock();
+    this.appendDone =
+      this.appendLock.newCondition();
+    this.deleteLock =
+      new Object();
+    this.compactLock =
+      new Object();
+    this.pending =
+      new ArrayList<>();
+  }
+
+  /**
+   * Create a packed blob store, loading any existing segments. If the
+   * configuration gives a compaction interval, compaction runs in the
+   * background on a virtual thread until the store is closed.
+   *
+   * @param configuration The configuration
+   *
+   * @return A blob store
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static WBBlobStorePacked create(
+    final WBBlobStoreConfiguration configuration)
+    throws IOException
+  {
+    Objects.requireNonNull(configuration, "configuration");
+
+    final var store =
+      new WBBlobStorePacked(configuration, WBBlobStore.create(configuration));
+    Files.createDirectories(store.segmentDirectory);
+    store.load();
+
+    final var interval = configuration.packCompactionInterval();
+    if (!interval.isZero()) {
+      store.compaction =
+        Thread.ofVirtual()
+          .name("com.io7m.wastebasket.compaction")
+          .start(() -> store.compactPeriodically(interval));
+    }
+    return store;
+  }
+
+  /**
+   * @return The directory holding the store
+   */
+
+  Path directory()
+  {
+    return this.directory;
+  }
+
+  /**
+   * @return The number of blobs currently held in segments
+   */
+
+  public long packed()
+  {
+    return this.index.size();
+  }
+
+  /**
+   * @return The number of segment files
+   */
+
+  public int segmentCount()
+  {
+    return this.segments.size();
+  }
+
+  /**
+   * Pass the header, the segment file, and the location of every packed
+   * blob to {@code receiver}.
+   */
+
+  void forEachPacked(
+    final PackedReceiverType receiver)
+  {
+    for (final var location : this.index.values()) {
+      receiver.receive(
+        location.record(),
+        location.segment().file(),
+        location.describe());
+    }
+  }
+
+  /**
+   * A receiver of packed blobs.
+   *
+   * @see #forEachPacked(PackedReceiverType)
+   */
+
+  @FunctionalInterface
+  interface PackedReceiverType
+  {
+    /**
+     * Receive a packed blob.
+     *
+     * @param record   The blob's record header
+     * @param segment  The segment file holding the blob
+     * @param location The description of the blob's location
+     */
+
+    void receive(
+      WBBlobSegmentRecord record,
+      Path segment,
+      String location);
+  }
+
+  private void load()
+    throws IOException
+  {
+    final var numbers = new ArrayList<Long>();
+    try (var files = Files.list(this.segmentDirectory)) {
+      files.forEach(file -> {
+        WBBlobSegment.numberOf(file)
+          .ifPresent(n -> numbers.add(Long.valueOf(n)));
+      });
+    }
+    numbers.sort(Long::compareUnsigned);
+
+    for (int index = 0; index < numbers.size(); ++index) {
+      final var segment =
+        WBBlobSegment.open(this.segmentDirectory, numbers.get(index).longValue());
+      this.segments.put(Long.valueOf(segment.number()), segment);
+      this.loadSegment(segment, index == numbers.size() - 1);
+    }
+
+    if (!this.segments.isEmpty()) {
+      final var last = this.segments.lastEntry().getValue();
+      if (last.size() < this.configuration.packSegmentSize()) {
+        last.channel().position(last.size());
+        this.active = last;
+      }
+    }
+
+    LOG.debug(
+      "loaded {} packed blobs from {} segments",
+      Integer.valueOf(this.index.size()),
+      Integer.valueOf(this.segments.size()));
+  }
+
+  /**
+   * Index the records in {@code segment}. Only the last segment can have
+   * been interrupted mid-append, so only its records are checksummed, and
+   * a torn record at its end is cut off.
+   */
+
+  private void loadSegment(
+    final WBBlobSegment segment,
+    final boolean last)
+    throws IOException
+  {
+    final var channel = segment.channel();
+    final var limit = channel.size();
+
+    long position = 0L;
+    while (position < limit) {
+      final var record = WBBlobSegmentRecord.read(channel, position, limit);
+      if (record == null || (last && !record.verify(channel, position))) {
+        if (last) {
+          LOG.warn(
+            "truncating incomplete record in {} at offset {}",
+            segment.file(),
+            Long.valueOf(position));
+          channel.truncate(position);
+        } else {
+          LOG.error(
+            "segment {} is damaged at offset {}; ignoring the remainder",
+            segment.file(),
+            Long.valueOf(position));
+        }
+        break;
+      }
+
+      this.apply(new Location(segment, position, record), null);
+      position += record.size();
+    }
+    segment.setSize(position);
+  }
+
+  /**
+   * Update the index and the dead space accounting for a record that has
+   * just been written to, or read from, a segment.
+   */
+
+  private void apply(
+    final Location location,
+    final Location replaces)
+  {
+    final var record = location.record();
+    final var id = record.id();
+
+    if (!record.isBlob()) {
+      location.segment().addDead(record.size());
+      final var previous = this.index.remove(id);
+      if (previous != null) {
+        previous.markDead();
+      }
+      return;
+    }
+
+    if (replaces != null) {
+      if (this.index.replace(id, replaces, location)) {
+        replaces.markDead();
+      } else {
+        location.markDead();
+      }
+      return;
+    }
+
+    final var previous = this.index.put(id, location);
+    if (previous != null) {
+      previous.markDead();
+    }
+  }
+
+  private boolean exists(
+    final WBBlobID id)
+  {
+    return this.index.containsKey(id.value())
+           || Files.exists(this.layout.fileOf(this.directory, id));
+  }
+
+  @Override
+  public WBBlobWriterType open(
+    final WBBlobID id,
+    final long expectedSize)
+    throws IOException, NoSuchAlgorithmException
+  {
+    Objects.requireNonNull(id, "id");
+
+    if (!this.reserved.add(id.value())) {
+      throw new FileAlreadyExistsException(id.value());
+    }
+
+    try {
+      if (this.exists(id)) {
+        throw new FileAlreadyExistsException(id.value());
+      }
+
+      final var writer =
+        new WBBlobWriterPacked(
+          this,
+          id,
+          MessageDigest.getInstance("SHA-256"),
+          this.configuration.packThreshold());
+
+      if (expectedSize < 0L
+          || expectedSize >= this.configuration.packThreshold()) {
+        writer.spill(expectedSize);
+      }
+      return writer;
+    } catch (final IOException | NoSuchAlgorithmException
+                   | RuntimeException e) {
+      this.reserved.remove(id.value());
+      throw e;
+    }
+  }
+
+  /**
+   * Open a writer for a blob that is too large to pack.
+   */
+
+  WBBlobWriterType openStandalone(
+    final WBBlobID id,
+    final long expectedSize)
+    throws IOException
+  {
+    try {
+      return this.standalone.open(id, expectedSize);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IOException(e);
+    }
+  }
+
+  /**
+   * Release the reservation taken on {@code id} when its writer was opened.
+   */
+
+  void release(
+    final WBBlobID id)
+  {
+    this.reserved.remove(id.value());
+  }
+
+  /**
+   * Append a packed blob, returning once it has been written (and flushed,
+   * according to the durability) along with any concurrent commits.
+   *
+   * @return The description of the blob's location
+   */
+
+  String commitPacked(
+    final WBBlobID id,
+    final byte[] data,
+    final int length,
+    final byte[] digest)
+    throws IOException
+  {
+    final var record = WBBlobSegmentRecord.blob(id.value(), length, digest);
+    final var append = new Append(record, data, null);
+    this.append(append);
+    return append.written.describe();
+  }
+
+  /**
+   * Read a blob, whether packed or standalone.
+   *
+   * @param id The blob ID
+   *
+   * @return The contents of the blob, if it exists
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public Optional<byte[]> read(
+    final WBBlobID id)
+    throws IOException
+  {
+    Objects.requireNonNull(id, "id");
+
+    while (true) {
+      final var location = this.index.get(id.value());
+      if (location == null) {
+        final var file = this.layout.fileOf(this.directory, id);
+        if (!Files.exists(file)) {
+          return Optional.empty();
+        }
+        try (var stream = WBBlobCodecs.openDecoded(file)) {
+          return Optional.of(stream.readAllBytes());
+        }
+      }
+
+      try {
+        return Optional.of(readData(location));
+      } catch (final ClosedChannelException e) {
+        if (this.index.get(id.value()) == location) {
+          throw e;
+        }
+        // The segment was compacted away during the read; look again.
+      }
+    }
+  }
+
+  private static byte[] readData(
+    final Location location)
+    throws IOException
+  {
+    final var record = location.record();
+    final var buffer = ByteBuffer.allocate(record.dataLength());
+    if (!WBBlobSegmentRecord.readFully(
+      location.segment().channel(),
+      buffer,
+      location.offset() + record.headerSize())) {
+      throw new IOException(
+        "Segment %s is truncated".formatted(location.segment().file()));
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Delete a blob. Deleting a packed blob appends a tombstone; the space
+   * is reclaimed when its segment is compacted.
+   *
+   * @param id The blob ID
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void delete(
+    final WBBlobID id)
+    throws IOException
+  {
+    Objects.requireNonNull(id, "id");
+
+    synchronized (this.deleteLock) {
+      final var location = this.index.get(id.value());
+      if (location == null) {
+        Files.deleteIfExists(this.layout.fileOf(this.directory, id));
+        return;
+      }
+      this.append(new Append(
+        WBBlobSegmentRecord.tombstone(id.value(), location.segment().number()),
+        null,
+        null));
+    }
+  }
+
+  private void append(
+    final Append append)
+    throws IOException
+  {
+    this.appendLock.lock();
+    try {
+      this.pending.add(append);
+      while (!append.done) {
+        if (this.appending) {
+          this.appendDone.awaitUninterruptibly();
+          continue;
+        }
+
+        this.appending = true;
+        final var batch = this.pending;
+        this.pending = new ArrayList<>();
+        this.appendLock.unlock();
+
+        IOException failure = null;
+        try {
+          this.writeBatch(batch);
+        } catch (final IOException e) {
+          failure = e;
+        } finally {
+          this.appendLock.lock();
+          this.appending = false;
+          for (final var item : batch) {
+            item.failure = failure;
+            item.done = true;
+          }
+          this.appendDone.signalAll();
+        }
+      }
+    } finally {
+      this.appendLock.unlock();
+    }
+
+    if (append.failure != null) {
+      throw new IOException("Failed to append to segment", append.failure);
+    }
+  }
+
+  /**
+   * Write a batch of records. Only one thread at a time runs this method.
+   *
+   * A batch that does not fit in the active segment is split across a new
+   * one. If any part of the batch cannot be written, the parts already
+   * written are cut off again, so that a batch reported as failed is never
+   * found by the index rebuilt at the next startup.
+   */
+
+  private void writeBatch(
+    final List<Append> batch)
+    throws IOException
+  {
+    final var segmentSize = this.configuration.packSegmentSize();
+    final var parts = new ArrayList<Part>(1);
+    final var written = new ArrayList<Location>(batch.size());
+
+    var segment = this.active;
+    if (segment == null) {
+      segment = this.startSegment();
+    }
+
+    var part = new Part(segment, segment.size(), new ArrayList<>(batch.size()));
+    long position = segment.size();
+    for (final var item : batch) {
+      final var record = item.record;
+      if (position > 0L && position + record.size() > segmentSize) {
+        parts.add(part);
+        segment = this.startSegment();
+        part = new Part(segment, 0L, new ArrayList<>());
+        position = 0L;
+      }
+
+      part.buffers().add(record.encode(item.data));
+      written.add(new Location(segment, position, record));
+      position += record.size();
+    }
+    parts.add(part);
+
+    for (int index = 0; index < parts.size(); ++index) {
+      final var next = parts.get(index);
+      try {
+        this.writeBuffers(next.segment(), next.buffers());
+      } catch (final IOException e) {
+        for (int done = 0; done < index; ++done) {
+          try {
+            this.rollBack(parts.get(done));
+          } catch (final IOException ex) {
+            e.addSuppressed(ex);
+          }
+        }
+        throw e;
+      }
+    }
+
+    for (int index = 0; index < batch.size(); ++index) {
+      final var item = batch.get(index);
+      item.written = written.get(index);
+      this.apply(item.written, item.replaces);
+    }
+  }
+
+  private void rollBack(
+    final Part part)
+    throws IOException
+  {
+    final var segment = part.segment();
+    final var channel = segment.channel();
+    LOG.warn(
+      "cutting off part of a failed batch in {} at offset {}",
+      segment.file(),
+      Long.valueOf(part.start()));
+
+    channel.truncate(part.start());
+    channel.position(part.start());
+    segment.setSize(part.start());
+    if (this.configuration.durability() != WBBlobDurability.NONE) {
+      channel.force(true);
+    }
+  }
+
+  private void writeBuffers(
+    final WBBlobSegment segment,
+    final List<ByteBuffer> buffers)
+    throws IOException
+  {
+    if (buffers.isEmpty()) {
+      return;
+    }
+
+    final var channel = segment.channel();
+    final var start = segment.size();
+    final var array = buffers.toArray(new ByteBuffer[0]);
+    long total = 0L;
+    for (final var buffer : array) {
+      total += buffer.remaining();
+    }
+
+    try {
+      long remaining = total;
+      while (remaining > 0L) {
+        remaining -= channel.write(array);
+      }
+
+      switch (this.configuration.durability()) {
+        case NONE -> {
+
+        }
+        case DATA -> channel.force(false);
+        case FULL -> channel.force(true);
+      }
+    } catch (final IOException e) {
+      try {
+        channel.truncate(start);
+        channel.position(start);
+      } catch (final IOException ex) {
+        e.addSuppressed(ex);
+      }
+      throw e;
+    }
+
+    segment.setSize(start + total);
+    buffers.clear();
+  }
+
+  private WBBlobSegment startSegment()
+    throws IOException
+  {
+    final var previous = this.active;
+    final long number;
+    if (this.segments.isEmpty()) {
+      number = 0L;
+    } else {
+      number = this.segments.lastKey().longValue() + 1L;
+    }
+
+    final var segment = WBBlobSegment.open(this.segmentDirectory, number);
+    if (this.configuration.durability() == WBBlobDurability.FULL) {
+      WBBlobWriter.syncDirectory(this.segmentDirectory);
+    }
+
+    this.segments.put(Long.valueOf(number), segment);
+    this.active = segment;
+
+    if (previous != null) {
+      LOG.debug("sealed segment {}", previous.file());
+    }
+    return segment;
+  }
+
+  /**
+   * Compact every sealed segment in which at least half of the records are
+   * deleted or superseded, reading at no more than the configured rate.
+   *
+   * @return The number of bytes of segment files removed
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public long compact()
+    throws IOException
+  {
+    synchronized (this.compactLock) {
+      long reclaimed = 0L;
+      for (final var segment : List.copyOf(this.segments.values())) {
+        if (segment != this.active && segment.isMostlyDead()) {
+          reclaimed += this.compactSegment(segment);
+        }
+      }
+      return reclaimed;
+    }
+  }
+
+  /**
+   * Compact the segments in which most records are deleted.
+   *
+   * @throws IOException On I/O errors
+   *
+   * @see #compact()
+   */
+
+  @Override
+  public void reclaim()
+    throws IOException
+  {
+    this.compact();
+  }
+
+  private long compactSegment(
+    final WBBlobSegment segment)
+    throws IOException
+  {
+    final var channel = segment.channel();
+    final var limit = segment.size();
+    final var rate = this.configuration.packCompactionRate();
+    final var timeStart = System.nanoTime();
+
+    long position = 0L;
+    while (position < limit) {
+      final var record = WBBlobSegmentRecord.read(channel, position, limit);
+      if (record == null) {
+        throw new IOException(
+          "Segment %s is damaged at offset %d"
+            .formatted(segment.file(), Long.valueOf(position)));
+      }
+
+      /*
+       * A tombstone must be kept for as long as the segment holding the
+       * blob it deleted still exists, or the blob would reappear when the
+       * index is next rebuilt.
+       */
+
+      if (record.isBlob()) {
+        this.relocate(segment, position, record);
+      } else if (record.target() != segment.number()
+                 && this.segments.containsKey(Long.valueOf(record.target()))
+                 && !this.index.containsKey(record.id())) {
+        this.append(new Append(record, null, null));
+      }
+
+      position += record.size();
+      throttle(timeStart, position, rate);
+    }
+
+    this.segments.remove(Long.valueOf(segment.number()));
+    segment.close();
+    Files.delete(segment.file());
+
+    LOG.info(
+      "compacted segment {} ({} bytes, {} dead)",
+      segment.file(),
+      Long.valueOf(limit),
+      Long.valueOf(segment.dead()));
+    return limit;
+  }
+
+  private void relocate(
+    final WBBlobSegment segment,
+    final long position,
+    final WBBlobSegmentRecord record)
+    throws IOException
+  {
+    synchronized (this.deleteLock) {
+      final var current = this.index.get(record.id());
+      if (current == null
+          || current.segment() != segment
+          || current.offset() != position) {
+        return;
+      }
+      this.append(new Append(record, readData(current), current));
+    }
+  }
+
+  private static void throttle(
+    final long timeStart,
+    final long bytes,
+    final long rate)
+    throws InterruptedIOException
+  {
+    final var timeDue =
+      timeStart + (long) ((double) bytes / (double) rate * 1.0e9);
+    final var wait = timeDue - System.nanoTime();
+    if (wait > 0L) {
+      try {
+        Thread.sleep(Duration.ofNanos(wait));
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Compaction interrupted");
+      }
+    }
+  }
+
+  /**
+   * Stop background compaction, and close the segment files.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    final var thread = this.compaction;
+    if (thread != null) {
+      thread.interrupt();
+      try {
+        thread.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    IOException failure = null;
+    for (final var segment : this.segments.values()) {
+      try {
+        segment.close();
+      } catch (final IOException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    try {
+      this.standalone.close();
+    } catch (final IOException e) {
+      if (failure == null) {
+        failure = e;
+      } else {
+        failure.addSuppressed(e);
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private void compactPeriodically(
+    final Duration interval)
+  {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        Thread.sleep(interval);
+        final var reclaimed = this.compact();
+        if (reclaimed > 0L) {
+          LOG.info(
+            "compaction reclaimed {} bytes in {}",
+            Long.valueOf(reclaimed),
+            this.segmentDirectory);
+        }
+      } catch (final InterruptedException | InterruptedIOException e) {
+        Thread.currentThread().interrupt();
+      } catch (final IOException e) {
+        LOG.error("compaction failed: ", e);
+      }
+    }
+  }
+
+  /**
+   * The location of a record in a segment.
+   *
+   * @param segment The segment
+   * @param offset  The offset of the record
+   * @param record  The record
+   */
+
+  private record Location(
+    WBBlobSegment segment,
+    long offset,
+    WBBlobSegmentRecord record)
+  {
+    void markDead()
+    {
+      this.segment.addDead(this.record.size());
+    }
+
+    /**
+     * Describe the location by the segment directory and the blob's ID,
+     * rather than by the segment and offset, which change when the record
+     * is moved by compaction.
+     */
+
+    String describe()
+    {
+      return String.format(
+        "%s#%s",
+        this.segment.file().getParent(),
+        this.record.id());
+    }
+  }
+
+  /**
+   * The part of a batch written to one segment.
+   *
+   * @param segment The segment
+   * @param start   The offset at which the part starts
+   * @param buffers The encoded records
+   */
+
+  private record Part(
+    WBBlobSegment segment,
+    long start,
+    List<ByteBuffer> buffers)
+  {
+
+  }
+
+  /**
+   * A record waiting to be appended.
+   */
+
+  private static final class Append
+  {
+    private final WBBlobSegmentRecord record;
+    private final byte[] data;
+    private final Location replaces;
+    private Location written;
+    private boolean done;
+    private IOException failure;
+
+    Append(
+      final WBBlobSegmentRecord inRecord,
+      final byte[] inData,
+      final Location inReplaces)
+    {
+      this.record = Objects.requireNonNull(inRecord, "record");
+      this.data = inData;
+      this.replaces = inReplaces;
+    }
+  }
+}
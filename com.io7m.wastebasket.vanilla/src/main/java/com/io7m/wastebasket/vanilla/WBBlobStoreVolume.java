@@ -0,0 +1,248 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * One volume of a multi-volume blob store, along with its health. A volume
+ * that reports an I/O error is not given new blobs until a retry interval
+ * has passed, and a volume whose free space has fallen below the reserve
+ * is not given new blobs until space is freed.
+ */
+
+final class WBBlobStoreVolume
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBBlobStoreVolume.class);
+
+  private static final long SPACE_CHECK_INTERVAL =
+    Duration.ofSeconds(1L).toNanos();
+  private static final long FAILURE_RETRY_INTERVAL =
+    Duration.ofSeconds(30L).toNanos();
+
+  private final Path directory;
+  private final WBBlobStoreLayout layout;
+  private final WBBlobStoreType store;
+  private final FileStore fileStore;
+  private final long reserve;
+  private final long seed;
+  private volatile long usableSpace;
+  private volatile long usableSpaceCheckedAt;
+  private volatile long failedAt;
+  private volatile boolean failed;
+  private volatile boolean full;
+
+  WBBlobStoreVolume(
+    final Path inDirectory,
+    final WBBlobStoreLayout inLayout,
+    final WBBlobStoreType inStore,
+    final FileStore inFileStore,
+    final long inReserve)
+  {
+    this.directory =
+      Objects.requireNonNull(inDirectory, "directory");
+    this.layout =
+      Objects.requireNonNull(inLayout, "layout");
+    this.store =
+      Objects.requireNonNull(inStore, "store");
+    this.fileStore =
+      Objects.requireNonNull(inFileStore, "fileStore");
+    this.reserve =
+      inReserve;
+    this.seed =
+      hash(inDirectory.toAbsolutePath().normalize().toString());
+    this.usableSpaceCheckedAt =
+      System.nanoTime() - SPACE_CHECK_INTERVAL;
+  }
+
+  /**
+   * A 64-bit FNV-1a hash of {@code text}. The hash must not change between
+   * runs, because it decides where existing blobs are looked for.
+   *
+   * @param text The text
+   *
+   * @return The hash
+   */
+
+  static long hash(
+    final String text)
+  {
+    long h = 0xcbf2_9ce4_8422_2325L;
+    for (final byte b : text.getBytes(StandardCharsets.UTF_8)) {
+      h ^= b & 0xffL;
+      h *= 0x100_0000_01b3L;
+    }
+    return h;
+  }
+
+  /**
+   * The rendezvous score of this volume for a blob whose ID hashes to
+   * {@code idHash}. Blobs are placed on, and looked for on, volumes in
+   * descending order of score.
+   *
+   * @param idHash The hash of the blob ID
+   *
+   * @return The score
+   */
+
+  long score(
+    final long idHash)
+  {
+    long z = idHash ^ this.seed;
+    z = (z ^ (z >>> 30)) * 0xbf58_476d_1ce4_e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d0_49bb_1331_11ebL;
+    return z ^ (z >>> 31);
+  }
+
+  /**
+   * @return The root directory of the volume
+   */
+
+  Path directory()
+  {
+    return this.directory;
+  }
+
+  /**
+   * @return The store that holds the blobs on this volume
+   */
+
+  WBBlobStoreType store()
+  {
+    return this.store;
+  }
+
+  /**
+   * @param id The blob ID
+   *
+   * @return The file that holds {@code id} on this volume, if any
+   */
+
+  Path fileOf(
+    final WBBlobID id)
+  {
+    return this.layout.fileOf(this.directory, id);
+  }
+
+  /**
+   * @param id The blob ID
+   *
+   * @return {@code true} if {@code id} exists on this volume
+   */
+
+  boolean contains(
+    final WBBlobID id)
+  {
+    return Files.exists(this.fileOf(id));
+  }
+
+  /**
+   * @return The most recently observed usable space on the volume
+   */
+
+  long usableSpace()
+  {
+    final var now = System.nanoTime();
+    if (now - this.usableSpaceCheckedAt >= SPACE_CHECK_INTERVAL) {
+      this.usableSpaceCheckedAt = now;
+      try {
+        this.usableSpace = this.fileStore.getUsableSpace();
+      } catch (final IOException e) {
+        this.failed(e);
+        this.usableSpace = 0L;
+      }
+    }
+    return this.usableSpace;
+  }
+
+  /**
+   * @param size The number of bytes about to be written, or {@code -1}
+   *
+   * @return {@code true} if new blobs of {@code size} bytes may be placed
+   *         on this volume
+   */
+
+  boolean isAvailable(
+    final long size)
+  {
+    if (this.failed) {
+      if (System.nanoTime() - this.failedAt < FAILURE_RETRY_INTERVAL) {
+        return false;
+      }
+      LOG.info("retrying data volume {}", this.directory);
+      this.failed = false;
+    }
+
+    final var space = this.usableSpace();
+    final var isFull = space - this.reserve <= Math.max(size, 0L);
+    if (isFull != this.full) {
+      this.full = isFull;
+      if (isFull) {
+        LOG.warn(
+          "data volume {} is full ({} bytes usable); not placing new blobs on it",
+          this.directory,
+          Long.valueOf(space));
+      } else {
+        LOG.info("data volume {} has space again", this.directory);
+      }
+    }
+    return !isFull;
+  }
+
+  /**
+   * Record that an operation on this volume failed.
+   *
+   * @param e The failure
+   */
+
+  void failed(
+    final IOException e)
+  {
+    this.failedAt = System.nanoTime();
+    if (!this.failed) {
+      this.failed = true;
+      LOG.error(
+        "data volume {} failed; not placing new blobs on it for {}: ",
+        this.directory,
+        Duration.ofNanos(FAILURE_RETRY_INTERVAL),
+        e);
+    }
+  }
+
+  /**
+   * @return {@code true} if the volume has neither failed recently nor
+   *         filled up
+   */
+
+  boolean isHealthy()
+  {
+    return !this.failed && !this.full;
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Functions over blob stores of any of the supported kinds.
+ */
+
+public final class WBBlobStores
+{
+  private WBBlobStores()
+  {
+
+  }
+
+  /**
+   * Create a blob store of the kind given in the configuration. If the
+   * configuration names more than one volume, the store spreads blobs
+   * across all of them.
+   *
+   * @param configuration The configuration
+   *
+   * @return A blob store
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static WBBlobStoreType create(
+    final WBBlobStoreConfiguration configuration)
+    throws IOException
+  {
+    Objects.requireNonNull(configuration, "configuration");
+
+    if (!configuration.volumes().isEmpty()) {
+      return WBBlobStoreMultiVolume.create(configuration);
+    }
+
+    return switch (configuration.kind()) {
+      case PLAIN -> WBBlobStore.create(configuration);
+      case DEDUPLICATING -> WBBlobStoreDeduplicating.create(configuration);
+      case PACKED -> WBBlobStorePacked.create(configuration);
+    };
+  }
+}
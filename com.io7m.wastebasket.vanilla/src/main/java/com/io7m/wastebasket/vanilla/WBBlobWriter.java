@@ -0,0 +1,665 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobDurability;
+import com.io7m.wastebasket.api.WBBlobWriterType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A writer for a single blob.
+ *
+ * In direct mode, data is written straight to the blob's final file. In
+ * atomic mode, data is written to a temporary file alongside the final
+ * file, and the temporary file is linked into place on commit. Linking
+ * (rather than renaming) guarantees that an existing blob is never
+ * replaced, even if two deliveries for the same ID race each other; on
+ * file systems that do not support hard links, the file is moved instead.
+ *
+ * Other stores supply their own publishing step, which receives the
+ * completed temporary file along with the digest of its contents.
+ *
+ * Bulk transfers read into large pooled direct buffers, update the digest
+ * from the same buffer, and hand the buffer straight to the file channel,
+ * avoiding the chain of small heap copies made by the stream path. If a
+ * codec is configured, all data instead passes through a
+ * {@link WBBlobCompressingOutputStream} on its way to the file, after the
+ * digest of the original data has been updated.
+ *
+ * In pipelined mode, buffers are instead handed to a
+ * {@link WBBlobWriterPipeline}, which hashes and writes them on threads of
+ * its own, so that receiving, hashing, and writing overlap.
+ */
+
+final class WBBlobWriter implements WBBlobWriterType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBBlobWriter.class);
+
+  private static final boolean DIRECTORIES_SYNCABLE =
+    FileSystems.getDefault()
+      .supportedFileAttributeViews()
+      .contains("posix");
+
+  private final Path directory;
+  private final Path output;
+  private final Path target;
+  private final PublisherType publisher;
+  private final WBBlobDurability durability;
+  private final FileChannel channel;
+  private final WBBlobCompressingOutputStream compressor;
+  private final DigestOutputStream stream;
+  private final WBBufferPool buffers;
+  private final boolean pipelined;
+  private WBBlobWriterPipeline pipeline;
+  private byte[] chunk;
+  private byte[] digestValue;
+  private boolean preallocated;
+  private boolean committed;
+  private boolean closed;
+
+  /**
+   * The final step of committing a blob written to a temporary file.
+   */
+
+  @FunctionalInterface
+  interface PublisherType
+  {
+    /**
+     * Make a completed temporary file visible. If the temporary file still
+     * exists after this method returns or raises an exception, the writer
+     * deletes it.
+     *
+     * @param temporary The temporary file
+     * @param digest    The digest of the file's contents
+     *
+     * @throws IOException On I/O errors
+     */
+
+    void publish(
+      Path temporary,
+      byte[] digest)
+      throws IOException;
+  }
+
+  private WBBlobWriter(
+    final Path inDirectory,
+    final Path inOutput,
+    final Path inTarget,
+    final PublisherType inPublisher,
+    final FileChannel inChannel,
+    final MessageDigest inDigest,
+    final WBBlobWriterOptions inOptions)
+  {
+    this.directory =
+      Objects.requireNonNull(inDirectory, "directory");
+    this.output =
+      Objects.requireNonNull(inOutput, "output");
+    this.target =
+      Objects.requireNonNull(inTarget, "target");
+    this.publisher =
+      inPublisher;
+    this.channel =
+      Objects.requireNonNull(inChannel, "channel");
+    this.durability =
+      inOptions.durability();
+    this.buffers =
+      inOptions.buffers();
+    this.pipelined =
+      inOptions.pipelined();
+
+    final var fileStream =
+      new BufferedOutputStream(Channels.newOutputStream(inChannel), 8192);
+
+    this.compressor =
+      inOptions.codec()
+        .map(c -> new WBBlobCompressingOutputStream(fileStream, c))
+        .orElse(null);
+
+    this.stream =
+      new DigestOutputStream(
+        this.compressor != null ? this.compressor : fileStream,
+        Objects.requireNonNull(inDigest, "digest"));
+  }
+
+  /**
+   * Open a writer that writes directly to {@code target}.
+   *
+   * @param target  The final file
+   * @param digest  The digest
+   * @param options The writer options
+   *
+   * @return A writer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static WBBlobWriter openDirect(
+    final Path target,
+    final MessageDigest digest,
+    final WBBlobWriterOptions options)
+    throws IOException
+  {
+    final var channel = FileChannel.open(target, CREATE_NEW, WRITE);
+    return new WBBlobWriter(
+      target.getParent(),
+      target,
+      target,
+      null,
+      channel,
+      digest,
+      options);
+  }
+
+  /**
+   * Open a writer that writes to a temporary file and links it to
+   * {@code target} on commit.
+   *
+   * @param target  The final file
+   * @param digest  The digest
+   * @param options The writer options
+   *
+   * @return A writer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static WBBlobWriter openAtomic(
+    final Path target,
+    final MessageDigest digest,
+    final WBBlobWriterOptions options)
+    throws IOException
+  {
+    if (Files.exists(target)) {
+      throw new FileAlreadyExistsException(target.toString());
+    }
+
+    return openTemporary(
+      temporaryFileFor(target),
+      target.getParent(),
+      target,
+      digest,
+      options,
+      (temporary, digestValue) -> publishLink(temporary, target));
+  }
+
+  /**
+   * Open a writer that writes to a temporary file, and hands the file to
+   * {@code publisher} on commit.
+   *
+   * @param temporary The temporary file
+   * @param directory The directory synced on commit if required by the
+   *                  configured durability
+   * @param target    The name under which the blob is visible once
+   *                  published
+   * @param digest    The digest
+   * @param options   The writer options
+   * @param publisher The publishing step
+   *
+   * @return A writer
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static WBBlobWriter openTemporary(
+    final Path temporary,
+    final Path directory,
+    final Path target,
+    final MessageDigest digest,
+    final WBBlobWriterOptions options,
+    final PublisherType publisher)
+    throws IOException
+  {
+    Objects.requireNonNull(publisher, "publisher");
+
+    final var channel = FileChannel.open(temporary, CREATE_NEW, WRITE);
+    return new WBBlobWriter(
+      directory,
+      temporary,
+      target,
+      publisher,
+      channel,
+      digest,
+      options);
+  }
+
+  /**
+   * Give {@code source} the additional name {@code target} and remove the
+   * name {@code source}, failing if {@code target} already exists.
+   *
+   * @param source The existing file
+   * @param target The new name
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static void publishLink(
+    final Path source,
+    final Path target)
+    throws IOException
+  {
+    try {
+      Files.createLink(target, source);
+      Files.delete(source);
+    } catch (final UnsupportedOperationException e) {
+      LOG.trace("hard links unsupported: ", e);
+      Files.move(source, target);
+    }
+  }
+
+  /**
+   * Determine a temporary file name for the given target. The name starts
+   * with a dot and is not a valid blob ID, so temporary files are never
+   * mistaken for blobs.
+   *
+   * @param target The final file
+   *
+   * @return A temporary file name
+   */
+
+  static Path temporaryFileFor(
+    final Path target)
+  {
+    final var suffix = Long.toUnsignedString(
+      ThreadLocalRandom.current().nextLong(), 16);
+    return target.resolveSibling(
+      ".%s.%s.tmp".formatted(target.getFileName(), suffix));
+  }
+
+  /**
+   * @param file The file
+   *
+   * @return {@code true} if {@code file} is named like a file returned by
+   * {@link #temporaryFileFor(Path)}
+   */
+
+  static boolean isTemporaryFile(
+    final Path file)
+  {
+    final var name = file.getFileName().toString();
+    return name.startsWith(".") && name.endsWith(".tmp");
+  }
+
+  /**
+   * Flush a directory to storage, so that entries created or removed in it
+   * survive a crash. This is only possible on POSIX systems; elsewhere,
+   * directory metadata is flushed along with the files in it.
+   *
+   * @param directory The directory
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static void syncDirectory(
+    final Path directory)
+    throws IOException
+  {
+    if (DIRECTORIES_SYNCABLE) {
+      try (var directoryChannel = FileChannel.open(directory, READ)) {
+        directoryChannel.force(true);
+      }
+    }
+  }
+
+  /**
+   * Extend the file to {@code size} bytes with a single write at the end,
+   * so that the file system knows the final size of the file before any
+   * of it is written and can allocate it in as few extents as possible.
+   * This is best-effort: most file systems record the extension as a
+   * sparse extent and allocate lazily (ext4 and XFS with delayed
+   * allocation, for example), so no space is guaranteed to have been
+   * reserved, and a delivery can still fail part way through if the file
+   * system fills. Nothing is written other than the last byte, so the
+   * option costs no extra I/O and does not delay the delivery. Whatever
+   * was not overwritten is trimmed away when the writer is committed or
+   * abandoned.
+   *
+   * @param size The expected size
+   *
+   * @throws IOException On I/O errors
+   */
+
+  private void preallocate(
+    final long size)
+    throws IOException
+  {
+    if (size <= 0L) {
+      return;
+    }
+
+    this.preallocated = true;
+    final var last = ByteBuffer.allocate(1);
+    while (last.hasRemaining()) {
+      this.channel.write(last, size - 1L);
+    }
+  }
+
+  /**
+   * Preallocate space for {@code writer} if the options ask for it,
+   * abandoning the writer if preallocation fails.
+   *
+   * @param writer       The writer
+   * @param expectedSize The expected size, or {@code -1} if unknown
+   * @param options      The writer options
+   *
+   * @return {@code writer}
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static WBBlobWriter withExpectedSize(
+    final WBBlobWriter writer,
+    final long expectedSize,
+    final WBBlobWriterOptions options)
+    throws IOException
+  {
+    if (options.preallocate()) {
+      try {
+        writer.preallocate(expectedSize);
+      } catch (final IOException e) {
+        try {
+          writer.close();
+        } catch (final IOException ex) {
+          e.addSuppressed(ex);
+        }
+        throw e;
+      }
+    }
+    return writer;
+  }
+
+  private void trim()
+    throws IOException
+  {
+    if (this.preallocated) {
+      this.channel.truncate(this.channel.position());
+    }
+  }
+
+  @Override
+  public DigestOutputStream output()
+  {
+    try {
+      this.finishPipeline();
+    } catch (final IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return this.stream;
+  }
+
+  /**
+   * Wait for anything handed to the pipeline to be hashed and written, so
+   * that the stream and the file are up to date. A later write starts a
+   * new pipeline.
+   */
+
+  private void finishPipeline()
+    throws IOException
+  {
+    final var current = this.pipeline;
+    if (current != null) {
+      this.pipeline = null;
+      current.finish();
+    }
+  }
+
+  @Override
+  public void write(
+    final ByteBuffer data)
+    throws IOException
+  {
+    this.checkWritable();
+
+    if (this.pipelined) {
+      if (this.pipeline == null) {
+        this.pipeline =
+          new WBBlobWriterPipeline(
+            this.buffers,
+            this.stream.getMessageDigest(),
+            this::writeUnhashed);
+      }
+      this.pipeline.submit(data);
+      return;
+    }
+
+    if (this.compressor != null) {
+      this.writeThrough(this.stream, data);
+      return;
+    }
+
+    this.stream.getMessageDigest().update(data.duplicate());
+    this.writeUnhashed(data);
+  }
+
+  /**
+   * Write {@code data} to the file without updating the digest.
+   */
+
+  private void writeUnhashed(
+    final ByteBuffer data)
+    throws IOException
+  {
+    if (this.compressor != null) {
+      this.writeThrough(this.compressor, data);
+      return;
+    }
+
+    /*
+     * Anything still buffered in the stream must reach the file first.
+     */
+
+    this.stream.flush();
+    while (data.hasRemaining()) {
+      this.channel.write(data);
+    }
+  }
+
+  /**
+   * Write {@code data} to a stream, copying it out of direct buffers
+   * through a chunk that is kept for the life of the writer.
+   */
+
+  private void writeThrough(
+    final OutputStream output,
+    final ByteBuffer data)
+    throws IOException
+  {
+    if (data.hasArray()) {
+      output.write(
+        data.array(),
+        data.arrayOffset() + data.position(),
+        data.remaining());
+      data.position(data.limit());
+      return;
+    }
+
+    if (this.chunk == null) {
+      this.chunk = new byte[65536];
+    }
+    while (data.hasRemaining()) {
+      final var count = Math.min(this.chunk.length, data.remaining());
+      data.get(this.chunk, 0, count);
+      output.write(this.chunk, 0, count);
+    }
+  }
+
+  @Override
+  public long transferFrom(
+    final InputStream input)
+    throws IOException
+  {
+    this.checkWritable();
+
+    final var source = Channels.newChannel(input);
+    final var buffer = this.buffers.acquire();
+    try {
+      long total = 0L;
+      while (true) {
+        final var ended = fill(source, buffer.clear());
+        total += buffer.flip().remaining();
+        if (buffer.hasRemaining()) {
+          this.write(buffer);
+        }
+        if (ended) {
+          return total;
+        }
+      }
+    } finally {
+      this.buffers.release(buffer);
+    }
+  }
+
+  /**
+   * Read from {@code source} until {@code buffer} is full or the source is
+   * exhausted. A channel over a stream reads at most a few kilobytes at a
+   * time, so a single read would leave most of a pooled buffer empty.
+   *
+   * @return {@code true} if the source is exhausted
+   */
+
+  private static boolean fill(
+    final ReadableByteChannel source,
+    final ByteBuffer buffer)
+    throws IOException
+  {
+    while (buffer.hasRemaining()) {
+      if (source.read(buffer) < 0) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void checkWritable()
+  {
+    if (this.committed || this.closed) {
+      throw new IllegalStateException("Writer is already finished");
+    }
+  }
+
+  @Override
+  public void commit()
+    throws IOException
+  {
+    this.checkWritable();
+
+    this.finishPipeline();
+    if (this.compressor != null) {
+      this.compressor.finish();
+    }
+    this.stream.flush();
+    this.trim();
+    if (this.compressor != null) {
+      WBBlobCodecs.markEncoded(this.output, this.compressor.chosen());
+    }
+    switch (this.durability) {
+      case NONE -> {
+
+      }
+      case DATA -> this.channel.force(false);
+      case FULL -> this.channel.force(true);
+    }
+    this.stream.close();
+
+    final var digestBytes = this.stream.getMessageDigest().digest();
+    if (this.publisher != null) {
+      this.publisher.publish(this.output, digestBytes);
+    }
+    if (this.durability == WBBlobDurability.FULL) {
+      syncDirectory(this.directory);
+    }
+    this.digestValue = digestBytes;
+    this.committed = true;
+  }
+
+  @Override
+  public byte[] digest()
+  {
+    if (!this.committed) {
+      throw new IllegalStateException("Writer has not been committed");
+    }
+    return this.digestValue.clone();
+  }
+
+  @Override
+  public Path directory()
+  {
+    return this.directory;
+  }
+
+  @Override
+  public String location()
+  {
+    if (!this.committed) {
+      throw new IllegalStateException("Writer has not been committed");
+    }
+    return this.target.toString();
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+
+    if (this.pipeline != null) {
+      this.pipeline.abort();
+      this.pipeline = null;
+    }
+
+    if (!this.committed) {
+      try {
+        if (this.publisher == null && this.channel.isOpen()) {
+          this.stream.flush();
+          this.trim();
+        }
+        this.stream.close();
+      } finally {
+        if (this.publisher != null) {
+          Files.deleteIfExists(this.output);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobCodecType;
+import com.io7m.wastebasket.api.WBBlobDurability;
+import com.io7m.wastebasket.api.WBBlobStoreConfiguration;
+
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * The options shared by every writer opened by a blob store.
+ *
+ * @param durability  The durability applied on commit
+ * @param buffers     The pool of transfer buffers
+ * @param codec       The codec used to encode blobs, if any
+ * @param preallocate {@code true} if each file should be extended to its
+ *                    expected size when it is opened
+ * @param pipelined   {@code true} if data should be hashed and written on
+ *                    separate threads
+ */
+
+record WBBlobWriterOptions(
+  WBBlobDurability durability,
+  WBBufferPool buffers,
+  Optional<WBBlobCodecType> codec,
+  boolean preallocate,
+  boolean pipelined)
+{
+  WBBlobWriterOptions
+  {
+    Objects.requireNonNull(durability, "durability");
+    Objects.requireNonNull(buffers, "buffers");
+    Objects.requireNonNull(codec, "codec");
+  }
+
+  /**
+   * Derive writer options from a store configuration.
+   *
+   * @param configuration The configuration
+   *
+   * @return The options
+   */
+
+  static WBBlobWriterOptions of(
+    final WBBlobStoreConfiguration configuration)
+  {
+    return new WBBlobWriterOptions(
+      configuration.durability(),
+      WBBufferPool.create(
+        configuration.transferBufferSize(),
+        configuration.transferBufferCount()),
+      WBBlobCodecs.find(configuration.compression()),
+      configuration.preallocate(),
+      configuration.pipelined());
+  }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobWriterType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A writer for a packed blob store. Data is held in memory until the
+ * writer is committed, at which point it is appended to a segment. If the
+ * data reaches the pack threshold, the writer spills: everything held so
+ * far, and everything written afterwards, goes to a standalone file
+ * instead.
+ */
+
+final class WBBlobWriterPacked implements WBBlobWriterType
+{
+  private static final int INITIAL_CAPACITY = 4096;
+
+  private final WBBlobStorePacked store;
+  private final WBBlobID id;
+  private final int threshold;
+  private final DigestOutputStream stream;
+  private byte[] buffer;
+  private int size;
+  private WBBlobWriterType spilled;
+  private byte[] digestValue;
+  private String locationValue;
+  private boolean committed;
+  private boolean closed;
+
+  WBBlobWriterPacked(
+    final WBBlobStorePacked inStore,
+    final WBBlobID inId,
+    final MessageDigest inDigest,
+    final int inThreshold)
+  {
+    this.store =
+      Objects.requireNonNull(inStore, "store");
+    this.id =
+      Objects.requireNonNull(inId, "id");
+    this.threshold =
+      inThreshold;
+    this.buffer =
+      new byte[Math.min(inThreshold, INITIAL_CAPACITY)];
+    this.stream =
+      new DigestOutputStream(
+        new Sink(),
+        Objects.requireNonNull(inDigest, "digest"));
+  }
+
+  /**
+   * Move the blob to a standalone file.
+   *
+   * @param expectedSize The expected size of the blob, or {@code -1}
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void spill(
+    final long expectedSize)
+    throws IOException
+  {
+    if (this.spilled != null) {
+      return;
+    }
+
+    this.spilled = this.store.openStandalone(this.id, expectedSize);
+    this.spilled.write(ByteBuffer.wrap(this.buffer, 0, this.size));
+    this.buffer = null;
+    this.size = 0;
+  }
+
+  private void checkWritable()
+  {
+    if (this.committed || this.closed) {
+      throw new IllegalStateException("Writer is already finished");
+    }
+  }
+
+  private void hold(
+    final byte[] data,
+    final int offset,
+    final int length)
+  {
+    final var required = this.size + length;
+    if (required > this.buffer.length) {
+      this.buffer = Arrays.copyOf(
+        this.buffer,
+        Math.min(this.threshold, Math.max(required, this.buffer.length * 2)));
+    }
+    System.arraycopy(data, offset, this.buffer, this.size, length);
+    this.size = required;
+  }
+
+  @Override
+  public Path directory()
+  {
+    if (this.spilled != null) {
+      return this.spilled.directory();
+    }
+    return this.store.directory();
+  }
+
+  @Override
+  public DigestOutputStream output()
+  {
+    return this.stream;
+  }
+
+  @Override
+  public void write(
+    final ByteBuffer data)
+    throws IOException
+  {
+    this.checkWritable();
+
+    if (this.spilled == null && this.size + data.remaining() >= this.threshold) {
+      this.stream.flush();
+      this.spill(-1L);
+    }
+    if (this.spilled != null) {
+      this.spilled.write(data);
+      return;
+    }
+
+    this.stream.getMessageDigest().update(data.duplicate());
+    final var length = data.remaining();
+    if (data.hasArray()) {
+      this.hold(data.array(), data.arrayOffset() + data.position(), length);
+      data.position(data.limit());
+    } else {
+      final var copy = new byte[length];
+      data.get(copy);
+      this.hold(copy, 0, length);
+    }
+  }
+
+  @Override
+  public long transferFrom(
+    final InputStream input)
+    throws IOException
+  {
+    this.checkWritable();
+
+    final var chunk = new byte[INITIAL_CAPACITY];
+    long total = 0L;
+    while (this.spilled == null) {
+      final var count = input.read(chunk);
+      if (count < 0) {
+        return total;
+      }
+      this.stream.write(chunk, 0, count);
+      total += count;
+    }
+    return total + this.spilled.transferFrom(input);
+  }
+
+  @Override
+  public void commit()
+    throws IOException
+  {
+    this.checkWritable();
+
+    this.stream.flush();
+    if (this.spilled != null) {
+      this.spilled.commit();
+      this.digestValue = this.spilled.digest();
+      this.locationValue = this.spilled.location();
+    } else {
+      final var digest = this.stream.getMessageDigest().digest();
+      this.locationValue =
+        this.store.commitPacked(this.id, this.buffer, this.size, digest);
+      this.digestValue = digest;
+    }
+    this.committed = true;
+  }
+
+  @Override
+  public byte[] digest()
+  {
+    if (!this.committed) {
+      throw new IllegalStateException("Writer has not been committed");
+    }
+    return this.digestValue.clone();
+  }
+
+  @Override
+  public String location()
+  {
+    if (!this.committed) {
+      throw new IllegalStateException("Writer has not been committed");
+    }
+    return this.locationValue;
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+
+    try {
+      if (this.spilled != null) {
+        this.spilled.close();
+      }
+    } finally {
+      this.buffer = null;
+      this.store.release(this.id);
+    }
+  }
+
+  /**
+   * The stream beneath {@link #output()}. Only the packed writer's own
+   * digest sees data written here before a spill; after a spill, the data
+   * is forwarded to the standalone writer, which computes the digest that
+   * is reported on commit.
+   */
+
+  private final class Sink extends OutputStream
+  {
+    Sink()
+    {
+
+    }
+
+    @Override
+    public void write(
+      final int b)
+      throws IOException
+    {
+      this.write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(
+      final byte[] data,
+      final int offset,
+      final int length)
+      throws IOException
+    {
+      final var writer = WBBlobWriterPacked.this;
+      writer.checkWritable();
+
+      if (writer.spilled == null && writer.size + length >= writer.threshold) {
+        writer.spill(-1L);
+      }
+      if (writer.spilled != null) {
+        writer.spilled.write(ByteBuffer.wrap(data, offset, length));
+        return;
+      }
+      writer.hold(data, offset, length);
+    }
+  }
+}
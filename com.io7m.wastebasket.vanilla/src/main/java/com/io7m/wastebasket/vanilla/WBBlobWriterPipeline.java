@@ -0,0 +1,382 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * A pipeline that hashes and writes a blob on two threads of its own.
+ *
+ * The caller copies data into a pooled buffer, and hands the buffer to the
+ * hashing stage once it is full (or once the blob is finished), so that
+ * many small writes travel through the pipeline as one buffer. The hashing
+ * stage updates the digest and hands the buffer on to the writing stage,
+ * which writes it to the file and returns it to the pool.
+ * The queues between the stages hold only {@link #DEPTH} buffers each, so
+ * a slow stage holds back the stages before it, and the caller, rather than
+ * allowing data to accumulate in memory. While one buffer is written, the
+ * next is hashed and the one after that is received, so the costs of the
+ * three overlap rather than adding up.
+ *
+ * The pipeline records how long each stage spent working and how long the
+ * caller spent handing over data, and logs the gain over doing the same
+ * work on the caller's thread when the blob is finished.
+ */
+
+public final class WBBlobWriterPipeline
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBBlobWriterPipeline.class);
+
+  /**
+   * The number of buffers that may wait between adjacent stages.
+   */
+
+  static final int DEPTH = 2;
+
+  private static final ByteBuffer END =
+    ByteBuffer.allocate(0);
+
+  private final WBBufferPool buffers;
+  private final MessageDigest digest;
+  private final SinkType sink;
+  private final ArrayBlockingQueue<ByteBuffer> hashQueue;
+  private final ArrayBlockingQueue<ByteBuffer> writeQueue;
+  private final Thread hasher;
+  private final Thread writer;
+  private volatile IOException failure;
+  private ByteBuffer filling;
+  private long bytes;
+  private long callerNanos;
+  private long hashNanos;
+  private long writeNanos;
+  private boolean finished;
+
+  /**
+   * The final stage, which writes hashed data to storage.
+   */
+
+  @FunctionalInterface
+  public interface SinkType
+  {
+    /**
+     * Write all of {@code data}.
+     *
+     * @param data The data
+     *
+     * @throws IOException On I/O errors
+     */
+
+    void write(ByteBuffer data)
+      throws IOException;
+  }
+
+  /**
+   * The time spent in each part of a pipelined write.
+   *
+   * @param bytes       The number of bytes written
+   * @param callerNanos The time the caller spent handing over data and
+   *                    waiting for the pipeline to drain
+   * @param hashNanos   The time spent updating the digest
+   * @param writeNanos  The time spent writing to storage
+   */
+
+  public record Statistics(
+    long bytes,
+    long callerNanos,
+    long hashNanos,
+    long writeNanos)
+  {
+    /**
+     * @return The time the caller would have spent hashing and writing the
+     *         data itself, divided by the time it actually spent
+     */
+
+    public double speedup()
+    {
+      return (double) (this.hashNanos + this.writeNanos)
+             / (double) Math.max(1L, this.callerNanos);
+    }
+  }
+
+  /**
+   * Start a pipeline.
+   *
+   * @param inBuffers The pool from which buffers are taken
+   * @param inDigest  The digest updated by the hashing stage
+   * @param inSink    The writing stage
+   */
+
+  public WBBlobWriterPipeline(
+    final WBBufferPool inBuffers,
+    final MessageDigest inDigest,
+    final SinkType inSink)
+  {
+    this.buffers =
+      Objects.requireNonNull(inBuffers, "buffers");
+    this.digest =
+      Objects.requireNonNull(inDigest, "digest");
+    this.sink =
+      Objects.requireNonNull(inSink, "sink");
+    this.hashQueue =
+      new ArrayBlockingQueue<>(DEPTH);
+    this.writeQueue =
+      new ArrayBlockingQueue<>(DEPTH);
+
+    this.hasher =
+      Thread.ofVirtual()
+        .name("com.io7m.wastebasket.pipeline.hash")
+        .start(this::runHash);
+    this.writer =
+      Thread.ofVirtual()
+        .name("com.io7m.wastebasket.pipeline.write")
+        .start(this::runWrite);
+  }
+
+  private void runHash()
+  {
+    ByteBuffer buffer = null;
+    try {
+      while (true) {
+        buffer = this.hashQueue.take();
+        if (buffer == END) {
+          this.writeQueue.put(END);
+          return;
+        }
+
+        final var timeThen = System.nanoTime();
+        this.digest.update(buffer.duplicate());
+        this.hashNanos += System.nanoTime() - timeThen;
+        this.writeQueue.put(buffer);
+        buffer = null;
+      }
+    } catch (final InterruptedException e) {
+      if (buffer != null && buffer != END) {
+        this.buffers.release(buffer);
+      }
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void runWrite()
+  {
+    try {
+      while (true) {
+        final var buffer = this.writeQueue.take();
+        if (buffer == END) {
+          return;
+        }
+
+        /*
+         * After a failure, buffers are still taken from the queue so that
+         * the earlier stages are never blocked, but they are discarded.
+         */
+
+        try {
+          if (this.failure == null) {
+            final var timeThen = System.nanoTime();
+            this.sink.write(buffer);
+            this.writeNanos += System.nanoTime() - timeThen;
+          }
+        } catch (final IOException e) {
+          this.failure = e;
+        } finally {
+          this.buffers.release(buffer);
+        }
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void checkFailure()
+    throws IOException
+  {
+    final var e = this.failure;
+    if (e != null) {
+      throw new IOException(e.getMessage(), e);
+    }
+  }
+
+  private static InterruptedIOException interrupted(
+    final InterruptedException e)
+  {
+    Thread.currentThread().interrupt();
+    final var ex = new InterruptedIOException("Interrupted");
+    ex.initCause(e);
+    return ex;
+  }
+
+  /**
+   * Hand all of {@code data} to the pipeline, waiting if the pipeline is
+   * full. The data is copied, so {@code data} may be reused as soon as this
+   * method returns. Data is held back until a whole buffer has been
+   * filled, or until the pipeline is finished.
+   *
+   * @param data The data
+   *
+   * @throws IOException If an earlier write failed, or on interruption
+   */
+
+  public void submit(
+    final ByteBuffer data)
+    throws IOException
+  {
+    this.checkFailure();
+
+    final var timeThen = System.nanoTime();
+    try {
+      while (data.hasRemaining()) {
+        if (this.filling == null) {
+          this.filling = this.buffers.acquire();
+        }
+
+        final var buffer = this.filling;
+        final var count = Math.min(buffer.remaining(), data.remaining());
+        buffer.put(data.slice(data.position(), count));
+        data.position(data.position() + count);
+        this.bytes += count;
+
+        if (!buffer.hasRemaining()) {
+          this.handOver();
+        }
+      }
+    } catch (final InterruptedException e) {
+      throw interrupted(e);
+    } finally {
+      this.callerNanos += System.nanoTime() - timeThen;
+    }
+  }
+
+  private void handOver()
+    throws InterruptedException
+  {
+    final var buffer = this.filling;
+    this.filling = null;
+
+    try {
+      this.hashQueue.put(buffer.flip());
+    } catch (final InterruptedException e) {
+      this.buffers.release(buffer);
+      throw e;
+    }
+  }
+
+  /**
+   * Wait for every submitted buffer to be hashed and written, and stop the
+   * pipeline. The digest may be read once this method returns.
+   *
+   * @return The time spent in each part of the pipeline
+   *
+   * @throws IOException If any write failed, or on interruption
+   */
+
+  public Statistics finish()
+    throws IOException
+  {
+    if (!this.finished) {
+      final var timeThen = System.nanoTime();
+      try {
+        if (this.filling != null) {
+          if (this.filling.position() > 0) {
+            this.handOver();
+          } else {
+            this.buffers.release(this.filling);
+            this.filling = null;
+          }
+        }
+        this.hashQueue.put(END);
+        this.hasher.join();
+        this.writer.join();
+      } catch (final InterruptedException e) {
+        this.abort();
+        throw interrupted(e);
+      }
+      this.callerNanos += System.nanoTime() - timeThen;
+      this.finished = true;
+    }
+
+    this.checkFailure();
+
+    final var statistics =
+      new Statistics(
+        this.bytes,
+        this.callerNanos,
+        this.hashNanos,
+        this.writeNanos);
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug(
+        "pipelined {} bytes: caller {} us, hash {} us, write {} us, speedup {}",
+        Long.valueOf(statistics.bytes()),
+        Long.valueOf(statistics.callerNanos() / 1000L),
+        Long.valueOf(statistics.hashNanos() / 1000L),
+        Long.valueOf(statistics.writeNanos() / 1000L),
+        String.format("%.2f", Double.valueOf(statistics.speedup())));
+    }
+    return statistics;
+  }
+
+  /**
+   * Stop the pipeline, discarding anything not yet written.
+   */
+
+  public void abort()
+  {
+    if (this.finished) {
+      return;
+    }
+    this.finished = true;
+
+    if (this.filling != null) {
+      this.buffers.release(this.filling);
+      this.filling = null;
+    }
+
+    this.hasher.interrupt();
+    this.writer.interrupt();
+    try {
+      this.hasher.join();
+      this.writer.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    this.drain(this.hashQueue);
+    this.drain(this.writeQueue);
+  }
+
+  private void drain(
+    final ArrayBlockingQueue<ByteBuffer> queue)
+  {
+    ByteBuffer buffer;
+    while ((buffer = queue.poll()) != null) {
+      if (buffer != END) {
+        this.buffers.release(buffer);
+      }
+    }
+  }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded pool of equally-sized direct byte buffers.
+ *
+ * Direct buffers are expensive to allocate and are only released when
+ * they are garbage collected, so the pool keeps up to a fixed number of
+ * buffers for reuse. If every pooled buffer is in use, a short-lived heap
+ * buffer is handed out instead, so that a burst of concurrent deliveries
+ * degrades throughput slightly rather than exhausting direct memory.
+ */
+
+public final class WBBufferPool
+{
+  private final int bufferSize;
+  private final int bufferCount;
+  private final ArrayBlockingQueue<ByteBuffer> free;
+  private final AtomicInteger allocated;
+
+  private WBBufferPool(
+    final int inBufferSize,
+    final int inBufferCount)
+  {
+    this.bufferSize = inBufferSize;
+    this.bufferCount = inBufferCount;
+    this.free = new ArrayBlockingQueue<>(Math.max(1, inBufferCount));
+    this.allocated = new AtomicInteger();
+  }
+
+  /**
+   * Create a buffer pool.
+   *
+   * @param bufferSize  The size of each buffer
+   * @param bufferCount The maximum number of pooled buffers
+   *
+   * @return A buffer pool
+   */
+
+  public static WBBufferPool create(
+    final int bufferSize,
+    final int bufferCount)
+  {
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException("Buffer size must be positive");
+    }
+    if (bufferCount < 0) {
+      throw new IllegalArgumentException(
+        "Buffer count must be non-negative");
+    }
+    return new WBBufferPool(bufferSize, bufferCount);
+  }
+
+  /**
+   * @return The size of each buffer
+   */
+
+  public int bufferSize()
+  {
+    return this.bufferSize;
+  }
+
+  /**
+   * Take a cleared buffer from the pool. The buffer must be returned with
+   * {@link #release(ByteBuffer)} when it is no longer needed.
+   *
+   * @return A buffer
+   */
+
+  public ByteBuffer acquire()
+  {
+    final var existing = this.free.poll();
+    if (existing != null) {
+      return existing.clear();
+    }
+
+    while (true) {
+      final var count = this.allocated.get();
+      if (count >= this.bufferCount) {
+        return ByteBuffer.allocate(this.bufferSize);
+      }
+      if (this.allocated.compareAndSet(count, count + 1)) {
+        return ByteBuffer.allocateDirect(this.bufferSize);
+      }
+    }
+  }
+
+  /**
+   * Return a buffer to the pool.
+   *
+   * @param buffer The buffer
+   */
+
+  public void release(
+    final ByteBuffer buffer)
+  {
+    if (buffer.isDirect()) {
+      this.free.offer(buffer);
+    }
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBUserName;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import java.security.cert.X509Certificate;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Functions over TLS client certificates.
+ */
+
+public final class WBClientCertificates
+{
+  private WBClientCertificates()
+  {
+
+  }
+
+  /**
+   * Determine the user named by the given client certificate. The user name
+   * is the (most specific) common name in the certificate subject. The
+   * certificate is assumed to have been validated against the configured CA
+   * during the TLS handshake.
+   *
+   * @param certificate The client certificate
+   *
+   * @return The user name, if the certificate subject names a valid user
+   */
+
+  public static Optional<WBUserName> userOf(
+    final X509Certificate certificate)
+  {
+    Objects.requireNonNull(certificate, "certificate");
+
+    final LdapName name;
+    try {
+      name = new LdapName(
+        certificate.getSubjectX500Principal().getName());
+    } catch (final InvalidNameException e) {
+      return Optional.empty();
+    }
+
+    /*
+     * RDNs are listed from least to most significant.
+     */
+
+    final var rdns = name.getRdns();
+    for (int index = rdns.size() - 1; index >= 0; --index) {
+      final var rdn = rdns.get(index);
+      if ("CN".equalsIgnoreCase(rdn.getType())) {
+        try {
+          return Optional.of(WBUserName.of(String.valueOf(rdn.getValue())));
+        } catch (final IllegalArgumentException e) {
+          return Optional.empty();
+        }
+      }
+    }
+    return Optional.empty();
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An in-memory view of the directories known to exist beneath a root
+ * directory. Directories are created the first time they are requested,
+ * after which requesting them costs nothing. If a directory is removed
+ * out from under the cache, callers that notice (typically by getting a
+ * {@link java.nio.file.NoSuchFileException}) call {@link #repair(Path)}.
+ *
+ * If the cache is durable, the parent of each directory it creates is
+ * flushed to storage, so that a blob committed with
+ * {@link com.io7m.wastebasket.api.WBBlobDurability#FULL} durability cannot
+ * be lost along with the directory containing it.
+ */
+
+final class WBDirectoryCache
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBDirectoryCache.class);
+
+  private final Set<Path> known;
+  private final boolean durable;
+
+  WBDirectoryCache(
+    final boolean inDurable)
+  {
+    this.known = ConcurrentHashMap.newKeySet();
+    this.durable = inDurable;
+  }
+
+  /**
+   * Record every existing directory exactly {@code depth} levels beneath
+   * {@code root}.
+   *
+   * @param root  The root directory
+   * @param depth The depth
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void scan(
+    final Path root,
+    final int depth)
+    throws IOException
+  {
+    Objects.requireNonNull(root, "root");
+
+    if (depth == 0) {
+      this.known.add(root);
+      return;
+    }
+
+    try (var paths = Files.walk(root, depth)) {
+      paths.filter(p -> root.relativize(p).getNameCount() == depth)
+        .filter(Files::isDirectory)
+        .forEach(this.known::add);
+    }
+
+    LOG.debug(
+      "found {} existing directories in {}",
+      Integer.valueOf(this.known.size()),
+      root);
+  }
+
+  /**
+   * Delete the temporary files left behind by deliveries that were
+   * interrupted by a crash, looking in {@code root} and in every directory
+   * up to {@code depth} levels beneath it.
+   *
+   * @param root  The root directory
+   * @param depth The depth
+   *
+   * @return The number of files deleted
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static long deleteTemporaryFiles(
+    final Path root,
+    final int depth)
+    throws IOException
+  {
+    Objects.requireNonNull(root, "root");
+
+    long deleted = 0L;
+    try (var paths = Files.walk(root, depth + 1)) {
+      final var iterator = paths.iterator();
+      while (iterator.hasNext()) {
+        final var file = iterator.next();
+        if (WBBlobWriter.isTemporaryFile(file)
+            && Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS)) {
+          Files.deleteIfExists(file);
+          ++deleted;
+        }
+      }
+    }
+
+    if (deleted > 0L) {
+      LOG.info(
+        "deleted {} stale temporary files in {}",
+        Long.valueOf(deleted),
+        root);
+    }
+    return deleted;
+  }
+
+  /**
+   * Ensure that a directory exists.
+   *
+   * @param directory The directory
+   *
+   * @return {@code directory}
+   *
+   * @throws IOException On I/O errors
+   */
+
+  Path ensure(
+    final Path directory)
+    throws IOException
+  {
+    if (!this.known.contains(directory)) {
+      this.create(directory);
+      this.known.add(directory);
+    }
+    return directory;
+  }
+
+  private void create(
+    final Path directory)
+    throws IOException
+  {
+    if (!this.durable) {
+      Files.createDirectories(directory);
+      return;
+    }
+
+    final var missing = new ArrayDeque<Path>();
+    for (var current = directory;
+         current != null && !Files.isDirectory(current);
+         current = current.getParent()) {
+      missing.push(current);
+    }
+
+    while (!missing.isEmpty()) {
+      final var next = missing.pop();
+      try {
+        Files.createDirectory(next);
+      } catch (final FileAlreadyExistsException e) {
+        if (!Files.isDirectory(next)) {
+          throw e;
+        }
+        // Created concurrently; the parent is flushed again below so that
+        // this caller never proceeds before the new entry is durable.
+      }
+      WBBlobWriter.syncDirectory(next.getParent());
+    }
+  }
+
+  /**
+   * Recreate a directory that has disappeared.
+   *
+   * @param directory The directory
+   *
+   * @throws IOException On I/O errors
+   */
+
+  void repair(
+    final Path directory)
+    throws IOException
+  {
+    LOG.warn("directory {} disappeared; recreating it", directory);
+    this.known.remove(directory);
+    this.create(directory);
+    this.known.add(directory);
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Exclusive locks on lock files, shared between threads and processes.
+ *
+ * A {@link FileChannel#lock()} only excludes other processes; a second
+ * attempt to lock the same file from within the same virtual machine fails
+ * with an exception. Threads are therefore first serialized on a lock that
+ * is unique to each lock file within the virtual machine.
+ */
+
+final class WBFileLocks
+{
+  private static final ConcurrentHashMap<Path, ReentrantLock> MONITORS =
+    new ConcurrentHashMap<>();
+
+  private WBFileLocks()
+  {
+
+  }
+
+  /**
+   * Execute {@code action} whilst holding an exclusive lock on
+   * {@code lockFile}. The lock file is created if it does not exist.
+   *
+   * @param lockFile The lock file
+   * @param action   The action
+   * @param <T>      The type of returned values
+   *
+   * @return The value returned by {@code action}
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static <T> T withLock(
+    final Path lockFile,
+    final LockedActionType<T> action)
+    throws IOException
+  {
+    Objects.requireNonNull(lockFile, "lockFile");
+    Objects.requireNonNull(action, "action");
+
+    final var monitor = monitorOf(lockFile);
+    monitor.lock();
+    try {
+      try (var channel = FileChannel.open(lockFile, CREATE, WRITE);
+           var ignored = channel.lock()) {
+        return action.execute();
+      }
+    } finally {
+      monitor.unlock();
+    }
+  }
+
+  /**
+   * Execute {@code action} whilst excluding other threads in this virtual
+   * machine that hold the lock on {@code lockFile}. Other processes are not
+   * excluded, and the lock file is not created.
+   *
+   * @param lockFile The lock file
+   * @param action   The action
+   * @param <T>      The type of returned values
+   *
+   * @return The value returned by {@code action}
+   *
+   * @throws IOException On I/O errors
+   */
+
+  static <T> T withMonitor(
+    final Path lockFile,
+    final LockedActionType<T> action)
+    throws IOException
+  {
+    Objects.requireNonNull(lockFile, "lockFile");
+    Objects.requireNonNull(action, "action");
+
+    final var monitor = monitorOf(lockFile);
+    monitor.lock();
+    try {
+      return action.execute();
+    } finally {
+      monitor.unlock();
+    }
+  }
+
+  private static ReentrantLock monitorOf(
+    final Path lockFile)
+  {
+    return MONITORS.computeIfAbsent(
+      lockFile.toAbsolutePath().normalize(),
+      p -> new ReentrantLock());
+  }
+
+  @FunctionalInterface
+  interface LockedActionType<T>
+  {
+    /**
+     * Execute the action.
+     *
+     * @return A value
+     *
+     * @throws IOException On I/O errors
+     */
+
+    T execute()
+      throws IOException;
+  }
+}
@@ -22,17 +22,39 @@ import org.slf4j.LoggerFactory;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.ClosedWatchServiceException;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
-import java.time.Instant;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
 /**
  * A file watcher.
+ *
+ * The watcher uses the platform's {@link WatchService} to be notified of
+ * changes to the directories containing the watched files, and falls back to
+ * polling if no watch service is available. Bursts of events are coalesced
+ * (debounced), and the change callback is only executed if the modification
+ * time, size, or content hash of at least one watched file has actually
+ * changed.
  */
 
 public final class WBFilesWatcher implements Closeable
@@ -40,22 +62,28 @@ public final class WBFilesWatcher implements Closeable
   private static final Logger LOG =
     LoggerFactory.getLogger(WBFilesWatcher.class);
 
+  private static final long DEBOUNCE_MILLISECONDS = 100L;
+  private static final long POLL_MILLISECONDS = 1_000L;
+
   private final Executor executor;
-  private final ConcurrentHashMap<Path, Instant> fileTimes;
+  private final ConcurrentHashMap<Path, FileState> fileStates;
   private final Runnable onChange;
   private final AtomicBoolean done;
+  private final WatchService watchService;
 
   private WBFilesWatcher(
     final Executor inExecutor,
-    final ConcurrentHashMap<Path, Instant> inFileTimes,
+    final ConcurrentHashMap<Path, FileState> inFileStates,
+    final WatchService inWatchService,
     final Runnable inOnChange)
   {
     this.executor =
       Objects.requireNonNull(inExecutor, "executor");
-    this.fileTimes =
-      Objects.requireNonNull(inFileTimes, "fileTimes");
+    this.fileStates =
+      Objects.requireNonNull(inFileStates, "fileStates");
     this.onChange =
       Objects.requireNonNull(inOnChange, "onChange");
+    this.watchService = inWatchService;
 
     this.done = new AtomicBoolean(false);
     this.executor.execute(this::run);
@@ -80,52 +108,145 @@ public final class WBFilesWatcher implements Closeable
     Objects.requireNonNull(files, "files");
     Objects.requireNonNull(onChange, "onChange");
 
-    final ConcurrentHashMap<Path, Instant> fileTimes =
+    final ConcurrentHashMap<Path, FileState> fileStates =
       new ConcurrentHashMap<>(files.size());
 
     for (final var file : files) {
+      final var absolute = file.toAbsolutePath();
+      fileStates.put(absolute, FileState.read(absolute, null, true));
+    }
+
+    return new WBFilesWatcher(
+      executor,
+      fileStates,
+      createWatchService(fileStates.keySet()),
+      onChange
+    );
+  }
+
+  private static WatchService createWatchService(
+    final Iterable<Path> files)
+  {
+    final var directories = new HashSet<Path>();
+    for (final var file : files) {
+      directories.add(file.getParent());
+    }
+
+    WatchService service = null;
+    try {
+      for (final var directory : directories) {
+        if (service == null) {
+          service = directory.getFileSystem().newWatchService();
+        }
+        directory.register(service, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+      }
+      return service;
+    } catch (final IOException | UnsupportedOperationException e) {
+      LOG.warn(
+        "file watching is unavailable ({}); falling back to polling",
+        e.getMessage());
+      closeQuietly(service);
+      return null;
+    }
+  }
+
+  private static void closeQuietly(
+    final WatchService service)
+  {
+    if (service != null) {
       try {
-        fileTimes.put(file, Files.getLastModifiedTime(file).toInstant());
+        service.close();
       } catch (final IOException e) {
-        fileTimes.put(file, Instant.now());
+        LOG.error("could not close watch service: ", e);
       }
     }
-
-    return new WBFilesWatcher(executor, fileTimes, onChange);
   }
 
   private void run()
+  {
+    try {
+      if (this.watchService != null) {
+        this.runWatching();
+      } else {
+        this.runPolling();
+      }
+    } catch (final ClosedWatchServiceException e) {
+      // The watcher has been closed.
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  private void runWatching()
+    throws InterruptedException
   {
     while (!this.done.get()) {
-      boolean different = false;
+      boolean relevant = this.isRelevant(this.watchService.take());
 
-      for (final var entry : this.fileTimes.entrySet()) {
-        final var prevTime = entry.getValue();
-        final var file = entry.getKey();
+      /*
+       * Drain further events until the directories have been quiet for the
+       * debounce period. Editors and atomic replacements often produce
+       * several events for a single logical change.
+       */
 
-        Instant currTime;
-        try {
-          currTime = Files.getLastModifiedTime(file).toInstant();
-        } catch (final IOException e) {
-          currTime = prevTime;
+      while (true) {
+        final var key =
+          this.watchService.poll(DEBOUNCE_MILLISECONDS, TimeUnit.MILLISECONDS);
+        if (key == null) {
+          break;
         }
+        relevant = this.isRelevant(key) || relevant;
+      }
 
-        different = different || currTime.isAfter(prevTime);
-        entry.setValue(currTime);
+      if (relevant) {
+        this.checkForChanges(true);
       }
+    }
+  }
 
-      if (different) {
-        try {
-          this.onChange.run();
-        } catch (final Exception e) {
-          LOG.error("ignored exception from file watcher runnable: ", e);
-        }
+  private boolean isRelevant(
+    final WatchKey key)
+  {
+    boolean relevant = false;
+    final var directory = (Path) key.watchable();
+    for (final var event : key.pollEvents()) {
+      if (event.kind() == OVERFLOW) {
+        relevant = true;
+        continue;
       }
+      final var name = (Path) event.context();
+      relevant = relevant || this.fileStates.containsKey(directory.resolve(name));
+    }
+    key.reset();
+    return relevant;
+  }
 
+  private void runPolling()
+    throws InterruptedException
+  {
+    while (!this.done.get()) {
+      this.checkForChanges(false);
+      Thread.sleep(POLL_MILLISECONDS);
+    }
+  }
+
+  private void checkForChanges(
+    final boolean forceHash)
+  {
+    boolean different = false;
+
+    for (final var entry : this.fileStates.entrySet()) {
+      final var prevState = entry.getValue();
+      final var currState = FileState.read(entry.getKey(), prevState, forceHash);
+      different = different || !prevState.sameContentAs(currState);
+      entry.setValue(currState);
+    }
+
+    if (different && !this.done.get()) {
       try {
-        Thread.sleep(1_000L);
-      } catch (final InterruptedException e) {
-        Thread.currentThread().interrupt();
+        this.onChange.run();
+      } catch (final Exception e) {
+        LOG.error("ignored exception from file watcher runnable: ", e);
       }
     }
   }
@@ -134,5 +255,80 @@ public final class WBFilesWatcher implements Closeable
   public void close()
   {
     this.done.set(true);
+    closeQuietly(this.watchService);
+  }
+
+  /**
+   * The observed state of a file. A file that does not exist has a size
+   * of {@code -1}.
+   */
+
+  private record FileState(
+    long modified,
+    long size,
+    byte[] hash)
+  {
+    private static final FileState MISSING =
+      new FileState(0L, -1L, new byte[0]);
+
+    /**
+     * Read the state of {@code file}. The (relatively expensive) content hash
+     * is only computed if the modification time or size differ from
+     * {@code previous}, or if {@code forceHash} is {@code true}.
+     */
+
+    static FileState read(
+      final Path file,
+      final FileState previous,
+      final boolean forceHash)
+    {
+      try {
+        final var attributes =
+          Files.readAttributes(file, BasicFileAttributes.class);
+        final var modified =
+          attributes.lastModifiedTime().toMillis();
+        final var size =
+          attributes.size();
+
+        if (!forceHash
+            && previous != null
+            && previous.modified == modified
+            && previous.size == size) {
+          return previous;
+        }
+        return new FileState(modified, size, hashOf(file));
+      } catch (final NoSuchFileException e) {
+        return MISSING;
+      } catch (final IOException e) {
+        LOG.error("could not read {}: ", file, e);
+        return previous != null ? previous : MISSING;
+      }
+    }
+
+    private static byte[] hashOf(
+      final Path file)
+      throws IOException
+    {
+      try (InputStream stream = Files.newInputStream(file)) {
+        final var digest = MessageDigest.getInstance("SHA-256");
+        final var buffer = new byte[8192];
+        while (true) {
+          final var r = stream.read(buffer);
+          if (r == -1) {
+            break;
+          }
+          digest.update(buffer, 0, r);
+        }
+        return digest.digest();
+      } catch (final NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+
+    boolean sameContentAs(
+      final FileState other)
+    {
+      return this.size == other.size && Arrays.equals(this.hash, other.hash);
+    }
   }
 }
@@ -0,0 +1,164 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBPasswordAlgorithmType;
+import org.bouncycastle.crypto.generators.Argon2BytesGenerator;
+import org.bouncycastle.crypto.params.Argon2Parameters;
+
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * The Argon2id password hashing algorithm.
+ *
+ * The parameters are written as {@code m=M,t=T,p=P}, where {@code M} is the
+ * memory size in KiB, {@code T} is the iteration count, and {@code P} is the
+ * degree of parallelism.
+ */
+
+public final class WBPasswordAlgorithmArgon2id
+  implements WBPasswordAlgorithmType
+{
+  private static final Pattern PARAMETERS =
+    Pattern.compile("m=([0-9]+),t=([0-9]+),p=([0-9]+)");
+
+  private final int memoryKiB;
+  private final int iterations;
+  private final int parallelism;
+
+  private WBPasswordAlgorithmArgon2id(
+    final int inMemoryKiB,
+    final int inIterations,
+    final int inParallelism)
+  {
+    if (inIterations < 1) {
+      throw new IllegalArgumentException("Iteration count must be positive");
+    }
+    if (inParallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be positive");
+    }
+    if (inMemoryKiB < 8 * inParallelism) {
+      throw new IllegalArgumentException(
+        "Memory size must be at least 8 KiB per lane");
+    }
+
+    this.memoryKiB = inMemoryKiB;
+    this.iterations = inIterations;
+    this.parallelism = inParallelism;
+  }
+
+  /**
+   * Create the Argon2id algorithm.
+   *
+   * @param memoryKiB   The memory size in KiB
+   * @param iterations  The iteration count
+   * @param parallelism The degree of parallelism
+   *
+   * @return An algorithm
+   */
+
+  public static WBPasswordAlgorithmType create(
+    final int memoryKiB,
+    final int iterations,
+    final int parallelism)
+  {
+    return new WBPasswordAlgorithmArgon2id(memoryKiB, iterations, parallelism);
+  }
+
+  @Override
+  public String name()
+  {
+    return "argon2id";
+  }
+
+  @Override
+  public String parameters()
+  {
+    return String.format(
+      "m=%d,t=%d,p=%d",
+      Integer.valueOf(this.memoryKiB),
+      Integer.valueOf(this.iterations),
+      Integer.valueOf(this.parallelism));
+  }
+
+  @Override
+  public WBPasswordAlgorithmType withParameters(
+    final String newParameters)
+    throws IllegalArgumentException
+  {
+    Objects.requireNonNull(newParameters, "newParameters");
+
+    final var matcher = PARAMETERS.matcher(newParameters);
+    if (!matcher.matches()) {
+      throw new IllegalArgumentException(
+        String.format(
+          "Unparseable parameters '%s' (must match %s)",
+          newParameters,
+          PARAMETERS));
+    }
+
+    try {
+      return new WBPasswordAlgorithmArgon2id(
+        Integer.parseInt(matcher.group(1)),
+        Integer.parseInt(matcher.group(2)),
+        Integer.parseInt(matcher.group(3))
+      );
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException(e.getMessage(), e);
+    }
+  }
+
+  @Override
+  public int hashLength()
+  {
+    return 32;
+  }
+
+  @Override
+  public byte[] derive(
+    final WBPassKey password,
+    final byte[] salt,
+    final int length)
+  {
+    final var parameters =
+      new Argon2Parameters.Builder(Argon2Parameters.ARGON2_id)
+        .withVersion(Argon2Parameters.ARGON2_VERSION_13)
+        .withMemoryAsKB(this.memoryKiB)
+        .withIterations(this.iterations)
+        .withParallelism(this.parallelism)
+        .withSalt(salt)
+        .build();
+
+    final var generator = new Argon2BytesGenerator();
+    generator.init(parameters);
+
+    final var output = new byte[length];
+    generator.generateBytes(password.value().getBytes(UTF_8), output);
+    return output;
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s:%s", this.name(), this.parameters());
+  }
+}
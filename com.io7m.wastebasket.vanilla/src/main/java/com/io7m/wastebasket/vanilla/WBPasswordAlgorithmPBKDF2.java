@@ -0,0 +1,187 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBPasswordAlgorithmType;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+
+/**
+ * The PBKDF2 password hashing algorithm.
+ *
+ * The algorithm named {@code pbkdf2} uses HMAC-SHA1 and exists for
+ * compatibility with user databases created by older versions of the
+ * server. The algorithm named {@code pbkdf2-sha256} uses HMAC-SHA256. The
+ * only parameter is the iteration count.
+ */
+
+public final class WBPasswordAlgorithmPBKDF2 implements WBPasswordAlgorithmType
+{
+  private final String name;
+  private final String jceName;
+  private final int iterations;
+  private final int hashLength;
+  private final SecretKeyFactory factory;
+
+  private WBPasswordAlgorithmPBKDF2(
+    final String inName,
+    final String inJceName,
+    final int inIterations,
+    final int inHashLength,
+    final SecretKeyFactory inFactory)
+  {
+    this.name =
+      Objects.requireNonNull(inName, "name");
+    this.jceName =
+      Objects.requireNonNull(inJceName, "jceName");
+    this.iterations =
+      inIterations;
+    this.hashLength =
+      inHashLength;
+    this.factory =
+      Objects.requireNonNull(inFactory, "factory");
+
+    if (inIterations < 1) {
+      throw new IllegalArgumentException("Iteration count must be positive");
+    }
+  }
+
+  private static SecretKeyFactory factoryFor(
+    final String jceName)
+  {
+    try {
+      return SecretKeyFactory.getInstance(jceName);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Create the legacy PBKDF2-HMAC-SHA1 algorithm.
+   *
+   * @param iterations The iteration count
+   *
+   * @return An algorithm
+   */
+
+  public static WBPasswordAlgorithmType createSHA1(
+    final int iterations)
+  {
+    return new WBPasswordAlgorithmPBKDF2(
+      "pbkdf2",
+      "PBKDF2WithHmacSHA1",
+      iterations,
+      16,
+      factoryFor("PBKDF2WithHmacSHA1")
+    );
+  }
+
+  /**
+   * Create the PBKDF2-HMAC-SHA256 algorithm.
+   *
+   * @param iterations The iteration count
+   *
+   * @return An algorithm
+   */
+
+  public static WBPasswordAlgorithmType createSHA256(
+    final int iterations)
+  {
+    return new WBPasswordAlgorithmPBKDF2(
+      "pbkdf2-sha256",
+      "PBKDF2WithHmacSHA256",
+      iterations,
+      32,
+      factoryFor("PBKDF2WithHmacSHA256")
+    );
+  }
+
+  @Override
+  public String name()
+  {
+    return this.name;
+  }
+
+  @Override
+  public String parameters()
+  {
+    return Integer.toString(this.iterations);
+  }
+
+  @Override
+  public WBPasswordAlgorithmType withParameters(
+    final String newParameters)
+    throws IllegalArgumentException
+  {
+    Objects.requireNonNull(newParameters, "newParameters");
+
+    final int newIterations;
+    try {
+      newIterations = Integer.parseInt(newParameters);
+    } catch (final NumberFormatException e) {
+      throw new IllegalArgumentException(
+        String.format("Unparseable iteration count '%s'", newParameters), e);
+    }
+
+    return new WBPasswordAlgorithmPBKDF2(
+      this.name,
+      this.jceName,
+      newIterations,
+      this.hashLength,
+      this.factory
+    );
+  }
+
+  @Override
+  public int hashLength()
+  {
+    return this.hashLength;
+  }
+
+  @Override
+  public byte[] derive(
+    final WBPassKey password,
+    final byte[] salt,
+    final int length)
+    throws GeneralSecurityException
+  {
+    final var spec =
+      new PBEKeySpec(
+        password.value().toCharArray(),
+        salt,
+        this.iterations,
+        length * 8);
+
+    try {
+      return this.factory.generateSecret(spec).getEncoded();
+    } finally {
+      spec.clearPassword();
+    }
+  }
+
+  @Override
+  public String toString()
+  {
+    return String.format("%s:%s", this.name, this.parameters());
+  }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBPasswordAlgorithmType;
+import com.io7m.wastebasket.api.WBPasswordHash;
+import com.io7m.wastebasket.api.WBUserName;
+
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * A set of supported password hashing algorithms, and the preferred
+ * algorithm that is used for new (and upgraded) hashes.
+ */
+
+public final class WBPasswordAlgorithms
+{
+  private static final Pattern COLON =
+    Pattern.compile(":");
+
+  private final WBPasswordAlgorithmType preferred;
+  private final Map<String, WBPasswordAlgorithmType> byName;
+  private final ConcurrentHashMap<String, WBPasswordAlgorithmType> instances;
+
+  private WBPasswordAlgorithms(
+    final WBPasswordAlgorithmType inPreferred,
+    final Map<String, WBPasswordAlgorithmType> inByName)
+  {
+    this.preferred =
+      Objects.requireNonNull(inPreferred, "preferred");
+    this.byName =
+      Objects.requireNonNull(inByName, "byName");
+    this.instances =
+      new ConcurrentHashMap<>();
+  }
+
+  /**
+   * @return The algorithms supported by default
+   */
+
+  public static List<WBPasswordAlgorithmType> supported()
+  {
+    return List.of(
+      WBPasswordAlgorithmArgon2id.create(19_456, 2, 1),
+      WBPasswordAlgorithmPBKDF2.createSHA256(600_000),
+      WBPasswordAlgorithmPBKDF2.createSHA1(10_000)
+    );
+  }
+
+  /**
+   * Create a set of algorithms.
+   *
+   * @param preferred  The algorithm used for new hashes
+   * @param algorithms The supported algorithms
+   *
+   * @return A set of algorithms
+   */
+
+  public static WBPasswordAlgorithms create(
+    final WBPasswordAlgorithmType preferred,
+    final List<WBPasswordAlgorithmType> algorithms)
+  {
+    Objects.requireNonNull(preferred, "preferred");
+    Objects.requireNonNull(algorithms, "algorithms");
+
+    final var byName =
+      algorithms.stream()
+        .collect(Collectors.toUnmodifiableMap(
+          WBPasswordAlgorithmType::name,
+          Function.identity()));
+
+    if (!byName.containsKey(preferred.name())) {
+      throw new IllegalArgumentException(
+        String.format(
+          "Preferred algorithm %s is not supported",
+          preferred.name()));
+    }
+    return new WBPasswordAlgorithms(preferred, byName);
+  }
+
+  /**
+   * Create a set containing the default supported algorithms.
+   *
+   * @param preferred The algorithm used for new hashes
+   *
+   * @return A set of algorithms
+   *
+   * @see #supported()
+   */
+
+  public static WBPasswordAlgorithms create(
+    final WBPasswordAlgorithmType preferred)
+  {
+    return create(preferred, supported());
+  }
+
+  /**
+   * Create a set containing the default supported algorithms, with the
+   * first of the supported algorithms as the preferred algorithm.
+   *
+   * @return A set of algorithms
+   *
+   * @see #supported()
+   */
+
+  public static WBPasswordAlgorithms createDefault()
+  {
+    final var supported = supported();
+    return create(supported.get(0), supported);
+  }
+
+  /**
+   * @return The algorithm used for new hashes
+   */
+
+  public WBPasswordAlgorithmType preferred()
+  {
+    return this.preferred;
+  }
+
+  /**
+   * @return The supported algorithms, with their default parameters
+   */
+
+  public List<WBPasswordAlgorithmType> algorithms()
+  {
+    return List.copyOf(this.byName.values());
+  }
+
+  /**
+   * Parse an algorithm specification of the form {@code name} or
+   * {@code name:parameters}.
+   *
+   * @param text The specification
+   *
+   * @return An algorithm
+   *
+   * @throws IllegalArgumentException On unsupported algorithms or parameters
+   */
+
+  public WBPasswordAlgorithmType parseAlgorithm(
+    final String text)
+    throws IllegalArgumentException
+  {
+    Objects.requireNonNull(text, "text");
+
+    final var segments = COLON.split(text, 2);
+    final var algorithm = this.byName.get(segments[0]);
+    if (algorithm == null) {
+      throw new IllegalArgumentException(
+        String.format(
+          "Unsupported algorithm '%s' (must be one of %s)",
+          segments[0],
+          new TreeSet<>(this.byName.keySet())));
+    }
+
+    if (segments.length == 1) {
+      return algorithm;
+    }
+    return this.instance(algorithm, segments[1]);
+  }
+
+  /**
+   * Parse a hash in the form stored in the user database. Algorithm
+   * instances are shared between hashes that have the same algorithm and
+   * parameters.
+   *
+   * @param text The hash
+   *
+   * @return A hash
+   *
+   * @throws IllegalArgumentException If the text is malformed
+   */
+
+  public WBPasswordHash parseHash(
+    final String text)
+    throws IllegalArgumentException
+  {
+    Objects.requireNonNull(text, "text");
+
+    final var segments = COLON.split(text, -1);
+    if (segments.length != 4) {
+      throw new IllegalArgumentException(
+        String.format("Expected 4 segments, but got %d", segments.length));
+    }
+
+    final var algorithm =
+      this.parseAlgorithm(segments[0] + ":" + segments[2]);
+
+    final var hex = HexFormat.of();
+    return new WBPasswordHash(
+      algorithm,
+      hex.parseHex(segments[1]),
+      hex.parseHex(segments[3])
+    );
+  }
+
+  /**
+   * Hash many passwords with the preferred algorithm, in parallel.
+   *
+   * @param random    A source of salt
+   * @param passwords The passwords
+   * @param threads   The number of threads that will hash passwords
+   *
+   * @return The hashed passwords
+   *
+   * @throws GeneralSecurityException On errors
+   */
+
+  public Map<WBUserName, WBPasswordHash> hashAll(
+    final SecureRandom random,
+    final Map<WBUserName, WBPassKey> passwords,
+    final int threads)
+    throws GeneralSecurityException
+  {
+    Objects.requireNonNull(random, "random");
+    Objects.requireNonNull(passwords, "passwords");
+
+    if (threads < 1) {
+      throw new IllegalArgumentException("Thread count must be positive");
+    }
+
+    final var tasks =
+      new ArrayList<Callable<Map.Entry<WBUserName, WBPasswordHash>>>(
+        passwords.size());
+    for (final var entry : passwords.entrySet()) {
+      tasks.add(() -> {
+        return Map.entry(
+          entry.getKey(),
+          this.preferred.hash(random, entry.getValue()));
+      });
+    }
+
+    final var results =
+      new HashMap<WBUserName, WBPasswordHash>(passwords.size());
+
+    try (var executor = Executors.newFixedThreadPool(threads)) {
+      for (final var future : executor.invokeAll(tasks)) {
+        final var entry = future.get();
+        results.put(entry.getKey(), entry.getValue());
+      }
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new GeneralSecurityException(e);
+    } catch (final ExecutionException e) {
+      if (e.getCause() instanceof final GeneralSecurityException ex) {
+        throw ex;
+      }
+      throw new GeneralSecurityException(e.getCause());
+    }
+    return results;
+  }
+
+  private WBPasswordAlgorithmType instance(
+    final WBPasswordAlgorithmType algorithm,
+    final String parameters)
+  {
+    final var key = algorithm.name() + ":" + parameters;
+    final var existing = this.instances.get(key);
+    if (existing != null) {
+      return existing;
+    }
+    final var created = algorithm.withParameters(parameters);
+    this.instances.putIfAbsent(key, created);
+    return created;
+  }
+}
@@ -0,0 +1,346 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobMetadata;
+import com.io7m.wastebasket.api.WBBlobStoreType;
+import com.io7m.wastebasket.api.WBRetentionConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * The removal of old data deliveries.
+ *
+ * Blobs are chosen from the blob index rather than by scanning the data
+ * directories, oldest first, so a pass stops as soon as it reaches blobs
+ * that are too young to be deleted by any policy. A blob is deleted if it
+ * is older than the maximum age for its user (or the default maximum
+ * age), or if the total size of the indexed blobs exceeds the high
+ * watermark, in which case the oldest blobs are deleted until the total
+ * falls to the low watermark. Deletions are paced so that no more than
+ * the configured number of blobs and bytes are deleted per second, and
+ * passes run on a single background thread, so that retention competes
+ * as little as possible with deliveries.
+ *
+ * Blobs that are not in the index, such as those delivered before the
+ * index existed, are never deleted; rebuilding the index brings them
+ * under retention.
+ */
+
+public final class WBRetention implements Closeable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBRetention.class);
+
+  private final WBRetentionConfiguration configuration;
+  private final Clock clock;
+  private final WBBlobStoreType store;
+  private final WBBlobIndex index;
+  private final Optional<Duration> shortestAge;
+  private final LongAdder deletedBlobs;
+  private final LongAdder deletedBytes;
+  private final ReentrantLock passLock;
+  private final AtomicReference<Thread> thread;
+
+  private WBRetention(
+    final WBRetentionConfiguration inConfiguration,
+    final Clock inClock,
+    final WBBlobStoreType inStore,
+    final WBBlobIndex inIndex)
+  {
+    this.configuration =
+      Objects.requireNonNull(inConfiguration, "configuration");
+    this.clock =
+      Objects.requireNonNull(inClock, "clock");
+    this.store =
+      Objects.requireNonNull(inStore, "store");
+    this.index =
+      Objects.requireNonNull(inIndex, "index");
+    this.deletedBlobs =
+      new LongAdder();
+    this.deletedBytes =
+      new LongAdder();
+    this.passLock =
+      new ReentrantLock();
+    this.thread =
+      new AtomicReference<>();
+
+    this.shortestAge =
+      Stream.concat(
+          Stream.of(inConfiguration.maximumAge()),
+          inConfiguration.userMaximumAges().values().stream())
+        .filter(age -> !age.isZero())
+        .min(Duration::compareTo);
+  }
+
+  /**
+   * Create a retention engine. The engine does nothing until it is
+   * started, or until a pass is run explicitly.
+   *
+   * @param configuration The retention configuration
+   * @param clock         The clock used to determine the ages of blobs
+   * @param store         The blob store
+   * @param index         The index of the blobs in the store
+   *
+   * @return A retention engine
+   */
+
+  public static WBRetention create(
+    final WBRetentionConfiguration configuration,
+    final Clock clock,
+    final WBBlobStoreType store,
+    final WBBlobIndex index)
+  {
+    return new WBRetention(configuration, clock, store, index);
+  }
+
+  /**
+   * @return The number of blobs deleted by all passes so far
+   */
+
+  public long deletedBlobs()
+  {
+    return this.deletedBlobs.sum();
+  }
+
+  /**
+   * @return The size in bytes of the blobs deleted by all passes so far
+   */
+
+  public long deletedBytes()
+  {
+    return this.deletedBytes.sum();
+  }
+
+  /**
+   * Start running passes in the background, at the configured interval.
+   * Nothing is started if no policy is configured.
+   */
+
+  public void start()
+  {
+    if (!this.configuration.isEnabled()) {
+      LOG.debug("no retention policy is configured");
+      return;
+    }
+
+    final var created =
+      Thread.ofVirtual()
+        .name("com.io7m.wastebasket.retention")
+        .unstarted(this::runPeriodically);
+
+    if (this.thread.compareAndSet(null, created)) {
+      created.start();
+    }
+  }
+
+  private void runPeriodically()
+  {
+    final var interval = this.configuration.interval();
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        Thread.sleep(interval);
+        this.run();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      } catch (final RuntimeException e) {
+        LOG.error("retention pass failed: ", e);
+      }
+    }
+  }
+
+  private boolean isExpired(
+    final WBBlobMetadata metadata,
+    final OffsetDateTime now)
+  {
+    final var age =
+      this.configuration.userMaximumAges()
+        .getOrDefault(metadata.user(), this.configuration.maximumAge());
+    return !age.isZero() && metadata.time().isBefore(now.minus(age));
+  }
+
+  /**
+   * Run a single pass, deleting every blob that the configured policies
+   * select.
+   *
+   * @return A report of the blobs deleted
+   *
+   * @throws InterruptedException If the pass is interrupted
+   */
+
+  public WBRetentionReport run()
+    throws InterruptedException
+  {
+    this.passLock.lockInterruptibly();
+    try {
+      return this.runLocked();
+    } finally {
+      this.passLock.unlock();
+    }
+  }
+
+  private WBRetentionReport runLocked()
+    throws InterruptedException
+  {
+    final var now = OffsetDateTime.now(this.clock);
+    final var youngest = this.shortestAge.map(now::minus);
+
+    final var highWatermark = this.configuration.highWatermark();
+    final var total = this.index.totalSize();
+    long excess = 0L;
+    if (highWatermark > 0L && total > highWatermark) {
+      excess = total - this.configuration.lowWatermark();
+    }
+
+    long expiredBlobs = 0L;
+    long expiredBytes = 0L;
+    long evictedBlobs = 0L;
+    long evictedBytes = 0L;
+    long failed = 0L;
+    final var digests = new HashSet<String>();
+    final var timeStart = System.nanoTime();
+
+    for (final var metadata : this.index.byTime()) {
+      final var expired = this.isExpired(metadata, now);
+      if (!expired && excess <= 0L) {
+        if (youngest.isEmpty() || !metadata.time().isBefore(youngest.get())) {
+          break;
+        }
+        continue;
+      }
+
+      this.throttle(
+        timeStart,
+        expiredBlobs + evictedBlobs,
+        expiredBytes + evictedBytes);
+
+      try {
+        this.store.delete(metadata.id());
+        this.index.remove(metadata);
+      } catch (final IOException e) {
+        ++failed;
+        LOG.error("could not delete {}: ", metadata.id().value(), e);
+        continue;
+      }
+
+      LOG.debug(
+        "deleted {} ({} bytes, {})",
+        metadata.id().value(),
+        Long.valueOf(metadata.size()),
+        expired ? "expired" : "over watermark");
+
+      digests.add(metadata.sha256());
+      excess -= metadata.size();
+      if (expired) {
+        ++expiredBlobs;
+        expiredBytes += metadata.size();
+      } else {
+        ++evictedBlobs;
+        evictedBytes += metadata.size();
+      }
+    }
+
+    final var report =
+      new WBRetentionReport(
+        expiredBlobs,
+        expiredBytes,
+        evictedBlobs,
+        evictedBytes,
+        failed);
+
+    if (report.deletedBlobs() > 0L) {
+      try {
+        this.store.reclaim(digests);
+      } catch (final IOException e) {
+        LOG.error("could not reclaim space after deletions: ", e);
+      }
+    }
+
+    this.deletedBlobs.add(report.deletedBlobs());
+    this.deletedBytes.add(report.deletedBytes());
+
+    if (report.deletedBlobs() > 0L || failed > 0L) {
+      LOG.info(
+        "retention deleted {} expired blobs ({} bytes) and {} blobs over the watermark ({} bytes); {} failed",
+        Long.valueOf(expiredBlobs),
+        Long.valueOf(expiredBytes),
+        Long.valueOf(evictedBlobs),
+        Long.valueOf(evictedBytes),
+        Long.valueOf(failed));
+    }
+    return report;
+  }
+
+  /**
+   * Wait until deleting another blob would keep both the number of blobs
+   * and the number of bytes deleted since {@code timeStart} within the
+   * configured rates.
+   */
+
+  private void throttle(
+    final long timeStart,
+    final long blobs,
+    final long bytes)
+    throws InterruptedException
+  {
+    final var secondsForBlobs =
+      (double) blobs / (double) this.configuration.deletionRate();
+    final var secondsForBytes =
+      (double) bytes / (double) this.configuration.byteRate();
+    final var timeDue =
+      timeStart + (long) (Math.max(secondsForBlobs, secondsForBytes) * 1.0e9);
+
+    final var wait = timeDue - System.nanoTime();
+    if (wait > 0L) {
+      Thread.sleep(Duration.ofNanos(wait));
+    }
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    /*
+     * The thread is not taken from under the pass lock, as a running pass
+     * holds the lock for as long as it is being throttled.
+     */
+
+    final var running = this.thread.getAndSet(null);
+    if (running != null) {
+      running.interrupt();
+      try {
+        running.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
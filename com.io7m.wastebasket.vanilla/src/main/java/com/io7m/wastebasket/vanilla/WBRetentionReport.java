@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+/**
+ * The blobs deleted by a single retention pass.
+ *
+ * @param expiredBlobs The number of blobs deleted for exceeding their age
+ * @param expiredBytes The size in bytes of the blobs deleted for
+ *                     exceeding their age
+ * @param evictedBlobs The number of blobs deleted to bring the total size
+ *                     under the watermark
+ * @param evictedBytes The size in bytes of the blobs deleted to bring the
+ *                     total size under the watermark
+ * @param failed       The number of blobs that could not be deleted
+ */
+
+public record WBRetentionReport(
+  long expiredBlobs,
+  long expiredBytes,
+  long evictedBlobs,
+  long evictedBytes,
+  long failed)
+{
+  /**
+   * @return The total number of blobs deleted
+   */
+
+  public long deletedBlobs()
+  {
+    return this.expiredBlobs + this.evictedBlobs;
+  }
+
+  /**
+   * @return The total size in bytes of the blobs deleted
+   */
+
+  public long deletedBytes()
+  {
+    return this.expiredBytes + this.evictedBytes;
+  }
+}
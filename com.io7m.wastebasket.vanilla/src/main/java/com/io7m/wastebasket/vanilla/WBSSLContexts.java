@@ -17,6 +17,7 @@
 
 package com.io7m.wastebasket.vanilla;
 
+import com.io7m.wastebasket.api.WBClientCertificateMode;
 import com.io7m.wastebasket.api.WBServerConfiguration;
 import de.dentrassi.crypto.pem.PemKeyStoreProvider;
 import org.slf4j.Logger;
@@ -24,14 +25,19 @@ import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.TrustManagerFactory;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.Security;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
 import java.util.Objects;
 
 /**
@@ -127,7 +133,51 @@ public final class WBSSLContexts
     final var protocol = "TLSv1.3";
     LOG.debug("creating SSL context for protocol {}", protocol);
     final var context = SSLContext.getInstance(protocol);
-    context.init(keyManagers.getKeyManagers(), null, null);
+    context.init(
+      keyManagers.getKeyManagers(),
+      createTrustManagers(configuration, fileCACert),
+      null);
     return context;
   }
+
+  /**
+   * Create trust managers that accept only client certificates issued by
+   * the configured CA. If client certificates are not in use, the default
+   * trust managers are used.
+   */
+
+  private static TrustManager[] createTrustManagers(
+    final WBServerConfiguration configuration,
+    final Path fileCACert)
+    throws GeneralSecurityException, IOException
+  {
+    final var mode = configuration.tlsClientCertificateMode();
+    LOG.info("TLS client certificates: {}", mode);
+    if (mode == WBClientCertificateMode.NONE) {
+      return null;
+    }
+
+    final var trustStore = KeyStore.getInstance(KeyStore.getDefaultType());
+    trustStore.load(null, null);
+
+    final var certificates = CertificateFactory.getInstance("X.509");
+    try (var stream = Files.newInputStream(fileCACert)) {
+      int index = 0;
+      for (final var certificate : certificates.generateCertificates(stream)) {
+        trustStore.setCertificateEntry("ca-" + index, certificate);
+        ++index;
+      }
+      if (index == 0) {
+        throw new CertificateException(
+          "No certificates in CA file %s".formatted(fileCACert));
+      }
+    }
+
+    final var trustAlgorithm = TrustManagerFactory.getDefaultAlgorithm();
+    LOG.debug("trust algorithm: {}", trustAlgorithm);
+
+    final var trustManagers = TrustManagerFactory.getInstance(trustAlgorithm);
+    trustManagers.init(trustStore);
+    return trustManagers.getTrustManagers();
+  }
 }
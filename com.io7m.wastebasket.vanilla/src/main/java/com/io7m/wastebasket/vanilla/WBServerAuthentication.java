@@ -0,0 +1,320 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBUserDatabaseType;
+import com.io7m.wastebasket.api.WBUserName;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.ssl.SslConnection;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.net.ssl.SSLPeerUnverifiedException;
+import java.security.GeneralSecurityException;
+import java.security.cert.X509Certificate;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request authentication shared by the server handlers. Requests may
+ * authenticate with a TLS client certificate, with a bearer token
+ * previously issued by the token endpoint, or with a username and passkey.
+ *
+ * Authentication never blocks the calling thread: passkeys are checked on
+ * the authentication executor, and the returned futures complete once the
+ * outcome is known. The futures are completed on a server thread rather
+ * than on the authentication executor, so that whatever the handlers do
+ * next, such as opening and preallocating a blob, never occupies a thread
+ * that is reserved for checking passkeys.
+ */
+
+final class WBServerAuthentication
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBServerAuthentication.class);
+
+  private static final String BEARER = "Bearer ";
+  private static final String RETRY_AFTER_SECONDS = "1";
+
+  private final WBUserDatabaseType users;
+  private final WBAuthenticationExecutor passwords;
+  private final WBAccessTokens tokens;
+  private final WBAuthenticationThrottle throttle;
+
+  WBServerAuthentication(
+    final WBUserDatabaseType inUsers,
+    final WBAuthenticationExecutor inPasswords,
+    final WBAccessTokens inTokens,
+    final WBAuthenticationThrottle inThrottle)
+  {
+    this.users =
+      Objects.requireNonNull(inUsers, "users");
+    this.passwords =
+      Objects.requireNonNull(inPasswords, "passwords");
+    this.tokens =
+      Objects.requireNonNull(inTokens, "tokens");
+    this.throttle =
+      Objects.requireNonNull(inThrottle, "throttle");
+  }
+
+  /**
+   * @return The token authority
+   */
+
+  WBAccessTokens tokens()
+  {
+    return this.tokens;
+  }
+
+  /**
+   * Authenticate a request using a client certificate, a bearer token, or a
+   * username and passkey, in that order of preference. If authentication
+   * fails, an error is sent on {@code response}, {@code callback} is
+   * completed, and the returned future yields an empty value.
+   *
+   * @param request  The request
+   * @param response The response
+   * @param callback The request callback
+   *
+   * @return The authenticated user, if any
+   */
+
+  CompletableFuture<Optional<WBUserName>> authenticate(
+    final Request request,
+    final Response response,
+    final Callback callback)
+  {
+    final var certificateUser = this.authenticateCertificate(request);
+    if (certificateUser.isPresent()) {
+      return CompletableFuture.completedFuture(certificateUser);
+    }
+
+    final var authorization =
+      request.getHeaders().get(HttpHeader.AUTHORIZATION);
+    if (authorization != null) {
+      return CompletableFuture.completedFuture(
+        this.authenticateToken(request, response, callback, authorization));
+    }
+    return this.authenticatePassword(request, response, callback);
+  }
+
+  private static Optional<X509Certificate> peerCertificate(
+    final Request request)
+  {
+    final var endPoint =
+      request.getConnectionMetaData()
+        .getConnection()
+        .getEndPoint();
+
+    if (!(endPoint instanceof final SslConnection.SslEndPoint sslEndPoint)) {
+      return Optional.empty();
+    }
+
+    try {
+      final var chain =
+        sslEndPoint.getSslConnection()
+          .getSSLEngine()
+          .getSession()
+          .getPeerCertificates();
+
+      if (chain.length > 0 && chain[0] instanceof final X509Certificate c) {
+        return Optional.of(c);
+      }
+      return Optional.empty();
+    } catch (final SSLPeerUnverifiedException e) {
+      return Optional.empty();
+    }
+  }
+
+  private Optional<WBUserName> authenticateCertificate(
+    final Request request)
+  {
+    final var certificate = peerCertificate(request);
+    if (certificate.isEmpty()) {
+      return Optional.empty();
+    }
+
+    final var user = WBClientCertificates.userOf(certificate.get());
+    if (user.isEmpty()) {
+      LOG.debug(
+        "client certificate {} does not name a valid user",
+        certificate.get().getSubjectX500Principal());
+      return Optional.empty();
+    }
+    if (!this.users.userExists(user.get())) {
+      LOG.debug(
+        "client certificate names nonexistent user {}",
+        user.get().value());
+      return Optional.empty();
+    }
+    return user;
+  }
+
+  private Optional<WBUserName> authenticateToken(
+    final Request request,
+    final Response response,
+    final Callback callback,
+    final String authorization)
+  {
+    if (!authorization.regionMatches(true, 0, BEARER, 0, BEARER.length())) {
+      Response.writeError(
+        request,
+        response,
+        callback,
+        HttpStatus.UNAUTHORIZED_401,
+        "Unsupported authorization scheme");
+      return Optional.empty();
+    }
+
+    final Optional<WBUserName> user;
+    try {
+      user = this.tokens.verify(
+        authorization.substring(BEARER.length()).trim());
+    } catch (final GeneralSecurityException e) {
+      LOG.error("token verification failed: ", e);
+      Response.writeError(
+        request,
+        response,
+        callback,
+        HttpStatus.INTERNAL_SERVER_ERROR_500,
+        "Authentication failed");
+      return Optional.empty();
+    }
+
+    if (user.isEmpty()) {
+      Response.writeError(
+        request,
+        response,
+        callback,
+        HttpStatus.UNAUTHORIZED_401,
+        "Invalid or expired token");
+    }
+    return user;
+  }
+
+  /**
+   * Authenticate a request using a username and passkey. If authentication
+   * fails, an error is sent on {@code response}, {@code callback} is
+   * completed, and the returned future yields an empty value.
+   *
+   * @param request  The request
+   * @param response The response
+   * @param callback The request callback
+   *
+   * @return The authenticated user, if any
+   */
+
+  CompletableFuture<Optional<WBUserName>> authenticatePassword(
+    final Request request,
+    final Response response,
+    final Callback callback)
+  {
+    final var headers = request.getHeaders();
+    final var userName = headers.get("X-UserName");
+    final var password = headers.get("X-PassKey");
+    if (userName == null || password == null) {
+      Response.writeError(
+        request,
+        response,
+        callback,
+        HttpStatus.UNAUTHORIZED_401,
+        "Must specify a username and passkey");
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
+
+    final var user = WBUserName.of(userName);
+    final var address = Request.getRemoteAddr(request);
+    final var delay = this.throttle.delayNanos(address, user);
+    if (delay > 0L) {
+      LOG.warn(
+        "too many failed attempts from {} for {}; refusing request",
+        address,
+        user.value());
+      response.getHeaders().put(
+        HttpHeader.RETRY_AFTER,
+        Long.toString(Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(delay))));
+      Response.writeError(
+        request,
+        response,
+        callback,
+        HttpStatus.TOO_MANY_REQUESTS_429,
+        "Too many failed attempts; try again later");
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
+
+    final CompletableFuture<Boolean> check;
+    try {
+      check = this.passwords.authenticate(user, WBPassKey.of(password));
+    } catch (final RejectedExecutionException e) {
+      LOG.warn(
+        "authentication queue is full ({} waiting); refusing request",
+        Integer.valueOf(this.passwords.queueDepth()));
+      response.getHeaders().put(HttpHeader.RETRY_AFTER, RETRY_AFTER_SECONDS);
+      Response.writeError(
+        request,
+        response,
+        callback,
+        HttpStatus.SERVICE_UNAVAILABLE_503,
+        "Server is busy; try again later");
+      return CompletableFuture.completedFuture(Optional.empty());
+    }
+
+    return check.handleAsync((authenticated, failure) -> {
+      if (failure != null) {
+        LOG.error("authentication failed: ", unwrap(failure));
+        Response.writeError(
+          request,
+          response,
+          callback,
+          HttpStatus.INTERNAL_SERVER_ERROR_500,
+          "Authentication failed");
+        return Optional.empty();
+      }
+
+      if (!authenticated.booleanValue()) {
+        this.throttle.recordFailure(address, user);
+        Response.writeError(
+          request,
+          response,
+          callback,
+          HttpStatus.UNAUTHORIZED_401,
+          "Authentication failed");
+        return Optional.empty();
+      }
+      return Optional.of(user);
+    }, request.getContext());
+  }
+
+  private static Throwable unwrap(
+    final Throwable failure)
+  {
+    if (failure instanceof CompletionException && failure.getCause() != null) {
+      return failure.getCause();
+    }
+    return failure;
+  }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2019 Mark Raynsford <code@io7m.com> http://io7m.com
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
  *
  * Permission to use, copy, modify, and/or distribute this software for
  * any purpose with or without fee is hereby granted, provided that the
@@ -15,21 +15,15 @@
  * SOFTWARE.
  */
 
-
 package com.io7m.wastebasket.vanilla;
 
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.Content;
 import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
 import org.eclipse.jetty.server.handler.ErrorHandler;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import javax.servlet.RequestDispatcher;
-import javax.servlet.ServletOutputStream;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
-import java.io.IOException;
-
-import static java.nio.charset.StandardCharsets.UTF_8;
+import org.eclipse.jetty.util.Callback;
 
 /**
  * A server error handler.
@@ -37,31 +31,27 @@ import static java.nio.charset.StandardCharsets.UTF_8;
 
 public final class WBServerErrorHandler extends ErrorHandler
 {
-  private static final Logger LOG =
-    LoggerFactory.getLogger(WBServerErrorHandler.class);
-
   WBServerErrorHandler()
   {
 
   }
 
   @Override
-  public void handle(
-    final String target,
-    final Request baseRequest,
-    final HttpServletRequest request,
-    final HttpServletResponse response)
-    throws IOException
+  public boolean handle(
+    final Request request,
+    final Response response,
+    final Callback callback)
   {
-    final String message =
-      (String) request.getAttribute(RequestDispatcher.ERROR_MESSAGE);
-
-    response.setContentType("text/plain");
-    response.setCharacterEncoding("UTF-8");
-    try (ServletOutputStream stream = response.getOutputStream()) {
-      stream.write(message.getBytes(UTF_8));
-      stream.write("\r\n".getBytes(UTF_8));
+    final String message;
+    if (request.getAttribute(ERROR_MESSAGE) instanceof final String text) {
+      message = text;
+    } else {
+      message = HttpStatus.getMessage(response.getStatus());
     }
-    baseRequest.setHandled(true);
+
+    response.getHeaders()
+      .put(HttpHeader.CONTENT_TYPE, "text/plain; charset=UTF-8");
+    Content.Sink.write(response, true, message + "\r\n", callback);
+    return true;
   }
 }
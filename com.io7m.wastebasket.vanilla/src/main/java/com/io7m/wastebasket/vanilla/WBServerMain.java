@@ -18,6 +18,7 @@
 package com.io7m.wastebasket.vanilla;
 
 import com.io7m.wastebasket.api.WBAuditLogType;
+import com.io7m.wastebasket.api.WBBlobIndexType;
 import com.io7m.wastebasket.api.WBBlobStoreType;
 import com.io7m.wastebasket.api.WBServerConfiguration;
 import com.io7m.wastebasket.api.WBUserDatabaseType;
@@ -26,6 +27,7 @@ import org.eclipse.jetty.server.Connector;
 import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.HttpConfiguration;
 import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.SecureRequestCustomizer;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
 import org.eclipse.jetty.server.SslConnectionFactory;
@@ -37,8 +39,13 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
+import java.time.Clock;
+import java.util.ArrayList;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * The main server.
@@ -52,11 +59,17 @@ public final class WBServerMain
   private final Server server;
   private final HttpConfiguration httpsConfig;
   private final WBServerConfiguration configuration;
+  private final WBAuthenticationExecutor authentication;
+  private final WBStorageAccountant storage;
+  private final ExecutorService deliveries;
 
   private WBServerMain(
     final WBServerConfiguration inConfiguration,
     final Server inServer,
-    final HttpConfiguration inHttpsConfig)
+    final HttpConfiguration inHttpsConfig,
+    final WBAuthenticationExecutor inAuthentication,
+    final WBStorageAccountant inStorage,
+    final ExecutorService inDeliveries)
   {
     this.configuration =
       Objects.requireNonNull(inConfiguration, "configuration");
@@ -64,6 +77,12 @@ public final class WBServerMain
       Objects.requireNonNull(inServer, "server");
     this.httpsConfig =
       Objects.requireNonNull(inHttpsConfig, "httpsConfig");
+    this.authentication =
+      Objects.requireNonNull(inAuthentication, "authentication");
+    this.storage =
+      Objects.requireNonNull(inStorage, "storage");
+    this.deliveries =
+      Objects.requireNonNull(inDeliveries, "deliveries");
   }
 
   /**
@@ -73,6 +92,8 @@ public final class WBServerMain
    * @param blobStore     The blob store
    * @param users         The user database
    * @param auditLog      The audit log
+   * @param index         The blob index
+   * @param quotas        The user quotas
    *
    * @return A server instance
    *
@@ -84,13 +105,17 @@ public final class WBServerMain
     final WBServerConfiguration configuration,
     final WBBlobStoreType blobStore,
     final WBUserDatabaseType users,
-    final WBAuditLogType auditLog)
+    final WBAuditLogType auditLog,
+    final WBBlobIndexType index,
+    final WBUserQuotas quotas)
     throws GeneralSecurityException, IOException
   {
     Objects.requireNonNull(configuration, "configuration");
     Objects.requireNonNull(blobStore, "blobStore");
     Objects.requireNonNull(users, "users");
     Objects.requireNonNull(auditLog, "auditLog");
+    Objects.requireNonNull(index, "index");
+    Objects.requireNonNull(quotas, "quotas");
 
     final var threadPool =
       new QueuedThreadPool(configuration.serverThreads(), 1);
@@ -102,24 +127,84 @@ public final class WBServerMain
     httpsConfig.setSecurePort(bindPort);
     httpsConfig.setSendServerVersion(false);
     httpsConfig.setSendXPoweredBy(false);
+    httpsConfig.addCustomizer(new SecureRequestCustomizer());
 
     createConnectors(configuration, server, httpsConfig);
 
+    final var authentication =
+      WBAuthenticationExecutor.create(
+        users,
+        configuration.authenticationThreads(),
+        configuration.authenticationQueueLimit(),
+        configuration.authenticationStatisticsInterval());
+    final var tokens =
+      WBAccessTokens.create(
+        Clock.systemUTC(),
+        users,
+        configuration.tokenLifetime());
+    final var throttle =
+      WBAuthenticationThrottle.create(
+        configuration.authenticationFailureBurst(),
+        configuration.authenticationFailureInterval(),
+        configuration.authenticationFailureTrackingLimit());
+    final var serverAuthentication =
+      new WBServerAuthentication(users, authentication, tokens, throttle);
+
+    final var dataDirectories =
+      new ArrayList<Path>(configuration.dataVolumes().size() + 1);
+    dataDirectories.add(configuration.dataDirectory());
+    dataDirectories.addAll(configuration.dataVolumes());
+
+    final var storage =
+      WBStorageAccountant.create(
+        dataDirectories,
+        configuration.dataVolumeReserve(),
+        configuration.dataSpaceRefreshInterval());
+
+    /*
+     * Deliveries write to storage on virtual threads of their own, so
+     * that no server thread ever waits on the disk.
+     */
+
+    final var deliveries =
+      Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual()
+          .name("com.io7m.wastebasket.delivery-", 0L)
+          .factory());
+
     final var contextRoot = new ContextHandler("/");
     contextRoot.setHandler(new WBServerRootHandler());
     final var contextV1Deliver = new ContextHandler("/v1/deliver");
     contextV1Deliver.setHandler(
-      new WBServerV1DeliverHandler(configuration, blobStore, users, auditLog));
+      new WBServerV1DeliverHandler(
+        configuration,
+        blobStore,
+        serverAuthentication,
+        auditLog,
+        index,
+        storage,
+        quotas,
+        deliveries));
+    final var contextV1Token = new ContextHandler("/v1/token");
+    contextV1Token.setHandler(
+      new WBServerV1TokenHandler(serverAuthentication));
 
     final var contexts = new ContextHandlerCollection();
     contexts.setHandlers(new Handler[]{
       contextRoot,
       contextV1Deliver,
+      contextV1Token,
     });
 
     server.setErrorHandler(new WBServerErrorHandler());
     server.setHandler(contexts);
-    return new WBServerMain(configuration, server, httpsConfig);
+    return new WBServerMain(
+      configuration,
+      server,
+      httpsConfig,
+      authentication,
+      storage,
+      deliveries);
   }
 
   private static void createConnectors(
@@ -134,6 +219,14 @@ public final class WBServerMain
     final var sslContextFactory = new SslContextFactory.Server();
     sslContextFactory.setSslContext(sslContext);
 
+    switch (inConfiguration.tlsClientCertificateMode()) {
+      case NONE -> {
+
+      }
+      case WANT -> sslContextFactory.setWantClientAuth(true);
+      case NEED -> sslContextFactory.setNeedClientAuth(true);
+    }
+
     final SslConnectionFactory sslConnectionFactory =
       new SslConnectionFactory(
         sslContextFactory,
@@ -168,6 +261,15 @@ public final class WBServerMain
     });
   }
 
+  /**
+   * @return The account of free space for deliveries, for monitoring
+   */
+
+  public WBStorageAccountant storage()
+  {
+    return this.storage;
+  }
+
   /**
    * Start the server.
    *
@@ -181,6 +283,8 @@ public final class WBServerMain
       "server starting on https://{}:{}/",
       this.configuration.bindAddress(),
       Integer.valueOf(this.configuration.bindPort()));
+    this.storage.start();
+    this.authentication.start();
     this.server.start();
   }
 
@@ -207,6 +311,30 @@ public final class WBServerMain
   public void join()
     throws InterruptedException
   {
-    this.server.join();
+    try {
+      this.server.join();
+    } finally {
+      this.authentication.close();
+      this.storage.close();
+      this.deliveries.shutdown();
+    }
+  }
+
+  /**
+   * Stop the server and wait for it to finish.
+   *
+   * @throws Exception On errors
+   */
+
+  public void stop()
+    throws Exception
+  {
+    try {
+      this.server.stop();
+    } finally {
+      this.authentication.close();
+      this.storage.close();
+      this.deliveries.shutdown();
+    }
   }
 }
@@ -1,5 +1,5 @@
 /*
- * Copyright © 2019 Mark Raynsford <code@io7m.com> http://io7m.com
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
  *
  * Permission to use, copy, modify, and/or distribute this software for
  * any purpose with or without fee is hereby granted, provided that the
@@ -15,24 +15,21 @@
  * SOFTWARE.
  */
 
-
 package com.io7m.wastebasket.vanilla;
 
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Request;
-import org.eclipse.jetty.server.handler.AbstractHandler;
-
-import javax.servlet.ServletOutputStream;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
-import java.io.IOException;
-
-import static java.nio.charset.StandardCharsets.UTF_8;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
 
 /**
  * A server root handler.
  */
 
-public final class WBServerRootHandler extends AbstractHandler
+public final class WBServerRootHandler extends Handler.Abstract.NonBlocking
 {
   private static final String VERSION_TEXT =
     String.format("Wastebasket %s\r\n", version());
@@ -55,18 +52,15 @@ public final class WBServerRootHandler extends AbstractHandler
   }
 
   @Override
-  public void handle(
-    final String target,
-    final Request baseRequest,
-    final HttpServletRequest request,
-    final HttpServletResponse response)
-    throws IOException
+  public boolean handle(
+    final Request request,
+    final Response response,
+    final Callback callback)
   {
-    response.setContentType("text/plain");
-    response.setCharacterEncoding("UTF-8");
-    try (ServletOutputStream stream = response.getOutputStream()) {
-      stream.write(VERSION_TEXT.getBytes(UTF_8));
-    }
-    baseRequest.setHandled(true);
+    response.setStatus(HttpStatus.OK_200);
+    response.getHeaders()
+      .put(HttpHeader.CONTENT_TYPE, "text/plain; charset=UTF-8");
+    Content.Sink.write(response, true, VERSION_TEXT, callback);
+    return true;
   }
 }
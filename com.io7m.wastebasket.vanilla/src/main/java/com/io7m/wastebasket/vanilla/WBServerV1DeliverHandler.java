@@ -1,5 +1,5 @@
 /*
- * Copyright © 2019 Mark Raynsford <code@io7m.com> http://io7m.com
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
  *
  * Permission to use, copy, modify, and/or distribute this software for
  * any purpose with or without fee is hereby granted, provided that the
@@ -19,43 +19,57 @@ package com.io7m.wastebasket.vanilla;
 
 import com.io7m.wastebasket.api.WBAuditLogType;
 import com.io7m.wastebasket.api.WBBlobID;
+import com.io7m.wastebasket.api.WBBlobIndexType;
+import com.io7m.wastebasket.api.WBBlobMetadata;
 import com.io7m.wastebasket.api.WBBlobStoreType;
-import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBBlobWriterType;
 import com.io7m.wastebasket.api.WBServerConfiguration;
-import com.io7m.wastebasket.api.WBUserDatabaseType;
 import com.io7m.wastebasket.api.WBUserName;
-import org.apache.commons.io.input.BoundedInputStream;
 import org.bouncycastle.util.encoders.Hex;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Handler;
 import org.eclipse.jetty.server.Request;
-import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.servlet.ServletInputStream;
-import javax.servlet.http.HttpServletRequest;
-import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.nio.file.FileAlreadyExistsException;
-import java.security.DigestOutputStream;
 import java.security.NoSuchAlgorithmException;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.regex.Pattern;
 
-import static java.nio.charset.StandardCharsets.UTF_8;
-import static javax.servlet.http.HttpServletResponse.SC_CONFLICT;
-import static javax.servlet.http.HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
-import static javax.servlet.http.HttpServletResponse.SC_METHOD_NOT_ALLOWED;
-import static javax.servlet.http.HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE;
-import static javax.servlet.http.HttpServletResponse.SC_UNAUTHORIZED;
-
 /**
  * A V1 deliver handler.
+ *
+ * Deliveries are read with demand-driven, non-blocking reads: no thread is
+ * held while waiting for a client to send more data, so the number of
+ * concurrent uploads is not bounded by the size of the server thread pool.
+ * Whenever content is available, the delivery is handed to a separate I/O
+ * executor, which writes every chunk that can be read without blocking to
+ * the blob store, and only then asks for more; a server thread therefore
+ * never waits for the disk, or for a pipelined writer to accept data. The
+ * delivery is committed, its metadata added to the blob index, and the
+ * response written on the I/O executor too.
+ *
+ * Each delivery is checked against the quota of its user, and space for its
+ * declared length is reserved on the file store to which the blob store
+ * has chosen to write it, before any content is read. Deliveries that
+ * exceed the number of uploads or the bytes the user may transfer are
+ * refused immediately with 429 (Too Many Requests), and deliveries that
+ * exceed the user's stored size or the available space are refused with
+ * 507 (Insufficient Storage).
  */
 
-public final class WBServerV1DeliverHandler extends AbstractHandler
+public final class WBServerV1DeliverHandler extends Handler.Abstract
 {
   private static final Logger LOG =
     LoggerFactory.getLogger(WBServerV1DeliverHandler.class);
@@ -65,132 +79,456 @@ public final class WBServerV1DeliverHandler extends AbstractHandler
   private static final Pattern SLASHES = Pattern.compile("/+");
   private final WBServerConfiguration configuration;
   private final WBBlobStoreType database;
-  private final WBUserDatabaseType userDatabase;
+  private final WBServerAuthentication authentication;
   private final WBAuditLogType auditLog;
+  private final WBBlobIndexType index;
+  private final WBStorageAccountant storage;
+  private final WBUserQuotas quotas;
+  private final Executor io;
 
   WBServerV1DeliverHandler(
     final WBServerConfiguration inConfiguration,
     final WBBlobStoreType inDatabase,
-    final WBUserDatabaseType inUserDatabase,
-    final WBAuditLogType inAuditLog)
+    final WBServerAuthentication inAuthentication,
+    final WBAuditLogType inAuditLog,
+    final WBBlobIndexType inIndex,
+    final WBStorageAccountant inStorage,
+    final WBUserQuotas inQuotas,
+    final Executor inIo)
   {
     this.configuration =
       Objects.requireNonNull(inConfiguration, "configuration");
     this.database =
       Objects.requireNonNull(inDatabase, "inDatabase");
-    this.userDatabase =
-      Objects.requireNonNull(inUserDatabase, "userDatabase");
+    this.authentication =
+      Objects.requireNonNull(inAuthentication, "authentication");
     this.auditLog =
       Objects.requireNonNull(inAuditLog, "auditLog");
+    this.index =
+      Objects.requireNonNull(inIndex, "index");
+    this.storage =
+      Objects.requireNonNull(inStorage, "storage");
+    this.quotas =
+      Objects.requireNonNull(inQuotas, "quotas");
+    this.io =
+      Objects.requireNonNull(inIo, "io");
   }
 
   @Override
-  public void handle(
-    final String target,
-    final Request baseRequest,
-    final HttpServletRequest request,
-    final HttpServletResponse response)
-    throws IOException
+  public boolean handle(
+    final Request request,
+    final Response response,
+    final Callback callback)
   {
-    if (!Objects.equals(baseRequest.getMethod(), "POST")) {
-      response.sendError(SC_METHOD_NOT_ALLOWED, "Must use POST");
-      return;
+    if (!HttpMethod.POST.is(request.getMethod())) {
+      Response.writeError(
+        request,
+        response,
+        callback,
+        HttpStatus.METHOD_NOT_ALLOWED_405,
+        "Must use POST");
+      return true;
     }
 
-    final var userName = baseRequest.getHeader("X-UserName");
-    final var password = baseRequest.getHeader("X-PassKey");
-    if (userName == null || password == null) {
-      response.sendError(
-        SC_UNAUTHORIZED,
-        "Must specify a username and passkey");
+    this.authentication.authenticate(request, response, callback)
+      .thenAccept(user -> {
+        user.ifPresent(u -> this.handleAuthenticated(
+          request,
+          response,
+          callback,
+          u));
+      })
+      .exceptionally(e -> {
+        callback.failed(e);
+        return null;
+      });
+    return true;
+  }
+
+  private void handleAuthenticated(
+    final Request request,
+    final Response response,
+    final Callback callback,
+    final WBUserName user)
+  {
+    final long sizeProvided = request.getLength();
+    final long sizeLimit = this.configuration.dataSizeLimit();
+    if (Long.compareUnsigned(sizeProvided, sizeLimit) >= 0) {
+      Response.writeError(
+        request,
+        response,
+        callback,
+        HttpStatus.PAYLOAD_TOO_LARGE_413,
+        "Data is too large");
       return;
     }
 
-    if (!this.userDatabase.authenticate(
-      WBUserName.of(userName),
-      WBPassKey.of(password))) {
-      response.sendError(SC_UNAUTHORIZED, "Authentication failed");
+    final WBBlobID id;
+    try {
+      id = WBBlobID.of(
+        SLASHES.matcher(Request.getPathInContext(request)).replaceFirst(""));
+    } catch (final IllegalArgumentException e) {
+      Response.writeError(
+        request,
+        response,
+        callback,
+        HttpStatus.BAD_REQUEST_400,
+        "Invalid blob ID");
       return;
     }
 
-    final long sizeProvided = baseRequest.getContentLengthLong();
-    final long sizeLimit = this.configuration.dataSizeLimit();
-    if (Long.compareUnsigned(sizeProvided, sizeLimit) >= 0) {
-      response.sendError(SC_REQUEST_ENTITY_TOO_LARGE, "Data is too large");
-      return;
+    final var upload = this.quotas.admit(user.value(), sizeProvided);
+    switch (upload.status()) {
+      case ADMITTED -> {
+
+      }
+      case CONCURRENT_UPLOADS_EXCEEDED, TRANSFER_EXCEEDED -> {
+        LOG.warn("refusing delivery from {}: {}", user.value(), upload.status());
+        Response.writeError(
+          request,
+          response,
+          callback,
+          HttpStatus.TOO_MANY_REQUESTS_429,
+          "Quota exceeded");
+        return;
+      }
+      case STORAGE_EXCEEDED -> {
+        LOG.warn("refusing delivery from {}: {}", user.value(), upload.status());
+        Response.writeError(
+          request,
+          response,
+          callback,
+          HttpStatus.INSUFFICIENT_STORAGE_507,
+          "Storage quota exceeded");
+        return;
+      }
     }
 
-    final var idText =
-      SLASHES.matcher(baseRequest.getPathInfo())
-        .replaceFirst("");
+    /*
+     * Once the upload is admitted, every way out of here either hands it
+     * to the delivery or releases it.
+     */
 
-    this.writeData(
-      baseRequest,
-      request,
-      response,
-      userName,
-      sizeProvided,
-      sizeLimit,
-      WBBlobID.of(idText));
+    try {
+      this.writeData(
+        request,
+        response,
+        callback,
+        user.value(),
+        sizeProvided,
+        sizeLimit,
+        id,
+        upload);
+    } catch (final IOException | RuntimeException e) {
+      upload.close();
+      callback.failed(e);
+    }
   }
 
   private void writeData(
-    final Request baseRequest,
-    final HttpServletRequest request,
-    final HttpServletResponse response,
+    final Request request,
+    final Response response,
+    final Callback callback,
     final String userName,
     final long sizeProvided,
     final long sizeLimit,
-    final WBBlobID id)
+    final WBBlobID id,
+    final WBUserQuotas.Upload upload)
     throws IOException
   {
-    this.auditLog.dataWritten(
-      OffsetDateTime.now(UTC),
-      userName,
-      baseRequest.getRemoteAddr(),
-      baseRequest.getRemotePort(),
-      id.value(),
-      sizeProvided
-    );
+    final WBBlobWriterType writer;
+    try {
+      writer = this.database.open(id, sizeProvided);
+    } catch (final FileAlreadyExistsException e) {
+      LOG.error("file already exists: ", e);
+      upload.close();
+      Response.writeError(
+        request,
+        response,
+        callback,
+        HttpStatus.CONFLICT_409,
+        "ID already used");
+      return;
+    } catch (final NoSuchAlgorithmException e) {
+      LOG.error("no such algorithm: ", e);
+      upload.close();
+      Response.writeError(
+        request,
+        response,
+        callback,
+        HttpStatus.INTERNAL_SERVER_ERROR_500,
+        "Unsupported JVM");
+      return;
+    }
+
+    /*
+     * The store has chosen where the blob goes, so the space is reserved
+     * on the file store that will actually receive it.
+     */
+
+    final Optional<WBStorageAccountant.Reservation> reservationOpt;
+    try {
+      reservationOpt = this.storage.reserve(writer.directory(), sizeProvided);
+    } catch (final IOException | RuntimeException e) {
+      closeQuietly(writer, e);
+      throw e;
+    }
+
+    if (reservationOpt.isEmpty()) {
+      closeQuietly(writer, null);
+      upload.close();
+      LOG.warn(
+        "refusing {} bytes from {}: insufficient storage",
+        Long.toUnsignedString(sizeProvided),
+        userName);
+      Response.writeError(
+        request,
+        response,
+        callback,
+        HttpStatus.INSUFFICIENT_STORAGE_507,
+        "Insufficient storage");
+      return;
+    }
+
+    final var remoteAddress = Request.getRemoteAddr(request);
+    final var remotePort = Request.getRemotePort(request);
+    final var delivery =
+      new Delivery(
+        request,
+        response,
+        callback,
+        writer,
+        reservationOpt.get(),
+        upload,
+        sizeLimit,
+        this.index,
+        this.io,
+        WBBlobMetadata.builder()
+          .setId(id)
+          .setUser(userName)
+          .setRemoteAddress(remoteAddress));
+
+    try {
+      this.auditLog.dataWritten(
+        OffsetDateTime.now(UTC),
+        userName,
+        remoteAddress,
+        remotePort,
+        id.value(),
+        sizeProvided
+      );
+    } catch (final IOException | RuntimeException e) {
+      delivery.closeWriter();
+      throw e;
+    }
 
     if (LOG.isInfoEnabled()) {
       LOG.info(
         "write {} {}:{} {} {}",
         userName,
-        baseRequest.getRemoteAddr(),
-        Integer.valueOf(baseRequest.getRemotePort()),
+        remoteAddress,
+        Integer.valueOf(remotePort),
         id.value(),
         Long.toUnsignedString(sizeProvided));
     }
 
-    try (DigestOutputStream outputStream = this.database.open(id)) {
-      try (ServletInputStream inputStream = request.getInputStream()) {
-        try (BoundedInputStream bounded = new BoundedInputStream(
-          inputStream,
-          sizeLimit)) {
-          bounded.transferTo(outputStream);
+    request.demand(delivery);
+  }
+
+  private static void closeQuietly(
+    final WBBlobWriterType writer,
+    final Exception failure)
+  {
+    try {
+      writer.close();
+    } catch (final IOException e) {
+      if (failure != null) {
+        failure.addSuppressed(e);
+      } else {
+        LOG.error("could not close blob writer: ", e);
+      }
+    }
+  }
+
+  /**
+   * The state of a single delivery in progress. The delivery is run each
+   * time the request has content available, and passes itself to the I/O
+   * executor; there, it consumes every chunk that can be read without
+   * blocking, and registers interest in the next only once those chunks
+   * have been written.
+   */
+
+  private static final class Delivery implements Runnable
+  {
+    private final Request request;
+    private final Response response;
+    private final Callback callback;
+    private final WBBlobWriterType writer;
+    private final WBStorageAccountant.Reservation reservation;
+    private final WBUserQuotas.Upload upload;
+    private final long sizeLimit;
+    private final WBBlobIndexType index;
+    private final Executor io;
+    private final WBBlobMetadata.Builder metadata;
+    private long received;
+
+    Delivery(
+      final Request inRequest,
+      final Response inResponse,
+      final Callback inCallback,
+      final WBBlobWriterType inWriter,
+      final WBStorageAccountant.Reservation inReservation,
+      final WBUserQuotas.Upload inUpload,
+      final long inSizeLimit,
+      final WBBlobIndexType inIndex,
+      final Executor inIo,
+      final WBBlobMetadata.Builder inMetadata)
+    {
+      this.request =
+        Objects.requireNonNull(inRequest, "request");
+      this.response =
+        Objects.requireNonNull(inResponse, "response");
+      this.callback =
+        Objects.requireNonNull(inCallback, "callback");
+      this.writer =
+        Objects.requireNonNull(inWriter, "writer");
+      this.reservation =
+        Objects.requireNonNull(inReservation, "reservation");
+      this.upload =
+        Objects.requireNonNull(inUpload, "upload");
+      this.sizeLimit =
+        inSizeLimit;
+      this.index =
+        Objects.requireNonNull(inIndex, "index");
+      this.io =
+        Objects.requireNonNull(inIo, "io");
+      this.metadata =
+        Objects.requireNonNull(inMetadata, "metadata");
+    }
+
+    @Override
+    public void run()
+    {
+      try {
+        this.io.execute(this::transfer);
+      } catch (final RejectedExecutionException e) {
+        this.closeWriter();
+        this.callback.failed(e);
+      }
+    }
+
+    private void transfer()
+    {
+      while (true) {
+        final Content.Chunk chunk = this.request.read();
+        if (chunk == null) {
+          this.request.demand(this);
+          return;
+        }
+
+        if (Content.Chunk.isFailure(chunk)) {
+          this.closeWriter();
+          this.callback.failed(chunk.getFailure());
+          return;
+        }
+
+        final boolean last = chunk.isLast();
+        try {
+          final var data = chunk.getByteBuffer();
+          final var size = data.remaining();
+          this.received += size;
+          if (Long.compareUnsigned(this.received, this.sizeLimit) >= 0) {
+            this.closeWriter();
+            Response.writeError(
+              this.request,
+              this.response,
+              this.callback,
+              HttpStatus.PAYLOAD_TOO_LARGE_413,
+              "Data is too large");
+            return;
+          }
+          this.writer.write(data);
+          this.reservation.consume(size);
+          this.upload.consume(size);
+        } catch (final IOException | RuntimeException e) {
+          this.closeWriter();
+          this.callback.failed(e);
+          return;
+        } finally {
+          chunk.release();
+        }
+
+        if (last) {
+          this.complete();
+          return;
         }
       }
-      outputStream.flush();
-
-      final var digest = outputStream.getMessageDigest();
-      try (OutputStream servletOut = response.getOutputStream()) {
-        servletOut.write("SHA-256: ".getBytes(UTF_8));
-        servletOut.write(Hex.encode(digest.digest()));
-        servletOut.write("\r\n".getBytes(UTF_8));
-        servletOut.flush();
+    }
+
+    private void complete()
+    {
+      final byte[] digest;
+      try {
+        this.writer.commit();
+        digest = this.writer.digest();
+      } catch (final FileAlreadyExistsException e) {
+        LOG.error("file already exists: ", e);
+        this.closeWriter();
+        Response.writeError(
+          this.request,
+          this.response,
+          this.callback,
+          HttpStatus.CONFLICT_409,
+          "ID already used");
+        return;
+      } catch (final IOException | RuntimeException e) {
+        this.closeWriter();
+        this.callback.failed(e);
+        return;
       }
 
-      response.setStatus(200);
-      baseRequest.setHandled(true);
-    } catch (final FileAlreadyExistsException e) {
-      LOG.error("file already exists: ", e);
-      response.sendError(SC_CONFLICT, "ID already used");
-      return;
-    } catch (final NoSuchAlgorithmException e) {
-      LOG.error("no such algorithm: ", e);
-      response.sendError(SC_INTERNAL_SERVER_ERROR, "Unsupported JVM");
-      return;
+      this.addToIndex(digest);
+      this.closeWriter();
+      this.response.setStatus(HttpStatus.OK_200);
+      Content.Sink.write(
+        this.response,
+        true,
+        "SHA-256: " + Hex.toHexString(digest) + "\r\n",
+        this.callback);
+    }
+
+    /**
+     * Record the committed delivery in the index. The blob is already
+     * stored at this point, so a failure here does not fail the delivery;
+     * a rebuild of the index will recover the entry.
+     */
+
+    private void addToIndex(
+      final byte[] digest)
+    {
+      try {
+        this.index.add(
+          this.metadata
+            .setSize(this.received)
+            .setSha256(Hex.toHexString(digest))
+            .setTime(OffsetDateTime.now(UTC))
+            .setLocation(this.writer.location())
+            .build());
+      } catch (final IOException | RuntimeException e) {
+        LOG.error("could not add delivery to the blob index: ", e);
+      }
+    }
+
+    private void closeWriter()
+    {
+      try {
+        this.writer.close();
+      } catch (final IOException e) {
+        LOG.error("could not close blob writer: ", e);
+      } finally {
+        this.reservation.close();
+        this.upload.close();
+      }
     }
   }
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBUserName;
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.http.HttpMethod;
+import org.eclipse.jetty.http.HttpStatus;
+import org.eclipse.jetty.io.Content;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+import org.eclipse.jetty.util.Callback;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.security.GeneralSecurityException;
+import java.util.Objects;
+
+/**
+ * A V1 token handler. Clients authenticate once with a username and
+ * passkey, and receive a bearer token that can be used to authenticate
+ * subsequent deliveries until it expires.
+ */
+
+public final class WBServerV1TokenHandler extends Handler.Abstract
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBServerV1TokenHandler.class);
+
+  private final WBServerAuthentication authentication;
+
+  WBServerV1TokenHandler(
+    final WBServerAuthentication inAuthentication)
+  {
+    this.authentication =
+      Objects.requireNonNull(inAuthentication, "authentication");
+  }
+
+  @Override
+  public boolean handle(
+    final Request request,
+    final Response response,
+    final Callback callback)
+  {
+    if (!HttpMethod.POST.is(request.getMethod())) {
+      Response.writeError(
+        request,
+        response,
+        callback,
+        HttpStatus.METHOD_NOT_ALLOWED_405,
+        "Must use POST");
+      return true;
+    }
+
+    this.authentication.authenticatePassword(request, response, callback)
+      .thenAccept(user -> {
+        user.ifPresent(u -> this.issue(request, response, callback, u));
+      })
+      .exceptionally(e -> {
+        callback.failed(e);
+        return null;
+      });
+    return true;
+  }
+
+  private void issue(
+    final Request request,
+    final Response response,
+    final Callback callback,
+    final WBUserName user)
+  {
+    final WBAccessToken token;
+    try {
+      token = this.authentication.tokens().issue(user);
+    } catch (final GeneralSecurityException e) {
+      LOG.error("could not issue token: ", e);
+      Response.writeError(
+        request,
+        response,
+        callback,
+        HttpStatus.INTERNAL_SERVER_ERROR_500,
+        "Could not issue token");
+      return;
+    }
+
+    LOG.info(
+      "token {} {}:{} expires {}",
+      user.value(),
+      Request.getRemoteAddr(request),
+      Integer.valueOf(Request.getRemotePort(request)),
+      token.expires());
+
+    final var headers = response.getHeaders();
+    headers.put(HttpHeader.CONTENT_TYPE, "text/plain; charset=UTF-8");
+    headers.put(HttpHeader.CACHE_CONTROL, "no-store");
+    response.setStatus(HttpStatus.OK_200);
+    Content.Sink.write(
+      response,
+      true,
+      "Token: " + token.text() + "\r\nExpires: " + token.expires() + "\r\n",
+      callback);
+  }
+}
@@ -0,0 +1,445 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * An in-memory account of the free space available for new deliveries.
+ *
+ * Deliveries reserve their declared length before any of their content is
+ * read, and are refused if the space is not available, rather than failing
+ * part way through once the file system fills. The usable space of the
+ * file stores holding the data directories is sampled on a timer rather
+ * than on every request; between samples, the account is kept current by
+ * subtracting the bytes written and the bytes still reserved by deliveries
+ * in progress.
+ *
+ * Space is accounted separately for each file store, less a reserve on
+ * each that is never given to deliveries. The blob store decides where a
+ * delivery is written, so a delivery reserves space on the file store
+ * holding the directory that its writer was opened in, and is admitted
+ * only if that file store can hold all of it; its reservation and the
+ * bytes it writes are charged to that file store. The account of each
+ * file store is kept in atomic counters, so concurrent deliveries do not
+ * contend on a common lock.
+ */
+
+public final class WBStorageAccountant implements Closeable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBStorageAccountant.class);
+
+  private final List<Account> accounts;
+  private final Map<Path, Account> directories;
+  private final long reserve;
+  private final Duration interval;
+  private final AtomicReference<Thread> thread;
+
+  private WBStorageAccountant(
+    final List<FileStore> inFileStores,
+    final Map<Path, FileStore> inDirectories,
+    final long inReserve,
+    final Duration inInterval)
+  {
+    this.accounts =
+      inFileStores.stream()
+        .map(Account::new)
+        .toList();
+    this.directories =
+      new LinkedHashMap<>(inDirectories.size());
+    for (final var entry : inDirectories.entrySet()) {
+      this.directories.put(
+        entry.getKey().toAbsolutePath().normalize(),
+        this.accountOf(entry.getValue()).orElseThrow());
+    }
+    this.reserve =
+      inReserve;
+    this.interval =
+      Objects.requireNonNull(inInterval, "interval");
+    this.thread =
+      new AtomicReference<>();
+  }
+
+  /**
+   * Create an accountant for the file stores holding the given directories.
+   * Directories on the same file store are counted once.
+   *
+   * @param directories The data directories
+   * @param reserve     The space in bytes on each file store that is never
+   *                    given to deliveries
+   * @param interval    The interval between samples of the usable space
+   *
+   * @return An accountant
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static WBStorageAccountant create(
+    final Collection<Path> directories,
+    final long reserve,
+    final Duration interval)
+    throws IOException
+  {
+    final var fileStores = new LinkedHashSet<FileStore>(directories.size());
+    final var byDirectory = new LinkedHashMap<Path, FileStore>();
+    for (final var directory : directories) {
+      final var fileStore = Files.getFileStore(directory);
+      fileStores.add(fileStore);
+      byDirectory.put(directory, fileStore);
+    }
+    return create(new ArrayList<>(fileStores), byDirectory, reserve, interval);
+  }
+
+  /**
+   * Create an accountant for the given file stores.
+   *
+   * @param fileStores The file stores
+   * @param reserve    The space in bytes on each file store that is never
+   *                   given to deliveries
+   * @param interval   The interval between samples of the usable space
+   *
+   * @return An accountant
+   */
+
+  public static WBStorageAccountant createForFileStores(
+    final List<FileStore> fileStores,
+    final long reserve,
+    final Duration interval)
+  {
+    return create(fileStores, Map.of(), reserve, interval);
+  }
+
+  private static WBStorageAccountant create(
+    final List<FileStore> fileStores,
+    final Map<Path, FileStore> directories,
+    final long reserve,
+    final Duration interval)
+  {
+    if (reserve < 0L) {
+      throw new IllegalArgumentException("Reserve must be non-negative");
+    }
+    if (interval.isNegative() || interval.isZero()) {
+      throw new IllegalArgumentException("Interval must be positive");
+    }
+
+    final var accountant =
+      new WBStorageAccountant(fileStores, directories, reserve, interval);
+    accountant.refresh();
+    return accountant;
+  }
+
+  /**
+   * Sample the usable space of every file store. Bytes written before the
+   * sample are now counted by the file stores themselves, and so are no
+   * longer subtracted separately. The bytes written are read before the
+   * usable space is, so that bytes written while the sample is taken are
+   * at worst counted twice until the next sample, and never not at all.
+   */
+
+  public void refresh()
+  {
+    for (final var account : this.accounts) {
+      final var written = account.written.get();
+      long usable;
+      try {
+        usable = Math.max(
+          0L,
+          account.fileStore.getUsableSpace() - this.reserve);
+      } catch (final IOException e) {
+        LOG.error(
+          "could not determine the usable space of {}: ",
+          account.fileStore,
+          e);
+        usable = 0L;
+      }
+      account.usable.set(usable);
+      account.written.addAndGet(-written);
+    }
+  }
+
+  /**
+   * @return The number of bytes that may currently be reserved, across all
+   *         file stores
+   */
+
+  public long available()
+  {
+    long total = 0L;
+    for (final var account : this.accounts) {
+      total += account.available();
+    }
+    return total;
+  }
+
+  /**
+   * @return The size of the largest delivery that may currently be
+   *         reserved
+   */
+
+  public long largestAvailable()
+  {
+    long largest = 0L;
+    for (final var account : this.accounts) {
+      largest = Math.max(largest, account.available());
+    }
+    return largest;
+  }
+
+  private Optional<Account> accountOf(
+    final FileStore fileStore)
+  {
+    for (final var account : this.accounts) {
+      if (account.fileStore.equals(fileStore)) {
+        return Optional.of(account);
+      }
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Reserve space for a delivery on the file store holding
+   * {@code directory}. The file store is found from the data directory
+   * that contains {@code directory}, so that no file system lookup is
+   * needed for each delivery.
+   *
+   * @param directory The directory in which the delivery is written
+   * @param size      The declared size of the delivery
+   *
+   * @return A reservation, or nothing if the file store cannot hold the
+   *         whole delivery
+   *
+   * @throws IOException On I/O errors, or if {@code directory} is not on
+   *                     any of the accounted file stores
+   */
+
+  public Optional<Reservation> reserve(
+    final Path directory,
+    final long size)
+    throws IOException
+  {
+    final var absolute = directory.toAbsolutePath().normalize();
+
+    Path bestRoot = null;
+    Account best = null;
+    for (final var entry : this.directories.entrySet()) {
+      final var root = entry.getKey();
+      if (absolute.startsWith(root)
+          && (bestRoot == null || root.getNameCount() > bestRoot.getNameCount())) {
+        bestRoot = root;
+        best = entry.getValue();
+      }
+    }
+
+    if (best == null) {
+      best = this.accountOf(Files.getFileStore(directory))
+        .orElseThrow(() -> new IOException(
+          "Directory %s is not on an accounted file store"
+            .formatted(directory)));
+    }
+    return reserveOn(best, size);
+  }
+
+  /**
+   * Reserve space for a delivery on {@code fileStore}.
+   *
+   * @param fileStore The file store to which the delivery is written
+   * @param size      The declared size of the delivery
+   *
+   * @return A reservation, or nothing if the file store cannot hold the
+   *         whole delivery
+   */
+
+  public Optional<Reservation> reserve(
+    final FileStore fileStore,
+    final long size)
+  {
+    final var account =
+      this.accountOf(Objects.requireNonNull(fileStore, "fileStore"))
+        .orElseThrow(() -> new IllegalArgumentException(
+          "File store %s is not accounted".formatted(fileStore)));
+    return reserveOn(account, size);
+  }
+
+  private static Optional<Reservation> reserveOn(
+    final Account account,
+    final long size)
+  {
+    if (size < 0L) {
+      throw new IllegalArgumentException("Size must be non-negative");
+    }
+    if (account.tryReserve(size)) {
+      return Optional.of(new Reservation(account, size));
+    }
+    return Optional.empty();
+  }
+
+  /**
+   * Start sampling the usable space in the background.
+   */
+
+  public void start()
+  {
+    final var created =
+      Thread.ofVirtual()
+        .name("com.io7m.wastebasket.storage")
+        .unstarted(this::refreshPeriodically);
+
+    if (this.thread.compareAndSet(null, created)) {
+      created.start();
+    }
+  }
+
+  private void refreshPeriodically()
+  {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        Thread.sleep(this.interval);
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      this.refresh();
+    }
+  }
+
+  @Override
+  public void close()
+  {
+    final var running = this.thread.getAndSet(null);
+    if (running != null) {
+      running.interrupt();
+      try {
+        running.join();
+      } catch (final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * The account of a single file store.
+   */
+
+  private static final class Account
+  {
+    private final FileStore fileStore;
+    private final AtomicLong usable;
+    private final AtomicLong written;
+    private final AtomicLong reserved;
+
+    Account(
+      final FileStore inFileStore)
+    {
+      this.fileStore = Objects.requireNonNull(inFileStore, "fileStore");
+      this.usable = new AtomicLong();
+      this.written = new AtomicLong();
+      this.reserved = new AtomicLong();
+    }
+
+    long available()
+    {
+      return Math.max(
+        0L,
+        this.usable.get() - this.written.get() - this.reserved.get());
+    }
+
+    /**
+     * Reserve {@code size} bytes optimistically, backing the reservation
+     * out again if it turns out to have overcommitted the file store.
+     */
+
+    boolean tryReserve(
+      final long size)
+    {
+      final var now = this.reserved.addAndGet(size);
+      if (this.usable.get() - this.written.get() - now < 0L) {
+        this.reserved.addAndGet(-size);
+        return false;
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Space reserved for a single delivery. Closing the reservation returns
+   * whatever was not written.
+   */
+
+  public static final class Reservation implements AutoCloseable
+  {
+    private final Account account;
+    private final AtomicLong remaining;
+    private final AtomicBoolean closed;
+
+    private Reservation(
+      final Account inAccount,
+      final long size)
+    {
+      this.account = inAccount;
+      this.remaining = new AtomicLong(size);
+      this.closed = new AtomicBoolean();
+    }
+
+    /**
+     * Record that {@code bytes} bytes of the delivery were written.
+     *
+     * @param bytes The number of bytes
+     */
+
+    public void consume(
+      final long bytes)
+    {
+      if (this.closed.get()) {
+        return;
+      }
+
+      final var before =
+        this.remaining.getAndUpdate(r -> Math.max(0L, r - bytes));
+      this.account.reserved.addAndGet(-Math.min(before, bytes));
+      this.account.written.addAndGet(bytes);
+    }
+
+    @Override
+    public void close()
+    {
+      if (this.closed.compareAndSet(false, true)) {
+        this.account.reserved.addAndGet(-this.remaining.getAndSet(0L));
+      }
+    }
+  }
+}
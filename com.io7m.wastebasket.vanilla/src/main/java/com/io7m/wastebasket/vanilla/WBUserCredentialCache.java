@@ -0,0 +1,329 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBUserName;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * A bounded cache of recently verified credentials.
+ *
+ * The cache maps user names to a SHA-256 digest of the passkey that most
+ * recently authenticated successfully for that user. A later attempt that
+ * presents the same passkey before the entry expires can be accepted without
+ * running the (deliberately expensive) password hashing function again.
+ * Entries are discarded when the cache grows beyond its maximum size, when
+ * they expire, and when the owning user is changed or deleted (including
+ * when the user database is reloaded and the user's entry has changed).
+ */
+
+public final class WBUserCredentialCache
+{
+  private final int maximumSize;
+  private final long expiryNanos;
+  private final Entries entries;
+  private final AtomicLong generation;
+  private final LongAdder hits;
+  private final LongAdder misses;
+
+  private WBUserCredentialCache(
+    final int inMaximumSize,
+    final long inExpiryNanos)
+  {
+    this.maximumSize = inMaximumSize;
+    this.expiryNanos = inExpiryNanos;
+    this.entries = new Entries(inMaximumSize);
+    this.generation = new AtomicLong(0L);
+    this.hits = new LongAdder();
+    this.misses = new LongAdder();
+  }
+
+  /**
+   * Create a credential cache.
+   *
+   * @param maximumSize The maximum number of cached credentials; a value of
+   *                    {@code 0} disables caching
+   * @param expiry      The maximum length of time a credential stays cached
+   *
+   * @return A credential cache
+   */
+
+  public static WBUserCredentialCache create(
+    final int maximumSize,
+    final Duration expiry)
+  {
+    Objects.requireNonNull(expiry, "expiry");
+
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException("Cache size must be non-negative");
+    }
+    if (expiry.isNegative()) {
+      throw new IllegalArgumentException("Cache expiry must be non-negative");
+    }
+    return new WBUserCredentialCache(maximumSize, expiry.toNanos());
+  }
+
+  /**
+   * @return A cache that never caches anything
+   */
+
+  public static WBUserCredentialCache disabled()
+  {
+    return new WBUserCredentialCache(0, 0L);
+  }
+
+  private static byte[] digestOf(
+    final WBPassKey passKey)
+  {
+    try {
+      return MessageDigest.getInstance("SHA-256")
+        .digest(passKey.value().getBytes(UTF_8));
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private boolean isEnabled()
+  {
+    return this.maximumSize > 0 && this.expiryNanos > 0L;
+  }
+
+  /**
+   * The current generation of the cache. The generation is incremented every
+   * time any entry is invalidated, and callers must pass the generation they
+   * observed <i>before</i> consulting the user database to
+   * {@link #store(WBUserName, WBPassKey, long)}. This prevents a credential
+   * verified against an old copy of a user's entry from being cached after
+   * that entry has been changed or deleted.
+   *
+   * @return The current cache generation
+   */
+
+  public long generation()
+  {
+    return this.generation.get();
+  }
+
+  /**
+   * Check if {@code passKey} is the cached credential for {@code user}. A
+   * successful check is counted as a cache hit. Callers that subsequently
+   * fall back to verifying the credential the expensive way must call
+   * {@link #recordMiss()}.
+   *
+   * @param user    The user
+   * @param passKey The passkey
+   *
+   * @return {@code true} if the credential is cached and has not expired
+   */
+
+  public boolean check(
+    final WBUserName user,
+    final WBPassKey passKey)
+  {
+    Objects.requireNonNull(user, "user");
+    Objects.requireNonNull(passKey, "passKey");
+
+    if (!this.isEnabled()) {
+      return false;
+    }
+
+    final Entry entry;
+    synchronized (this.entries) {
+      entry = this.entries.get(user.value());
+    }
+
+    if (entry == null) {
+      return false;
+    }
+
+    if (System.nanoTime() - entry.expires >= 0L) {
+      synchronized (this.entries) {
+        this.entries.remove(user.value(), entry);
+      }
+      return false;
+    }
+
+    if (MessageDigest.isEqual(entry.digest, digestOf(passKey))) {
+      this.hits.increment();
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Record that an authentication attempt could not be answered from the
+   * cache.
+   */
+
+  public void recordMiss()
+  {
+    this.misses.increment();
+  }
+
+  /**
+   * Cache a credential that has just been successfully verified. The
+   * credential is not cached if the cache has been invalidated since
+   * {@code observedGeneration} was obtained.
+   *
+   * @param user               The user
+   * @param passKey            The passkey
+   * @param observedGeneration The value of {@link #generation()} observed
+   *                           before the credential was verified
+   */
+
+  public void store(
+    final WBUserName user,
+    final WBPassKey passKey,
+    final long observedGeneration)
+  {
+    Objects.requireNonNull(user, "user");
+    Objects.requireNonNull(passKey, "passKey");
+
+    if (!this.isEnabled()) {
+      return;
+    }
+
+    final var entry =
+      new Entry(digestOf(passKey), System.nanoTime() + this.expiryNanos);
+
+    synchronized (this.entries) {
+      if (this.generation.get() == observedGeneration) {
+        this.entries.put(user.value(), entry);
+      }
+    }
+  }
+
+  /**
+   * Discard any cached credential for {@code user}.
+   *
+   * @param user The user
+   */
+
+  public void invalidate(
+    final WBUserName user)
+  {
+    Objects.requireNonNull(user, "user");
+
+    synchronized (this.entries) {
+      this.generation.incrementAndGet();
+      this.entries.remove(user.value());
+    }
+  }
+
+  /**
+   * Discard any cached credentials for the named users.
+   *
+   * @param userNames The names of the users
+   */
+
+  public void invalidateNamed(
+    final Collection<String> userNames)
+  {
+    Objects.requireNonNull(userNames, "userNames");
+
+    if (userNames.isEmpty()) {
+      return;
+    }
+
+    synchronized (this.entries) {
+      this.generation.incrementAndGet();
+      for (final var name : userNames) {
+        this.entries.remove(name);
+      }
+    }
+  }
+
+  /**
+   * Discard all cached credentials.
+   */
+
+  public void invalidateAll()
+  {
+    synchronized (this.entries) {
+      this.generation.incrementAndGet();
+      this.entries.clear();
+    }
+  }
+
+  /**
+   * @return The number of authentication attempts answered from the cache
+   */
+
+  public long hits()
+  {
+    return this.hits.sum();
+  }
+
+  /**
+   * @return The number of authentication attempts not answered from the cache
+   */
+
+  public long misses()
+  {
+    return this.misses.sum();
+  }
+
+  /**
+   * @return The number of credentials currently cached
+   */
+
+  public int size()
+  {
+    synchronized (this.entries) {
+      return this.entries.size();
+    }
+  }
+
+  private record Entry(
+    byte[] digest,
+    long expires)
+  {
+
+  }
+
+  private static final class Entries extends LinkedHashMap<String, Entry>
+  {
+    private final int maximumSize;
+
+    Entries(
+      final int inMaximumSize)
+    {
+      super(16, 0.75f, true);
+      this.maximumSize = inMaximumSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(
+      final Map.Entry<String, Entry> eldest)
+    {
+      return this.size() > this.maximumSize;
+    }
+  }
+}
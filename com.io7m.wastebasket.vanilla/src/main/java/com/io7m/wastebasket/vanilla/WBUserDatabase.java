@@ -18,35 +18,57 @@
 package com.io7m.wastebasket.vanilla;
 
 import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBPasswordHash;
 import com.io7m.wastebasket.api.WBUserDatabaseType;
 import com.io7m.wastebasket.api.WBUserName;
-import org.bouncycastle.util.encoders.Hex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.crypto.SecretKeyFactory;
-import javax.crypto.spec.PBEKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.OptionalLong;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
-import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
 import static java.nio.file.StandardOpenOption.WRITE;
 
 /**
  * The user database.
+ *
+ * Passwords are hashed with the preferred algorithm of the configured
+ * {@link WBPasswordAlgorithms}. Whenever a user successfully authenticates
+ * with a password that was hashed using a different algorithm (or different
+ * parameters), the password is transparently rehashed with the preferred
+ * algorithm. Rehashed passwords are queued and written to the database in
+ * batches by a background thread, so that authentication never waits for
+ * the database file to be rewritten.
+ *
+ * Writers serialize on a lock file next to the database, so that the
+ * database can safely be modified by the command-line tools whilst a server
+ * is running. Changes that the database makes to its own file are not
+ * reloaded when the file watcher reports them.
  */
 
 public final class WBUserDatabase implements WBUserDatabaseType
@@ -54,22 +76,67 @@ public final class WBUserDatabase implements WBUserDatabaseType
   private static final Logger LOG =
     LoggerFactory.getLogger(WBUserDatabase.class);
 
-  private final AtomicBoolean done = new AtomicBoolean(false);
-  private final Executor watchExecutor;
+  private static final long REHASH_BATCH_MILLISECONDS = 250L;
+
   private final Path file;
-  private volatile Properties properties;
+  private final Path lockFile;
+  private final WBUserCredentialCache cache;
+  private final WBPasswordAlgorithms algorithms;
+  private final SecureRandom random;
+  private final ConcurrentHashMap<String, Rehash> rehashQueue;
+  private final AtomicBoolean rehashScheduled;
+  private final WBFilesWatcher watcher;
+  private volatile Map<String, WBPasswordHash> credentials;
+  private byte[] loadedDigest;
 
   private WBUserDatabase(
     final Executor inWatchExecutor,
-    final Path inFile)
+    final Path inFile,
+    final WBUserCredentialCache inCache,
+    final WBPasswordAlgorithms inAlgorithms)
   {
-    this.watchExecutor =
-      Objects.requireNonNull(inWatchExecutor, "watchExecutor");
+    Objects.requireNonNull(inWatchExecutor, "watchExecutor");
+
     this.file =
       Objects.requireNonNull(inFile, "file");
+    this.cache =
+      Objects.requireNonNull(inCache, "cache");
+    this.algorithms =
+      Objects.requireNonNull(inAlgorithms, "algorithms");
+
+    this.lockFile =
+      inFile.resolveSibling(inFile.getFileName() + ".lock");
+    this.random = new SecureRandom();
+    this.rehashQueue = new ConcurrentHashMap<>();
+    this.rehashScheduled = new AtomicBoolean(false);
+    this.credentials = Map.of();
+    this.loadedDigest = new byte[0];
+
+    /*
+     * Load the database before the watcher is started so that the watcher
+     * never observes a partially constructed database.
+     */
+
+    this.reload();
+    this.watcher =
+      WBFilesWatcher.create(inWatchExecutor, List.of(inFile), this::reload);
+  }
+
+  /**
+   * Create the user database. The database is loaded immediately, and
+   * is then reloaded whenever the file changes.
+   *
+   * @param watchExecutor A file watcher executor
+   * @param file          The database file
+   *
+   * @return A database
+   */
 
-    this.properties = new Properties();
-    this.watchExecutor.execute(this::run);
+  public static WBUserDatabaseType create(
+    final Executor watchExecutor,
+    final Path file)
+  {
+    return create(watchExecutor, file, WBUserCredentialCache.disabled());
   }
 
   /**
@@ -77,56 +144,177 @@ public final class WBUserDatabase implements WBUserDatabaseType
    *
    * @param watchExecutor A file watcher executor
    * @param file          The database file
+   * @param cache         The cache of verified credentials
    *
    * @return A database
    */
 
   public static WBUserDatabaseType create(
     final Executor watchExecutor,
-    final Path file)
+    final Path file,
+    final WBUserCredentialCache cache)
   {
-    return new WBUserDatabase(watchExecutor, file);
+    return create(
+      watchExecutor,
+      file,
+      cache,
+      WBPasswordAlgorithms.createDefault());
   }
 
-  private static boolean slowEquals(
-    final byte[] a,
-    final byte[] b)
+  /**
+   * Create the user database.
+   *
+   * @param watchExecutor A file watcher executor
+   * @param file          The database file
+   * @param cache         The cache of verified credentials
+   * @param algorithms    The supported password hashing algorithms
+   *
+   * @return A database
+   */
+
+  public static WBUserDatabaseType create(
+    final Executor watchExecutor,
+    final Path file,
+    final WBUserCredentialCache cache,
+    final WBPasswordAlgorithms algorithms)
   {
-    int diff = a.length ^ b.length;
-    for (int index = 0; index < a.length && index < b.length; ++index) {
-      diff |= (int) a[index] ^ (int) b[index];
+    return new WBUserDatabase(watchExecutor, file, cache, algorithms);
+  }
+
+  private void reload()
+  {
+    try {
+      WBFileLocks.withMonitor(this.lockFile, () -> {
+        this.reloadLocked();
+        return null;
+      });
+    } catch (final IOException e) {
+      LOG.error("i/o error: ", e);
     }
-    return diff == 0;
   }
 
-  private void run()
+  /**
+   * Reload the database. The caller must hold the lock on the lock file
+   * (or at least its monitor), so that a reload cannot interleave with a
+   * write made by this database.
+   */
+
+  private void reloadLocked()
+    throws IOException
   {
-    while (!this.done.get()) {
-      boolean failed = false;
-      final Properties newProperties = new Properties();
-      try (InputStream stream = Files.newInputStream(this.file)) {
-        newProperties.load(stream);
-      } catch (final IOException e) {
-        LOG.error("i/o error: ", e);
-        failed = true;
-      }
+    final var data = this.readDatabase();
+    final var digest = digestOf(data);
+    if (MessageDigest.isEqual(digest, this.loadedDigest)) {
+      LOG.debug("user database {} is unchanged", this.file);
+      return;
+    }
+
+    final var newProperties = parseProperties(data);
+    final var changed = this.install(newProperties, digest);
+    LOG.info(
+      "loaded {} users ({} changed); credential cache: hits {} misses {}",
+      Integer.valueOf(this.credentials.size()),
+      Integer.valueOf(changed.size()),
+      Long.valueOf(this.cache.hits()),
+      Long.valueOf(this.cache.misses()));
+  }
+
+  /**
+   * Replace the in-memory credentials with those in the given properties,
+   * and discard the cached credentials of any user whose entry changed.
+   */
+
+  private Set<String> install(
+    final Properties newProperties,
+    final byte[] digest)
+  {
+    final var oldCredentials = this.credentials;
+    final var newCredentials = this.compile(newProperties);
+    this.credentials = newCredentials;
+    this.loadedDigest = digest;
+
+    final var changed = changedUsers(oldCredentials, newCredentials);
+    this.cache.invalidateNamed(changed);
+    return changed;
+  }
 
-      if (!failed) {
-        this.properties = newProperties;
+  /**
+   * Determine the users whose credentials differ between two versions of
+   * the database. Only these users need to have their cached credentials
+   * discarded when the database is reloaded.
+   */
+
+  private static Set<String> changedUsers(
+    final Map<String, WBPasswordHash> oldCredentials,
+    final Map<String, WBPasswordHash> newCredentials)
+  {
+    final var changed = new HashSet<String>();
+    for (final var entry : oldCredentials.entrySet()) {
+      final var name = entry.getKey();
+      final var newHash = newCredentials.get(name);
+      if (newHash == null
+          || !newHash.serialize().equals(entry.getValue().serialize())) {
+        changed.add(name);
       }
+    }
+    return changed;
+  }
+
+  private static byte[] digestOf(
+    final byte[] data)
+  {
+    try {
+      return MessageDigest.getInstance("SHA-256").digest(data);
+    } catch (final NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
 
+  private static Properties parseProperties(
+    final byte[] data)
+    throws IOException
+  {
+    final var properties = new Properties();
+    properties.load(new ByteArrayInputStream(data));
+    return properties;
+  }
+
+  private byte[] readDatabase()
+    throws IOException
+  {
+    try {
+      return Files.readAllBytes(this.file);
+    } catch (final NoSuchFileException e) {
+      LOG.warn("user database {} does not exist", this.file);
+      return new byte[0];
+    }
+  }
+
+  private Map<String, WBPasswordHash> compile(
+    final Properties newProperties)
+  {
+    final var newCredentials =
+      new HashMap<String, WBPasswordHash>(newProperties.size());
+
+    for (final var name : newProperties.stringPropertyNames()) {
       try {
-        Thread.sleep(5_000L);
-      } catch (final InterruptedException e) {
-        Thread.currentThread().interrupt();
+        newCredentials.put(
+          name,
+          this.algorithms.parseHash(newProperties.getProperty(name))
+        );
+      } catch (final IllegalArgumentException e) {
+        LOG.error(
+          "could not parse password data for {}: {}", name, e.getMessage());
       }
     }
+    return Map.copyOf(newCredentials);
   }
 
   @Override
   public void close()
   {
-    this.done.set(true);
+    this.watcher.close();
+    this.rehashQueued();
   }
 
   @Override
@@ -137,46 +325,207 @@ public final class WBUserDatabase implements WBUserDatabaseType
     Objects.requireNonNull(user, "user");
     Objects.requireNonNull(password, "password");
 
-    final var passwordData = (String) this.properties.get(user.value());
-    if (passwordData == null) {
+    if (this.cache.check(user, password)) {
+      return true;
+    }
+
+    this.cache.recordMiss();
+    final var generation = this.cache.generation();
+    if (this.authenticateUncached(user, password)) {
+      this.cache.store(user, password, generation);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean authenticateCached(
+    final WBUserName user,
+    final WBPassKey password)
+  {
+    Objects.requireNonNull(user, "user");
+    Objects.requireNonNull(password, "password");
+
+    return this.cache.check(user, password);
+  }
+
+  @Override
+  public boolean userExists(
+    final WBUserName user)
+  {
+    Objects.requireNonNull(user, "user");
+    return this.credentials.containsKey(user.value());
+  }
+
+  @Override
+  public OptionalLong credentialFingerprint(
+    final WBUserName user)
+  {
+    Objects.requireNonNull(user, "user");
+
+    /*
+     * A password that has been rehashed but not yet written is reported
+     * with the fingerprint of its new hash, so that tokens issued to the
+     * user remain valid once the new hash has been written.
+     */
+
+    final var rehash = this.rehashQueue.get(user.value());
+    if (rehash != null) {
+      return OptionalLong.of(rehash.replacement().fingerprint());
+    }
+
+    final var credential = this.credentials.get(user.value());
+    if (credential == null) {
+      return OptionalLong.empty();
+    }
+    return OptionalLong.of(credential.fingerprint());
+  }
+
+  private boolean authenticateUncached(
+    final WBUserName user,
+    final WBPassKey password)
+  {
+    final var credential = this.credentials.get(user.value());
+    if (credential == null) {
       return false;
     }
 
-    final var segments = List.of(passwordData.split(":"));
-    if (segments.size() != 4) {
-      LOG.error("could not parse password data for {}", user);
+    try {
+      if (!credential.check(password)) {
+        return false;
+      }
+    } catch (final GeneralSecurityException e) {
+      LOG.error("error checking password: ", e);
       return false;
     }
 
-    final String algo = segments.get(0);
-    switch (algo) {
-      case "pbkdf2": {
-        try {
-          final byte[] salt = Hex.decode(segments.get(1));
-          final int param = Integer.parseInt(segments.get(2));
-
-          final PBEKeySpec spec =
-            new PBEKeySpec(
-              password.value().toCharArray(),
-              salt,
-              param,
-              128);
-          final SecretKeyFactory skf =
-            SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-
-          final var storedHash = Hex.decode(segments.get(3));
-          final var receivedHash = skf.generateSecret(spec).getEncoded();
-          return (slowEquals(storedHash, receivedHash));
-        } catch (final Exception e) {
-          LOG.error("error checking password: ", e);
-          return false;
-        }
+    if (!credential.algorithm().isSameAs(this.algorithms.preferred())) {
+      this.queueRehash(user, password, credential);
+    }
+    return true;
+  }
+
+  /**
+   * Hash the password with the preferred algorithm, and queue the new hash
+   * to be written to the database by a background thread.
+   */
+
+  private void queueRehash(
+    final WBUserName user,
+    final WBPassKey password,
+    final WBPasswordHash credential)
+  {
+    if (this.rehashQueue.containsKey(user.value())) {
+      return;
+    }
+
+    final WBPasswordHash newHash;
+    try {
+      newHash = this.algorithms.preferred().hash(this.random, password);
+    } catch (final GeneralSecurityException e) {
+      LOG.error("could not rehash password for {}: ", user.value(), e);
+      return;
+    }
+
+    this.rehashQueue.putIfAbsent(user.value(), new Rehash(credential, newHash));
+    if (this.rehashScheduled.compareAndSet(false, true)) {
+      Thread.ofVirtual()
+        .name("com.io7m.wastebasket.users.rehash")
+        .start(this::rehashLater);
+    }
+  }
+
+  private void rehashLater()
+  {
+    try {
+      Thread.sleep(REHASH_BATCH_MILLISECONDS);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    /*
+     * Clear the flag before draining the queue, so that a rehash queued
+     * after the queue has been drained schedules another batch.
+     */
+
+    this.rehashScheduled.set(false);
+    this.rehashQueued();
+  }
+
+  private void rehashQueued()
+  {
+    if (this.rehashQueue.isEmpty()) {
+      return;
+    }
+
+    /*
+     * Entries are only removed from the queue once the new hashes have been
+     * installed, so that credentialFingerprint() never briefly reports the
+     * fingerprint of the old hash.
+     */
+
+    final var batch = Map.copyOf(this.rehashQueue);
+    try {
+      final int applied =
+        WBFileLocks.withLock(this.lockFile, () -> this.applyRehashes(batch));
+      LOG.info(
+        "rehashed passwords for {} of {} users",
+        Integer.valueOf(applied),
+        Integer.valueOf(batch.size()));
+    } catch (final IOException e) {
+      LOG.error("could not rehash passwords: ", e);
+    } finally {
+      for (final var entry : batch.entrySet()) {
+        this.rehashQueue.remove(entry.getKey(), entry.getValue());
       }
-      default: {
-        LOG.error("unsupported algorithm {}", algo);
-        return false;
+    }
+  }
+
+  private int applyRehashes(
+    final Map<String, Rehash> batch)
+    throws IOException
+  {
+    final var loadedProps = this.loadProperties();
+
+    int applied = 0;
+    for (final var entry : batch.entrySet()) {
+      final var name = entry.getKey();
+      final var rehash = entry.getValue();
+      final var existingText = loadedProps.getProperty(name);
+      if (existingText == null) {
+        continue;
+      }
+
+      /*
+       * Don't overwrite the entry if it has been changed by someone else
+       * since the password was checked.
+       */
+
+      try {
+        final var existing = this.algorithms.parseHash(existingText);
+        if (!existing.serialize().equals(rehash.previous().serialize())) {
+          continue;
+        }
+      } catch (final IllegalArgumentException e) {
+        LOG.error(
+          "could not parse password data for {}: {}", name, e.getMessage());
+        continue;
       }
+
+      loadedProps.setProperty(name, rehash.replacement().serialize());
+      ++applied;
     }
+
+    if (applied > 0) {
+      this.replaceDatabase(loadedProps);
+    }
+    return applied;
+  }
+
+  private Properties loadProperties()
+    throws IOException
+  {
+    return parseProperties(this.readDatabase());
   }
 
   @Override
@@ -185,53 +534,70 @@ public final class WBUserDatabase implements WBUserDatabaseType
     final WBPassKey password)
     throws GeneralSecurityException, IOException
   {
-    final var secureRandom = new SecureRandom();
-
-    final byte[] salt = new byte[16];
-    secureRandom.nextBytes(salt);
-
-    final int iterationCount = 10_000;
-    final PBEKeySpec spec =
-      new PBEKeySpec(
-        password.value().toCharArray(),
-        salt,
-        iterationCount,
-        128);
-    final SecretKeyFactory skf =
-      SecretKeyFactory.getInstance("PBKDF2WithHmacSHA1");
-    final var receivedHash =
-      skf.generateSecret(spec).getEncoded();
-
-    final Properties loadedProps = new Properties();
-    try (InputStream stream = Files.newInputStream(this.file)) {
-      loadedProps.load(stream);
-    } catch (final NoSuchFileException e) {
-      LOG.info("{} does not exist; creating a new database", this.file);
-    }
+    Objects.requireNonNull(user, "user");
+    Objects.requireNonNull(password, "password");
+
+    final var hash =
+      this.algorithms.preferred().hash(this.random, password);
 
-    loadedProps.setProperty(
-      user.value(),
-      String.format(
-        "%s:%s:%d:%s",
-        "pbkdf2",
-        Hex.toHexString(salt),
-        Integer.valueOf(iterationCount),
-        Hex.toHexString(receivedHash)
-      ));
-
-    this.replaceDatabase(loadedProps);
+    WBFileLocks.withLock(this.lockFile, () -> {
+      final Properties loadedProps = this.loadProperties();
+      loadedProps.setProperty(user.value(), hash.serialize());
+      this.replaceDatabase(loadedProps);
+      return null;
+    });
   }
 
+  @Override
+  public void userAddAll(
+    final Map<WBUserName, WBPassKey> users)
+    throws GeneralSecurityException, IOException
+  {
+    Objects.requireNonNull(users, "users");
+
+    final var hashes =
+      this.algorithms.hashAll(
+        this.random,
+        users,
+        Runtime.getRuntime().availableProcessors());
+
+    WBFileLocks.withLock(this.lockFile, () -> {
+      final Properties loadedProps = this.loadProperties();
+      for (final var entry : hashes.entrySet()) {
+        loadedProps.setProperty(
+          entry.getKey().value(),
+          entry.getValue().serialize());
+      }
+      this.replaceDatabase(loadedProps);
+      return null;
+    });
+  }
+
+  /**
+   * Atomically replace the database file, and install the new contents as
+   * the current credentials. The caller must hold the lock on the lock file.
+   * Any temporary file left behind by an earlier interrupted write is simply
+   * overwritten.
+   */
+
   private void replaceDatabase(
     final Properties newProperties)
     throws IOException
   {
+    final var bytes = new ByteArrayOutputStream();
+    newProperties.store(bytes, "");
+    final var data = bytes.toByteArray();
+
     final Path userDatabaseTmp =
       this.file.resolveSibling(this.file.getFileName() + ".tmp");
 
-    try (OutputStream outputStream =
-           Files.newOutputStream(userDatabaseTmp, CREATE_NEW, WRITE)) {
-      newProperties.store(outputStream, "");
+    try (var channel =
+           FileChannel.open(userDatabaseTmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+      final var buffer = ByteBuffer.wrap(data);
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
     }
 
     LOG.info(
@@ -244,6 +610,8 @@ public final class WBUserDatabase implements WBUserDatabaseType
       this.file,
       ATOMIC_MOVE,
       REPLACE_EXISTING);
+
+    this.install(newProperties, digestOf(data));
   }
 
   @Override
@@ -251,12 +619,20 @@ public final class WBUserDatabase implements WBUserDatabaseType
     final WBUserName user)
     throws IOException
   {
-    final Properties loadedProps = new Properties();
-    try (InputStream stream = Files.newInputStream(this.file)) {
-      loadedProps.load(stream);
-    }
+    Objects.requireNonNull(user, "user");
+
+    WBFileLocks.withLock(this.lockFile, () -> {
+      final var loadedProps = parseProperties(Files.readAllBytes(this.file));
+      loadedProps.remove(user.value());
+      this.replaceDatabase(loadedProps);
+      return null;
+    });
+  }
+
+  private record Rehash(
+    WBPasswordHash previous,
+    WBPasswordHash replacement)
+  {
 
-    loadedProps.remove(user.value());
-    this.replaceDatabase(loadedProps);
   }
 }
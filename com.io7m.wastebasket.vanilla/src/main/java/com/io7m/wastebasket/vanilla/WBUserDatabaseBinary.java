@@ -0,0 +1,1084 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBPassKey;
+import com.io7m.wastebasket.api.WBPasswordHash;
+import com.io7m.wastebasket.api.WBUserDatabaseType;
+import com.io7m.wastebasket.api.WBUserName;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32C;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A user database stored in a compact binary file, intended for databases
+ * with very large numbers of users.
+ *
+ * The file is a header followed by a log of records, each of which either
+ * sets the password hash of a user or deletes a user. Later records
+ * override earlier ones. Each record carries a checksum, and a torn record
+ * at the end of the file (from an interrupted write) is ignored and then
+ * overwritten by the next write. On load, the file is memory-mapped and
+ * scanned once to build an index from user names to the offsets of their
+ * current records; password hashes are read directly from the mapping when
+ * needed. Changes are appended to the file through a channel, so adding or
+ * deleting a user costs time proportional to the size of the change rather
+ * than the size of the database. Appended records are kept in a small
+ * in-memory tail until the tail grows large enough to be worth mapping.
+ * When more than half of the records in the file have been superseded, the
+ * file is compacted by rewriting only the current records.
+ *
+ * Passwords that must be rehashed with the preferred algorithm are queued
+ * and appended to the file in batches by a background thread, so that
+ * authentication never waits for the file lock or for the file to be
+ * flushed.
+ *
+ * Writers serialize on a lock file next to the database, so that the
+ * database can safely be modified by the command-line tools whilst a server
+ * is running. Changes that the database makes to its own file are not
+ * reloaded when the file watcher reports them, and a reload only discards
+ * the cached credentials of users whose records changed.
+ */
+
+public final class WBUserDatabaseBinary implements WBUserDatabaseType
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBUserDatabaseBinary.class);
+
+  /**
+   * The magic number at the start of binary user databases ("WBUD").
+   */
+
+  static final int MAGIC = 0x57425544;
+
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 8;
+  private static final int RECORD_HEADER_SIZE = 8;
+  private static final byte OP_PUT = 1;
+  private static final byte OP_DELETE = 2;
+  private static final int COMPACTION_MINIMUM = 1024;
+  private static final int TAIL_MAXIMUM = 1024 * 1024;
+  private static final long REHASH_BATCH_MILLISECONDS = 250L;
+
+  private final Path file;
+  private final Path lockFile;
+  private final WBUserCredentialCache cache;
+  private final WBPasswordAlgorithms algorithms;
+  private final SecureRandom random;
+  private final ConcurrentHashMap<String, Rehash> rehashQueue;
+  private final AtomicBoolean rehashScheduled;
+  private final WBFilesWatcher watcher;
+  private volatile State state;
+
+  private WBUserDatabaseBinary(
+    final Executor inWatchExecutor,
+    final Path inFile,
+    final WBUserCredentialCache inCache,
+    final WBPasswordAlgorithms inAlgorithms)
+  {
+    Objects.requireNonNull(inWatchExecutor, "watchExecutor");
+
+    this.file =
+      Objects.requireNonNull(inFile, "file");
+    this.cache =
+      Objects.requireNonNull(inCache, "cache");
+    this.algorithms =
+      Objects.requireNonNull(inAlgorithms, "algorithms");
+
+    this.lockFile =
+      inFile.resolveSibling(inFile.getFileName() + ".lock");
+    this.random = new SecureRandom();
+    this.rehashQueue = new ConcurrentHashMap<>();
+    this.rehashScheduled = new AtomicBoolean(false);
+    this.state = State.empty();
+    this.reload();
+    this.watcher =
+      WBFilesWatcher.create(inWatchExecutor, List.of(inFile), this::reload);
+  }
+
+  /**
+   * Create the user database. The database is loaded immediately, and
+   * is then reloaded whenever the file changes.
+   *
+   * @param watchExecutor A file watcher executor
+   * @param file          The database file
+   * @param cache         The cache of verified credentials
+   * @param algorithms    The supported password hashing algorithms
+   *
+   * @return A database
+   */
+
+  public static WBUserDatabaseType create(
+    final Executor watchExecutor,
+    final Path file,
+    final WBUserCredentialCache cache,
+    final WBPasswordAlgorithms algorithms)
+  {
+    return new WBUserDatabaseBinary(watchExecutor, file, cache, algorithms);
+  }
+
+  /**
+   * Read every user in the given database file.
+   *
+   * @param file       The database file
+   * @param algorithms The supported password hashing algorithms
+   *
+   * @return The password hashes of all users
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static Map<String, WBPasswordHash> readAll(
+    final Path file,
+    final WBPasswordAlgorithms algorithms)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(algorithms, "algorithms");
+
+    final State loaded;
+    try (var channel = FileChannel.open(file, READ)) {
+      loaded = State.load(channel, fileKey(file));
+    }
+
+    final var results =
+      new HashMap<String, WBPasswordHash>(loaded.offsets().size());
+    for (final var entry : loaded.offsets().entrySet()) {
+      try {
+        results.put(
+          entry.getKey(),
+          loaded.readHash(algorithms, entry.getValue().intValue()));
+      } catch (final IllegalArgumentException e) {
+        LOG.error(
+          "could not parse password data for {}: {}",
+          entry.getKey(),
+          e.getMessage());
+      }
+    }
+    return results;
+  }
+
+  /**
+   * Write a new database file containing the given users. Any existing file
+   * is atomically replaced.
+   *
+   * @param file   The database file
+   * @param hashes The password hashes of all users
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static void writeAll(
+    final Path file,
+    final Map<String, WBPasswordHash> hashes)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(hashes, "hashes");
+
+    final var records = new ArrayList<ByteBuffer>(hashes.size());
+    for (final var entry : hashes.entrySet()) {
+      records.add(encodePut(entry.getKey(), entry.getValue()));
+    }
+    replaceFile(file, records);
+  }
+
+  private static void replaceFile(
+    final Path file,
+    final List<ByteBuffer> records)
+    throws IOException
+  {
+    final var fileTmp =
+      file.resolveSibling(file.getFileName() + ".tmp");
+
+    try (var channel =
+           FileChannel.open(fileTmp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+      channel.write(header());
+      for (final var record : records) {
+        while (record.hasRemaining()) {
+          channel.write(record);
+        }
+      }
+      channel.force(true);
+    }
+
+    LOG.info("replacing user database {} -> {}", fileTmp, file);
+    Files.move(fileTmp, file, ATOMIC_MOVE, REPLACE_EXISTING);
+  }
+
+  private static ByteBuffer header()
+  {
+    return ByteBuffer.allocate(HEADER_SIZE)
+      .putInt(MAGIC)
+      .putInt(VERSION)
+      .flip();
+  }
+
+  private static ByteBuffer encodePut(
+    final String name,
+    final WBPasswordHash hash)
+  {
+    final var algorithm = hash.algorithm();
+    final var nameBytes = name.getBytes(US_ASCII);
+    final var specBytes =
+      (algorithm.name() + ":" + algorithm.parameters()).getBytes(UTF_8);
+
+    final var body =
+      ByteBuffer.allocate(
+        1 + 1 + nameBytes.length
+        + 1 + specBytes.length
+        + 1 + hash.salt().length
+        + 1 + hash.hash().length);
+
+    body.put(OP_PUT);
+    putBytes(body, nameBytes);
+    putBytes(body, specBytes);
+    putBytes(body, hash.salt());
+    putBytes(body, hash.hash());
+    return record(body);
+  }
+
+  private static ByteBuffer encodeDelete(
+    final String name)
+  {
+    final var nameBytes = name.getBytes(US_ASCII);
+    final var body = ByteBuffer.allocate(1 + 1 + nameBytes.length);
+    body.put(OP_DELETE);
+    putBytes(body, nameBytes);
+    return record(body);
+  }
+
+  private static void putBytes(
+    final ByteBuffer buffer,
+    final byte[] data)
+  {
+    if (data.length > 0xff) {
+      throw new IllegalArgumentException(
+        String.format("Field too long (%d bytes)", data.length));
+    }
+    buffer.put((byte) data.length);
+    buffer.put(data);
+  }
+
+  private static ByteBuffer record(
+    final ByteBuffer body)
+  {
+    body.flip();
+
+    final var crc = new CRC32C();
+    crc.update(body.duplicate());
+
+    final var record =
+      ByteBuffer.allocate(RECORD_HEADER_SIZE + body.remaining());
+    record.putInt(body.remaining());
+    record.putInt((int) crc.getValue());
+    record.put(body);
+    return record.flip();
+  }
+
+  private void reload()
+  {
+    try {
+      WBFileLocks.withMonitor(this.lockFile, () -> {
+        this.reloadLocked();
+        return null;
+      });
+    } catch (final IOException e) {
+      LOG.error("i/o error: ", e);
+    }
+  }
+
+  /**
+   * Reload the database. The caller must hold the lock on the lock file
+   * (or at least its monitor), so that a reload cannot interleave with a
+   * write made by this database.
+   */
+
+  private void reloadLocked()
+    throws IOException
+  {
+    final var current = this.state;
+    final State loaded;
+    try (var channel = FileChannel.open(this.file, READ)) {
+      final var fileKey = fileKey(this.file);
+      if (current.isSameFile(fileKey, channel.size())) {
+        LOG.debug("user database {} is unchanged", this.file);
+        return;
+      }
+      loaded = State.load(channel, fileKey);
+    } catch (final NoSuchFileException e) {
+      LOG.warn("user database {} does not exist", this.file);
+      return;
+    }
+
+    this.state = loaded;
+
+    final var changed = current.changedIn(loaded);
+    this.cache.invalidateNamed(changed);
+    LOG.info(
+      "loaded {} users ({} changed, {} superseded records); credential cache: hits {} misses {}",
+      Integer.valueOf(loaded.offsets().size()),
+      Integer.valueOf(changed.size()),
+      Integer.valueOf(loaded.dead()),
+      Long.valueOf(this.cache.hits()),
+      Long.valueOf(this.cache.misses()));
+  }
+
+  @Override
+  public void close()
+  {
+    this.watcher.close();
+    this.rehashQueued();
+  }
+
+  @Override
+  public boolean authenticate(
+    final WBUserName user,
+    final WBPassKey password)
+  {
+    Objects.requireNonNull(user, "user");
+    Objects.requireNonNull(password, "password");
+
+    if (this.cache.check(user, password)) {
+      return true;
+    }
+
+    this.cache.recordMiss();
+    final var generation = this.cache.generation();
+    if (this.authenticateUncached(user, password)) {
+      this.cache.store(user, password, generation);
+      return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean authenticateCached(
+    final WBUserName user,
+    final WBPassKey password)
+  {
+    Objects.requireNonNull(user, "user");
+    Objects.requireNonNull(password, "password");
+
+    return this.cache.check(user, password);
+  }
+
+  @Override
+  public boolean userExists(
+    final WBUserName user)
+  {
+    Objects.requireNonNull(user, "user");
+    return this.state.offsets().containsKey(user.value());
+  }
+
+  @Override
+  public OptionalLong credentialFingerprint(
+    final WBUserName user)
+  {
+    Objects.requireNonNull(user, "user");
+
+    /*
+     * A password that has been rehashed but not yet written is reported
+     * with the fingerprint of its new hash, so that tokens issued to the
+     * user remain valid once the new hash has been written.
+     */
+
+    final var rehash = this.rehashQueue.get(user.value());
+    if (rehash != null) {
+      return OptionalLong.of(rehash.replacement().fingerprint());
+    }
+
+    final var current = this.state;
+    final var offset = current.offsets().get(user.value());
+    if (offset == null) {
+      return OptionalLong.empty();
+    }
+
+    try {
+      return OptionalLong.of(
+        current.readHash(this.algorithms, offset.intValue()).fingerprint());
+    } catch (final IllegalArgumentException e) {
+      LOG.error(
+        "could not parse password data for {}: {}",
+        user.value(),
+        e.getMessage());
+      return OptionalLong.empty();
+    }
+  }
+
+  private boolean authenticateUncached(
+    final WBUserName user,
+    final WBPassKey password)
+  {
+    final var current = this.state;
+    final var offset = current.offsets().get(user.value());
+    if (offset == null) {
+      return false;
+    }
+
+    final WBPasswordHash credential;
+    try {
+      credential = current.readHash(this.algorithms, offset.intValue());
+      if (!credential.check(password)) {
+        return false;
+      }
+    } catch (final IllegalArgumentException e) {
+      LOG.error(
+        "could not parse password data for {}: {}",
+        user.value(),
+        e.getMessage());
+      return false;
+    } catch (final GeneralSecurityException e) {
+      LOG.error("error checking password: ", e);
+      return false;
+    }
+
+    if (!credential.algorithm().isSameAs(this.algorithms.preferred())) {
+      this.queueRehash(user, password, credential);
+    }
+    return true;
+  }
+
+  /**
+   * Hash the password with the preferred algorithm, and queue the new hash
+   * to be appended to the database by a background thread.
+   */
+
+  private void queueRehash(
+    final WBUserName user,
+    final WBPassKey password,
+    final WBPasswordHash credential)
+  {
+    if (this.rehashQueue.containsKey(user.value())) {
+      return;
+    }
+
+    final WBPasswordHash newHash;
+    try {
+      newHash = this.algorithms.preferred().hash(this.random, password);
+    } catch (final GeneralSecurityException e) {
+      LOG.error("could not rehash password for {}: ", user.value(), e);
+      return;
+    }
+
+    this.rehashQueue.putIfAbsent(user.value(), new Rehash(credential, newHash));
+    if (this.rehashScheduled.compareAndSet(false, true)) {
+      Thread.ofVirtual()
+        .name("com.io7m.wastebasket.users.rehash")
+        .start(this::rehashLater);
+    }
+  }
+
+  private void rehashLater()
+  {
+    try {
+      Thread.sleep(REHASH_BATCH_MILLISECONDS);
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    /*
+     * Clear the flag before draining the queue, so that a rehash queued
+     * after the queue has been drained schedules another batch.
+     */
+
+    this.rehashScheduled.set(false);
+    this.rehashQueued();
+  }
+
+  private void rehashQueued()
+  {
+    if (this.rehashQueue.isEmpty()) {
+      return;
+    }
+
+    /*
+     * Entries are only removed from the queue once the new hashes have been
+     * installed, so that credentialFingerprint() never briefly reports the
+     * fingerprint of the old hash.
+     */
+
+    final var batch = Map.copyOf(this.rehashQueue);
+    final var applied = new ArrayList<String>(batch.size());
+    try {
+      this.append(latest -> this.selectRehashes(latest, batch, applied));
+      LOG.info(
+        "rehashed passwords for {} of {} users",
+        Integer.valueOf(applied.size()),
+        Integer.valueOf(batch.size()));
+    } catch (final IOException e) {
+      LOG.error("could not rehash passwords: ", e);
+    } finally {
+      for (final var entry : batch.entrySet()) {
+        this.rehashQueue.remove(entry.getKey(), entry.getValue());
+      }
+    }
+  }
+
+  /**
+   * Select the records for the rehashes in {@code batch} whose users still
+   * have the hashes that were checked, adding the names of those users to
+   * {@code applied}.
+   *
+   * @return The records, or {@code null} if there are none
+   */
+
+  private List<ByteBuffer> selectRehashes(
+    final State latest,
+    final Map<String, Rehash> batch,
+    final List<String> applied)
+  {
+    applied.clear();
+
+    final var records = new ArrayList<ByteBuffer>(batch.size());
+    for (final var entry : batch.entrySet()) {
+      final var name = entry.getKey();
+      final var rehash = entry.getValue();
+      final var offset = latest.offsets().get(name);
+      if (offset == null) {
+        continue;
+      }
+
+      /*
+       * Don't overwrite the entry if it has been changed by someone else
+       * since the password was checked.
+       */
+
+      try {
+        final var existing =
+          latest.readHash(this.algorithms, offset.intValue());
+        if (!existing.serialize().equals(rehash.previous().serialize())) {
+          continue;
+        }
+      } catch (final IllegalArgumentException e) {
+        LOG.error(
+          "could not parse password data for {}: {}", name, e.getMessage());
+        continue;
+      }
+
+      records.add(encodePut(name, rehash.replacement()));
+      applied.add(name);
+    }
+    return records.isEmpty() ? null : records;
+  }
+
+  @Override
+  public void userAdd(
+    final WBUserName user,
+    final WBPassKey password)
+    throws GeneralSecurityException, IOException
+  {
+    Objects.requireNonNull(user, "user");
+    Objects.requireNonNull(password, "password");
+
+    final var hash =
+      this.algorithms.preferred().hash(this.random, password);
+
+    this.append(List.of(encodePut(user.value(), hash)), latest -> true);
+    this.cache.invalidate(user);
+  }
+
+  @Override
+  public void userAddAll(
+    final Map<WBUserName, WBPassKey> users)
+    throws GeneralSecurityException, IOException
+  {
+    Objects.requireNonNull(users, "users");
+
+    final var hashes =
+      this.algorithms.hashAll(
+        this.random,
+        users,
+        Runtime.getRuntime().availableProcessors());
+
+    final var records = new ArrayList<ByteBuffer>(hashes.size());
+    for (final var entry : hashes.entrySet()) {
+      records.add(encodePut(entry.getKey().value(), entry.getValue()));
+    }
+
+    this.append(records, latest -> true);
+    for (final var user : users.keySet()) {
+      this.cache.invalidate(user);
+    }
+  }
+
+  @Override
+  public void userDelete(
+    final WBUserName user)
+    throws IOException
+  {
+    Objects.requireNonNull(user, "user");
+
+    this.append(
+      List.of(encodeDelete(user.value())),
+      latest -> latest.offsets().containsKey(user.value()));
+    this.cache.invalidate(user);
+  }
+
+  private boolean append(
+    final List<ByteBuffer> records,
+    final PreconditionType precondition)
+    throws IOException
+  {
+    return this.append(latest -> precondition.holds(latest) ? records : null);
+  }
+
+  private boolean append(
+    final RecordSelectorType selector)
+    throws IOException
+  {
+    return WBFileLocks.withLock(this.lockFile, () -> {
+      try (var channel = FileChannel.open(this.file, CREATE, READ, WRITE)) {
+        final var latest = this.refresh(channel);
+        final var records = selector.select(latest);
+        if (records == null) {
+          return Boolean.FALSE;
+        }
+
+        if (latest.end() == 0) {
+          channel.write(header(), 0L);
+        } else {
+          channel.truncate(latest.end());
+        }
+
+        channel.position(Math.max(HEADER_SIZE, latest.end()));
+        for (final var record : records) {
+          final var data = record.duplicate();
+          while (data.hasRemaining()) {
+            channel.write(data);
+          }
+        }
+        channel.force(false);
+
+        final State updated;
+        if (latest.end() == 0) {
+          updated = State.load(channel, fileKey(this.file));
+        } else {
+          updated = latest.extend(channel, records);
+        }
+
+        this.state = updated;
+        if (updated.needsCompaction()) {
+          this.compact(updated);
+        }
+        return Boolean.TRUE;
+      }
+    }).booleanValue();
+  }
+
+  /**
+   * Bring the in-memory state up to date with the file, which may have been
+   * modified or replaced by another process. The caller must hold the file
+   * lock.
+   */
+
+  private State refresh(
+    final FileChannel channel)
+    throws IOException
+  {
+    final var current = this.state;
+    final var fileKey = fileKey(this.file);
+
+    if (current.isSameFile(fileKey, channel.size())) {
+      return current;
+    }
+    return State.load(channel, fileKey);
+  }
+
+  private static Object fileKey(
+    final Path file)
+    throws IOException
+  {
+    return Files.readAttributes(file, BasicFileAttributes.class).fileKey();
+  }
+
+  private void compact(
+    final State current)
+    throws IOException
+  {
+    LOG.info(
+      "compacting user database {} ({} users, {} superseded records)",
+      this.file,
+      Integer.valueOf(current.offsets().size()),
+      Integer.valueOf(current.dead()));
+
+    replaceFile(this.file, current.liveRecords());
+    try (var channel = FileChannel.open(this.file, READ)) {
+      this.state = State.load(channel, fileKey(this.file));
+    }
+  }
+
+  /**
+   * The in-memory view of the database file. Records before
+   * {@code tailStart} are read from {@code buffer}, a mapping of the file;
+   * records appended by this database since the file was mapped are held
+   * in {@code tail}. Offsets are always offsets within the file.
+   */
+
+  private record State(
+    Object fileKey,
+    ByteBuffer buffer,
+    ByteBuffer tail,
+    int tailStart,
+    Map<String, Integer> offsets,
+    int records,
+    long size,
+    int end)
+  {
+    private static final ByteBuffer NO_TAIL = ByteBuffer.allocate(0);
+
+    static State empty()
+    {
+      return new State(null, NO_TAIL, NO_TAIL, 0, Map.of(), 0, 0L, 0);
+    }
+
+    static State load(
+      final FileChannel channel,
+      final Object fileKey)
+      throws IOException
+    {
+      final var size = channel.size();
+      if (size == 0L) {
+        return new State(fileKey, NO_TAIL, NO_TAIL, 0, Map.of(), 0, 0L, 0);
+      }
+      if (size < HEADER_SIZE) {
+        throw new IOException("Truncated user database header");
+      }
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("User database is too large");
+      }
+
+      final var buffer = channel.map(READ_ONLY, 0L, size);
+      if (buffer.getInt(0) != MAGIC) {
+        throw new IOException("Not a binary user database");
+      }
+      if (buffer.getInt(4) != VERSION) {
+        throw new IOException(
+          String.format(
+            "Unsupported user database version %d",
+            Integer.valueOf(buffer.getInt(4))));
+      }
+
+      final var offsets = new HashMap<String, Integer>();
+      final var scanned = scan(buffer, HEADER_SIZE, 0, offsets);
+      if (scanned.end() != buffer.limit()) {
+        LOG.warn(
+          "ignoring {} bytes of incomplete data at the end of the user database",
+          Integer.valueOf(buffer.limit() - scanned.end()));
+      }
+
+      return new State(
+        fileKey,
+        buffer,
+        NO_TAIL,
+        scanned.end(),
+        Collections.unmodifiableMap(offsets),
+        scanned.records(),
+        size,
+        scanned.end());
+    }
+
+    /**
+     * Scan the records in {@code buffer} starting at {@code start}, stopping
+     * at the first torn or corrupted record. Each record is indexed at its
+     * position in the buffer plus {@code bias}.
+     */
+
+    private static Scanned scan(
+      final ByteBuffer buffer,
+      final int start,
+      final int bias,
+      final HashMap<String, Integer> offsets)
+    {
+      final var limit = buffer.limit();
+      final var crc = new CRC32C();
+
+      int records = 0;
+      int position = start;
+      while (limit - position >= RECORD_HEADER_SIZE) {
+        final var length = buffer.getInt(position);
+        final var bodyStart = position + RECORD_HEADER_SIZE;
+        if (length < 2 || length > limit - bodyStart) {
+          break;
+        }
+
+        crc.reset();
+        crc.update(buffer.slice(bodyStart, length));
+        if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+          break;
+        }
+
+        final var name = readString(buffer, bodyStart + 1, US_ASCII);
+        if (buffer.get(bodyStart) == OP_PUT) {
+          offsets.put(name, Integer.valueOf(bias + position));
+        } else {
+          offsets.remove(name);
+        }
+
+        ++records;
+        position = bodyStart + length;
+      }
+      return new Scanned(records, position);
+    }
+
+    private static String readString(
+      final ByteBuffer buffer,
+      final int offset,
+      final Charset charset)
+    {
+      return charset.decode(ByteBuffer.wrap(readBytes(buffer, offset))).toString();
+    }
+
+    private static byte[] readBytes(
+      final ByteBuffer buffer,
+      final int offset)
+    {
+      final var data = new byte[buffer.get(offset) & 0xff];
+      buffer.get(offset + 1, data);
+      return data;
+    }
+
+    /**
+     * @return {@code true} if this state describes the given file, which has
+     * not been modified or replaced since this state was created
+     */
+
+    boolean isSameFile(
+      final Object otherFileKey,
+      final long otherSize)
+    {
+      return otherFileKey != null
+             && otherFileKey.equals(this.fileKey)
+             && otherSize == this.size;
+    }
+
+    /**
+     * Produce a new state that includes {@code written}, a list of records
+     * that have just been appended to the file at {@link #end()}.
+     */
+
+    State extend(
+      final FileChannel channel,
+      final List<ByteBuffer> written)
+      throws IOException
+    {
+      long total = 0L;
+      for (final var record : written) {
+        total += record.remaining();
+      }
+
+      final var newEnd = this.end + total;
+      if (newEnd > Integer.MAX_VALUE) {
+        throw new IOException("User database is too large");
+      }
+
+      final var newOffsets = new HashMap<>(this.offsets);
+
+      /*
+       * Once the tail grows too large, map the file again rather than
+       * copying the tail. Only the new records need to be scanned, as the
+       * offsets of the existing records are unchanged.
+       */
+
+      if (this.tail.limit() + total > TAIL_MAXIMUM) {
+        final var mapped = channel.map(READ_ONLY, 0L, newEnd);
+        final var scanned = scan(mapped, this.end, 0, newOffsets);
+        return new State(
+          this.fileKey,
+          mapped,
+          NO_TAIL,
+          scanned.end(),
+          Collections.unmodifiableMap(newOffsets),
+          this.records + scanned.records(),
+          newEnd,
+          scanned.end());
+      }
+
+      final var newTail =
+        ByteBuffer.allocate(Math.toIntExact(this.tail.limit() + total));
+      newTail.put(this.tail.duplicate().clear());
+      for (final var record : written) {
+        newTail.put(record.duplicate());
+      }
+      newTail.flip();
+
+      final var scanned =
+        scan(newTail, this.tail.limit(), this.tailStart, newOffsets);
+
+      return new State(
+        this.fileKey,
+        this.buffer,
+        newTail,
+        this.tailStart,
+        Collections.unmodifiableMap(newOffsets),
+        this.records + scanned.records(),
+        newEnd,
+        this.tailStart + scanned.end());
+    }
+
+    int dead()
+    {
+      return this.records - this.offsets.size();
+    }
+
+    boolean needsCompaction()
+    {
+      final var dead = this.dead();
+      return dead >= COMPACTION_MINIMUM && dead > this.offsets.size();
+    }
+
+    /**
+     * @return The complete record at file offset {@code offset}
+     */
+
+    private ByteBuffer recordAt(
+      final int offset)
+    {
+      final ByteBuffer source;
+      final int position;
+      if (offset < this.tailStart) {
+        source = this.buffer;
+        position = offset;
+      } else {
+        source = this.tail;
+        position = offset - this.tailStart;
+      }
+      final var length = source.getInt(position);
+      return source.slice(position, RECORD_HEADER_SIZE + length);
+    }
+
+    List<ByteBuffer> liveRecords()
+    {
+      final var results = new ArrayList<ByteBuffer>(this.offsets.size());
+      for (final var offset : this.offsets.values()) {
+        results.add(this.recordAt(offset.intValue()));
+      }
+      return results;
+    }
+
+    /**
+     * @return The names of the users whose records differ between this
+     * state and {@code newer}
+     */
+
+    Set<String> changedIn(
+      final State newer)
+    {
+      final var changed = new HashSet<String>();
+      for (final var entry : this.offsets.entrySet()) {
+        final var name = entry.getKey();
+        final var newOffset = newer.offsets.get(name);
+        if (newOffset == null) {
+          changed.add(name);
+          continue;
+        }
+
+        final var oldRecord = this.recordAt(entry.getValue().intValue());
+        final var newRecord = newer.recordAt(newOffset.intValue());
+        if (!oldRecord.equals(newRecord)) {
+          changed.add(name);
+        }
+      }
+      return changed;
+    }
+
+    WBPasswordHash readHash(
+      final WBPasswordAlgorithms inAlgorithms,
+      final int offset)
+    {
+      try {
+        final var record = this.recordAt(offset);
+        final var nameAt = RECORD_HEADER_SIZE + 1;
+        final var specAt = nameAt + 1 + (record.get(nameAt) & 0xff);
+        final var saltAt = specAt + 1 + (record.get(specAt) & 0xff);
+        final var hashAt = saltAt + 1 + (record.get(saltAt) & 0xff);
+
+        return new WBPasswordHash(
+          inAlgorithms.parseAlgorithm(readString(record, specAt, UTF_8)),
+          readBytes(record, saltAt),
+          readBytes(record, hashAt));
+      } catch (final IndexOutOfBoundsException e) {
+        throw new IllegalArgumentException("Malformed record", e);
+      }
+    }
+  }
+
+  private record Scanned(
+    int records,
+    int end)
+  {
+
+  }
+
+  @FunctionalInterface
+  private interface PreconditionType
+  {
+    boolean holds(State latest);
+  }
+
+  /**
+   * A function that chooses the records to append, given the current state
+   * of the file, or returns {@code null} if nothing should be appended.
+   */
+
+  @FunctionalInterface
+  private interface RecordSelectorType
+  {
+    List<ByteBuffer> select(State latest);
+  }
+
+  private record Rehash(
+    WBPasswordHash previous,
+    WBPasswordHash replacement)
+  {
+
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBPasswordHash;
+import com.io7m.wastebasket.api.WBUserDatabaseType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Functions over user databases in any of the supported formats.
+ */
+
+public final class WBUserDatabases
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBUserDatabases.class);
+
+  private WBUserDatabases()
+  {
+
+  }
+
+  /**
+   * Determine the format of the given user database file. Files that do not
+   * exist (or are empty) are assumed to be in the {@code PROPERTIES} format.
+   *
+   * @param file The database file
+   *
+   * @return The file format
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static WBUserDatabaseFormat formatOf(
+    final Path file)
+    throws IOException
+  {
+    return formatOf(file, WBUserDatabaseFormat.PROPERTIES);
+  }
+
+  /**
+   * Determine the format of the given user database file. Files that do not
+   * exist (or are empty) are assumed to be in the format {@code newFormat}.
+   *
+   * @param file      The database file
+   * @param newFormat The format assumed for new files
+   *
+   * @return The file format
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static WBUserDatabaseFormat formatOf(
+    final Path file,
+    final WBUserDatabaseFormat newFormat)
+    throws IOException
+  {
+    Objects.requireNonNull(file, "file");
+    Objects.requireNonNull(newFormat, "newFormat");
+
+    try (var stream = new DataInputStream(Files.newInputStream(file))) {
+      if (stream.readInt() == WBUserDatabaseBinary.MAGIC) {
+        return WBUserDatabaseFormat.BINARY;
+      }
+      return WBUserDatabaseFormat.PROPERTIES;
+    } catch (final NoSuchFileException | EOFException e) {
+      return newFormat;
+    }
+  }
+
+  /**
+   * Open a user database, using the implementation appropriate to the
+   * format of the file.
+   *
+   * @param watchExecutor A file watcher executor
+   * @param file          The database file
+   * @param cache         The cache of verified credentials
+   * @param algorithms    The supported password hashing algorithms
+   *
+   * @return A database
+   *
+   * @throws IOException On I/O errors
+   * @see #formatOf(Path)
+   */
+
+  public static WBUserDatabaseType open(
+    final Executor watchExecutor,
+    final Path file,
+    final WBUserCredentialCache cache,
+    final WBPasswordAlgorithms algorithms)
+    throws IOException
+  {
+    return open(
+      watchExecutor,
+      file,
+      cache,
+      algorithms,
+      WBUserDatabaseFormat.PROPERTIES);
+  }
+
+  /**
+   * Open a user database, using the implementation appropriate to the
+   * format of the file. If the file does not yet exist, a database in the
+   * format {@code newFormat} is created when the first user is added.
+   *
+   * @param watchExecutor A file watcher executor
+   * @param file          The database file
+   * @param cache         The cache of verified credentials
+   * @param algorithms    The supported password hashing algorithms
+   * @param newFormat     The format used if the file does not exist
+   *
+   * @return A database
+   *
+   * @throws IOException On I/O errors
+   * @see #formatOf(Path, WBUserDatabaseFormat)
+   */
+
+  public static WBUserDatabaseType open(
+    final Executor watchExecutor,
+    final Path file,
+    final WBUserCredentialCache cache,
+    final WBPasswordAlgorithms algorithms,
+    final WBUserDatabaseFormat newFormat)
+    throws IOException
+  {
+    return switch (formatOf(file, newFormat)) {
+      case PROPERTIES -> {
+        yield WBUserDatabase.create(watchExecutor, file, cache, algorithms);
+      }
+      case BINARY -> {
+        yield WBUserDatabaseBinary.create(
+          watchExecutor, file, cache, algorithms);
+      }
+    };
+  }
+
+  /**
+   * Copy every user in {@code source} to a new database file
+   * {@code target}. Password hashes are copied verbatim, so no passwords are
+   * required.
+   *
+   * @param source       The existing database file
+   * @param target       The new database file
+   * @param targetFormat The format of the new database file
+   * @param algorithms   The supported password hashing algorithms
+   *
+   * @return The number of users copied
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public static int convert(
+    final Path source,
+    final Path target,
+    final WBUserDatabaseFormat targetFormat,
+    final WBPasswordAlgorithms algorithms)
+    throws IOException
+  {
+    Objects.requireNonNull(source, "source");
+    Objects.requireNonNull(target, "target");
+    Objects.requireNonNull(targetFormat, "targetFormat");
+    Objects.requireNonNull(algorithms, "algorithms");
+
+    if (Files.exists(target)) {
+      throw new FileAlreadyExistsException(target.toString());
+    }
+
+    final var hashes = switch (formatOf(source)) {
+      case PROPERTIES -> readProperties(source, algorithms);
+      case BINARY -> WBUserDatabaseBinary.readAll(source, algorithms);
+    };
+
+    switch (targetFormat) {
+      case PROPERTIES -> writeProperties(target, hashes);
+      case BINARY -> WBUserDatabaseBinary.writeAll(target, hashes);
+    }
+
+    LOG.info(
+      "copied {} users from {} to {} ({})",
+      Integer.valueOf(hashes.size()),
+      source,
+      target,
+      targetFormat);
+    return hashes.size();
+  }
+
+  private static Map<String, WBPasswordHash> readProperties(
+    final Path file,
+    final WBPasswordAlgorithms algorithms)
+    throws IOException
+  {
+    final var properties = new Properties();
+    try (InputStream stream = Files.newInputStream(file)) {
+      properties.load(stream);
+    }
+
+    final var results = new HashMap<String, WBPasswordHash>();
+    for (final var name : properties.stringPropertyNames()) {
+      try {
+        results.put(
+          name,
+          algorithms.parseHash(properties.getProperty(name)));
+      } catch (final IllegalArgumentException e) {
+        LOG.error(
+          "could not parse password data for {}: {}", name, e.getMessage());
+      }
+    }
+    return results;
+  }
+
+  private static void writeProperties(
+    final Path file,
+    final Map<String, WBPasswordHash> hashes)
+    throws IOException
+  {
+    final var properties = new Properties();
+    for (final var entry : hashes.entrySet()) {
+      properties.setProperty(entry.getKey(), entry.getValue().serialize());
+    }
+    try (OutputStream stream = Files.newOutputStream(file, CREATE_NEW, WRITE)) {
+      properties.store(stream, "");
+    }
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * The limits applied to the deliveries of a single user. A limit of
+ * {@code 0} means that the corresponding quantity is not limited.
+ *
+ * @param storedBytes       The maximum total size in bytes of the stored
+ *                          deliveries of the user
+ * @param transferBytes     The maximum number of bytes the user may deliver
+ *                          within each transfer window
+ * @param transferWindow    The length of the transfer window
+ * @param concurrentUploads The maximum number of deliveries the user may
+ *                          have in progress at once
+ */
+
+public record WBUserQuota(
+  long storedBytes,
+  long transferBytes,
+  Duration transferWindow,
+  int concurrentUploads)
+{
+  /**
+   * A quota that limits nothing.
+   */
+
+  public static final WBUserQuota UNLIMITED =
+    new WBUserQuota(0L, 0L, Duration.ofHours(1L), 0);
+
+  /**
+   * The limits applied to the deliveries of a single user.
+   *
+   * @param storedBytes       The maximum total size in bytes of the stored
+   *                          deliveries of the user
+   * @param transferBytes     The maximum number of bytes the user may
+   *                          deliver within each transfer window
+   * @param transferWindow    The length of the transfer window
+   * @param concurrentUploads The maximum number of deliveries the user may
+   *                          have in progress at once
+   */
+
+  public WBUserQuota
+  {
+    Objects.requireNonNull(transferWindow, "transferWindow");
+
+    if (storedBytes < 0L) {
+      throw new IllegalArgumentException(
+        "Stored bytes must be non-negative");
+    }
+    if (transferBytes < 0L) {
+      throw new IllegalArgumentException(
+        "Transfer bytes must be non-negative");
+    }
+    if (transferWindow.isNegative() || transferWindow.isZero()) {
+      throw new IllegalArgumentException(
+        "Transfer window must be positive");
+    }
+    if (concurrentUploads < 0) {
+      throw new IllegalArgumentException(
+        "Concurrent uploads must be non-negative");
+    }
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+/**
+ * The outcome of asking to begin a delivery under a user's quota.
+ */
+
+public enum WBUserQuotaStatus
+{
+  /**
+   * The delivery may proceed.
+   */
+
+  ADMITTED,
+
+  /**
+   * The user already has the maximum number of deliveries in progress.
+   */
+
+  CONCURRENT_UPLOADS_EXCEEDED,
+
+  /**
+   * The delivery would exceed the bytes the user may deliver in the
+   * current transfer window.
+   */
+
+  TRANSFER_EXCEEDED,
+
+  /**
+   * The delivery would exceed the total size of the deliveries the user
+   * may store.
+   */
+
+  STORAGE_EXCEEDED
+}
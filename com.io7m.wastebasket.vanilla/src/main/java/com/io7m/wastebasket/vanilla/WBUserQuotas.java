@@ -0,0 +1,537 @@
+/*
+ * Copyright © 2026 Mark Raynsford <code@io7m.com> http://io7m.com
+ *
+ * Permission to use, copy, modify, and/or distribute this software for
+ * any purpose with or without fee is hereby granted, provided that the
+ * above copyright notice and this permission notice appear in all copies.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS" AND THE AUTHOR DISCLAIMS ALL
+ * WARRANTIES WITH REGARD TO THIS SOFTWARE INCLUDING ALL IMPLIED
+ * WARRANTIES OF MERCHANTABILITY AND FITNESS. IN NO EVENT SHALL THE AUTHOR
+ * BE LIABLE FOR ANY SPECIAL, DIRECT, INDIRECT, OR CONSEQUENTIAL DAMAGES
+ * OR ANY DAMAGES WHATSOEVER RESULTING FROM LOSS OF USE, DATA OR PROFITS,
+ * WHETHER IN AN ACTION OF CONTRACT, NEGLIGENCE OR OTHER TORTIOUS ACTION,
+ * ARISING OUT OF OR IN CONNECTION WITH THE USE OR PERFORMANCE OF THIS
+ * SOFTWARE.
+ */
+
+package com.io7m.wastebasket.vanilla;
+
+import com.io7m.wastebasket.api.WBBlobIndexType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Per-user quotas on deliveries.
+ *
+ * Quotas are read from a properties file of the form
+ * {@code user.field = value}, where the user {@code *} gives the defaults
+ * for users without their own value for a field. The fields are
+ * {@code storedBytes}, {@code transferBytes},
+ * {@code transferWindowSeconds}, and {@code concurrentUploads}. The file is
+ * reloaded whenever it changes.
+ *
+ * Each user has their own counters, so deliveries by different users never
+ * contend. A delivery is charged for its declared length when it is
+ * admitted, and the charge is adjusted when it finishes. The stored size
+ * of each user is taken from the blob index, so deletions are reflected
+ * without further bookkeeping; the bytes transferred in the current window
+ * are written to a usage file periodically, and on close, so that a
+ * restart does not reset them.
+ */
+
+public final class WBUserQuotas implements Closeable
+{
+  private static final Logger LOG =
+    LoggerFactory.getLogger(WBUserQuotas.class);
+
+  private static final String DEFAULT_USER = "*";
+
+  private final Path file;
+  private final Path usageFile;
+  private final Duration persistInterval;
+  private final Clock clock;
+  private final WBBlobIndexType index;
+  private final ConcurrentHashMap<String, Usage> usages;
+  private final Object persistLock;
+  private final WBFilesWatcher watcher;
+  private final Thread persister;
+  private volatile Map<String, WBUserQuota> quotas;
+  private volatile WBUserQuota defaultQuota;
+
+  private WBUserQuotas(
+    final Executor inWatchExecutor,
+    final Path inFile,
+    final Path inUsageFile,
+    final Duration inPersistInterval,
+    final Clock inClock,
+    final WBBlobIndexType inIndex)
+  {
+    Objects.requireNonNull(inWatchExecutor, "watchExecutor");
+
+    this.file =
+      Objects.requireNonNull(inFile, "file");
+    this.usageFile =
+      Objects.requireNonNull(inUsageFile, "usageFile");
+    this.persistInterval =
+      Objects.requireNonNull(inPersistInterval, "persistInterval");
+    this.clock =
+      Objects.requireNonNull(inClock, "clock");
+    this.index =
+      Objects.requireNonNull(inIndex, "index");
+
+    this.usages = new ConcurrentHashMap<>();
+    this.persistLock = new Object();
+    this.quotas = Map.of();
+    this.defaultQuota = WBUserQuota.UNLIMITED;
+    this.reload();
+    this.loadUsage();
+
+    this.watcher =
+      WBFilesWatcher.create(inWatchExecutor, List.of(inFile), this::reload);
+    this.persister =
+      Thread.ofVirtual()
+        .name("com.io7m.wastebasket.quotas")
+        .start(this::persistPeriodically);
+  }
+
+  /**
+   * Create the user quotas. The quotas are loaded immediately, and are
+   * then reloaded whenever the file changes.
+   *
+   * @param watchExecutor   A file watcher executor
+   * @param file            The quota file
+   * @param usageFile       The file in which transfer usage is kept
+   * @param persistInterval The interval at which usage is written to
+   *                        {@code usageFile}
+   * @param clock           The clock used to time transfer windows
+   * @param index           The blob index, used to find the stored size
+   *                        of each user
+   *
+   * @return The quotas
+   */
+
+  public static WBUserQuotas create(
+    final Executor watchExecutor,
+    final Path file,
+    final Path usageFile,
+    final Duration persistInterval,
+    final Clock clock,
+    final WBBlobIndexType index)
+  {
+    return new WBUserQuotas(
+      watchExecutor,
+      file,
+      usageFile,
+      persistInterval,
+      clock,
+      index);
+  }
+
+  private void reload()
+  {
+    final var properties = new Properties();
+    try (InputStream stream = Files.newInputStream(this.file)) {
+      properties.load(stream);
+    } catch (final NoSuchFileException e) {
+      LOG.debug("quota file {} does not exist", this.file);
+    } catch (final IOException e) {
+      LOG.error("i/o error: ", e);
+      return;
+    }
+
+    final var fields = new HashMap<String, Map<String, String>>();
+    for (final var name : properties.stringPropertyNames()) {
+      final var dot = name.lastIndexOf('.');
+      if (dot <= 0) {
+        LOG.error("could not parse quota property {}", name);
+        continue;
+      }
+      fields.computeIfAbsent(name.substring(0, dot), u -> new HashMap<>())
+        .put(name.substring(dot + 1), properties.getProperty(name));
+    }
+
+    final var newDefault =
+      compile(
+        DEFAULT_USER,
+        fields.getOrDefault(DEFAULT_USER, Map.of()),
+        WBUserQuota.UNLIMITED);
+
+    final var newQuotas = new HashMap<String, WBUserQuota>(fields.size());
+    for (final var entry : fields.entrySet()) {
+      final var user = entry.getKey();
+      if (!user.equals(DEFAULT_USER)) {
+        newQuotas.put(user, compile(user, entry.getValue(), newDefault));
+      }
+    }
+
+    this.defaultQuota = newDefault;
+    this.quotas = Map.copyOf(newQuotas);
+    LOG.info("loaded quotas for {} users", Integer.valueOf(newQuotas.size()));
+  }
+
+  private static WBUserQuota compile(
+    final String user,
+    final Map<String, String> fields,
+    final WBUserQuota base)
+  {
+    try {
+      return new WBUserQuota(
+        longOf(fields, "storedBytes", base.storedBytes()),
+        longOf(fields, "transferBytes", base.transferBytes()),
+        Duration.ofSeconds(
+          longOf(
+            fields,
+            "transferWindowSeconds",
+            base.transferWindow().toSeconds())),
+        Math.toIntExact(
+          longOf(fields, "concurrentUploads", base.concurrentUploads()))
+      );
+    } catch (final IllegalArgumentException | ArithmeticException e) {
+      LOG.error("could not parse quota for {}: {}", user, e.getMessage());
+      return base;
+    }
+  }
+
+  private static long longOf(
+    final Map<String, String> fields,
+    final String name,
+    final long base)
+  {
+    final var text = fields.get(name);
+    if (text == null) {
+      return base;
+    }
+    return Long.parseLong(text.trim());
+  }
+
+  private void loadUsage()
+  {
+    final var properties = new Properties();
+    try (InputStream stream = Files.newInputStream(this.usageFile)) {
+      properties.load(stream);
+    } catch (final NoSuchFileException e) {
+      return;
+    } catch (final IOException e) {
+      LOG.error("could not read quota usage: ", e);
+      return;
+    }
+
+    for (final var name : properties.stringPropertyNames()) {
+      if (!name.endsWith(".windowStart")) {
+        continue;
+      }
+
+      final var user = name.substring(0, name.lastIndexOf('.'));
+      try {
+        final var usage = new Usage(
+          Long.parseLong(properties.getProperty(name)));
+        usage.transferred.set(
+          Long.parseLong(
+            properties.getProperty(user + ".transferred", "0")));
+        this.usages.put(user, usage);
+      } catch (final NumberFormatException e) {
+        LOG.error("could not parse quota usage for {}: {}", user, e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Write the transfer usage of every user to the usage file.
+   *
+   * @throws IOException On I/O errors
+   */
+
+  public void persist()
+    throws IOException
+  {
+    final var properties = new Properties();
+    for (final var entry : this.usages.entrySet()) {
+      final var user = entry.getKey();
+      final var usage = entry.getValue();
+      properties.setProperty(
+        user + ".windowStart",
+        Long.toString(usage.windowStart));
+      properties.setProperty(
+        user + ".transferred",
+        Long.toString(usage.transferred.get()));
+    }
+
+    synchronized (this.persistLock) {
+      final var temporary =
+        this.usageFile.resolveSibling(this.usageFile.getFileName() + ".tmp");
+      try (OutputStream stream =
+             Files.newOutputStream(temporary, CREATE, TRUNCATE_EXISTING, WRITE)) {
+        properties.store(stream, "");
+      }
+      Files.move(temporary, this.usageFile, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+  }
+
+  private void persistPeriodically()
+  {
+    while (!Thread.currentThread().isInterrupted()) {
+      try {
+        Thread.sleep(this.persistInterval);
+      } catch (final InterruptedException e) {
+        return;
+      }
+
+      try {
+        this.persist();
+      } catch (final IOException e) {
+        LOG.error("could not write quota usage: ", e);
+      }
+    }
+  }
+
+  /**
+   * @param user The user
+   *
+   * @return The quota that applies to {@code user}
+   */
+
+  public WBUserQuota quotaOf(
+    final String user)
+  {
+    return this.quotas.getOrDefault(
+      Objects.requireNonNull(user, "user"),
+      this.defaultQuota);
+  }
+
+  /**
+   * @param user The user
+   *
+   * @return The number of bytes {@code user} has delivered, or has begun
+   *         to deliver, in the current transfer window
+   */
+
+  public long transferredBy(
+    final String user)
+  {
+    final var usage = this.usages.get(Objects.requireNonNull(user, "user"));
+    if (usage == null) {
+      return 0L;
+    }
+    this.rollWindow(usage, this.quotaOf(user));
+    return usage.transferred.get();
+  }
+
+  /**
+   * Ask to begin a delivery of {@code size} bytes for {@code user}. If the
+   * delivery is admitted, it is charged against the user's quota until the
+   * returned upload is closed.
+   *
+   * @param user The user
+   * @param size The declared size of the delivery
+   *
+   * @return The upload
+   */
+
+  public Upload admit(
+    final String user,
+    final long size)
+  {
+    Objects.requireNonNull(user, "user");
+
+    final var quota = this.quotaOf(user);
+    final var usage =
+      this.usages.computeIfAbsent(user, u -> new Usage(this.clock.millis()));
+
+    final var uploads = usage.uploads.incrementAndGet();
+    if (quota.concurrentUploads() > 0 && uploads > quota.concurrentUploads()) {
+      usage.uploads.decrementAndGet();
+      return new Upload(WBUserQuotaStatus.CONCURRENT_UPLOADS_EXCEEDED);
+    }
+
+    final var window = this.rollWindow(usage, quota);
+    final var transferred = usage.transferred.addAndGet(size);
+    if (quota.transferBytes() > 0L && transferred > quota.transferBytes()) {
+      usage.refund(window, size);
+      usage.uploads.decrementAndGet();
+      return new Upload(WBUserQuotaStatus.TRANSFER_EXCEEDED);
+    }
+
+    final var pending = usage.pending.addAndGet(size);
+    if (quota.storedBytes() > 0L
+        && this.index.totalSizeOf(user) + pending > quota.storedBytes()) {
+      usage.pending.addAndGet(-size);
+      usage.refund(window, size);
+      usage.uploads.decrementAndGet();
+      return new Upload(WBUserQuotaStatus.STORAGE_EXCEEDED);
+    }
+
+    return new Upload(usage, size, window);
+  }
+
+  /**
+   * Start a new transfer window for {@code usage} if the current one has
+   * ended.
+   *
+   * @return The start of the current window
+   */
+
+  private long rollWindow(
+    final Usage usage,
+    final WBUserQuota quota)
+  {
+    final var now = this.clock.millis();
+    final var start = usage.windowStart;
+    if (now - start < quota.transferWindow().toMillis()) {
+      return start;
+    }
+
+    synchronized (usage) {
+      if (usage.windowStart == start) {
+        usage.transferred.set(0L);
+        usage.windowStart = now;
+      }
+      return usage.windowStart;
+    }
+  }
+
+  @Override
+  public void close()
+    throws IOException
+  {
+    this.watcher.close();
+    this.persister.interrupt();
+    try {
+      this.persister.join();
+    } catch (final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    this.persist();
+  }
+
+  private static final class Usage
+  {
+    private final AtomicInteger uploads;
+    private final AtomicLong pending;
+    private final AtomicLong transferred;
+    private volatile long windowStart;
+
+    Usage(
+      final long inWindowStart)
+    {
+      this.uploads = new AtomicInteger();
+      this.pending = new AtomicLong();
+      this.transferred = new AtomicLong();
+      this.windowStart = inWindowStart;
+    }
+
+    /**
+     * Return {@code bytes} to the transfer window that began at
+     * {@code window}, unless that window has since ended.
+     */
+
+    void refund(
+      final long window,
+      final long bytes)
+    {
+      if (this.windowStart == window) {
+        this.transferred.addAndGet(-bytes);
+      }
+    }
+  }
+
+  /**
+   * A delivery admitted (or refused) under a user's quota. Closing an
+   * admitted upload releases its charge against the number of deliveries
+   * in progress and against the stored size, which the blob index takes
+   * over once the delivery is indexed, and returns whatever part of the
+   * declared length was never received to the transfer window.
+   */
+
+  public static final class Upload implements AutoCloseable
+  {
+    private final WBUserQuotaStatus status;
+    private final Usage usage;
+    private final long size;
+    private final long window;
+    private long received;
+    private boolean closed;
+
+    private Upload(
+      final WBUserQuotaStatus inStatus)
+    {
+      this.status = inStatus;
+      this.usage = null;
+      this.size = 0L;
+      this.window = 0L;
+      this.closed = true;
+    }
+
+    private Upload(
+      final Usage inUsage,
+      final long inSize,
+      final long inWindow)
+    {
+      this.status = WBUserQuotaStatus.ADMITTED;
+      this.usage = inUsage;
+      this.size = inSize;
+      this.window = inWindow;
+    }
+
+    /**
+     * @return Whether the delivery was admitted, and if not, why not
+     */
+
+    public WBUserQuotaStatus status()
+    {
+      return this.status;
+    }
+
+    /**
+     * Record that {@code bytes} bytes of the delivery were received.
+     *
+     * @param bytes The number of bytes
+     */
+
+    public synchronized void consume(
+      final long bytes)
+    {
+      this.received += bytes;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+      if (this.closed) {
+        return;
+      }
+      this.closed = true;
+
+      this.usage.uploads.decrementAndGet();
+      this.usage.pending.addAndGet(-this.size);
+      if (this.received < this.size) {
+        this.usage.refund(this.window, this.size - this.received);
+      }
+    }
+  }
+}